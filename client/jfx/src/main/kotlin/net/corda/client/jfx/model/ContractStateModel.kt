@@ -3,7 +3,7 @@ package net.corda.client.jfx.model
 import javafx.collections.FXCollections
 import javafx.collections.ObservableList
 import net.corda.client.jfx.utils.distinctBy
-import net.corda.client.jfx.utils.fold
+import net.corda.client.jfx.utils.foldBatches
 import net.corda.client.jfx.utils.map
 import net.corda.core.contracts.ContractState
 import net.corda.core.contracts.StateAndRef
@@ -29,9 +29,11 @@ class ContractStateModel {
     private val cashStatesDiff: Observable<Diff<Cash.State>> = contractStatesDiff.map {
         Diff(it.added.filterCashStateAndRefs(), it.removed.filterCashStateAndRefs())
     }
-    val cashStates: ObservableList<StateAndRef<Cash.State>> = cashStatesDiff.fold(FXCollections.observableArrayList()) { list: MutableList<StateAndRef<Cash.State>>, (added, removed) ->
-        list.removeIf { it in removed }
-        list.addAll(added)
+    // Each batch of diffs is applied as one removal and one addition, rather than a pair of list changes per diff.
+    val cashStates: ObservableList<StateAndRef<Cash.State>> = cashStatesDiff.foldBatches(FXCollections.observableArrayList()) { list: ObservableList<StateAndRef<Cash.State>>, diffs ->
+        val removed = diffs.flatMapTo(HashSet()) { it.removed }
+        if (removed.isNotEmpty()) list.removeAll(removed)
+        list.addAll(diffs.flatMap { it.added }.filter { it !in removed })
     }.distinctBy { it.ref }
 
     val cash = cashStates.map { it.state.data.amount }
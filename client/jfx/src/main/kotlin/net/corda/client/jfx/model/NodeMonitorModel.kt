@@ -14,15 +14,17 @@ import net.corda.core.messaging.*
 import net.corda.core.node.services.NetworkMapCache.MapChange
 import net.corda.core.node.services.Vault
 import net.corda.core.node.services.vault.DEFAULT_PAGE_NUM
-import net.corda.core.node.services.vault.MAX_PAGE_SIZE
 import net.corda.core.node.services.vault.PageSpecification
 import net.corda.core.node.services.vault.QueryCriteria
+import net.corda.core.node.services.vault.Sort
+import net.corda.core.node.services.vault.SortAttribute
 import net.corda.core.transactions.SignedTransaction
 import net.corda.core.utilities.NetworkHostAndPort
 import net.corda.core.utilities.contextLogger
 import net.corda.core.utilities.seconds
 import rx.Observable
 import rx.Subscription
+import rx.schedulers.Schedulers
 import rx.subjects.PublishSubject
 import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicReference
@@ -63,6 +65,7 @@ class NodeMonitorModel : AutoCloseable {
 
     companion object {
         val logger = contextLogger()
+        const val VAULT_PAGE_SIZE = 1000
 
         private fun runLaterIfInitialized(op: () -> Unit) {
 
@@ -111,15 +114,11 @@ class NodeMonitorModel : AutoCloseable {
         proxyObservable.addListener { _, _, wrapper ->
             if (wrapper != null) {
                 val proxy = wrapper.cordaRPCOps
-                // Vault snapshot (force single page load with MAX_PAGE_SIZE) + updates
-                val (statesSnapshot, vaultUpdates) = proxy.vaultTrackBy<ContractState>(QueryCriteria.VaultQueryCriteria(Vault.StateStatus.ALL),
-                        PageSpecification(DEFAULT_PAGE_NUM, MAX_PAGE_SIZE))
-                val unconsumedStates = statesSnapshot.states.filterIndexed { index, _ ->
-                    statesSnapshot.statesMetadata[index].status == Vault.StateStatus.UNCONSUMED
-                }.toSet()
-                val consumedStates = statesSnapshot.states.toSet() - unconsumedStates
-                val initialVaultUpdate = Vault.Update(consumedStates, unconsumedStates)
-                vaultUpdates.startWith(initialVaultUpdate).subscribe({ vaultUpdatesSubject.onNext(it) }, {})
+                // Vault snapshot, a page at a time, followed by updates. The updates are held by the RPC client until the
+                // last page has been loaded.
+                val criteria = QueryCriteria.VaultQueryCriteria(Vault.StateStatus.ALL)
+                val (firstPage, vaultUpdates) = proxy.vaultTrackBy<ContractState>(criteria, PageSpecification(DEFAULT_PAGE_NUM, VAULT_PAGE_SIZE), snapshotOrder)
+                Observable.concat(vaultSnapshotPages(proxy, criteria, firstPage), vaultUpdates).subscribe({ vaultUpdatesSubject.onNext(it) }, {})
 
                 // Transactions
                 val (transactions, newTransactions) = proxy.internalVerifiedTransactionsFeed()
@@ -156,6 +155,28 @@ class NodeMonitorModel : AutoCloseable {
         futureProgressTrackerUpdates.startWith(currentProgressTrackerUpdates).flatMap { it }.retry().subscribe(progressTrackingSubject)
     }
 
+    /**
+     * Returns the states of the vault snapshot whose first page is [firstPage], as an update per page. The remaining pages
+     * are loaded on a background thread as the previous ones are emitted. States recorded since the first page was loaded
+     * may appear both in the last page and in the vault updates.
+     */
+    private fun vaultSnapshotPages(proxy: CordaRPCOps, criteria: QueryCriteria, firstPage: Vault.Page<ContractState>): Observable<Vault.Update<ContractState>> {
+        val pageCount = ((firstPage.totalStatesAvailable + VAULT_PAGE_SIZE - 1) / VAULT_PAGE_SIZE).toInt()
+        return Observable.range(DEFAULT_PAGE_NUM + 1, maxOf(pageCount - 1, 0))
+                .map { proxy.vaultQueryBy(criteria, PageSpecification(it, VAULT_PAGE_SIZE), snapshotOrder, ContractState::class.java) }
+                .startWith(firstPage)
+                .map { page ->
+                    val unconsumedStates = page.states.filterIndexed { index, _ ->
+                        page.statesMetadata[index].status == Vault.StateStatus.UNCONSUMED
+                    }.toSet()
+                    Vault.Update(page.states.toSet() - unconsumedStates, unconsumedStates)
+                }
+                .subscribeOn(Schedulers.io())
+    }
+
+    /** States are paged in the order they were recorded, so that newly recorded states don't shift the earlier pages. */
+    private val snapshotOrder = Sort(setOf(Sort.SortColumn(SortAttribute.Standard(Sort.VaultStateAttribute.RECORDED_TIME), Sort.Direction.ASC)))
+
     private fun performRpcReconnect(nodeHostAndPort: NetworkHostAndPort, username: String, password: String, shouldRetry: Boolean): List<StateMachineInfo> {
         val proxy = establishConnectionWithRetry(nodeHostAndPort, username, password, shouldRetry).let { connection ->
             rpcConnection = connection
@@ -1,6 +1,7 @@
 package net.corda.client.jfx.model
 
 import javafx.beans.value.ObservableValue
+import net.corda.client.jfx.utils.associateBy
 import net.corda.client.jfx.utils.distinctBy
 import net.corda.client.jfx.utils.lift
 import net.corda.client.jfx.utils.map
@@ -77,18 +78,25 @@ data class PartiallyResolvedTransaction(
 }
 
 /**
- * This model provides an observable list of transactions and what state machines/flows recorded them
+ * This model provides an observable list of the most recent transactions and what state machines/flows recorded them.
+ * Only the last [MAX_RECENT_TRANSACTIONS] transactions are kept, so that its memory use doesn't grow with the ledger.
  */
 class TransactionDataModel {
+    companion object {
+        const val MAX_RECENT_TRANSACTIONS = 10000
+    }
+
     private val transactions by observable(NodeMonitorModel::transactions)
-    private val collectedTransactions = transactions.recordInSequence().distinctBy { it.id }
+    private val collectedTransactions = transactions.recordInSequence(MAX_RECENT_TRANSACTIONS).distinctBy { it.id }
+    private val transactionsById = collectedTransactions.associateBy { it.id }
     private val rpcProxy by observableValue(NodeMonitorModel::proxyObservable)
 
+    // Inputs are resolved from the transactions already held where possible, so as to avoid an RPC call for each.
     @Suppress("DEPRECATION")
     val partiallyResolvedTransactions = collectedTransactions.map {
         PartiallyResolvedTransaction.fromSignedTransaction(it,
                 it.inputs.map { stateRef ->
-                    stateRef to rpcProxy.value!!.cordaRPCOps.internalFindVerifiedTransaction(stateRef.txhash)
+                    stateRef to (transactionsById[stateRef.txhash] ?: rpcProxy.value!!.cordaRPCOps.internalFindVerifiedTransaction(stateRef.txhash))
                 }.toMap())
     }
 }
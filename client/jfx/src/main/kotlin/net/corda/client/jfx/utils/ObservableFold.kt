@@ -10,7 +10,9 @@ import javafx.collections.ObservableList
 import javafx.collections.ObservableMap
 import org.slf4j.LoggerFactory
 import rx.Observable
-import java.util.concurrent.TimeUnit
+import rx.Subscription
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicBoolean
 
 /**
  * Simple utilities for converting an [rx.Observable] into a javafx [ObservableValue]/[ObservableList]
@@ -38,36 +40,63 @@ fun <A, B> Observable<A>.foldToObservableValue(initial: B, folderFun: (A, B) ->
     return result
 }
 
+/**
+ * [batchOn] passes the elements emitted on the [rx.Observable] stream to [onBatch] in batches, each of which is run with
+ * [runLater]. Elements emitted while a batch is waiting to run join it, so that however fast the stream is there is only
+ * ever one batch waiting, and each batch holds everything emitted since the previous one ran.
+ */
+internal fun <T> Observable<T>.batchOn(runLater: (() -> Unit) -> Unit, onBatch: (List<T>) -> Unit): Subscription {
+    val pending = ConcurrentLinkedQueue<T>()
+    val scheduled = AtomicBoolean(false)
+    return subscribe({
+        pending += it
+        if (scheduled.compareAndSet(false, true)) {
+            runLater {
+                // Cleared before draining, so that an element emitted during the drain schedules another batch.
+                scheduled.set(false)
+                val batch = ArrayList<T>()
+                while (true) batch += pending.poll() ?: break
+                if (batch.isNotEmpty()) onBatch(batch)
+            }
+        }
+    }, ::onError)
+}
+
+/**
+ * [foldBatches] takes an [rx.Observable] stream and collects its elements using the accumulator, a batch at a time on the
+ * JavaFX thread. A batch holds everything emitted since the previous batch, so a burst of elements is applied in one go
+ * rather than flooding the FX thread with a runnable per element.
+ * @param accumulator The accumulator for accumulating elements.
+ * @param folderFun The transformation function to be called on the accumulator with each batch of elements emitted on
+ *     the stream, which should modify the accumulator as needed.
+ */
+fun <T, R> Observable<T>.foldBatches(accumulator: R, folderFun: (R, List<T>) -> Unit): R {
+    batchOn({ Platform.runLater(it) }) { folderFun(accumulator, it) }
+    return accumulator
+}
+
 /**
  * [fold] takes an [rx.Observable] stream and applies fold function on it, and collects all elements using the accumulator.
+ * The elements are applied in batches, as with [foldBatches].
  * @param accumulator The accumulator for accumulating elements.
  * @param folderFun The transformation function to be called on the observable list when a new element is emitted on
  *     the stream, which should modify the list as needed.
  */
 fun <T, R> Observable<T>.fold(accumulator: R, folderFun: (R, T) -> Unit): R {
-    /**
-     * This capture is fine, as [Platform.runLater] runs closures in order.
-     * The buffer is to avoid flooding FX thread with runnable.
-     */
-    buffer(1, TimeUnit.SECONDS).subscribe({
-        if (it.isNotEmpty()) {
-            Platform.runLater {
-                it.fold(accumulator) { list, item ->
-                    folderFun.invoke(list, item)
-                    list
-                }
-            }
-        }
-    }, ::onError)
-    return accumulator
+    return foldBatches(accumulator) { acc, batch -> batch.forEach { folderFun(acc, it) } }
 }
 
 /**
- * [recordInSequence] records incoming events on the [rx.Observable] in sequence.
+ * [recordInSequence] records incoming events on the [rx.Observable] in sequence. Each batch of events is added to the
+ * list in a single change.
+ * @param maxSize The number of most recent events to keep. Older events are dropped from the front of the list.
  */
-fun <A> Observable<A>.recordInSequence(): ObservableList<A> {
-    return fold(FXCollections.observableArrayList()) { list, newElement ->
-        list.add(newElement)
+@JvmOverloads
+fun <A> Observable<A>.recordInSequence(maxSize: Int = Int.MAX_VALUE): ObservableList<A> {
+    require(maxSize > 0) { "maxSize must be positive" }
+    return foldBatches(FXCollections.observableArrayList()) { list, batch ->
+        list.addAll(if (batch.size > maxSize) batch.subList(batch.size - maxSize, batch.size) else batch)
+        if (list.size > maxSize) list.remove(0, list.size - maxSize)
     }
 }
 
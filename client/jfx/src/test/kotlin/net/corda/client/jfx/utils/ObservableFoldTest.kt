@@ -0,0 +1,49 @@
+package net.corda.client.jfx.utils
+
+import org.junit.Test
+import rx.subjects.PublishSubject
+import kotlin.test.assertEquals
+
+class ObservableFoldTest {
+    private val subject = PublishSubject.create<Int>()
+    private val scheduled = ArrayList<() -> Unit>()
+    private val batches = ArrayList<List<Int>>()
+
+    private fun runScheduled() {
+        val toRun = ArrayList(scheduled)
+        scheduled.clear()
+        toRun.forEach { it() }
+    }
+
+    @Test
+    fun `elements emitted before a batch runs are coalesced into it`() {
+        subject.batchOn({ scheduled += it }) { batches += it }
+        (1..100).forEach { subject.onNext(it) }
+        assertEquals(1, scheduled.size)
+        runScheduled()
+        assertEquals(listOf((1..100).toList()), batches)
+    }
+
+    @Test
+    fun `elements emitted after a batch has run start another`() {
+        subject.batchOn({ scheduled += it }) { batches += it }
+        subject.onNext(1)
+        runScheduled()
+        subject.onNext(2)
+        subject.onNext(3)
+        runScheduled()
+        assertEquals(listOf(listOf(1), listOf(2, 3)), batches)
+    }
+
+    @Test
+    fun `elements emitted while a batch is being applied are not lost`() {
+        subject.batchOn({ scheduled += it }) {
+            batches += it
+            if (it == listOf(1)) subject.onNext(2)
+        }
+        subject.onNext(1)
+        runScheduled()
+        runScheduled()
+        assertEquals(listOf(listOf(1), listOf(2)), batches)
+    }
+}
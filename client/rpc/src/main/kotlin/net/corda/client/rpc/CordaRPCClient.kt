@@ -89,7 +89,14 @@ open class CordaRPCClientConfiguration @JvmOverloads constructor(
         /**
          * The cache expiry of a deduplication watermark per client.
          */
-        open val deduplicationCacheExpiry: Duration = 1.days
+        open val deduplicationCacheExpiry: Duration = 1.days,
+
+        /**
+         * The number of observations the server may send on each returned [Observable] before the client has consumed
+         * them. The client grants further credits as its observers process observations, so a slow observer makes the
+         * server buffer, conflate or drop observations instead of flooding the client. Zero disables flow control.
+         */
+        open val observationCreditWindow: Int = 0
 
 ) {
 
@@ -117,7 +124,8 @@ open class CordaRPCClientConfiguration @JvmOverloads constructor(
             connectionRetryIntervalMultiplier: Double = this.connectionRetryIntervalMultiplier,
             maxReconnectAttempts: Int = this.maxReconnectAttempts,
             maxFileSize: Int = this.maxFileSize,
-            deduplicationCacheExpiry: Duration = this.deduplicationCacheExpiry
+            deduplicationCacheExpiry: Duration = this.deduplicationCacheExpiry,
+            observationCreditWindow: Int = this.observationCreditWindow
     ): CordaRPCClientConfiguration {
         return CordaRPCClientConfiguration(
                 connectionMaxRetryInterval,
@@ -130,7 +138,8 @@ open class CordaRPCClientConfiguration @JvmOverloads constructor(
                 connectionRetryIntervalMultiplier,
                 maxReconnectAttempts,
                 maxFileSize,
-                deduplicationCacheExpiry
+                deduplicationCacheExpiry,
+                observationCreditWindow
         )
     }
 
@@ -150,6 +159,7 @@ open class CordaRPCClientConfiguration @JvmOverloads constructor(
         if (maxReconnectAttempts != other.maxReconnectAttempts) return false
         if (maxFileSize != other.maxFileSize) return false
         if (deduplicationCacheExpiry != other.deduplicationCacheExpiry) return false
+        if (observationCreditWindow != other.observationCreditWindow) return false
 
         return true
     }
@@ -166,6 +176,7 @@ open class CordaRPCClientConfiguration @JvmOverloads constructor(
         result = 31 * result + maxReconnectAttempts
         result = 31 * result + maxFileSize
         result = 31 * result + deduplicationCacheExpiry.hashCode()
+        result = 31 * result + observationCreditWindow
         return result
     }
 
@@ -177,7 +188,7 @@ open class CordaRPCClientConfiguration @JvmOverloads constructor(
                 "cacheConcurrencyLevel=$cacheConcurrencyLevel, connectionRetryInterval=$connectionRetryInterval, " +
                 "connectionRetryIntervalMultiplier=$connectionRetryIntervalMultiplier, " +
                 "maxReconnectAttempts=$maxReconnectAttempts, maxFileSize=$maxFileSize, " +
-                "deduplicationCacheExpiry=$deduplicationCacheExpiry)"
+                "deduplicationCacheExpiry=$deduplicationCacheExpiry, observationCreditWindow=$observationCreditWindow)"
     }
 
     // Left is for backwards compatibility with version 3.1
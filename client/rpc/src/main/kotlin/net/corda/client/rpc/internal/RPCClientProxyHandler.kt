@@ -156,6 +156,8 @@ class RPCClientProxyHandler(
         var observables = ArrayList<InvocationId>()
     })
     private val serializationContextWithObservableContext = RpcClientObservableSerializer.createContext(serializationContext, observableContext)
+    // Observations consumed per Observable since credits were last granted, see [CordaRPCClientConfiguration.observationCreditWindow].
+    private val observationsConsumed = ConcurrentHashMap<InvocationId, Int>()
 
     private fun createRpcObservableMap(): RpcObservableMap {
         val onObservableRemove = RemovalListener<InvocationId, UnicastSubject<Notification<*>>> { key, _, cause ->
@@ -170,6 +172,7 @@ class RPCClientProxyHandler(
                         "will appear less frequently in future versions of the platform and you can ignore it",
                         "if you want to.").joinToString(" "), rpcCallSite)
             }
+            observationsConsumed.remove(observableId)
             observablesToReap.locked { observables.add(observableId) }
         }
         return Caffeine.newBuilder().
@@ -256,7 +259,8 @@ class RPCClientProxyHandler(
                     replyId,
                     sessionId,
                     externalTrace,
-                    impersonatedActor
+                    impersonatedActor,
+                    rpcConfiguration.observationCreditWindow
             )
             val replyFuture = SettableFuture.create<Any>()
             require(rpcReplyMap.put(replyId, replyFuture) == null) {
@@ -319,6 +323,10 @@ class RPCClientProxyHandler(
                             "This may be due to an observation arriving before the server was " +
                             "notified of observable shutdown")
                 } else {
+                    if (serverToClient.droppedObservations > 0) {
+                        log.warn("The RPC server dropped ${serverToClient.droppedObservations} observations on Observable " +
+                                "${serverToClient.id} because they were not consumed fast enough")
+                    }
                     // We schedule the onNext() on an executor sticky-pooled based on the Observable ID.
                     observationExecutorPool.run(serverToClient.id) { executor ->
                         executor.submit {
@@ -332,6 +340,10 @@ class RPCClientProxyHandler(
                                 if (rpcCallSite != null) addRpcCallSiteToThrowable(content.throwable, rpcCallSite)
                             }
                             observable.onNext(content)
+                            // Servers which predate flow control don't accept grants, and don't flag their observations.
+                            if (content.isOnNext && serverToClient.creditsAccepted) {
+                                grantObservationCredit(serverToClient.id)
+                            }
                         }
                     }
                 }
@@ -340,6 +352,19 @@ class RPCClientProxyHandler(
         message.acknowledge()
     }
 
+    /**
+     * Counts a consumed observation and grants the server credits in batches of half the credit window, so that the
+     * server is not starved while a grant is in flight.
+     */
+    private fun grantObservationCredit(observableId: InvocationId) {
+        val creditWindow = rpcConfiguration.observationCreditWindow
+        if (creditWindow <= 0) return
+        val consumed = observationsConsumed.merge(observableId, 1) { a, b -> a + b }!!
+        if (consumed >= maxOf(1, creditWindow / 2) && observationsConsumed.remove(observableId, consumed)) {
+            sendMessage(RPCApi.ClientToServer.ObservationCreditsGranted(mapOf(observableId to consumed)))
+        }
+    }
+
     /**
      * Closes this handler without notifying observables.
      * This method clears up only local resources and as such does not block on any network resources.
@@ -544,6 +569,7 @@ class RPCClientProxyHandler(
             }
         }
         observableContext.observableMap.invalidateAll()
+        observationsConsumed.clear()
 
         rpcReplyMap.forEach { _, replyFuture ->
             replyFuture.setException(RPCException("Connection failure detected."))
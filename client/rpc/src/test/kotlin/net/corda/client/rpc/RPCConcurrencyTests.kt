@@ -93,7 +93,8 @@ class RPCConcurrencyTests : AbstractRPCTest() {
                         reapInterval = 100.millis
                 ),
                 serverConfiguration = RPCServerConfiguration.DEFAULT.copy(
-                        rpcThreadPoolSize = 4
+                        rpcThreadPoolSize = 4,
+                        rpcSenderThreadCount = 2
                 )
         )
     }
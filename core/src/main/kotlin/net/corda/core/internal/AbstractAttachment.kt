@@ -75,12 +75,21 @@ abstract class AbstractAttachment(dataLoader: () -> ByteArray) : Attachment {
 
 @Throws(IOException::class)
 fun JarInputStream.extractFile(path: String, outputTo: OutputStream) {
+    seekToFile(path)
+    copyTo(outputTo)
+}
+
+/**
+ * Advances the stream to the file at [path], so that reading from it reads that file.
+ *
+ * @throws FileNotFoundException if there is no such file in the JAR.
+ */
+fun JarInputStream.seekToFile(path: String) {
     fun String.norm() = toLowerCase().split('\\', '/') // XXX: Should this really be locale-sensitive?
     val p = path.norm()
     while (true) {
         val e = nextJarEntry ?: break
         if (!e.isDirectory && e.name.norm() == p) {
-            copyTo(outputTo)
             return
         }
         closeEntry()
@@ -0,0 +1,99 @@
+package net.corda.core.internal
+
+import net.corda.core.KeepForDJVM
+import net.corda.core.StubOutForDJVM
+import net.corda.core.contracts.AttachmentConstraint
+import net.corda.core.contracts.Contract
+import net.corda.core.contracts.ContractClassName
+import net.corda.core.node.services.AttachmentId
+import java.lang.reflect.Modifier
+
+/**
+ * Caches the parts of [net.corda.core.transactions.LedgerTransaction.verify] which depend only on a contract and the
+ * attachment it is loaded from, rather than on the transaction being verified. Resolving a chain of transactions checks
+ * the same contracts against the same attachments over and over, and these checks are then only done once.
+ *
+ * Nothing is ever added to these caches in the deterministic build: the functions which populate them are stubbed out,
+ * so the lookups always miss and every transaction is verified from scratch, independently of any verified before it.
+ */
+@KeepForDJVM
+object ContractVerificationCache {
+    private const val MAX_SATISFIED_CONSTRAINTS = 4096
+
+    /**
+     * Everything that [AttachmentConstraint.isSatisfiedBy] may depend on when given an [AttachmentWithContext]: the
+     * attachment's contents are fixed by its id, and it is only trusted according to its uploader.
+     */
+    private data class ConstraintCheck(val constraint: AttachmentConstraint,
+                                       val contract: ContractClassName,
+                                       val attachmentId: AttachmentId,
+                                       val uploader: String?,
+                                       val whitelist: List<AttachmentId>?)
+
+    private val satisfiedConstraints = object : LinkedHashMap<ConstraintCheck, Unit>(MAX_SATISFIED_CONSTRAINTS, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<ConstraintCheck, Unit>): Boolean = size > MAX_SATISFIED_CONSTRAINTS
+    }
+
+    /**
+     * Returns whether [constraint] is satisfied by [attachment]. Only a constraint which was satisfied is remembered, so a
+     * rejection is always checked again.
+     */
+    fun isSatisfied(constraint: AttachmentConstraint, attachment: AttachmentWithContext): Boolean {
+        val check = ConstraintCheck(
+                constraint,
+                attachment.stateContract,
+                attachment.id,
+                attachment.contractAttachment.uploader,
+                attachment.whitelistedContractImplementations?.get(attachment.stateContract))
+        if (synchronized(satisfiedConstraints) { satisfiedConstraints[check] } != null) return true
+        if (!constraint.isSatisfiedBy(attachment)) return false
+        rememberSatisfied(check)
+        return true
+    }
+
+    @StubOutForDJVM
+    private fun rememberSatisfied(check: ConstraintCheck) {
+        synchronized(satisfiedConstraints) { satisfiedConstraints[check] = Unit }
+    }
+
+    /** The instance of a contract class which is shared between transactions, if there is one yet. */
+    private class SharedContract {
+        @Volatile
+        var instance: Contract? = null
+    }
+
+    /**
+     * Shared contract instances by class, and so by the class loader of the attachment which the class was loaded from.
+     * A [ClassValue] does not keep an attachment's class loader from being unloaded.
+     */
+    private val sharedContracts = object : ClassValue<SharedContract>() {
+        override fun computeValue(type: Class<*>): SharedContract = SharedContract()
+    }
+
+    /**
+     * Returns an instance of [contractClass] with which to verify a transaction. A contract which declares no instance
+     * fields at all, and nor do any of its superclasses, cannot carry anything over from one transaction to the next,
+     * so a single instance is shared between them. Any other contract is instantiated afresh every time, because even
+     * a final field may refer to something mutable.
+     */
+    fun contractInstance(contractClass: Class<out Contract>): Contract {
+        val shared = sharedContracts.get(contractClass)
+        shared.instance?.let { return it }
+        val contract = contractClass.newInstance()
+        if (hasNoInstanceFields(contractClass)) {
+            share(shared, contract)
+        }
+        return contract
+    }
+
+    @StubOutForDJVM
+    private fun share(shared: SharedContract, contract: Contract) {
+        shared.instance = contract
+    }
+
+    private fun hasNoInstanceFields(type: Class<*>): Boolean {
+        return generateSequence(type) { it.superclass }.all { clazz ->
+            clazz.declaredFields.all { Modifier.isStatic(it.modifiers) }
+        }
+    }
+}
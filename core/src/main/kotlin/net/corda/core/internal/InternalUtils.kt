@@ -49,8 +49,12 @@ import java.time.Duration
 import java.time.temporal.Temporal
 import java.util.*
 import java.util.Spliterator.*
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
 import java.util.concurrent.ExecutorService
+import java.util.concurrent.ForkJoinPool
 import java.util.concurrent.TimeUnit
+import java.util.stream.Collectors
 import java.util.stream.IntStream
 import java.util.stream.Stream
 import java.util.stream.StreamSupport
@@ -123,6 +127,34 @@ fun <T> List<T>.indexOfOrThrow(item: T): Int {
     return i
 }
 
+/** Lists with fewer items than this are mapped by [mapInParallel] on the calling thread. */
+const val PARALLEL_MAP_THRESHOLD = 256
+
+/**
+ * A pool of its own for [mapInParallel], so that its tasks are never forked onto the pool of the calling thread, such as
+ * the one flow fibers are scheduled on.
+ */
+@DeleteForDJVM
+private val parallelMapPool: ForkJoinPool by lazy { ForkJoinPool(Runtime.getRuntime().availableProcessors()) }
+
+/**
+ * Maps [transform] over the list, passing the index of each item, and returns the results in the same order. Lists of
+ * at least [PARALLEL_MAP_THRESHOLD] items are split across cores, so [transform] must not rely on thread-local state of
+ * the caller, such as the current serialization context.
+ */
+@DeleteForDJVM
+fun <T, R> List<T>.mapInParallel(transform: (Int, T) -> R): List<R> {
+    if (size < PARALLEL_MAP_THRESHOLD) return mapIndexed(transform)
+    val task = parallelMapPool.submit(Callable<List<R>> {
+        IntStream.range(0, size).parallel().mapToObj { transform(it, this[it]) }.collect(Collectors.toList())
+    })
+    try {
+        return task.get()
+    } catch (e: ExecutionException) {
+        throw e.cause ?: e
+    }
+}
+
 @DeleteForDJVM fun InputStream.copyTo(target: Path, vararg options: CopyOption): Long = Files.copy(this, target, *options)
 
 /** Same as [InputStream.readBytes] but also closes the stream. */
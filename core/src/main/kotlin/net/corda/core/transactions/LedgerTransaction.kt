@@ -5,6 +5,7 @@ import net.corda.core.contracts.*
 import net.corda.core.crypto.SecureHash
 import net.corda.core.identity.Party
 import net.corda.core.internal.AttachmentWithContext
+import net.corda.core.internal.ContractVerificationCache
 import net.corda.core.internal.castIfPossible
 import net.corda.core.internal.uncheckedCast
 import net.corda.core.node.NetworkParameters
@@ -100,7 +101,8 @@ data class LedgerTransaction @JvmOverloads constructor(
      */
     private fun verifyConstraints() {
         val contractAttachments = attachments.filterIsInstance<ContractAttachment>()
-        (inputs.map { it.state } + outputs).forEach { state ->
+        // States sharing a contract and constraint are all checked against the same attachment, so each pair is checked once.
+        (inputs.map { it.state } + outputs).distinctBy { Pair(it.contract, it.constraint) }.forEach { state ->
             val stateAttachments = contractAttachments.filter { state.contract in it.allContracts }
             if (stateAttachments.isEmpty()) throw TransactionVerificationException.MissingAttachmentRejection(id, state.contract)
 
@@ -114,7 +116,7 @@ data class LedgerTransaction @JvmOverloads constructor(
 
             val contractAttachment = uniqueAttachmentsForStateContract.first()
             val constraintAttachment = AttachmentWithContext(contractAttachment, state.contract, networkParameters?.whitelistedContractImplementations)
-            if (!state.constraint.isSatisfiedBy(constraintAttachment)) {
+            if (!ContractVerificationCache.isSatisfied(state.constraint, constraintAttachment)) {
                 throw TransactionVerificationException.ContractConstraintRejection(id, state.contract)
             }
         }
@@ -131,7 +133,7 @@ data class LedgerTransaction @JvmOverloads constructor(
                 is Try.Failure -> throw TransactionVerificationException.ContractCreationError(id, key, result.exception)
                 is Try.Success -> {
                     try {
-                        contractInstances.add(result.value.newInstance())
+                        contractInstances.add(ContractVerificationCache.contractInstance(result.value))
                     } catch (e: Throwable) {
                         throw TransactionVerificationException.ContractCreationError(id, result.value.name, e)
                     }
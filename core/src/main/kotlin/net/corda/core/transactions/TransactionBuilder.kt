@@ -9,6 +9,7 @@ import net.corda.core.crypto.SignableData
 import net.corda.core.crypto.SignatureMetadata
 import net.corda.core.identity.Party
 import net.corda.core.internal.FlowStateMachine
+import net.corda.core.internal.mapInParallel
 import net.corda.core.node.NetworkParameters
 import net.corda.core.node.ServiceHub
 import net.corda.core.node.ServicesForResolution
@@ -16,6 +17,7 @@ import net.corda.core.node.services.AttachmentId
 import net.corda.core.node.services.KeyManagementService
 import net.corda.core.serialization.SerializationContext
 import net.corda.core.serialization.SerializationFactory
+import net.corda.core.serialization.serialize
 import java.security.PublicKey
 import java.time.Duration
 import java.time.Instant
@@ -112,9 +114,17 @@ open class TransactionBuilder(
             }
         }
 
-        return SerializationFactory.defaultFactory.withCurrentContext(serializationContext) {
-            WireTransaction(WireTransaction.createComponentGroups(inputStates(), resolvedOutputs, commands, attachments + makeContractAttachments(services.cordappProvider), notary, window), privacySalt)
+        val serializationFactory = SerializationFactory.defaultFactory
+        val wtx = serializationFactory.withCurrentContext(serializationContext) {
+            // Large groups are serialised across cores, so the factory and context are captured on this thread.
+            val context = serializationFactory.defaultContext
+            val componentGroups = WireTransaction.createComponentGroups(inputStates(), resolvedOutputs, commands, attachments + makeContractAttachments(services.cordappProvider), notary, window) { components ->
+                components.mapInParallel { _, component -> component.serialize(serializationFactory, context) }
+            }
+            WireTransaction(componentGroups, privacySalt)
         }
+        wtx.computeComponentHashesInParallel()
+        return wtx
     }
 
     private fun useWhitelistedByZoneAttachmentConstraint(contractClassName: ContractClassName, networkParameters: NetworkParameters): Boolean {
@@ -8,6 +8,7 @@ import net.corda.core.contracts.ComponentGroupEnum.*
 import net.corda.core.crypto.*
 import net.corda.core.identity.Party
 import net.corda.core.internal.Emoji
+import net.corda.core.internal.mapInParallel
 import net.corda.core.node.NetworkParameters
 import net.corda.core.node.ServicesForResolution
 import net.corda.core.node.services.AttachmentId
@@ -211,7 +212,7 @@ class WireTransaction(componentGroups: List<ComponentGroup>, val privacySalt: Pr
      * nothing about the rest.
      */
     internal val availableComponentNonces: Map<Int, List<SecureHash>> by lazy {
-        componentGroups.map { Pair(it.groupIndex, it.components.mapIndexed { internalIndex, internalIt -> componentHash(internalIt, privacySalt, it.groupIndex, internalIndex) }) }.toMap()
+        componentNoncesAndHashes.mapValues { it.value.map { it.first } }
     }
 
     /**
@@ -220,7 +221,39 @@ class WireTransaction(componentGroups: List<ComponentGroup>, val privacySalt: Pr
      * see the user-guide section "Transaction tear-offs" to learn more about this topic.
      */
     internal val availableComponentHashes: Map<Int, List<SecureHash>> by lazy {
-        componentGroups.map { Pair(it.groupIndex, it.components.mapIndexed { internalIndex, internalIt -> componentHash(availableComponentNonces[it.groupIndex]!![internalIndex], internalIt) }) }.toMap()
+        componentNoncesAndHashes.mapValues { it.value.map { it.second } }
+    }
+
+    /**
+     * The nonce and hash of every component by group, which are computed once and shared by [id] and the building of
+     * every [FilteredTransaction]. They are computed on the calling thread unless [computeComponentHashesInParallel] has
+     * already done so.
+     */
+    private val componentNoncesAndHashesLazy = lazy {
+        precomputedNoncesAndHashes ?: componentGroups.associate { group ->
+            group.groupIndex to group.components.mapIndexed { internalIndex, component -> componentNonceAndHash(group.groupIndex, internalIndex, component) }
+        }
+    }
+    private val componentNoncesAndHashes: Map<Int, List<Pair<SecureHash, SecureHash>>> by componentNoncesAndHashesLazy
+
+    @Volatile
+    private var precomputedNoncesAndHashes: Map<Int, List<Pair<SecureHash, SecureHash>>>? = null
+
+    private fun componentNonceAndHash(groupIndex: Int, internalIndex: Int, component: OpaqueBytes): Pair<SecureHash, SecureHash> {
+        val nonce = componentHash(component, privacySalt, groupIndex, internalIndex)
+        return Pair(nonce, componentHash(nonce, component))
+    }
+
+    /**
+     * Computes the nonces and hashes of the components of large groups across cores, ahead of [id] being needed. This
+     * gives exactly the same hashes as computing them on the calling thread.
+     */
+    @DeleteForDJVM
+    internal fun computeComponentHashesInParallel() {
+        if (componentNoncesAndHashesLazy.isInitialized()) return
+        precomputedNoncesAndHashes = componentGroups.associate { group ->
+            group.groupIndex to group.components.mapInParallel { internalIndex, component -> componentNonceAndHash(group.groupIndex, internalIndex, component) }
+        }
     }
 
     /**
@@ -246,17 +279,31 @@ class WireTransaction(componentGroups: List<ComponentGroup>, val privacySalt: Pr
                                   attachments: List<SecureHash>,
                                   notary: Party?,
                                   timeWindow: TimeWindow?): List<ComponentGroup> {
+            return createComponentGroups(inputs, outputs, commands, attachments, notary, timeWindow) { components -> components.map { it.serialize() } }
+        }
+
+        /**
+         * As above, but with the components of each list-valued group serialised by [serializeAll], which must return
+         * them in the same order.
+         */
+        internal fun createComponentGroups(inputs: List<StateRef>,
+                                           outputs: List<TransactionState<ContractState>>,
+                                           commands: List<Command<*>>,
+                                           attachments: List<SecureHash>,
+                                           notary: Party?,
+                                           timeWindow: TimeWindow?,
+                                           serializeAll: (List<Any>) -> List<OpaqueBytes>): List<ComponentGroup> {
             val componentGroupMap: MutableList<ComponentGroup> = mutableListOf()
-            if (inputs.isNotEmpty()) componentGroupMap.add(ComponentGroup(INPUTS_GROUP.ordinal, inputs.map { it.serialize() }))
-            if (outputs.isNotEmpty()) componentGroupMap.add(ComponentGroup(OUTPUTS_GROUP.ordinal, outputs.map { it.serialize() }))
+            if (inputs.isNotEmpty()) componentGroupMap.add(ComponentGroup(INPUTS_GROUP.ordinal, serializeAll(inputs)))
+            if (outputs.isNotEmpty()) componentGroupMap.add(ComponentGroup(OUTPUTS_GROUP.ordinal, serializeAll(outputs)))
             // Adding commandData only to the commands group. Signers are added in their own group.
-            if (commands.isNotEmpty()) componentGroupMap.add(ComponentGroup(COMMANDS_GROUP.ordinal, commands.map { it.value.serialize() }))
-            if (attachments.isNotEmpty()) componentGroupMap.add(ComponentGroup(ATTACHMENTS_GROUP.ordinal, attachments.map { it.serialize() }))
+            if (commands.isNotEmpty()) componentGroupMap.add(ComponentGroup(COMMANDS_GROUP.ordinal, serializeAll(commands.map { it.value })))
+            if (attachments.isNotEmpty()) componentGroupMap.add(ComponentGroup(ATTACHMENTS_GROUP.ordinal, serializeAll(attachments)))
             if (notary != null) componentGroupMap.add(ComponentGroup(NOTARY_GROUP.ordinal, listOf(notary.serialize())))
             if (timeWindow != null) componentGroupMap.add(ComponentGroup(TIMEWINDOW_GROUP.ordinal, listOf(timeWindow.serialize())))
             // Adding signers to their own group. This is required for command visibility purposes: a party receiving
             // a FilteredTransaction can now verify it sees all the commands it should sign.
-            if (commands.isNotEmpty()) componentGroupMap.add(ComponentGroup(SIGNERS_GROUP.ordinal, commands.map { it.signers.serialize() }))
+            if (commands.isNotEmpty()) componentGroupMap.add(ComponentGroup(SIGNERS_GROUP.ordinal, serializeAll(commands.map { it.signers })))
             return componentGroupMap
         }
     }
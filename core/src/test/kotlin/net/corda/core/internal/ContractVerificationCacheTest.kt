@@ -0,0 +1,106 @@
+package net.corda.core.internal
+
+import com.nhaarman.mockito_kotlin.doReturn
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.whenever
+import net.corda.core.contracts.Attachment
+import net.corda.core.contracts.AttachmentConstraint
+import net.corda.core.contracts.Contract
+import net.corda.core.contracts.ContractAttachment
+import net.corda.core.crypto.SecureHash
+import net.corda.core.transactions.LedgerTransaction
+import org.junit.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNotSame
+import kotlin.test.assertSame
+import kotlin.test.assertTrue
+
+class ContractVerificationCacheTest {
+    class StatelessContract : Contract {
+        override fun verify(tx: LedgerTransaction) {}
+    }
+
+    class StatefulContract : Contract {
+        var verified = 0
+        override fun verify(tx: LedgerTransaction) {
+            verified++
+        }
+    }
+
+    class ReadOnlyStateContract : Contract {
+        private val verified = ArrayList<LedgerTransaction>()
+        override fun verify(tx: LedgerTransaction) {
+            verified += tx
+        }
+    }
+
+    open class BaseContract : Contract {
+        val verifiedBefore = HashSet<Any>()
+        override fun verify(tx: LedgerTransaction) {}
+    }
+
+    class SubclassOfStatefulContract : BaseContract()
+
+    private class CountingConstraint(private val satisfied: Boolean) : AttachmentConstraint {
+        var checks = 0
+        override fun isSatisfiedBy(attachment: Attachment): Boolean {
+            checks++
+            return satisfied
+        }
+    }
+
+    private fun attachment(uploader: String?): AttachmentWithContext {
+        val attachment = mock<Attachment>()
+        doReturn(SecureHash.randomSHA256()).whenever(attachment).id
+        return AttachmentWithContext(ContractAttachment(attachment, StatelessContract::class.java.name, uploader = uploader), StatelessContract::class.java.name, null)
+    }
+
+    @Test
+    fun `stateless contracts are shared`() {
+        assertSame(
+                ContractVerificationCache.contractInstance(StatelessContract::class.java),
+                ContractVerificationCache.contractInstance(StatelessContract::class.java))
+    }
+
+    @Test
+    fun `contracts with mutable fields are instantiated every time`() {
+        assertNotSame(
+                ContractVerificationCache.contractInstance(StatefulContract::class.java),
+                ContractVerificationCache.contractInstance(StatefulContract::class.java))
+    }
+
+    @Test
+    fun `contracts with final fields are instantiated every time`() {
+        assertNotSame(
+                ContractVerificationCache.contractInstance(ReadOnlyStateContract::class.java),
+                ContractVerificationCache.contractInstance(ReadOnlyStateContract::class.java))
+    }
+
+    @Test
+    fun `contracts inheriting instance fields are instantiated every time`() {
+        assertNotSame(
+                ContractVerificationCache.contractInstance(SubclassOfStatefulContract::class.java),
+                ContractVerificationCache.contractInstance(SubclassOfStatefulContract::class.java))
+    }
+
+    @Test
+    fun `satisfied constraints are only checked once per attachment`() {
+        val constraint = CountingConstraint(true)
+        val attachment = attachment(TEST_UPLOADER)
+        repeat(3) { assertTrue(ContractVerificationCache.isSatisfied(constraint, attachment)) }
+        assertEquals(1, constraint.checks)
+        // The same contents from another uploader may not be trusted, so are checked again.
+        val otherUploader = AttachmentWithContext(ContractAttachment(attachment.contractAttachment.attachment, attachment.stateContract, uploader = "other"), attachment.stateContract, null)
+        assertTrue(ContractVerificationCache.isSatisfied(constraint, otherUploader))
+        assertEquals(2, constraint.checks)
+    }
+
+    @Test
+    fun `rejected constraints are checked again`() {
+        val constraint = CountingConstraint(false)
+        val attachment = attachment(TEST_UPLOADER)
+        repeat(3) { assertFalse(ContractVerificationCache.isSatisfied(constraint, attachment)) }
+        assertEquals(3, constraint.checks)
+    }
+}
@@ -3,6 +3,9 @@ package net.corda.core.transactions
 import net.corda.core.contracts.*
 import net.corda.core.contracts.ComponentGroupEnum.*
 import net.corda.core.crypto.*
+import net.corda.core.internal.PARALLEL_MAP_THRESHOLD
+import net.corda.core.internal.mapInParallel
+import net.corda.core.serialization.SerializationFactory
 import net.corda.core.serialization.serialize
 import net.corda.core.utilities.OpaqueBytes
 import net.corda.testing.contracts.DummyContract
@@ -546,5 +549,28 @@ class CompatibleTransactionTests {
         // Also, checkAllComponentsVisible() will not pass (top level Merkle tree cannot be verified against transaction's id).
         assertFailsWith<ComponentVisibilityException> { ftxAlterSignerB.checkCommandVisibility(DUMMY_KEY_1.public) }
     }
-}
 
+    @Test
+    fun `large groups serialised and hashed in parallel match the sequential computation`() {
+        val manyOutputs = List(PARALLEL_MAP_THRESHOLD * 4) { dummyOutState.copy(data = DummyState(it)) }
+        val sequentialGroups = WireTransaction.createComponentGroups(inputs, manyOutputs, commands, attachments, notary, timeWindow)
+        val factory = SerializationFactory.defaultFactory
+        val context = factory.defaultContext
+        val parallelGroups = WireTransaction.createComponentGroups(inputs, manyOutputs, commands, attachments, notary, timeWindow) { components ->
+            components.mapInParallel { _, component -> component.serialize(factory, context) }
+        }
+        assertEquals(sequentialGroups.map { it.components }, parallelGroups.map { it.components })
+
+        val sequential = WireTransaction(sequentialGroups, privacySalt)
+        val parallel = WireTransaction(parallelGroups, privacySalt)
+        parallel.computeComponentHashesInParallel()
+        assertEquals(sequential.availableComponentNonces, parallel.availableComponentNonces)
+        assertEquals(sequential.availableComponentHashes, parallel.availableComponentHashes)
+        assertEquals(sequential.id, parallel.id)
+
+        // Filtered transactions are built from the same cached hashes.
+        val ftx = parallel.buildFilteredTransaction(Predicate { it is TransactionState<*> && (it.data as DummyState).magicNumber % 100 == 0 })
+        ftx.verify()
+        assertEquals(sequential.id, ftx.id)
+    }
+}
@@ -607,6 +607,19 @@ class Obligation<P : Any> : Contract {
 
     }
 
+    /**
+     * Generate a payment netting transaction for one batch of a clearing cycle, as planned by [planPaymentNetting].
+     * The transaction must be signed by all of the batch's [PaymentNettingBatch.signers].
+     */
+    fun generatePaymentNetting(tx: TransactionBuilder, batch: PaymentNettingBatch<P>) {
+        requireThat {
+            "the batch uses the transaction's notary" using (tx.notary == null || tx.notary == batch.notary)
+        }
+        batch.inputs.forEach { tx.addInputState(it) }
+        batch.outputs.forEach { tx.addOutputState(it, PROGRAM_ID, batch.notary) }
+        tx.addCommand(Commands.Net(NetType.PAYMENT), batch.signers.toList())
+    }
+
     /**
      * Generate a transaction changing the lifecycle of one or more state objects.
      *
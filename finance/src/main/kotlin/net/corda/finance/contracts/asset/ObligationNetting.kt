@@ -0,0 +1,181 @@
+package net.corda.finance.contracts.asset
+
+import net.corda.core.contracts.StateAndRef
+import net.corda.core.identity.AbstractParty
+import net.corda.core.identity.Party
+import java.security.PublicKey
+
+/**
+ * Obligations between parties identified by a dense index from zero, held as parallel primitive arrays so that large
+ * clearing cycles can be netted without boxing a pair and an amount for every obligation. Obligation `i` is owed by
+ * party `obligors[i]` to party `beneficiaries[i]` and is for `quantities[i]`.
+ */
+class ObligationGraph(val obligors: IntArray, val beneficiaries: IntArray, val quantities: LongArray) {
+    init {
+        require(obligors.size == beneficiaries.size && obligors.size == quantities.size) { "obligation arrays must all be the same size" }
+    }
+
+    val size: Int get() = quantities.size
+}
+
+/**
+ * Multilateral netting over [ObligationGraph]s. This computes the net position of each party, the obligations which
+ * settle those positions, and a split of a large set of obligations into bounded-size batches, each of which can be
+ * netted in its own transaction and verified independently of the others.
+ */
+object MultilateralNetting {
+    /**
+     * Returns the net position of each of [partyCount] parties over the obligations in [graph], or only those at
+     * [indices] if given. A positive position is owed to the party, a negative one is owed by it.
+     *
+     * @throws ArithmeticException if a position overflows.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun netPositions(partyCount: Int, graph: ObligationGraph, indices: IntArray? = null): LongArray {
+        val positions = LongArray(partyCount)
+        fun add(i: Int) {
+            val quantity = graph.quantities[i]
+            positions[graph.obligors[i]] = Math.subtractExact(positions[graph.obligors[i]], quantity)
+            positions[graph.beneficiaries[i]] = Math.addExact(positions[graph.beneficiaries[i]], quantity)
+        }
+        if (indices == null) {
+            for (i in 0 until graph.size) add(i)
+        } else {
+            indices.forEach { add(it) }
+        }
+        return positions
+    }
+
+    /**
+     * Returns obligations which settle [positions], which must sum to zero. The largest debtor is repeatedly matched with
+     * the largest creditor, so that there is at most one fewer obligation than there are parties with a non-zero
+     * position, and no party is both an obligor and a beneficiary.
+     */
+    @JvmStatic
+    fun settle(positions: LongArray): ObligationGraph {
+        require(positions.fold(0L) { total, position -> Math.addExact(total, position) } == 0L) { "net positions must sum to zero" }
+        val debtors = positions.indices.filter { positions[it] < 0L }.sortedBy { positions[it] }
+        val creditors = positions.indices.filter { positions[it] > 0L }.sortedByDescending { positions[it] }
+        val capacity = maxOf(debtors.size + creditors.size - 1, 0)
+        val obligors = IntArray(capacity)
+        val beneficiaries = IntArray(capacity)
+        val quantities = LongArray(capacity)
+        var count = 0
+        var d = 0
+        var c = 0
+        var owed = if (debtors.isEmpty()) 0L else -positions[debtors[0]]
+        var due = if (creditors.isEmpty()) 0L else positions[creditors[0]]
+        while (d < debtors.size && c < creditors.size) {
+            val quantity = minOf(owed, due)
+            obligors[count] = debtors[d]
+            beneficiaries[count] = creditors[c]
+            quantities[count] = quantity
+            count++
+            owed -= quantity
+            due -= quantity
+            if (owed == 0L && ++d < debtors.size) owed = -positions[debtors[d]]
+            if (due == 0L && ++c < creditors.size) due = positions[creditors[c]]
+        }
+        return ObligationGraph(obligors.copyOf(count), beneficiaries.copyOf(count), quantities.copyOf(count))
+    }
+
+    /**
+     * Splits the obligations in [graph] into batches of at most [maxBatchSize] indices. Parties are assigned to blocks,
+     * and each batch only holds obligations between the parties of one pair of blocks, so that a batch involves far
+     * fewer parties than obligations and nets down well. The number of blocks is chosen so that a pair of blocks holds
+     * about [maxBatchSize] obligations, and falls as a cycle is netted in successive rounds until everything fits in a
+     * single batch. Passing a different [salt] in each round assigns parties to blocks differently, so that obligations
+     * which were settled within one pair of blocks can be netted against those of another.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun batches(partyCount: Int, graph: ObligationGraph, maxBatchSize: Int, salt: Int = 0): List<IntArray> {
+        require(maxBatchSize >= 2) { "maxBatchSize must be at least 2" }
+        if (graph.size == 0) return emptyList()
+        val blocks = if (graph.size <= maxBatchSize) 1 else minOf(Math.ceil(Math.sqrt(2.0 * graph.size / maxBatchSize)).toInt(), partyCount).coerceAtLeast(1)
+        fun blockOf(party: Int): Int {
+            val hash = (party xor salt * 0x5bd1e995) * -0x61c88647
+            return Math.floorMod(hash xor (hash ushr 16), blocks)
+        }
+        fun bucketOf(i: Int): Int {
+            val a = blockOf(graph.obligors[i])
+            val b = blockOf(graph.beneficiaries[i])
+            return if (a <= b) a * blocks + b else b * blocks + a
+        }
+        // Counting sort of the obligations by bucket.
+        val starts = IntArray(blocks * blocks + 1)
+        for (i in 0 until graph.size) starts[bucketOf(i) + 1]++
+        for (bucket in 1 until starts.size) starts[bucket] += starts[bucket - 1]
+        val sorted = IntArray(graph.size)
+        val next = starts.copyOf()
+        for (i in 0 until graph.size) sorted[next[bucketOf(i)]++] = i
+
+        val batches = ArrayList<IntArray>()
+        for (bucket in 0 until blocks * blocks) {
+            var from = starts[bucket]
+            while (from < starts[bucket + 1]) {
+                val to = minOf(from + maxBatchSize, starts[bucket + 1])
+                batches += sorted.copyOfRange(from, to)
+                from = to
+            }
+        }
+        return batches
+    }
+}
+
+/**
+ * A payment netting transaction for part of a clearing cycle: [inputs] are replaced by [outputs], which leave every
+ * party with the same net position and are fewer than the inputs. All the inputs share the same terms and notary.
+ */
+data class PaymentNettingBatch<P : Any>(val inputs: List<StateAndRef<Obligation.State<P>>>,
+                                        val outputs: List<Obligation.State<P>>) {
+    val notary: Party get() = inputs.first().state.notary
+    /** The keys of every party to the input obligations, all of which must sign a payment netting transaction. */
+    val signers: Set<PublicKey> get() = inputs.flatMapTo(LinkedHashSet()) { listOf(it.state.data.obligor.owningKey, it.state.data.beneficiary.owningKey) }
+}
+
+/**
+ * Plans one round of payment netting of [states], in batches of at most [maxInputsPerTransaction] inputs. States are
+ * grouped by terms and notary, each group is split with [MultilateralNetting.batches], and each batch whose obligations
+ * net down to fewer states becomes a [PaymentNettingBatch]. The batches have disjoint inputs, so their transactions can
+ * be built, verified and notarised in parallel.
+ *
+ * Netting the outputs in a further round, with the next [round] number, reduces them again. Once a group fits into a
+ * single batch its outputs are the settlement of the whole group's net positions, and an empty plan means that no batch
+ * could be reduced any further.
+ */
+@JvmOverloads
+fun <P : Any> planPaymentNetting(states: Iterable<StateAndRef<Obligation.State<P>>>,
+                                 maxInputsPerTransaction: Int,
+                                 round: Int = 0): List<PaymentNettingBatch<P>> {
+    require(states.all { it.state.data.lifecycle == Obligation.Lifecycle.NORMAL }) { "all states must be in the normal lifecycle state" }
+    val groups = states.groupBy { Pair(it.state.data.multilateralNetState, it.state.notary) }
+    val plan = ArrayList<PaymentNettingBatch<P>>()
+    for ((key, group) in groups) {
+        val template = key.first.template
+        val partyIndex = HashMap<AbstractParty, Int>()
+        val parties = ArrayList<AbstractParty>()
+        fun indexOf(party: AbstractParty): Int = partyIndex.getOrPut(party) { parties += party; parties.size - 1 }
+        val obligors = IntArray(group.size)
+        val beneficiaries = IntArray(group.size)
+        val quantities = LongArray(group.size)
+        group.forEachIndexed { i, stateAndRef ->
+            val state = stateAndRef.state.data
+            obligors[i] = indexOf(state.obligor)
+            beneficiaries[i] = indexOf(state.beneficiary)
+            quantities[i] = state.quantity
+        }
+        val graph = ObligationGraph(obligors, beneficiaries, quantities)
+        for (batch in MultilateralNetting.batches(parties.size, graph, maxInputsPerTransaction, round)) {
+            val settlement = MultilateralNetting.settle(MultilateralNetting.netPositions(parties.size, graph, batch))
+            if (settlement.size >= batch.size) continue
+            val outputs = (0 until settlement.size).map {
+                Obligation.State(Obligation.Lifecycle.NORMAL, parties[settlement.obligors[it]], template,
+                        settlement.quantities[it], parties[settlement.beneficiaries[it]])
+            }
+            plan += PaymentNettingBatch(batch.map { group[it] }, outputs)
+        }
+    }
+    return plan
+}
@@ -0,0 +1,70 @@
+package net.corda.finance.contracts.asset
+
+import net.corda.core.contracts.Amount
+import net.corda.core.crypto.generateKeyPair
+import net.corda.core.identity.AnonymousParty
+import net.corda.finance.USD
+import java.util.*
+
+/**
+ * Times multilateral netting of synthetic clearing cycles, in which each obligation is between two parties chosen at
+ * random, and compares computing net positions with [MultilateralNetting] against [sumAmountsDue]. Run from the IDE,
+ * optionally passing the number of parties, the number of obligations and the maximum inputs per transaction.
+ */
+fun main(args: Array<String>) {
+    val parties = args.getOrNull(0)?.toInt() ?: 2000
+    val obligations = args.getOrNull(1)?.toInt() ?: 100000
+    val maxInputsPerTransaction = args.getOrNull(2)?.toInt() ?: 1000
+    val random = Random(0)
+    val graph = ObligationGraph(IntArray(obligations), IntArray(obligations), LongArray(obligations))
+    for (i in 0 until obligations) {
+        graph.obligors[i] = random.nextInt(parties)
+        graph.beneficiaries[i] = (graph.obligors[i] + 1 + random.nextInt(parties - 1)) % parties
+        graph.quantities[i] = 1L + random.nextInt(1000000)
+    }
+    println("$obligations obligations between $parties parties, at most $maxInputsPerTransaction inputs per transaction")
+
+    val keys = List(parties) { AnonymousParty(generateKeyPair().public) }
+    val balances = HashMap<Pair<AnonymousParty, AnonymousParty>, Amount<Currency>>()
+    for (i in 0 until obligations) {
+        val key = Pair(keys[graph.obligors[i]], keys[graph.beneficiaries[i]])
+        balances[key] = (balances[key] ?: Amount(0L, USD)) + Amount(graph.quantities[i], USD)
+    }
+    repeat(5) {
+        val mapBased = time { sumAmountsDue(balances) }
+        val arrayBased = time { MultilateralNetting.netPositions(parties, graph) }
+        println("Net positions: sumAmountsDue ${mapBased / 1000} µs, MultilateralNetting ${arrayBased / 1000} µs")
+    }
+
+    val positions = MultilateralNetting.netPositions(parties, graph)
+    var settlement: ObligationGraph? = null
+    val settleTime = time { settlement = MultilateralNetting.settle(positions) }
+    println("Settlement of the whole cycle in one transaction: ${settlement!!.size} obligations in ${settleTime / 1000} µs")
+
+    var current = graph
+    var round = 0
+    while (true) {
+        var batches: List<IntArray> = emptyList()
+        val settled = ArrayList<ObligationGraph>()
+        val roundTime = time {
+            batches = MultilateralNetting.batches(parties, current, maxInputsPerTransaction, round)
+            batches.forEach { settled += MultilateralNetting.settle(MultilateralNetting.netPositions(parties, current, it)) }
+        }
+        val next = ObligationGraph(
+                settled.flatMap { it.obligors.asList() }.toIntArray(),
+                settled.flatMap { it.beneficiaries.asList() }.toIntArray(),
+                settled.flatMap { it.quantities.asList() }.toLongArray())
+        val largest = batches.map { it.size }.max() ?: 0
+        println("Round $round: ${current.size} obligations in ${batches.size} transactions of up to $largest inputs netted to ${next.size} in ${roundTime / 1000} µs")
+        // Stop once a round no longer removes at least a tenth of the obligations.
+        if (batches.size <= 1 || next.size > current.size * 9 / 10) break
+        current = next
+        round++
+    }
+}
+
+private inline fun time(block: () -> Unit): Long {
+    val start = System.nanoTime()
+    block()
+    return System.nanoTime() - start
+}
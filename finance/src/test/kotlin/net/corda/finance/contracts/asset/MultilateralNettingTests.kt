@@ -0,0 +1,78 @@
+package net.corda.finance.contracts.asset
+
+import org.junit.Test
+import java.util.*
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertTrue
+
+class MultilateralNettingTests {
+    private fun randomGraph(parties: Int, obligations: Int, seed: Long = 1L): ObligationGraph {
+        val random = Random(seed)
+        val obligors = IntArray(obligations)
+        val beneficiaries = IntArray(obligations)
+        val quantities = LongArray(obligations)
+        for (i in 0 until obligations) {
+            obligors[i] = random.nextInt(parties)
+            beneficiaries[i] = (obligors[i] + 1 + random.nextInt(parties - 1)) % parties
+            quantities[i] = 1L + random.nextInt(1000000)
+        }
+        return ObligationGraph(obligors, beneficiaries, quantities)
+    }
+
+    @Test
+    fun `net positions of a cycle are zero`() {
+        val graph = ObligationGraph(intArrayOf(0, 1, 2), intArrayOf(1, 2, 0), longArrayOf(100L, 100L, 100L))
+        assertEquals(listOf(0L, 0L, 0L), MultilateralNetting.netPositions(3, graph).toList())
+        assertEquals(0, MultilateralNetting.settle(MultilateralNetting.netPositions(3, graph)).size)
+    }
+
+    @Test
+    fun `net positions of selected obligations`() {
+        val graph = ObligationGraph(intArrayOf(0, 1, 2), intArrayOf(1, 2, 0), longArrayOf(100L, 40L, 10L))
+        assertEquals(listOf(-100L, 60L, 40L), MultilateralNetting.netPositions(3, graph, intArrayOf(0, 1)).toList())
+    }
+
+    @Test
+    fun `settlement preserves net positions with fewer obligations than parties`() {
+        val graph = randomGraph(parties = 50, obligations = 5000)
+        val positions = MultilateralNetting.netPositions(50, graph)
+        val settlement = MultilateralNetting.settle(positions)
+        assertEquals(positions.toList(), MultilateralNetting.netPositions(50, settlement).toList())
+        assertTrue(settlement.size < positions.count { it != 0L })
+        assertTrue((0 until settlement.size).all { settlement.quantities[it] > 0L })
+    }
+
+    @Test
+    fun `settlement requires balanced positions`() {
+        assertFailsWith<IllegalArgumentException> { MultilateralNetting.settle(longArrayOf(-10L, 5L)) }
+    }
+
+    @Test
+    fun `batches are bounded and cover every obligation once`() {
+        val graph = randomGraph(parties = 200, obligations = 20000)
+        val batches = MultilateralNetting.batches(200, graph, 500)
+        assertTrue(batches.all { it.size <= 500 })
+        assertEquals((0 until graph.size).toList(), batches.flatMap { it.toList() }.sorted())
+    }
+
+    @Test
+    fun `successive rounds of batched netting reach the settlement of the whole graph`() {
+        val parties = 200
+        var graph = randomGraph(parties, obligations = 20000)
+        val positions = MultilateralNetting.netPositions(parties, graph)
+        var rounds = 0
+        do {
+            val batches = MultilateralNetting.batches(parties, graph, 500)
+            val settled = batches.map { MultilateralNetting.settle(MultilateralNetting.netPositions(parties, graph, it)) }
+            graph = ObligationGraph(
+                    settled.flatMap { it.obligors.toList() }.toIntArray(),
+                    settled.flatMap { it.beneficiaries.toList() }.toIntArray(),
+                    settled.flatMap { it.quantities.toList() }.toLongArray())
+            assertEquals(positions.toList(), MultilateralNetting.netPositions(parties, graph).toList())
+            rounds++
+        } while (batches.size > 1)
+        assertTrue(graph.size < parties)
+        assertTrue(rounds < 10)
+    }
+}
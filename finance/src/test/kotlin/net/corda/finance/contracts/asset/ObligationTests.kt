@@ -312,6 +312,31 @@ class ObligationTests {
         assertEquals(expected, actual)
     }
 
+    @Test
+    fun `generate payment netting transactions in batches`() {
+        val parties = listOf(ALICE, BOB, CHARLIE, MEGA_CORP, MINI_CORP)
+        val random = Random(1)
+        val states = (1..200).map {
+            val obligor = random.nextInt(parties.size)
+            val beneficiary = (obligor + 1 + random.nextInt(parties.size - 1)) % parties.size
+            val quantity = (1 + random.nextInt(1000)).DOLLARS.quantity
+            getStateAndRef(inState.copy(obligor = parties[obligor], quantity = quantity, beneficiary = parties[beneficiary]), Obligation.PROGRAM_ID)
+        }
+        val batches = planPaymentNetting(states, maxInputsPerTransaction = 50)
+        assertTrue(batches.isNotEmpty())
+        for (batch in batches) {
+            assertTrue(batch.inputs.size <= 50)
+            assertTrue(batch.outputs.size < batch.inputs.size)
+            val tx = TransactionBuilder(DUMMY_NOTARY).apply {
+                Obligation<Currency>().generatePaymentNetting(this, batch)
+            }.toWireTransaction(miniCorpServices)
+            assertEquals(batch.inputs.size, tx.inputs.size)
+            assertEquals(batch.signers, tx.commands.single().signers.toSet())
+            assertEquals(sumAmountsDue(extractAmountsDue(megaCorpDollarSettlement, batch.inputs.map { it.state.data })),
+                    sumAmountsDue(extractAmountsDue(megaCorpDollarSettlement, tx.outputsOfType<Obligation.State<Currency>>())))
+        }
+    }
+
     private inline fun <reified T : ContractState> getStateAndRef(state: T, contractClassName: ContractClassName): StateAndRef<T> {
         val txState = TransactionState(state, contractClassName, DUMMY_NOTARY)
         return StateAndRef(txState, StateRef(SecureHash.randomSHA256(), 0))
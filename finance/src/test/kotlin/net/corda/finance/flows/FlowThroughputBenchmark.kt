@@ -0,0 +1,98 @@
+package net.corda.finance.flows
+
+import net.corda.core.flows.FlowLogic
+import net.corda.core.identity.CordaX500Name
+import net.corda.core.messaging.SingleMessageRecipient
+import net.corda.core.utilities.OpaqueBytes
+import net.corda.finance.DOLLARS
+import net.corda.node.internal.StartedNode
+import net.corda.testing.core.singleIdentity
+import net.corda.testing.node.InMemoryMessagingNetwork
+import net.corda.testing.node.internal.InternalMockNetwork
+import net.corda.testing.node.internal.startFlow
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Semaphore
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Measures flow throughput on an [InternalMockNetwork] of in-memory nodes, without Artemis or sockets. Each node runs
+ * on its own thread with its own message dispatcher, and a fixed latency is added to every message. For each
+ * combination of node count and latency the benchmark runs a cash issuance, which doesn't leave the node, and a cash
+ * issuance followed by a payment to another node, which is notarised, and reports flows per second and the percentiles
+ * of flow latency. Run from the IDE, optionally passing comma separated node counts, comma separated latencies in
+ * milliseconds, the number of flows per run and the number of flows kept in flight.
+ */
+fun main(args: Array<String>) {
+    val nodeCounts = args.getOrNull(0)?.split(',')?.map { it.toInt() } ?: listOf(2, 4, 8)
+    val latencies = args.getOrNull(1)?.split(',')?.map { Duration.ofMillis(it.toLong()) } ?: listOf(Duration.ZERO, Duration.ofMillis(10))
+    val flows = args.getOrNull(2)?.toInt() ?: 1000
+    val inFlight = args.getOrNull(3)?.toInt() ?: 50
+    require(nodeCounts.all { it >= 2 }) { "Payments need at least two nodes" }
+    for (nodeCount in nodeCounts) {
+        for (latency in latencies) {
+            runConfiguration(nodeCount, latency, flows, inFlight)
+        }
+    }
+}
+
+private fun runConfiguration(nodeCount: Int, latency: Duration, flows: Int, inFlight: Int) {
+    val latencyCalculator = if (latency.isZero) null else object : InMemoryMessagingNetwork.LatencyCalculator {
+        override fun between(sender: SingleMessageRecipient, receiver: SingleMessageRecipient) = latency
+    }
+    val mockNet = InternalMockNetwork(
+            cordappPackages = listOf("net.corda.finance.contracts.asset"),
+            threadPerNode = true,
+            latencyCalculator = latencyCalculator)
+    try {
+        val nodes = (0 until nodeCount).map { mockNet.createPartyNode(CordaX500Name("Bank $it", "London", "GB")) }
+        val parties = nodes.map { it.info.singleIdentity() }
+        val notary = mockNet.defaultNotaryIdentity
+        val ref = OpaqueBytes.of(0x01)
+        val workloads = linkedMapOf<String, (Int) -> FlowLogic<*>>(
+                "issue" to { _: Int -> CashIssueFlow(10.DOLLARS, ref, notary) },
+                "notarised payment" to { i: Int -> CashIssueAndPaymentFlow(10.DOLLARS, ref, parties[(i + 1) % nodeCount], false, notary) }
+        )
+        for ((name, flow) in workloads) {
+            // Warm up so that class loading and JIT compilation don't count against the first configuration.
+            runFlows(nodes, minOf(flows, 100), inFlight, flow)
+            val start = System.nanoTime()
+            val result = runFlows(nodes, flows, inFlight, flow)
+            val elapsed = System.nanoTime() - start
+            val sorted = result.latencies.sortedArray()
+            fun percentile(p: Double) = sorted[maxOf(0, Math.ceil(p * sorted.size).toInt() - 1)] / 1000000.0
+            println("$nodeCount nodes, ${latency.toMillis()} ms latency, $name: $flows flows in ${elapsed / 1000000} ms, " +
+                    "${"%.1f".format(flows * 1e9 / elapsed)} flows/s, latency p50 ${"%.1f".format(percentile(0.5))} ms, " +
+                    "p95 ${"%.1f".format(percentile(0.95))} ms, p99 ${"%.1f".format(percentile(0.99))} ms, " +
+                    "max ${"%.1f".format(percentile(1.0))} ms, ${result.failures} failed")
+        }
+    } finally {
+        mockNet.stopNodes()
+    }
+}
+
+private class RunResult(val latencies: LongArray, val failures: Int)
+
+/** Starts [flows] flows round robin across [nodes], keeping at most [inFlight] running, and times each of them. */
+private fun runFlows(nodes: List<StartedNode<*>>, flows: Int, inFlight: Int, flow: (Int) -> FlowLogic<*>): RunResult {
+    val latencies = LongArray(flows)
+    val failures = AtomicInteger()
+    val permits = Semaphore(inFlight)
+    val done = CountDownLatch(flows)
+    for (i in 0 until flows) {
+        permits.acquire()
+        val start = System.nanoTime()
+        nodes[i % nodes.size].services.startFlow(flow(i)).resultFuture.then {
+            latencies[i] = System.nanoTime() - start
+            try {
+                it.get()
+            } catch (e: Exception) {
+                failures.incrementAndGet()
+            }
+            permits.release()
+            done.countDown()
+        }
+    }
+    done.await()
+    return RunResult(latencies, failures.get())
+}
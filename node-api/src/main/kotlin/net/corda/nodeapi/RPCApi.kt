@@ -40,6 +40,11 @@ import java.util.*
 // aren't consumed anymore, which should subsequently stop the stream from the server. Note that some observations may
 // already be in flight when this is sent, the client should handle this gracefully.
 //
+// A client may opt into flow control of observations by setting ClientToServer.RpcRequest.observationCredits. The server
+// then sends at most that many observations on each observable rooted in the RPC until the client grants more with
+// ClientToServer.ObservationCreditsGranted. Observations the server cannot send are buffered, conflated or dropped
+// depending on its configuration; ServerToClient.Observation.droppedObservations tells the client about dropped ones.
+//
 // An example session:
 // Client                              Server
 //   ----------RpcRequest(RID0)----------->   // Client makes RPC request with ID "RID0"
@@ -94,7 +99,8 @@ object RPCApi {
     sealed class ClientToServer {
         private enum class Tag {
             RPC_REQUEST,
-            OBSERVABLES_CLOSED
+            OBSERVABLES_CLOSED,
+            OBSERVATION_CREDITS_GRANTED
         }
 
         abstract fun writeToClientMessage(message: ClientMessage)
@@ -106,6 +112,8 @@ object RPCApi {
          * @param id a unique ID for the request, which the server will use to identify its response with.
          * @param methodName name of the method (procedure) to be called.
          * @param serialisedArguments Serialised arguments to pass to the method, if any.
+         * @param observationCredits the number of observations the server may send per returned Observable before the
+         * client grants more, or zero if the client does not use flow control.
          */
         data class RpcRequest(
                 val clientAddress: SimpleString,
@@ -114,7 +122,8 @@ object RPCApi {
                 val replyId: InvocationId,
                 val sessionId: SessionId,
                 val externalTrace: Trace? = null,
-                val impersonatedActor: Actor? = null
+                val impersonatedActor: Actor? = null,
+                val observationCredits: Int = 0
         ) : ClientToServer() {
             override fun writeToClientMessage(message: ClientMessage) {
                 MessageUtil.setJMSReplyTo(message, clientAddress)
@@ -127,6 +136,9 @@ object RPCApi {
                 impersonatedActor?.mapToImpersonated(message)
 
                 message.putStringProperty(METHOD_NAME_FIELD_NAME, methodName)
+                if (observationCredits > 0) {
+                    message.putIntProperty(OBSERVATION_CREDITS_FIELD_NAME, observationCredits)
+                }
                 message.bodyBuffer.writeBytes(serialisedArguments.bytes)
             }
         }
@@ -142,6 +154,21 @@ object RPCApi {
             }
         }
 
+        /**
+         * Grants the server further credits for sending observations, keyed by Observable ID.
+         */
+        data class ObservationCreditsGranted(val credits: Map<InvocationId, Int>) : ClientToServer() {
+            override fun writeToClientMessage(message: ClientMessage) {
+                message.putIntProperty(TAG_FIELD_NAME, Tag.OBSERVATION_CREDITS_GRANTED.ordinal)
+                val buffer = message.bodyBuffer
+                buffer.writeInt(credits.size)
+                credits.forEach { id, credit ->
+                    buffer.writeInvocationId(id)
+                    buffer.writeInt(credit)
+                }
+            }
+        }
+
         companion object {
             fun fromClientMessage(message: ClientMessage): ClientToServer {
                 val tag = Tag.values()[message.getIntProperty(TAG_FIELD_NAME)]
@@ -153,7 +180,8 @@ object RPCApi {
                             replyId = message.replyId(),
                             sessionId = message.sessionId(),
                             externalTrace = message.externalTrace(),
-                            impersonatedActor = message.impersonatedActor()
+                            impersonatedActor = message.impersonatedActor(),
+                            observationCredits = message.intPropertyOrZero(OBSERVATION_CREDITS_FIELD_NAME)
                     )
                     RPCApi.ClientToServer.Tag.OBSERVABLES_CLOSED -> {
                         val ids = ArrayList<InvocationId>()
@@ -164,6 +192,15 @@ object RPCApi {
                         }
                         ObservablesClosed(ids)
                     }
+                    RPCApi.ClientToServer.Tag.OBSERVATION_CREDITS_GRANTED -> {
+                        val credits = LinkedHashMap<InvocationId, Int>()
+                        val buffer = message.bodyBuffer
+                        val numberOfIds = buffer.readInt()
+                        for (i in 1..numberOfIds) {
+                            credits[buffer.readInvocationId()] = buffer.readInt()
+                        }
+                        ObservationCreditsGranted(credits)
+                    }
                 }
             }
         }
@@ -199,14 +236,31 @@ object RPCApi {
             }
         }
 
+        /**
+         * An observation on the Observable with ID [id].
+         *
+         * @param droppedObservations the number of observations the server dropped just before this one because the
+         * client had run out of credits.
+         * @param creditsAccepted whether the server sends observations on this Observable only against credits, and so
+         * expects [ClientToServer.ObservationCreditsGranted] for it. Servers which predate flow control never set this,
+         * and would fail on a grant, so a client must not send one for an Observable unless this is set.
+         */
         data class Observation(
                 val id: InvocationId,
                 val content: Notification<*>,
-                override val deduplicationIdentity: String
+                override val deduplicationIdentity: String,
+                val droppedObservations: Int = 0,
+                val creditsAccepted: Boolean = false
         ) : ServerToClient() {
             override fun writeToClientMessage(context: SerializationContext, message: ClientMessage) {
                 message.putIntProperty(TAG_FIELD_NAME, Tag.OBSERVATION.ordinal)
                 message.putStringProperty(DEDUPLICATION_IDENTITY_FIELD_NAME, deduplicationIdentity)
+                if (droppedObservations > 0) {
+                    message.putIntProperty(DROPPED_OBSERVATIONS_FIELD_NAME, droppedObservations)
+                }
+                if (creditsAccepted) {
+                    message.putBooleanProperty(OBSERVATION_CREDITS_ACCEPTED_FIELD_NAME, true)
+                }
                 id.mapTo(message, OBSERVABLE_ID_FIELD_NAME, OBSERVABLE_ID_TIMESTAMP_FIELD_NAME)
                 message.bodyBuffer.writeBytes(content.safeSerialize(context) { Notification.createOnError<Void?>(it) }.bytes)
             }
@@ -239,7 +293,9 @@ object RPCApi {
                         Observation(
                                 id = observableId,
                                 deduplicationIdentity = deduplicationIdentity,
-                                content = payload
+                                content = payload,
+                                droppedObservations = message.intPropertyOrZero(DROPPED_OBSERVATIONS_FIELD_NAME),
+                                creditsAccepted = message.containsProperty(OBSERVATION_CREDITS_ACCEPTED_FIELD_NAME)
                         )
                     }
                 }
@@ -261,6 +317,9 @@ private const val RPC_IMPERSONATED_ACTOR_ID = "rpc-impersonated-actor-id"
 private const val RPC_IMPERSONATED_ACTOR_STORE_ID = "rpc-impersonated-actor-store-id"
 private const val RPC_IMPERSONATED_ACTOR_OWNING_LEGAL_IDENTITY = "rpc-impersonated-actor-owningLegalIdentity"
 private const val DEDUPLICATION_IDENTITY_FIELD_NAME = "deduplication-identity"
+private const val OBSERVATION_CREDITS_FIELD_NAME = "observation-credits"
+private const val DROPPED_OBSERVATIONS_FIELD_NAME = "dropped-observations"
+private const val OBSERVATION_CREDITS_ACCEPTED_FIELD_NAME = "observation-credits-accepted"
 private const val OBSERVABLE_ID_FIELD_NAME = "observable-id"
 private const val OBSERVABLE_ID_TIMESTAMP_FIELD_NAME = "observable-id-timestamp"
 private const val METHOD_NAME_FIELD_NAME = "method-name"
@@ -304,6 +363,8 @@ private fun Id<String>.mapTo(message: ClientMessage, valueProperty: String, time
     message.putLongProperty(timestampProperty, timestamp.toEpochMilli())
 }
 
+private fun ClientMessage.intPropertyOrZero(name: String): Int = if (containsProperty(name)) getIntProperty(name) else 0
+
 private fun ActiveMQBuffer.writeInvocationId(invocationId: InvocationId) {
 
     this.writeString(invocationId.value)
@@ -60,6 +60,12 @@ class ArtemisMessagingComponent {
                 const val SESSION_INIT_VALUE = "session_init"
             }
 
+            /** Present on the session messages of a node which can read framed session messages. */
+            object SessionFraming {
+                const val KEY = "corda_session_framing"
+                const val SUPPORTED_VALUE = "1"
+            }
+
             val whitelistedHeaders: Set<String> = setOf(topicProperty.toString(),
                     cordaVendorProperty.toString(),
                     releaseVersionProperty.toString(),
@@ -68,6 +74,7 @@ class ArtemisMessagingComponent {
                     senderSeqNo.toString(),
                     bridgedCertificateSubject.toString(),
                     Type.KEY,
+                    SessionFraming.KEY,
                     Message.HDR_DUPLICATE_DETECTION_ID.toString(),
                     Message.HDR_VALIDATED_USER.toString())
         }
@@ -51,6 +51,14 @@ class ContractsJarFile(private val file: Path) : ContractsJar {
 private val logger = LoggerFactory.getLogger("ClassloaderUtils")
 
 fun <T> withContractsInJar(jarInputStream: InputStream, withContracts: (List<ContractClassName>, InputStream) -> T): T {
+    return withContractsInJarFile(jarInputStream) { contracts, file -> file.read { withContracts(contracts, it) } }
+}
+
+/**
+ * Copies [jarInputStream] to a temporary file, scans it for contracts and passes both to [withContracts], so that the
+ * JAR can be read more than once without holding it in memory. The file is deleted afterwards.
+ */
+fun <T> withContractsInJarFile(jarInputStream: InputStream, withContracts: (List<ContractClassName>, Path) -> T): T {
     val tempFile = Files.createTempFile("attachment", ".jar")
     try {
         jarInputStream.copyTo(tempFile, StandardCopyOption.REPLACE_EXISTING)
@@ -58,7 +66,7 @@ fun <T> withContractsInJar(jarInputStream: InputStream, withContracts: (List<Con
         val contracts = logElapsedTime("Contracts loading for '$cordappJar'", logger) {
             ContractsJarFile(tempFile.toAbsolutePath()).scan()
         }
-        return tempFile.read { withContracts(contracts, it) }
+        return withContracts(contracts, tempFile)
     } finally {
         tempFile.deleteIfExists()
     }
@@ -3,7 +3,6 @@ package net.corda.nodeapi.internal.persistence
 import co.paralleluniverse.strands.Strand
 import net.corda.core.schemas.MappedSchema
 import net.corda.core.utilities.contextLogger
-import rx.Observable
 import rx.Subscriber
 import rx.subjects.UnicastSubject
 import java.io.Closeable
@@ -25,7 +24,9 @@ data class DatabaseConfig(
         val serverNameTablePrefix: String = "",
         val transactionIsolationLevel: TransactionIsolationLevel = TransactionIsolationLevel.REPEATABLE_READ,
         val exportHibernateJMXStatistics: Boolean = false,
-        val mappedSchemaCacheSize: Long = 100
+        val mappedSchemaCacheSize: Long = 100,
+        /** The JDBC properties of an optional read-only replica of the node's database, to which read-only queries are sent. */
+        val readReplicaDataSourceProperties: Properties? = null
 )
 
 // This class forms part of the node config and so any changes to it must be handled with care
@@ -52,7 +53,9 @@ class CordaPersistence(
         val dataSource: DataSource,
         databaseConfig: DatabaseConfig,
         schemas: Set<MappedSchema>,
-        attributeConverters: Collection<AttributeConverter<*, *>> = emptySet()
+        attributeConverters: Collection<AttributeConverter<*, *>> = emptySet(),
+        /** An optional read-only replica of [dataSource], which [readOnlyTransaction] reads from instead. */
+        val readReplicaDataSource: DataSource? = null
 ) : Closeable {
     companion object {
         private val log = contextLogger()
@@ -66,8 +69,6 @@ class CordaPersistence(
     }
     val entityManagerFactory get() = hibernateConfig.sessionFactoryForRegisteredSchemas
 
-    data class Boundary(val txId: UUID, val success: Boolean)
-
     init {
         // Found a unit test that was forgetting to close the database transactions.  When you close() on the top level
         // database transaction it will reset the threadLocalTx back to null, so if it isn't then there is still a
@@ -89,8 +90,8 @@ class CordaPersistence(
         return contextTransactionOrNull ?: newTransaction(isolation)
     }
 
-    fun newTransaction(isolation: TransactionIsolationLevel = defaultIsolationLevel): DatabaseTransaction {
-        return DatabaseTransaction(isolation.jdbcValue, contextTransactionOrNull, this).also {
+    fun newTransaction(isolation: TransactionIsolationLevel = defaultIsolationLevel, readOnly: Boolean = false): DatabaseTransaction {
+        return DatabaseTransaction(isolation.jdbcValue, contextTransactionOrNull, this, readOnly).also {
             contextTransactionOrNull = it
         }
     }
@@ -143,8 +144,26 @@ class CordaPersistence(
         }
     }
 
+    /**
+     * Executes given statement in the scope of a read-only transaction. If a transaction is already open on this strand
+     * then the statement joins it, so that it sees that transaction's writes. Otherwise the statement reads from the read
+     * replica, if there is one, so that heavy queries do not compete with the node's own writes. A replica may lag behind
+     * the node's database, so this is only for reads which need not observe the very latest writes, such as RPC queries.
+     * @param statement to be executed in the scope of this transaction.
+     */
+    fun <T> readOnlyTransaction(statement: DatabaseTransaction.() -> T): T {
+        _contextDatabase.set(this)
+        val outer = contextTransactionOrNull
+        return if (outer != null) {
+            outer.statement()
+        } else {
+            inTopLevelTransaction(defaultIsolationLevel, 2, false, statement, readOnly = true)
+        }
+    }
+
     private fun <T> inTopLevelTransaction(isolationLevel: TransactionIsolationLevel, recoverableFailureTolerance: Int,
-                                          recoverAnyNestedSQLException: Boolean, statement: DatabaseTransaction.() -> T): T {
+                                          recoverAnyNestedSQLException: Boolean, statement: DatabaseTransaction.() -> T,
+                                          readOnly: Boolean = false): T {
         var recoverableFailureCount = 0
         fun <T> quietly(task: () -> T) = try {
             task()
@@ -152,7 +171,11 @@ class CordaPersistence(
             log.warn("Cleanup task failed:", t)
         }
         while (true) {
-            val transaction = contextDatabase.currentOrNew(isolationLevel) // XXX: Does this code really support statement changing the contextDatabase?
+            val transaction = if (readOnly) {
+                newTransaction(isolationLevel, readOnly = true)
+            } else {
+                contextDatabase.currentOrNew(isolationLevel) // XXX: Does this code really support statement changing the contextDatabase?
+            }
             try {
                 val answer = transaction.statement()
                 transaction.commit()
@@ -174,6 +197,7 @@ class CordaPersistence(
     override fun close() {
         // DataSource doesn't implement AutoCloseable so we just have to hope that the implementation does so that we can close it
         (dataSource as? AutoCloseable)?.close()
+        (readReplicaDataSource as? AutoCloseable)?.close()
     }
 }
 
@@ -188,12 +212,12 @@ class CordaPersistence(
  */
 fun <T : Any> rx.Observer<T>.bufferUntilDatabaseCommit(propagateRollbackAsError: Boolean = false): rx.Observer<T> {
     val currentTx = contextTransaction
+    // The subject holds on to observations until this observer subscribes to it, which it does once the transaction commits.
     val subject = UnicastSubject.create<T>()
-    val databaseTxBoundary: Observable<CordaPersistence.Boundary> = currentTx.boundary.filter { it.success }
+    currentTx.onCommit { subject.subscribe(this) }
     if (propagateRollbackAsError) {
-        currentTx.boundary.filter { !it.success }.subscribe { this.onError(DatabaseTransactionRolledBackException(it.txId)) }
+        currentTx.onRollback { this.onError(DatabaseTransactionRolledBackException(currentTx.id)) }
     }
-    subject.delaySubscription(databaseTxBoundary).subscribe(this)
     return subject
 }
 
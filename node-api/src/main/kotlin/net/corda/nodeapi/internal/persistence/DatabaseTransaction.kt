@@ -3,9 +3,9 @@ package net.corda.nodeapi.internal.persistence
 import co.paralleluniverse.strands.Strand
 import org.hibernate.Session
 import org.hibernate.Transaction
-import rx.subjects.PublishSubject
 import java.sql.Connection
 import java.util.*
+import java.util.concurrent.atomic.AtomicLong
 
 fun currentDBSession(): Session = contextTransaction.session
 private val _contextTransaction = ThreadLocal<DatabaseTransaction>()
@@ -17,19 +17,32 @@ val contextTransaction get() = contextTransactionOrNull ?: error("Was expecting
 class DatabaseTransaction(
         isolation: Int,
         private val outerTransaction: DatabaseTransaction?,
-        val database: CordaPersistence
+        val database: CordaPersistence,
+        /** Whether this transaction only reads, in which case it uses the database's read replica if there is one. */
+        val readOnly: Boolean = false
 ) {
-    val id: UUID = UUID.randomUUID()
+    companion object {
+        // Transaction IDs only need to be unique within this process, so they are taken from a counter rather than
+        // drawn from a SecureRandom for every transaction.
+        private val idPrefix = UUID.randomUUID().mostSignificantBits
+        private val nextId = AtomicLong()
+    }
+
+    val id: UUID = UUID(idPrefix, nextId.incrementAndGet())
 
     val connection: Connection by lazy(LazyThreadSafetyMode.NONE) {
-        database.dataSource.connection.apply {
+        val dataSource = if (readOnly) database.readReplicaDataSource ?: database.dataSource else database.dataSource
+        dataSource.connection.apply {
             autoCommit = false
             transactionIsolation = isolation
+            isReadOnly = readOnly
         }
     }
 
     private val sessionDelegate = lazy {
         val session = database.entityManagerFactory.withOptions().connection(connection).openSession()
+        // Entities which are only read need not be snapshotted for dirty checking.
+        session.isDefaultReadOnly = readOnly
         hibernateTransaction = session.beginTransaction()
         session
     }
@@ -37,7 +50,10 @@ class DatabaseTransaction(
     val session: Session by sessionDelegate
     private lateinit var hibernateTransaction: Transaction
 
-    internal val boundary = PublishSubject.create<CordaPersistence.Boundary>()
+    // Callbacks are only ever registered and run on the transaction's own thread, so plain lists will do. They are only
+    // allocated when a callback is registered.
+    private var commitCallbacks: MutableList<() -> Unit>? = null
+    private var rollbackCallbacks: MutableList<() -> Unit>? = null
     private var committed = false
 
     fun commit() {
@@ -64,15 +80,32 @@ class DatabaseTransaction(
         connection.close()
         contextTransactionOrNull = outerTransaction
         if (outerTransaction == null) {
-            boundary.onNext(CordaPersistence.Boundary(id, committed))
+            runCallbacks(if (committed) commitCallbacks else rollbackCallbacks)
+        }
+    }
+
+    /** Runs every callback, even if an earlier one fails, and then rethrows the first failure. */
+    private fun runCallbacks(callbacks: List<() -> Unit>?) {
+        commitCallbacks = null
+        rollbackCallbacks = null
+        var failure: Throwable? = null
+        callbacks?.forEach {
+            try {
+                it()
+            } catch (t: Throwable) {
+                if (failure == null) failure = t else failure!!.addSuppressed(t)
+            }
         }
+        failure?.let { throw it }
     }
 
+    /** Registers [callback] to run once the top-level transaction has been committed and closed. */
     fun onCommit(callback: () -> Unit) {
-        boundary.filter { it.success }.subscribe { callback() }
+        (commitCallbacks ?: ArrayList<() -> Unit>(2).also { commitCallbacks = it }) += callback
     }
 
+    /** Registers [callback] to run once the top-level transaction has been closed without being committed. */
     fun onRollback(callback: () -> Unit) {
-        boundary.filter { !it.success }.subscribe { callback() }
+        (rollbackCallbacks ?: ArrayList<() -> Unit>(2).also { rollbackCallbacks = it }) += callback
     }
 }
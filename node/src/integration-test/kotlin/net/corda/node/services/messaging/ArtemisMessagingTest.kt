@@ -4,6 +4,7 @@ import com.nhaarman.mockito_kotlin.doReturn
 import com.nhaarman.mockito_kotlin.whenever
 import net.corda.core.crypto.generateKeyPair
 import net.corda.core.utilities.NetworkHostAndPort
+import net.corda.core.utilities.getOrThrow
 import net.corda.core.utilities.seconds
 import net.corda.node.internal.configureDatabase
 import net.corda.node.services.config.FlowTimeoutConfiguration
@@ -13,6 +14,7 @@ import net.corda.node.services.network.NetworkMapCacheImpl
 import net.corda.node.services.network.PersistentNetworkMapCache
 import net.corda.node.services.transactions.PersistentUniquenessProvider
 import net.corda.node.utilities.AffinityExecutor.ServiceAffinityExecutor
+import net.corda.nodeapi.internal.ArtemisMessagingComponent.NodeAddress
 import net.corda.nodeapi.internal.persistence.CordaPersistence
 import net.corda.nodeapi.internal.persistence.DatabaseConfig
 import net.corda.testing.core.*
@@ -136,6 +138,49 @@ class ArtemisMessagingTest {
         assertNull(receivedMessages.poll(200, MILLISECONDS))
     }
 
+    @Test
+    fun `messages sent together are all delivered in order`() {
+        val (messagingClient, receivedMessages) = createAndStartClientAndServer()
+        val messages = (1..100).map {
+            MessagingService.AddressedMessage(messagingClient.createMessage(TOPIC, data = "msg $it".toByteArray()), messagingClient.myAddress)
+        }
+        messagingClient.send(messages)
+
+        val actual = (1..100).map { String(receivedMessages.take().data.bytes) }
+        assertEquals((1..100).map { "msg $it" }, actual)
+        assertNull(receivedMessages.poll(200, MILLISECONDS))
+    }
+
+    @Test
+    fun `a message redelivered to a restarted client is not delivered again`() {
+        // The first client persists the ID of the message but stops before acknowledging it, as a node which crashed
+        // in between would, so the broker redelivers the message to the next client.
+        val (firstClient, firstReceivedMessages) = createAndStartClientAndServer(acknowledge = false)
+        firstClient.send(firstClient.createMessage(TOPIC, data = "first msg".toByteArray()), firstClient.myAddress)
+        assertEquals("first msg", String(firstReceivedMessages.take().data.bytes))
+        firstClient.stop()
+
+        val (secondClient, secondReceivedMessages) = createAndStartClient()
+        secondClient.send(secondClient.createMessage(TOPIC, data = "second msg".toByteArray()), secondClient.myAddress)
+        assertEquals("second msg", String(secondReceivedMessages.take().data.bytes))
+        assertNull(secondReceivedMessages.poll(200, MILLISECONDS))
+    }
+
+    @Test
+    fun `a message to a new peer is held back until the peer's queue has been created`() {
+        val (messagingClient, receivedMessages) = createAndStartClientAndServer()
+        val peer = NodeAddress(generateKeyPair().public, portAllocation.nextHostAndPort())
+        messagingClient.send(listOf(
+                MessagingService.AddressedMessage(messagingClient.createMessage(TOPIC, data = "to peer".toByteArray()), peer),
+                MessagingService.AddressedMessage(messagingClient.createMessage(TOPIC, data = "to self".toByteArray()), messagingClient.myAddress)
+        ))
+
+        assertEquals("to self", String(receivedMessages.take().data.bytes))
+        val queueName = messagingClient.resolveTargetToArtemisQueueAsync(peer)
+        assertTrue(queueName.isDone)
+        assertEquals(peer.queueName, queueName.getOrThrow())
+    }
+
     @Test
     fun `client should fail if message exceed maxMessageSize limit`() {
         val (messagingClient, receivedMessages) = createAndStartClientAndServer()
@@ -185,15 +230,29 @@ class ArtemisMessagingTest {
         messagingClient!!.start()
     }
 
-    private fun createAndStartClientAndServer(platformVersion: Int = 1, serverMaxMessageSize: Int = MAX_MESSAGE_SIZE, clientMaxMessageSize: Int = MAX_MESSAGE_SIZE): Pair<P2PMessagingClient, BlockingQueue<ReceivedMessage>> {
-        val receivedMessages = LinkedBlockingQueue<ReceivedMessage>()
-
+    private fun createAndStartClientAndServer(platformVersion: Int = 1,
+                                              serverMaxMessageSize: Int = MAX_MESSAGE_SIZE,
+                                              clientMaxMessageSize: Int = MAX_MESSAGE_SIZE,
+                                              acknowledge: Boolean = true): Pair<P2PMessagingClient, BlockingQueue<ReceivedMessage>> {
         createMessagingServer(maxMessageSize = serverMaxMessageSize).start()
+        return createAndStartClient(platformVersion, clientMaxMessageSize, acknowledge)
+    }
 
-        val messagingClient = createMessagingClient(platformVersion = platformVersion, maxMessageSize = clientMaxMessageSize)
+    /**
+     * Starts a client whose handler persists the ID of each message, and then acknowledges it unless [acknowledge] is
+     * false.
+     */
+    private fun createAndStartClient(platformVersion: Int = 1,
+                                     maxMessageSize: Int = MAX_MESSAGE_SIZE,
+                                     acknowledge: Boolean = true): Pair<P2PMessagingClient, BlockingQueue<ReceivedMessage>> {
+        val receivedMessages = LinkedBlockingQueue<ReceivedMessage>()
+
+        val messagingClient = createMessagingClient(platformVersion = platformVersion, maxMessageSize = maxMessageSize)
         messagingClient.addMessageHandler(TOPIC) { message, _, handle ->
             database.transaction { handle.insideDatabaseTransaction() }
-            handle.afterDatabaseTransaction() // We ACK first so that if it fails we won't get a duplicate in [receivedMessages]
+            if (acknowledge) {
+                handle.afterDatabaseTransaction() // We ACK first so that if it fails we won't get a duplicate in [receivedMessages]
+            }
             receivedMessages.add(message)
         }
         startNodeMessagingClient()
@@ -1,5 +1,6 @@
 package net.corda.node.services.rpc
 
+import com.codahale.metrics.MetricRegistry
 import net.corda.client.rpc.RPCException
 import net.corda.client.rpc.internal.RPCClient
 import net.corda.core.context.AuthServiceId
@@ -128,7 +129,7 @@ class ArtemisRpcTests {
 
     private fun <OPS : RPCOps> InternalRPCMessagingClient.start(ops: OPS, securityManager: RPCSecurityManager, brokerControl: ActiveMQServerControl) {
         apply {
-            init(ops, securityManager)
+            init(ops, securityManager, MetricRegistry())
             start(brokerControl)
         }
     }
@@ -413,7 +413,7 @@ abstract class AbstractNode(val configuration: NodeConfiguration,
                 // Shut down the SMM so no Fibers are scheduled.
                 runOnStop += { smm.stop(acceptableLiveFiberCountOnStop()) }
                 (smm as? StateMachineManagerInternal)?.let {
-                    val flowMonitor = FlowMonitor(smm::snapshot, configuration.flowMonitorPeriodMillis, configuration.flowMonitorSuspensionLoggingThresholdMillis)
+                    val flowMonitor = FlowMonitor(smm::snapshot, smm::parkedFlows, configuration.flowMonitorPeriodMillis, configuration.flowMonitorSuspensionLoggingThresholdMillis)
                     runOnStop += { flowMonitor.stop() }
                     flowMonitor.start()
                 }
@@ -1119,8 +1119,9 @@ fun configureDatabase(hikariProperties: Properties,
     JavaTypeDescriptorRegistry.INSTANCE.addDescriptor(AbstractPartyDescriptor(wellKnownPartyFromX500Name, wellKnownPartyFromAnonymous))
     try {
         val dataSource = DataSourceFactory.createDataSource(hikariProperties)
+        val readReplicaDataSource = databaseConfig.readReplicaDataSourceProperties?.let { DataSourceFactory.createDataSource(it) }
         val attributeConverters = listOf(AbstractPartyToX500NameAsStringConverter(wellKnownPartyFromX500Name, wellKnownPartyFromAnonymous))
-        return CordaPersistence(dataSource, databaseConfig, schemaService.schemaOptions.keys, attributeConverters)
+        return CordaPersistence(dataSource, databaseConfig, schemaService.schemaOptions.keys, attributeConverters, readReplicaDataSource)
     } catch (ex: Exception) {
         when {
             ex is HikariPool.PoolInitializationException -> throw CouldNotCreateDataSourceException("Could not connect to the database. Please check your JDBC connection URL, or the connectivity to the database.", ex)
@@ -90,7 +90,7 @@ internal class CordaRPCOpsImpl(
                                                   sorting: Sort,
                                                   contractStateType: Class<out T>): Vault.Page<T> {
         contractStateType.checkIsA<ContractState>()
-        return services.vaultService._queryBy(criteria, paging, sorting, contractStateType)
+        return services.database.readOnlyTransaction { services.vaultService._queryBy(criteria, paging, sorting, contractStateType) }
     }
 
     @RPCReturnsObservables
@@ -104,7 +104,7 @@ internal class CordaRPCOpsImpl(
 
     @Suppress("OverridingDeprecatedMember")
     override fun internalVerifiedTransactionsSnapshot(): List<SignedTransaction> {
-        val (snapshot, updates) = @Suppress("DEPRECATION") internalVerifiedTransactionsFeed()
+        val (snapshot, updates) = services.database.readOnlyTransaction { @Suppress("DEPRECATION") internalVerifiedTransactionsFeed() }
         updates.notUsed()
         return snapshot
     }
@@ -127,7 +127,7 @@ internal class CordaRPCOpsImpl(
     override fun stateMachinesFeed(): DataFeed<List<StateMachineInfo>, StateMachineUpdate> {
         val (allStateMachines, changes) = smm.track()
         return DataFeed(
-                allStateMachines.map { stateMachineInfoFromFlowLogic(it) },
+                allStateMachines.flows.map { stateMachineInfoFromFlowLogic(it) } + allStateMachines.parkedFlows.map { stateMachineInfoFromParkedFlow(it) },
                 changes.map { stateMachineUpdateFromStateMachineChange(it) }
         )
     }
@@ -199,7 +199,7 @@ internal class CordaRPCOpsImpl(
     }
 
     override fun queryAttachments(query: AttachmentQueryCriteria, sorting: AttachmentSort?): List<AttachmentId> {
-        return services.attachments.queryAttachments(query, sorting)
+        return services.database.readOnlyTransaction { services.attachments.queryAttachments(query, sorting) }
     }
 
     override fun currentNodeTime(): Instant = Instant.now(services.clock)
@@ -293,6 +293,11 @@ internal class CordaRPCOpsImpl(
         return StateMachineInfo(flowLogic.runId, flowLogic.javaClass.name, flowLogic.stateMachine.context.toFlowInitiator(), flowLogic.track(), flowLogic.stateMachine.context)
     }
 
+    /** A parked flow has no progress tracker until a message arrives for it and its [FlowLogic] is deserialised. */
+    private fun stateMachineInfoFromParkedFlow(parkedFlow: StateMachineManager.ParkedFlow): StateMachineInfo {
+        return StateMachineInfo(parkedFlow.id, parkedFlow.flowClass.name, parkedFlow.context.toFlowInitiator(), null, parkedFlow.context)
+    }
+
     private fun stateMachineUpdateFromStateMachineChange(change: StateMachineManager.Change): StateMachineUpdate {
         return when (change) {
             is StateMachineManager.Change.Add -> StateMachineUpdate.Added(stateMachineInfoFromFlowLogic(change.logic))
@@ -31,6 +31,7 @@ import net.corda.node.internal.security.RPCSecurityManagerImpl
 import net.corda.node.internal.security.RPCSecurityManagerWithAdditionalUser
 import net.corda.node.serialization.amqp.AMQPServerSerializationScheme
 import net.corda.node.serialization.kryo.KRYO_CHECKPOINT_CONTEXT
+import net.corda.node.serialization.kryo.KryoCheckpointMetrics
 import net.corda.node.serialization.kryo.KryoServerSerializationScheme
 import net.corda.node.services.Permissions
 import net.corda.node.services.api.NodePropertiesStore
@@ -190,7 +191,7 @@ open class Node(configuration: NodeConfiguration,
 
         if (!configuration.messagingServerExternal) {
             val brokerBindAddress = configuration.messagingServerAddress ?: NetworkHostAndPort("0.0.0.0", configuration.p2pAddress.port)
-            messageBroker = ArtemisMessagingServer(configuration, brokerBindAddress, networkParameters.maxMessageSize)
+            messageBroker = ArtemisMessagingServer(configuration, brokerBindAddress, networkParameters.maxMessageSize, services.monitoringService.metrics)
         }
 
         val serverAddress = configuration.messagingServerAddress
@@ -204,7 +205,10 @@ open class Node(configuration: NodeConfiguration,
         bridgeControlListener = BridgeControlListener(configuration, serverAddress, networkParameters.maxMessageSize)
 
         printBasicNodeInfo("Advertised P2P messaging addresses", info.addresses.joinToString())
-        val rpcServerConfiguration = RPCServerConfiguration.DEFAULT
+        val rpcServerConfiguration = RPCServerConfiguration.DEFAULT.copy(
+                rpcSenderThreadCount = configuration.rpcServerTuning.senderThreads,
+                observableFlowControl = configuration.rpcServerTuning.observableFlowControl.toConfiguration()
+        )
         rpcServerAddresses?.let {
             internalRpcMessagingClient = InternalRPCMessagingClient(configuration, it.admin, MAX_RPC_MESSAGE_SIZE, CordaX500Name.build(configuration.loadSslKeyStore().getCertificate(X509Utilities.CORDA_CLIENT_TLS).subjectX500Principal), rpcServerConfiguration)
             printBasicNodeInfo("RPC connection address", it.primary.toString())
@@ -224,7 +228,8 @@ open class Node(configuration: NodeConfiguration,
                 advertisedAddress,
                 networkParameters.maxMessageSize,
                 isDrainingModeOn = nodeProperties.flowsDrainingMode::isEnabled,
-                drainingModeWasChangedEvents = nodeProperties.flowsDrainingMode.values)
+                drainingModeWasChangedEvents = nodeProperties.flowsDrainingMode.values,
+                metricRegistry = services.monitoringService.metrics)
     }
 
     private fun startLocalRpcBroker(): BrokerAddresses? {
@@ -233,9 +238,9 @@ open class Node(configuration: NodeConfiguration,
                 val rpcBrokerDirectory: Path = baseDirectory / "brokers" / "rpc"
                 with(rpcOptions) {
                     rpcBroker = if (useSsl) {
-                        ArtemisRpcBroker.withSsl(configuration, this.address, adminAddress, sslConfig!!, securityManager, MAX_RPC_MESSAGE_SIZE, jmxMonitoringHttpPort != null, rpcBrokerDirectory, shouldStartLocalShell())
+                        ArtemisRpcBroker.withSsl(configuration, this.address, adminAddress, sslConfig!!, securityManager, MAX_RPC_MESSAGE_SIZE, jmxMonitoringHttpPort != null, rpcBrokerDirectory, shouldStartLocalShell(), brokerTuning, services.monitoringService.metrics)
                     } else {
-                        ArtemisRpcBroker.withoutSsl(configuration, this.address, adminAddress, securityManager, MAX_RPC_MESSAGE_SIZE, jmxMonitoringHttpPort != null, rpcBrokerDirectory, shouldStartLocalShell())
+                        ArtemisRpcBroker.withoutSsl(configuration, this.address, adminAddress, securityManager, MAX_RPC_MESSAGE_SIZE, jmxMonitoringHttpPort != null, rpcBrokerDirectory, shouldStartLocalShell(), brokerTuning, services.monitoringService.metrics)
                     }
                 }
                 rpcBroker!!.addresses
@@ -303,7 +308,7 @@ open class Node(configuration: NodeConfiguration,
         // Start up the MQ clients.
         internalRpcMessagingClient?.run {
             runOnStop += this::close
-            init(rpcOps, securityManager)
+            init(rpcOps, securityManager, services.monitoringService.metrics)
         }
         (network as P2PMessagingClient).apply {
             runOnStop += this::stop
@@ -367,6 +372,9 @@ open class Node(configuration: NodeConfiguration,
         serverThread = AffinityExecutor.ServiceAffinityExecutor("Node thread-$sameVmNodeNumber", 1)
         initialiseSerialization()
         val started: StartedNode<Node> = uncheckedCast(super.start())
+        if (initialiseSerialization) {
+            started.services.monitoringService.metrics.registerAll(checkpointMetrics)
+        }
         nodeReadyFuture.thenMatch({
             serverThread.execute {
                 // Begin exporting our own metrics via JMX. These can be monitored using any agent, e.g. Jolokia:
@@ -402,7 +410,7 @@ open class Node(configuration: NodeConfiguration,
                 SerializationFactoryImpl().apply {
                     registerScheme(AMQPServerSerializationScheme(cordappLoader.cordapps))
                     registerScheme(AMQPClientSerializationScheme(cordappLoader.cordapps))
-                    registerScheme(KryoServerSerializationScheme())
+                    registerScheme(KryoServerSerializationScheme(configuration.checkpointCompression, checkpointMetrics, configuration.checkpointBufferPoolBytes))
                 },
                 p2pContext = AMQP_P2P_CONTEXT.withClassLoader(classloader),
                 rpcServerContext = AMQP_RPC_SERVER_CONTEXT.withClassLoader(classloader),
@@ -412,6 +420,7 @@ open class Node(configuration: NodeConfiguration,
     }
 
     private var internalRpcMessagingClient: InternalRPCMessagingClient? = null
+    private val checkpointMetrics = KryoCheckpointMetrics()
 
     /** Starts a blocking event loop for message dispatch. */
     fun run() {
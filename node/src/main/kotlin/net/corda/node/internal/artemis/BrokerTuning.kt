@@ -0,0 +1,98 @@
+package net.corda.node.internal.artemis
+
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.MetricRegistry
+import net.corda.nodeapi.internal.ArtemisMessagingComponent.Companion.JOURNAL_HEADER_SIZE
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl
+import org.apache.activemq.artemis.core.server.ActiveMQServer
+import org.apache.activemq.artemis.core.server.JournalType
+import org.apache.activemq.artemis.core.settings.impl.AddressFullMessagePolicy
+import org.apache.activemq.artemis.core.settings.impl.AddressSettings
+import java.time.Duration
+
+/**
+ * Journal and paging settings of the node's embedded Artemis brokers. Settings left unset keep the Artemis defaults.
+ *
+ * @property journalType [JournalType.ASYNCIO] needs libaio and falls back to [JournalType.NIO] without it.
+ * [JournalType.MAPPED] uses memory mapped files.
+ * @property journalSyncTransactional whether the broker waits for the journal to reach disk before completing a commit.
+ * @property journalSyncNonTransactional whether the broker waits for the journal to reach disk before acknowledging
+ * a non-transactional send.
+ * @property journalBufferTimeout how long the journal buffers writes before flushing them together (group commit).
+ * @property journalMaxIO the maximum number of in-flight writes of an ASYNCIO journal.
+ * @property journalCompactMinFiles the minimum number of journal files before compaction is considered.
+ * @property journalCompactPercentage compaction starts once live data is below this percentage of the journal.
+ * @property p2pMaxSizeBytes the maximum size of each P2P inbound and outbound peer address, after which messages are
+ * paged to disk rather than held on the heap.
+ * @property rpcMaxSizeBytes the maximum size of the RPC server address, after which requests are paged to disk.
+ * @property pageSizeBytes the size of each page file. It is never less than the maximum message size.
+ */
+data class BrokerTuning(
+        val journalType: JournalType? = null,
+        val journalSyncTransactional: Boolean = true,
+        val journalSyncNonTransactional: Boolean = true,
+        val journalBufferTimeout: Duration? = null,
+        val journalMaxIO: Int? = null,
+        val journalCompactMinFiles: Int? = null,
+        val journalCompactPercentage: Int? = null,
+        val p2pMaxSizeBytes: Long? = null,
+        val rpcMaxSizeBytes: Long? = null,
+        val pageSizeBytes: Int? = null
+) {
+    init {
+        require(journalBufferTimeout == null || !journalBufferTimeout.isNegative) { "journalBufferTimeout cannot be negative" }
+        require(journalMaxIO == null || journalMaxIO > 0) { "journalMaxIO must be positive" }
+        require(journalCompactMinFiles == null || journalCompactMinFiles >= 0) { "journalCompactMinFiles cannot be negative" }
+        require(journalCompactPercentage == null || journalCompactPercentage in 0..100) { "journalCompactPercentage must be between 0 and 100" }
+        require(p2pMaxSizeBytes == null || p2pMaxSizeBytes > 0) { "p2pMaxSizeBytes must be positive" }
+        require(rpcMaxSizeBytes == null || rpcMaxSizeBytes > 0) { "rpcMaxSizeBytes must be positive" }
+        require(pageSizeBytes == null || pageSizeBytes > 0) { "pageSizeBytes must be positive" }
+    }
+
+    companion object {
+        private const val DEFAULT_PAGE_SIZE_BYTES = 10 * 1024 * 1024
+    }
+
+    internal fun applyJournalSettings(configuration: ConfigurationImpl) {
+        journalType?.let { configuration.journalType = it }
+        configuration.isJournalSyncTransactional = journalSyncTransactional
+        configuration.isJournalSyncNonTransactional = journalSyncNonTransactional
+        journalBufferTimeout?.let {
+            val nanos = Math.min(it.toNanos(), Int.MAX_VALUE.toLong()).toInt()
+            configuration.journalBufferTimeout_NIO = nanos
+            configuration.journalBufferTimeout_AIO = nanos
+        }
+        journalMaxIO?.let { configuration.journalMaxIO_AIO = it }
+        journalCompactMinFiles?.let { configuration.journalCompactMinFiles = it }
+        journalCompactPercentage?.let { configuration.journalCompactPercentage = it }
+    }
+
+    /** Returns address settings which page to disk once an address holds more than [maxSizeBytes]. */
+    internal fun pagedAddressSettings(maxSizeBytes: Long, maxMessageSize: Int): AddressSettings {
+        return AddressSettings().apply {
+            this.maxSizeBytes = maxSizeBytes
+            this.pageSizeBytes = Math.max(this@BrokerTuning.pageSizeBytes ?: DEFAULT_PAGE_SIZE_BYTES, maxMessageSize + JOURNAL_HEADER_SIZE)
+            addressFullMessagePolicy = AddressFullMessagePolicy.PAGE
+        }
+    }
+}
+
+/**
+ * Registers gauges for the memory use, message counts and paging of [server] in [metrics], named "[prefix].<Gauge>".
+ * The gauges read zero while the broker is stopped.
+ */
+internal fun registerBrokerMetrics(metrics: MetricRegistry, prefix: String, server: () -> ActiveMQServer?) {
+    fun register(name: String, value: (ActiveMQServer) -> Long) {
+        val metricName = "$prefix.$name"
+        metrics.remove(metricName)
+        metrics.register(metricName, Gauge<Long> { server()?.takeIf { it.isStarted }?.let(value) ?: 0L })
+    }
+    register("AddressMemoryUsage") { it.pagingManager.globalSize }
+    register("MessageCount") { it.activeMQServerControl.totalMessageCount }
+    register("MessagesAdded") { it.activeMQServerControl.totalMessagesAdded }
+    register("ConnectionCount") { it.connectionCount.toLong() }
+    register("PagingAddresses") { broker ->
+        val pagingManager = broker.pagingManager
+        pagingManager.storeNames.count { pagingManager.getPageStore(it)?.isPaging == true }.toLong()
+    }
+}
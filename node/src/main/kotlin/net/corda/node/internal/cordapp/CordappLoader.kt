@@ -17,6 +17,7 @@ import net.corda.core.serialization.SerializeAsToken
 import net.corda.core.utilities.contextLogger
 import net.corda.node.internal.classloading.requireAnnotation
 import net.corda.node.services.config.NodeConfiguration
+import net.corda.node.services.statemachine.FlowTimingsSnapshotFlow
 import net.corda.nodeapi.internal.coreContractClasses
 import net.corda.serialization.internal.DefaultWhitelist
 import org.apache.commons.collections4.map.LRUMap
@@ -191,7 +192,8 @@ class CordappLoader private constructor(private val cordappJarPaths: List<Restri
         private val coreRPCFlows = listOf(
                 ContractUpgradeFlow.Initiate::class.java,
                 ContractUpgradeFlow.Authorise::class.java,
-                ContractUpgradeFlow.Deauthorise::class.java)
+                ContractUpgradeFlow.Deauthorise::class.java,
+                FlowTimingsSnapshotFlow::class.java)
 
         /** A Cordapp representing the core package which is not scanned automatically. */
         @VisibleForTesting
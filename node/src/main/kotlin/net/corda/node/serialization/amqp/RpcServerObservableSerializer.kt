@@ -3,6 +3,8 @@ package net.corda.node.serialization.amqp
 import net.corda.core.context.Trace
 import net.corda.core.serialization.SerializationContext
 import net.corda.core.utilities.loggerFor
+import net.corda.node.services.messaging.CreditedObservationSender
+import net.corda.node.services.messaging.ObservableBackpressurePolicy
 import net.corda.node.services.messaging.ObservableContextInterface
 import net.corda.node.services.messaging.ObservableSubscription
 import net.corda.nodeapi.RPCApi
@@ -13,6 +15,7 @@ import rx.Observable
 import rx.Subscriber
 import java.io.NotSerializableException
 import java.lang.reflect.Type
+import java.util.concurrent.TimeUnit
 
 /**
  * Server side serializer that notionally serializes RxObservables when used by the RPC
@@ -88,17 +91,34 @@ class RpcServerObservableSerializer : CustomSerializer.Implements<Observable<*>>
             data.putLong(observableId.timestamp.toEpochMilli())
         }
 
+        // Without flow control every observation is sent as soon as it is emitted.
+        val flowControl = observableContext.observationFlowControl
+
+        fun sendObservation(observation: Notification<*>, droppedObservations: Int) {
+            val message = RPCApi.ServerToClient.Observation(
+                    id = observableId,
+                    content = observation,
+                    deduplicationIdentity = observableContext.deduplicationIdentity,
+                    droppedObservations = droppedObservations,
+                    creditsAccepted = flowControl != null
+            )
+            observableContext.sendMessage(message)
+        }
+
+        val creditedSender = flowControl?.let { CreditedObservationSender(it) { observation, dropped -> sendObservation(observation, dropped) } }
+        val samplingPolicy = flowControl?.policy as? ObservableBackpressurePolicy.Sample
+        val source = samplingPolicy?.let { obj.sample(it.interval.toMillis(), TimeUnit.MILLISECONDS) } ?: obj
+
         val observableWithSubscription = ObservableSubscription(
-                subscription = obj.materialize().subscribe(
+                subscription = source.materialize().subscribe(
                         object : Subscriber<Notification<*>>() {
                             override fun onNext(observation: Notification<*>) {
                                 if (!isUnsubscribed) {
-                                    val message = RPCApi.ServerToClient.Observation(
-                                            id = observableId,
-                                            content = observation,
-                                            deduplicationIdentity = observableContext.deduplicationIdentity
-                                    )
-                                    observableContext.sendMessage(message)
+                                    if (creditedSender != null) {
+                                        creditedSender.onNotification(observation)
+                                    } else {
+                                        sendObservation(observation, 0)
+                                    }
                                 }
                             }
 
@@ -122,7 +142,8 @@ class RpcServerObservableSerializer : CustomSerializer.Implements<Observable<*>>
                                 }
                             }
                         }
-                )
+                ),
+                creditedSender = creditedSender
         )
 
         observableContext.clientAddressToObservables.compute(observableContext.clientAddress) { _, observables ->
@@ -24,6 +24,7 @@ import net.corda.serialization.internal.serializationContextKey
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 import java.io.InputStream
+import java.io.SequenceInputStream
 import java.lang.reflect.InvocationTargetException
 import java.security.PrivateKey
 import java.security.PublicKey
@@ -164,22 +165,17 @@ object InputStreamSerializer : Serializer<InputStream>() {
     }
 
     override fun read(kryo: Kryo, input: Input, type: Class<InputStream>): InputStream {
-        val chunks = ArrayList<ByteArray>()
+        val chunks = ArrayList<InputStream>()
         while (true) {
             val chunk = input.readBytesWithLength()
             if (chunk.isEmpty()) {
                 break
             } else {
-                chunks.add(chunk)
+                chunks.add(chunk.inputStream())
             }
         }
-        val flattened = ByteArray(chunks.sumBy { it.size })
-        var offset = 0
-        for (chunk in chunks) {
-            System.arraycopy(chunk, 0, flattened, offset, chunk.size)
-            offset += chunk.size
-        }
-        return flattened.inputStream()
+        // Read the chunks in turn rather than copying them into one array, which would briefly double the memory used.
+        return SequenceInputStream(Collections.enumeration(chunks))
     }
 
 }
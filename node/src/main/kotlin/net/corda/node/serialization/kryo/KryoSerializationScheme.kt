@@ -2,6 +2,11 @@ package net.corda.node.serialization.kryo
 
 import co.paralleluniverse.fibers.Fiber
 import co.paralleluniverse.io.serialization.kryo.KryoSerializer
+import com.codahale.metrics.ExponentiallyDecayingReservoir
+import com.codahale.metrics.Histogram
+import com.codahale.metrics.Metric
+import com.codahale.metrics.MetricSet
+import com.codahale.metrics.Timer
 import com.esotericsoftware.kryo.Kryo
 import com.esotericsoftware.kryo.KryoException
 import com.esotericsoftware.kryo.Serializer
@@ -18,6 +23,7 @@ import net.corda.core.utilities.ByteSequence
 import net.corda.serialization.internal.*
 import java.security.PublicKey
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
 
 val kryoMagic = CordaSerializationMagic("corda".toByteArray() + byteArrayOf(0, 0))
 
@@ -32,14 +38,45 @@ private object AutoCloseableSerialisationDetector : Serializer<AutoCloseable>()
     override fun read(kryo: Kryo, input: Input, type: Class<AutoCloseable>) = throw IllegalStateException("Should not reach here!")
 }
 
+/**
+ * Compresses checkpoints of at least [thresholdBytes] serialised bytes with [encoding]. Smaller checkpoints are stored
+ * uncompressed, as compressing them costs more CPU than the storage it saves.
+ */
+data class CheckpointCompression(
+        val encoding: CordaSerializationEncoding = CordaSerializationEncoding.SNAPPY,
+        val thresholdBytes: Int = 64 * 1024
+)
+
+/**
+ * Metrics of checkpoint compression, to be registered with the node's metric registry.
+ */
+class KryoCheckpointMetrics : MetricSet {
+    /** The compressed size of compressed checkpoints as a percentage of their uncompressed size. */
+    val compressionRatio = Histogram(ExponentiallyDecayingReservoir())
+    val compressionTime = Timer()
+
+    override fun getMetrics(): Map<String, Metric> = mapOf(
+            "Flows.CheckpointCompressionRatioPercent" to compressionRatio,
+            "Flows.CheckpointCompressionTime" to compressionTime
+    )
+}
+
 abstract class AbstractKryoSerializationScheme : SerializationScheme {
     private val kryoPoolsForContexts = ConcurrentHashMap<Pair<ClassWhitelist, ClassLoader>, KryoPool>()
+    // Lazy, as the retention cap may be overridden by a subclass constructor property.
+    private val checkpointOutputStreamPool by lazy { SizeClassedOutputStreamPool(checkpointBufferPoolBytes) }
+    // The size of the last checkpoint, used to pick a buffer for the next one.
+    @Volatile
+    private var recentCheckpointSize = 0
 
     protected abstract fun rpcClientKryoPool(context: SerializationContext): KryoPool
     protected abstract fun rpcServerKryoPool(context: SerializationContext): KryoPool
 
     // this can be overridden in derived serialization schemes
     protected open val publicKeySerializer: Serializer<PublicKey> = PublicKeySerializer
+    protected open val checkpointCompression: CheckpointCompression? get() = null
+    protected open val checkpointMetrics: KryoCheckpointMetrics? get() = null
+    protected open val checkpointBufferPoolBytes: Long get() = SizeClassedOutputStreamPool.DEFAULT_MAX_RETAINED_BYTES
 
     private fun getPool(context: SerializationContext): KryoPool {
         return kryoPoolsForContexts.computeIfAbsent(Pair(context.whitelist, context.deserializationClassLoader)) {
@@ -112,6 +149,9 @@ abstract class AbstractKryoSerializationScheme : SerializationScheme {
     }
 
     override fun <T : Any> serialize(obj: T, context: SerializationContext): SerializedBytes<T> {
+        if (context.useCase == SerializationContext.UseCase.Checkpoint && context.encoding == null) {
+            return serializeCheckpoint(obj, context)
+        }
         return context.kryo {
             SerializedBytes(kryoOutput {
                 kryoMagic.writeTo(this)
@@ -129,6 +169,48 @@ abstract class AbstractKryoSerializationScheme : SerializationScheme {
             })
         }
     }
+
+    private fun <T : Any> serializeCheckpoint(obj: T, context: SerializationContext): SerializedBytes<T> {
+        return checkpointOutputStreamPool.run(recentCheckpointSize) { stream ->
+            context.kryo {
+                kryoOutput(stream) {
+                    kryoMagic.writeTo(this)
+                    SectionId.ALT_DATA_AND_STOP.writeTo(this)
+                    if (context.objectReferencesEnabled) {
+                        writeClassAndObject(this, obj)
+                    } else {
+                        withoutReferences { writeClassAndObject(this, obj) }
+                    }
+                }
+            }
+            recentCheckpointSize = stream.size()
+            val compression = checkpointCompression
+            if (compression != null && stream.size() >= compression.thresholdBytes) {
+                SerializedBytes<T>(compressCheckpoint(stream, compression.encoding))
+            } else {
+                SerializedBytes<T>(stream.toByteArray())
+            }
+        }
+    }
+
+    /**
+     * Encodes an uncompressed checkpoint as [serialize] would have with [encoding] set on the context: the magic, the
+     * encoding section and then the compressed remainder of the stream.
+     */
+    private fun compressCheckpoint(uncompressed: PooledOutputStream, encoding: CordaSerializationEncoding): ByteArray {
+        val start = System.nanoTime()
+        val compressed = byteArrayOutput { underlying ->
+            kryoMagic.writeTo(underlying)
+            SectionId.ENCODING.writeTo(underlying)
+            encoding.writeTo(underlying)
+            encoding.wrap(underlying).use { uncompressed.copyTo(it, offset = kryoMagic.size) }
+        }
+        checkpointMetrics?.apply {
+            compressionTime.update(System.nanoTime() - start, TimeUnit.NANOSECONDS)
+            compressionRatio.update(100L * compressed.size / uncompressed.size())
+        }
+        return compressed
+    }
 }
 
 val KRYO_CHECKPOINT_CONTEXT = SerializationContextImpl(
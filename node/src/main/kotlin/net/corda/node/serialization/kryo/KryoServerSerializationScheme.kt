@@ -4,7 +4,11 @@ import com.esotericsoftware.kryo.pool.KryoPool
 import net.corda.core.serialization.SerializationContext
 import net.corda.serialization.internal.CordaSerializationMagic
 
-class KryoServerSerializationScheme : AbstractKryoSerializationScheme() {
+class KryoServerSerializationScheme(
+        override val checkpointCompression: CheckpointCompression? = null,
+        override val checkpointMetrics: KryoCheckpointMetrics? = null,
+        override val checkpointBufferPoolBytes: Long = SizeClassedOutputStreamPool.DEFAULT_MAX_RETAINED_BYTES
+) : AbstractKryoSerializationScheme() {
     override fun canDeserializeVersion(magic: CordaSerializationMagic, target: SerializationContext.UseCase): Boolean {
         return magic == kryoMagic && target == SerializationContext.UseCase.Checkpoint
     }
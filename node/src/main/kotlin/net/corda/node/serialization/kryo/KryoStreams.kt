@@ -6,9 +6,12 @@ import com.esotericsoftware.kryo.io.Input
 import com.esotericsoftware.kryo.io.Output
 import net.corda.core.internal.LazyPool
 import net.corda.serialization.internal.byteArrayOutput
+import java.io.ByteArrayOutputStream
 import java.io.InputStream
 import java.io.OutputStream
 import java.io.SequenceInputStream
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicLong
 
 private val serializationBufferPool = LazyPool(
         newInstance = { ByteArray(64 * 1024) })
@@ -23,13 +26,80 @@ internal fun <T> kryoInput(underlying: InputStream, task: Input.() -> T): T {
 }
 
 internal fun <T> kryoOutput(task: Output.() -> T): ByteArray {
-    return byteArrayOutput { underlying ->
-        serializationBufferPool.run {
-            Output(it).use { output ->
-                output.outputStream = underlying
-                output.task()
+    return byteArrayOutput { underlying -> kryoOutput(underlying, task) }
+}
+
+internal fun <T> kryoOutput(underlying: OutputStream, task: Output.() -> T): T {
+    return serializationBufferPool.run {
+        Output(it).use { output ->
+            output.outputStream = underlying
+            output.task()
+        }
+    }
+}
+
+/**
+ * A [ByteArrayOutputStream] which exposes the capacity of its buffer, so that it can be pooled by size.
+ */
+internal class PooledOutputStream(size: Int) : ByteArrayOutputStream(size) {
+    val capacity: Int get() = buf.size
+
+    fun copyTo(stream: OutputStream, offset: Int = 0) = stream.write(buf, offset, count - offset)
+}
+
+/**
+ * Pools [PooledOutputStream]s by the capacity their buffers have grown to. Borrowers ask for the size they expect to
+ * write, so that repeated serialisations of similar size reuse a buffer instead of growing a new one every time.
+ * At most [maxRetainedBytes] of buffer capacity is kept across all size classes, and buffers larger than the largest
+ * size class are not retained.
+ */
+internal class SizeClassedOutputStreamPool(
+        private val maxRetainedBytes: Long = DEFAULT_MAX_RETAINED_BYTES,
+        private val sizeClasses: IntArray = intArrayOf(64 * 1024, 256 * 1024, 1024 * 1024, 4 * 1024 * 1024, 16 * 1024 * 1024)
+) {
+    companion object {
+        const val DEFAULT_MAX_RETAINED_BYTES = 32L * 1024 * 1024
+    }
+
+    private val pools = Array(sizeClasses.size) { ConcurrentLinkedQueue<PooledOutputStream>() }
+    private val retainedBytes = AtomicLong()
+
+    /** The total capacity of the buffers currently held by the pool. */
+    val retained: Long get() = retainedBytes.get()
+
+    fun borrow(expectedSize: Int): PooledOutputStream {
+        val sizeClass = sizeClasses.indexOfFirst { it >= expectedSize }.let { if (it < 0) sizeClasses.lastIndex else it }
+        // Any larger buffer will do as well.
+        for (index in sizeClass until sizeClasses.size) {
+            val pooled = pools[index].poll()
+            if (pooled != null) {
+                retainedBytes.addAndGet(-pooled.capacity.toLong())
+                pooled.reset()
+                return pooled
             }
         }
+        return PooledOutputStream(sizeClasses[sizeClass])
+    }
+
+    fun release(stream: PooledOutputStream) {
+        val capacity = stream.capacity.toLong()
+        if (capacity > sizeClasses.last()) return
+        val sizeClass = sizeClasses.indexOfLast { it <= capacity }
+        if (sizeClass < 0) return
+        if (retainedBytes.addAndGet(capacity) <= maxRetainedBytes) {
+            pools[sizeClass].add(stream)
+        } else {
+            retainedBytes.addAndGet(-capacity)
+        }
+    }
+
+    inline fun <R> run(expectedSize: Int, task: (PooledOutputStream) -> R): R {
+        val stream = borrow(expectedSize)
+        try {
+            return task(stream)
+        } finally {
+            release(stream)
+        }
     }
 }
 
@@ -8,7 +8,12 @@ import net.corda.core.internal.TimedFlow
 import net.corda.core.utilities.NetworkHostAndPort
 import net.corda.core.utilities.loggerFor
 import net.corda.core.utilities.seconds
+import net.corda.node.internal.artemis.BrokerTuning
+import net.corda.node.serialization.kryo.CheckpointCompression
 import net.corda.node.services.config.rpc.NodeRpcOptions
+import net.corda.node.services.messaging.ObservableBackpressurePolicy
+import net.corda.node.services.messaging.ObservableFlowControlConfiguration
+import net.corda.node.services.messaging.RPCServerConfiguration
 import net.corda.nodeapi.BrokerRpcSslOptions
 import net.corda.nodeapi.internal.config.NodeSSLConfiguration
 import net.corda.nodeapi.internal.config.UnknownConfigKeysPolicy
@@ -67,6 +72,12 @@ interface NodeConfiguration : NodeSSLConfiguration {
     val effectiveH2Settings: NodeH2Settings?
     val flowMonitorPeriodMillis: Duration get() = DEFAULT_FLOW_MONITOR_PERIOD_MILLIS
     val flowMonitorSuspensionLoggingThresholdMillis: Duration get() = DEFAULT_FLOW_MONITOR_SUSPENSION_LOGGING_THRESHOLD_MILLIS
+    val checkpointCompression: CheckpointCompression? get() = null
+    val checkpointBufferPoolBytes: Long get() = defaultCheckpointBufferPoolSize
+    val brokerTuning: BrokerTuning get() = BrokerTuning()
+    val flowRestore: FlowRestoreConfiguration get() = FlowRestoreConfiguration()
+    val rpcServerTuning: RpcServerTuning get() = RpcServerTuning()
+    val sessionMessageFraming: Boolean get() = false
 
     fun validate(): List<String>
 
@@ -81,6 +92,7 @@ interface NodeConfiguration : NodeSSLConfiguration {
 
         val defaultAttachmentContentCacheSize: Long = 10.MB
         const val defaultAttachmentCacheBound = 1024L
+        val defaultCheckpointBufferPoolSize: Long = 32.MB
     }
 }
 
@@ -153,6 +165,87 @@ data class FlowTimeoutConfiguration(
         val backoffBase: Double
 )
 
+/**
+ * Specifies how flows are restored from their checkpoints when the node starts.
+ *
+ * @property parallelism The number of threads checkpoints are deserialised on.
+ * @property lazy If true, flows which are only waiting for messages from their counterparties are not deserialised until
+ * the first such message arrives.
+ */
+data class FlowRestoreConfiguration(
+        val parallelism: Int = Runtime.getRuntime().availableProcessors(),
+        val lazy: Boolean = false
+) {
+    init {
+        require(parallelism > 0) { "parallelism must be positive" }
+    }
+}
+
+/**
+ * Tunes the node's RPC server.
+ *
+ * @property senderThreads The number of threads sending replies and observations to RPC clients. Each client is always
+ * served by the same thread, so the messages it receives keep their order.
+ * @property observableFlowControl The flow control of Observables for clients that grant observation credits.
+ */
+data class RpcServerTuning(
+        val senderThreads: Int = RPCServerConfiguration.DEFAULT.rpcSenderThreadCount,
+        val observableFlowControl: ObservableFlowControlSettings = ObservableFlowControlSettings()
+) {
+    init {
+        require(senderThreads > 0) { "senderThreads must be positive" }
+    }
+}
+
+/** The [ObservableBackpressurePolicy]s as they are named in the node configuration. */
+enum class ObservableBackpressure { Drop, Conflate, Sample }
+
+/**
+ * The node configuration of [ObservableFlowControlConfiguration].
+ *
+ * @property bufferSize The maximum number of observations buffered per Observable.
+ * @property defaultPolicy The policy for Observables returned by RPCs not listed in [policies].
+ * @property sampleInterval The interval of [defaultPolicy] if it is [ObservableBackpressure.Sample].
+ * @property policies The policies for the Observables returned by particular RPCs.
+ */
+data class ObservableFlowControlSettings(
+        val bufferSize: Int = 1024,
+        val defaultPolicy: ObservableBackpressure = ObservableBackpressure.Drop,
+        val sampleInterval: Duration? = null,
+        val policies: List<RpcObservablePolicy> = emptyList()
+) {
+    init {
+        require(bufferSize > 0) { "bufferSize must be positive" }
+        require(defaultPolicy != ObservableBackpressure.Sample || sampleInterval != null) { "sampleInterval must be set for the Sample policy" }
+    }
+
+    fun toConfiguration(): ObservableFlowControlConfiguration {
+        return ObservableFlowControlConfiguration(
+                bufferSize = bufferSize,
+                defaultPolicy = defaultPolicy.toPolicy(sampleInterval),
+                policies = policies.associate { it.rpc to it.policy.toPolicy(it.sampleInterval) }
+        )
+    }
+}
+
+/**
+ * @property rpc The name of the RPC whose reply contains the Observables, e.g. `vaultTrackBy`.
+ * @property sampleInterval The interval of [policy] if it is [ObservableBackpressure.Sample].
+ */
+data class RpcObservablePolicy(val rpc: String, val policy: ObservableBackpressure, val sampleInterval: Duration? = null) {
+    init {
+        require(policy != ObservableBackpressure.Sample || sampleInterval != null) { "sampleInterval must be set for the Sample policy of $rpc" }
+    }
+}
+
+private fun ObservableBackpressure.toPolicy(sampleInterval: Duration?): ObservableBackpressurePolicy {
+    return when (this) {
+        ObservableBackpressure.Drop -> ObservableBackpressurePolicy.Drop
+        ObservableBackpressure.Conflate -> ObservableBackpressurePolicy.Conflate
+        ObservableBackpressure.Sample -> ObservableBackpressurePolicy.Sample(sampleInterval!!)
+    }
+}
+
 fun Config.parseAsNodeConfiguration(onUnknownKeys: ((Set<String>, logger: Logger) -> Unit) = UnknownConfigKeysPolicy.FAIL::handle): NodeConfiguration = parseAs<NodeConfigurationImpl>(onUnknownKeys)
 
 data class NodeConfigurationImpl(
@@ -202,7 +295,13 @@ data class NodeConfigurationImpl(
         // do not use or remove (used by Capsule)
         private val jarDirs: List<String> = emptyList(),
         override val flowMonitorPeriodMillis: Duration = DEFAULT_FLOW_MONITOR_PERIOD_MILLIS,
-        override val flowMonitorSuspensionLoggingThresholdMillis: Duration = DEFAULT_FLOW_MONITOR_SUSPENSION_LOGGING_THRESHOLD_MILLIS
+        override val flowMonitorSuspensionLoggingThresholdMillis: Duration = DEFAULT_FLOW_MONITOR_SUSPENSION_LOGGING_THRESHOLD_MILLIS,
+        override val checkpointCompression: CheckpointCompression? = null,
+        private val checkpointBufferPoolMegaBytes: Int? = null,
+        override val brokerTuning: BrokerTuning = BrokerTuning(),
+        override val flowRestore: FlowRestoreConfiguration = FlowRestoreConfiguration(),
+        override val rpcServerTuning: RpcServerTuning = RpcServerTuning(),
+        override val sessionMessageFraming: Boolean = false
 ) : NodeConfiguration {
     companion object {
         private val logger = loggerFor<NodeConfigurationImpl>()
@@ -311,6 +410,8 @@ data class NodeConfigurationImpl(
         get() = transactionCacheSizeMegaBytes?.MB ?: super.transactionCacheSizeBytes
     override val attachmentContentCacheSizeBytes: Long
         get() = attachmentContentCacheSizeMegaBytes?.MB ?: super.attachmentContentCacheSizeBytes
+    override val checkpointBufferPoolBytes: Long
+        get() = checkpointBufferPoolMegaBytes?.MB ?: super.checkpointBufferPoolBytes
 
     override val effectiveH2Settings: NodeH2Settings?
         get() = when {
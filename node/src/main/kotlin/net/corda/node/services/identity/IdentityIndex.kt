@@ -0,0 +1,84 @@
+package net.corda.node.services.identity
+
+import net.corda.core.crypto.SecureHash
+import net.corda.core.identity.CordaX500Name
+import net.corda.core.identity.PartyAndCertificate
+import java.util.concurrent.ConcurrentHashMap
+import javax.annotation.concurrent.ThreadSafe
+
+/**
+ * An in-memory index of identities by the hash of their key, of key hashes by X.500 name, and of X.500 names by their
+ * components. Reads take no locks: identities are held in a concurrent map, and the name indexes, which only change when
+ * a new name is seen, are immutable maps that are copied and replaced on write.
+ */
+@ThreadSafe
+internal class IdentityIndex(identities: Sequence<Pair<SecureHash, PartyAndCertificate>>,
+                             names: Sequence<Pair<CordaX500Name, SecureHash>>) {
+    private class Names(val keysByName: Map<CordaX500Name, SecureHash>, val namesByComponent: Map<String, Set<CordaX500Name>>)
+
+    companion object {
+        private fun CordaX500Name.components(): List<String> = listOfNotNull(commonName, organisationUnit, organisation, locality, state, country)
+    }
+
+    private val identitiesByKey = ConcurrentHashMap<SecureHash, PartyAndCertificate>()
+    @Volatile
+    private var names: Names
+
+    init {
+        identities.forEach { (key, identity) -> identitiesByKey.putIfAbsent(key, identity) }
+        val keysByName = LinkedHashMap<CordaX500Name, SecureHash>()
+        val namesByComponent = HashMap<String, MutableSet<CordaX500Name>>()
+        names.forEach { (name, key) ->
+            if (keysByName.putIfAbsent(name, key) == null) {
+                name.components().forEach { namesByComponent.getOrPut(it) { LinkedHashSet() } += name }
+            }
+        }
+        this.names = Names(keysByName, namesByComponent)
+    }
+
+    operator fun get(key: SecureHash): PartyAndCertificate? = identitiesByKey[key]
+
+    /** Returns the identity that was registered first with [name], which is its well known identity. */
+    fun wellKnownIdentity(name: CordaX500Name): PartyAndCertificate? = names.keysByName[name]?.let { identitiesByKey[it] }
+
+    val allIdentities: Collection<PartyAndCertificate> get() = identitiesByKey.values
+
+    /**
+     * Returns the names which have [query] as one of their components if [exactMatch] is set, or else all names, as
+     * candidates for a fuzzy match.
+     */
+    fun candidateNames(query: String, exactMatch: Boolean): Collection<CordaX500Name> {
+        val current = names
+        return if (exactMatch) current.namesByComponent[query] ?: emptySet() else current.keysByName.keys
+    }
+
+    /** Adds [identity] under [key], returning false if there already was an identity for the key. */
+    fun addIdentity(key: SecureHash, identity: PartyAndCertificate): Boolean = identitiesByKey.putIfAbsent(key, identity) == null
+
+    fun removeIdentity(key: SecureHash) {
+        identitiesByKey.remove(key)
+    }
+
+    /** Maps [name] to [key] unless it is mapped already, returning whether it was added. */
+    @Synchronized
+    fun addName(name: CordaX500Name, key: SecureHash): Boolean {
+        val current = names
+        if (name in current.keysByName) return false
+        val namesByComponent = HashMap(current.namesByComponent)
+        name.components().forEach { namesByComponent[it] = (namesByComponent[it] ?: emptySet()) + name }
+        names = Names(current.keysByName + (name to key), namesByComponent)
+        return true
+    }
+
+    @Synchronized
+    fun removeName(name: CordaX500Name) {
+        val current = names
+        if (name !in current.keysByName) return
+        val namesByComponent = HashMap(current.namesByComponent)
+        name.components().forEach { component ->
+            val remaining = (namesByComponent[component] ?: emptySet()) - name
+            if (remaining.isEmpty()) namesByComponent.remove(component) else namesByComponent[component] = remaining
+        }
+        names = Names(current.keysByName - name, namesByComponent)
+    }
+}
@@ -3,7 +3,6 @@ package net.corda.node.services.identity
 import net.corda.core.crypto.SecureHash
 import net.corda.core.identity.*
 import net.corda.core.internal.hash
-import net.corda.core.node.services.UnknownAnonymousPartyException
 import net.corda.core.serialization.SingletonSerializeAsToken
 import net.corda.core.utilities.MAX_HASH_HEX_SIZE
 import net.corda.core.utilities.contextLogger
@@ -14,6 +13,7 @@ import net.corda.nodeapi.internal.crypto.X509CertificateFactory
 import net.corda.nodeapi.internal.crypto.x509Certificates
 import net.corda.nodeapi.internal.persistence.CordaPersistence
 import net.corda.nodeapi.internal.persistence.NODE_DATABASE_PREFIX
+import net.corda.nodeapi.internal.persistence.contextTransaction
 import org.apache.commons.lang.ArrayUtils.EMPTY_BYTE_ARRAY
 import java.security.InvalidAlgorithmParameterException
 import java.security.PublicKey
@@ -26,7 +26,8 @@ import javax.persistence.Lob
 
 /**
  * An identity service that stores parties and their identities to a key value tables in the database. The entries are
- * cached for efficient lookup.
+ * also held in an in-memory [IdentityIndex], loaded on first use, so that lookups need neither a database transaction
+ * nor a lock.
  *
  * @param trustRoot certificate from the zone operator for identity on the network.
  * @param caCertificates list of additional certificates.
@@ -99,6 +100,10 @@ class PersistentIdentityService(override val trustRoot: X509Certificate,
     private val keyToParties = createPKMap()
     private val principalToParties = createX500Map()
 
+    private val index: IdentityIndex by lazy {
+        database.transaction { IdentityIndex(keyToParties.allPersisted(), principalToParties.allPersisted()) }
+    }
+
     init {
         val caCertificatesWithRoot: Set<X509Certificate> = caCertificates.toSet() + trustRoot
         caCertStore = CertStore.getInstance("Collection", CollectionCertStoreParameters(caCertificatesWithRoot))
@@ -109,11 +114,16 @@ class PersistentIdentityService(override val trustRoot: X509Certificate,
         database.transaction {
             identities.forEach {
                 val key = mapToKey(it)
+                addToIndex(key, it)
                 keyToParties.addWithDuplicatesAllowed(key, it, false)
                 principalToParties.addWithDuplicatesAllowed(it.name, key, false)
             }
             confidentialIdentities.forEach {
-                principalToParties.addWithDuplicatesAllowed(it.name, mapToKey(it), false)
+                val key = mapToKey(it)
+                if (index.addName(it.name, key)) {
+                    contextTransaction.onRollback { index.removeName(it.name) }
+                }
+                principalToParties.addWithDuplicatesAllowed(it.name, key, false)
             }
             log.debug("Identities loaded")
         }
@@ -130,42 +140,43 @@ class PersistentIdentityService(override val trustRoot: X509Certificate,
         val identityCertChain = identity.certPath.x509Certificates
         log.debug { "Registering identity $identity" }
         val key = mapToKey(identity)
+        addToIndex(key, identity)
         keyToParties.addWithDuplicatesAllowed(key, identity)
         // Always keep the first party we registered, as that's the well known identity
         principalToParties.addWithDuplicatesAllowed(identity.name, key, false)
         val parentId = mapToKey(identityCertChain[1].publicKey)
-        return keyToParties[parentId]
+        return index[parentId]
     }
 
-    override fun certificateFromKey(owningKey: PublicKey): PartyAndCertificate? = database.transaction { keyToParties[mapToKey(owningKey)] }
-
-    private fun certificateFromCordaX500Name(name: CordaX500Name): PartyAndCertificate? {
-        return database.transaction {
-            val partyId = principalToParties[name]
-            if (partyId != null) {
-                keyToParties[partyId]
-            } else null
+    /**
+     * Adds the identity to the index straight away, so that the registering transaction can look it up, and takes it out
+     * again if that transaction rolls back. This must happen before the identity is written to the database, otherwise
+     * loading the index could pick up the uncommitted write and the rollback would leave it behind.
+     */
+    private fun addToIndex(key: SecureHash, identity: PartyAndCertificate) {
+        val addedIdentity = index.addIdentity(key, identity)
+        val addedName = index.addName(identity.name, key)
+        if (addedIdentity || addedName) {
+            contextTransaction.onRollback {
+                if (addedIdentity) index.removeIdentity(key)
+                if (addedName) index.removeName(identity.name)
+            }
         }
     }
 
-    // We give the caller a copy of the data set to avoid any locking problems
-    override fun getAllIdentities(): Iterable<PartyAndCertificate> = database.transaction { keyToParties.allPersisted().map { it.second }.asIterable() }
+    override fun certificateFromKey(owningKey: PublicKey): PartyAndCertificate? = index[mapToKey(owningKey)]
 
-    override fun wellKnownPartyFromX500Name(name: CordaX500Name): Party? = certificateFromCordaX500Name(name)?.party
+    // We give the caller a copy of the data set to avoid any locking problems
+    override fun getAllIdentities(): Iterable<PartyAndCertificate> = index.allIdentities.toList()
 
-    override fun wellKnownPartyFromAnonymous(party: AbstractParty): Party? = database.transaction { super.wellKnownPartyFromAnonymous(party) }
+    override fun wellKnownPartyFromX500Name(name: CordaX500Name): Party? = index.wellKnownIdentity(name)?.party
 
     override fun partiesFromName(query: String, exactMatch: Boolean): Set<Party> {
-        return database.transaction {
-            val results = LinkedHashSet<Party>()
-            for ((x500name, partyId) in principalToParties.allPersisted()) {
-                partiesFromName(query, exactMatch, x500name, results, keyToParties[partyId]!!.party)
-            }
-            results
+        val results = LinkedHashSet<Party>()
+        for (x500name in index.candidateNames(query, exactMatch)) {
+            val party = index.wellKnownIdentity(x500name)?.party ?: continue
+            partiesFromName(query, exactMatch, x500name, results, party)
         }
+        return results
     }
-
-    @Throws(UnknownAnonymousPartyException::class)
-    override fun assertOwnership(party: Party, anonymousParty: AnonymousParty) = database.transaction { super.assertOwnership(party, anonymousParty) }
-
 }
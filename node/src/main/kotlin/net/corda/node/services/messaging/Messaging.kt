@@ -183,6 +183,39 @@ interface DeduplicationHandler {
      * The external event for which we are trying to reduce from at-least-once delivery to exactly-once.
      */
     val externalCause: ExternalEvent
+
+    /**
+     * The [DeduplicationAcknowledger] which can run [afterDatabaseTransaction] for this handler together with others from
+     * the same source, or null if it can only be run on its own.
+     */
+    val acknowledger: DeduplicationAcknowledger? get() = null
+}
+
+/**
+ * Runs [DeduplicationHandler.afterDatabaseTransaction] for many handlers at once. For messaging this acknowledges all their
+ * messages together.
+ */
+interface DeduplicationAcknowledger {
+    /** Runs [DeduplicationHandler.afterDatabaseTransaction] for each of [handlers], all of which have this acknowledger. */
+    fun afterDatabaseTransaction(handlers: List<DeduplicationHandler>)
+}
+
+/**
+ * Runs [DeduplicationHandler.afterDatabaseTransaction] for each of these handlers, handing those which share a
+ * [DeduplicationHandler.acknowledger] to it together.
+ */
+fun List<DeduplicationHandler>.afterDatabaseTransaction() {
+    if (size == 1) {
+        single().afterDatabaseTransaction()
+        return
+    }
+    groupBy { it.acknowledger }.forEach { acknowledger, handlers ->
+        if (acknowledger != null) {
+            acknowledger.afterDatabaseTransaction(handlers)
+        } else {
+            handlers.forEach { it.afterDatabaseTransaction() }
+        }
+    }
 }
 
 typealias MessageHandler = (ReceivedMessage, MessageHandlerRegistration, DeduplicationHandler) -> Unit
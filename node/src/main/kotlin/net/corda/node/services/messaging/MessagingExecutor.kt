@@ -1,28 +1,55 @@
 package net.corda.node.services.messaging
 
+import co.paralleluniverse.fibers.Suspendable
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.MetricRegistry
+import net.corda.core.concurrent.CordaFuture
 import net.corda.core.messaging.MessageRecipients
 import net.corda.core.utilities.contextLogger
 import net.corda.core.utilities.debug
+import net.corda.core.utilities.getOrThrow
 import net.corda.core.utilities.trace
 import net.corda.node.VersionInfo
 import net.corda.node.services.statemachine.FlowMessagingImpl
 import net.corda.nodeapi.internal.ArtemisMessagingComponent.Companion.P2PMessagingHeaders
+import org.apache.activemq.artemis.api.core.ActiveMQBuffer
+import org.apache.activemq.artemis.api.core.ActiveMQDuplicateIdException
+import org.apache.activemq.artemis.api.core.ActiveMQException
 import org.apache.activemq.artemis.api.core.SimpleString
 import org.apache.activemq.artemis.api.core.client.ClientMessage
 import org.apache.activemq.artemis.api.core.client.ClientProducer
 import org.apache.activemq.artemis.api.core.client.ClientSession
+import java.io.OutputStream
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.ExecutionException
 import java.util.concurrent.atomic.AtomicLong
+import kotlin.concurrent.thread
+import co.paralleluniverse.strands.SettableFuture as QuasarSettableFuture
 
 interface AddressToArtemisQueueResolver {
     /**
      * Resolves a [MessageRecipients] to an Artemis queue name, creating the underlying queue if needed.
      */
     fun resolveTargetToArtemisQueue(address: MessageRecipients): String
+
+    /**
+     * Resolves a [MessageRecipients] to an Artemis queue name without blocking. The returned future is already done if the
+     * queue is known to exist, and otherwise completes once the queue has been created in the background.
+     */
+    fun resolveTargetToArtemisQueueAsync(address: MessageRecipients): CordaFuture<String>
 }
 
 /**
- * The [MessagingExecutor] is responsible for handling send and acknowledge jobs. It batches them using a bounded
- * blocking queue, submits the jobs asynchronously and then waits for them to flush using [ClientSession.commit].
+ * The [MessagingExecutor] is responsible for handling send and acknowledge jobs. Sends are put on a bounded blocking
+ * queue and taken off it in batches by a single thread, which sends each message of a batch on a transacted session
+ * and then waits for them to flush using [ClientSession.commit]. A sender is only woken up once the commit of its
+ * message has returned, by which time the message is durable on the broker. Messages are sent in the order they were
+ * enqueued, so messages to the same destination are never reordered.
+ *
+ * Messages to a destination whose queue does not exist yet are parked while the queue is created in the background, so
+ * that they don't hold up the rest of the batch. They are sent, still in order, once the queue is ready.
+ *
  * Note that even though we buffer in theory this shouldn't increase latency as the executor is immediately woken up if
  * it was waiting. The number of jobs in the queue is only ever greater than 1 if the commit takes a long time.
  */
@@ -31,26 +58,84 @@ class MessagingExecutor(
         val producer: ClientProducer,
         val versionInfo: VersionInfo,
         val resolver: AddressToArtemisQueueResolver,
-        val ourSenderUUID: String
+        metricRegistry: MetricRegistry,
+        val ourSenderUUID: String,
+        queueBound: Int = DEFAULT_QUEUE_BOUND
 ) {
+    private sealed class Job {
+        class Send(val message: Message, val target: MessageRecipients, val sentFuture: QuasarSettableFuture<Unit>) : Job() {
+            /** The queue of [target], once it is known to exist. */
+            var queueName: String? = null
+
+            override fun toString() = "Send(${message.uniqueMessageId}, target=$target)"
+        }
+
+        class Unpark(val target: MessageRecipients, val queueName: CordaFuture<String>) : Job() {
+            override fun toString() = "Unpark(target=$target)"
+        }
+
+        /** Wakes the executor thread up to look at [unparks]. */
+        object Wakeup : Job() {
+            override fun toString() = "Wakeup"
+        }
+
+        object Shutdown : Job() {
+            override fun toString() = "Shutdown"
+        }
+    }
+
+    private val queue = ArrayBlockingQueue<Job>(queueBound)
+    /**
+     * Targets whose queue has been created. These are kept apart from [queue] because the callback adding them may run
+     * on the executor thread, which must never block on its own full queue.
+     */
+    private val unparks = ConcurrentLinkedQueue<Job.Unpark>()
+    private var executor: Thread? = null
+    /** Sends waiting for the queue of their target to be created. Only accessed by the executor thread. */
+    private val parked = HashMap<MessageRecipients, MutableList<Job.Send>>()
     private val cordaVendor = SimpleString(versionInfo.vendor)
     private val releaseVersion = SimpleString(versionInfo.releaseVersion)
     private val ourSenderSeqNo = AtomicLong()
+    private val sendLatencyMetric = metricRegistry.timer("P2P.SendLatency")
+    private val sendBatchSizeMetric = metricRegistry.histogram("P2P.SendBatchSize")
+
+    init {
+        // A restarted messaging client reports to the same registry as before.
+        metricRegistry.remove("P2P.SendQueueDepth")
+        metricRegistry.register("P2P.SendQueueDepth", Gauge<Int> { queue.size })
+    }
 
     private companion object {
         val log = contextLogger()
         val amqDelayMillis = System.getProperty("amq.delivery.delay.ms", "0").toInt()
+        const val DEFAULT_QUEUE_BOUND = 1024
     }
 
-    @Synchronized
+    /**
+     * Submits a send job of [message] to [target] and waits until the message is durable on the broker. This call may
+     * yield the fiber.
+     */
+    @Suspendable
     fun send(message: Message, target: MessageRecipients) {
-        val mqAddress = resolver.resolveTargetToArtemisQueue(target)
-        val artemisMessage = cordaToArtemisMessage(message)
-        log.trace {
-            "Send to: $mqAddress topic: ${message.topic} " +
-                    "sessionID: ${message.topic} id: ${message.uniqueMessageId}"
+        send(listOf(Pair(message, target)))
+    }
+
+    /**
+     * Submits a send job for each of [messages] at once, so that they can all go in the same batch, and waits until
+     * every one of them is durable on the broker. This call may yield the fiber.
+     */
+    @Suspendable
+    fun send(messages: List<Pair<Message, MessageRecipients>>) {
+        val timer = sendLatencyMetric.time()
+        try {
+            val jobs = messages.map { (message, target) -> Job.Send(message, target, QuasarSettableFuture()) }
+            jobs.forEach { queue.put(it) }
+            jobs.forEach { it.sentFuture.get() }
+        } catch (e: ExecutionException) {
+            throw e.cause ?: e
+        } finally {
+            timer.stop()
         }
-        producer.send(SimpleString(mqAddress), artemisMessage)
     }
 
     @Synchronized
@@ -62,13 +147,153 @@ class MessagingExecutor(
         message.individualAcknowledge()
     }
 
+    /** Acknowledges each of [messages], taking the lock only once. */
+    @Synchronized
+    fun acknowledge(messages: List<ClientMessage>) {
+        messages.forEach { acknowledge(it) }
+    }
+
+    fun start() {
+        require(executor == null) { "start can't be called twice" }
+        executor = thread(name = "Messaging executor", isDaemon = true) {
+            val batch = ArrayList<Job>()
+            while (true) {
+                batch += queue.take() // Block until at least one job is available.
+                queue.drainTo(batch)
+                val shutdown = Job.Shutdown in batch
+                val sends = ArrayList<Job.Send>()
+                for (job in batch) {
+                    if (job is Job.Send) route(job, sends)
+                }
+                // After routing the batch, so that any of its sends to a target being unparked go after the parked ones.
+                while (true) {
+                    unpark(unparks.poll() ?: break, sends)
+                }
+                if (shutdown) {
+                    // Anything still parked is sent now, waiting for its queue to be created.
+                    parked.values.forEach { sends += it }
+                    parked.clear()
+                }
+                sendBatchSizeMetric.update(sends.size)
+                try {
+                    // Try to send the whole batch in one commit.
+                    sendTransactional(sends)
+                } catch (e: Exception) {
+                    // Roll back and send the messages one at a time instead, so that a failure only fails its own send.
+                    // The exception is raised to the sender, which will not have sent anything which depends on it.
+                    log.warn("Exception while sending a batch of ${sends.size} messages, falling back to sending one at a time", e)
+                    rollback()
+                    sends.forEach { sendOne(it) }
+                }
+                batch.clear()
+                if (shutdown) return@thread
+            }
+        }
+    }
+
+    /** Sends everything queued before this call, then stops the executor thread. */
+    fun close() {
+        val executor = this.executor ?: return
+        queue.put(Job.Shutdown)
+        executor.join()
+        this.executor = null
+    }
+
+    /**
+     * Adds [job] to [sends] if the queue of its target is known to exist. Otherwise the job is parked until the queue is
+     * ready, as is any later job to the same target so that they stay in order.
+     */
+    private fun route(job: Job.Send, sends: MutableList<Job.Send>) {
+        val waiting = parked[job.target]
+        if (waiting != null) {
+            waiting += job
+            return
+        }
+        val queueName = try {
+            resolver.resolveTargetToArtemisQueueAsync(job.target)
+        } catch (e: Exception) {
+            job.sentFuture.setException(e)
+            return
+        }
+        if (queueName.isDone) {
+            ready(listOf(job), queueName, sends)
+        } else {
+            log.debug { "Parking messages to ${job.target} until its queue is created" }
+            parked[job.target] = mutableListOf(job)
+            queueName.then {
+                unparks += Job.Unpark(job.target, it)
+                // If the queue is full then the executor thread is busy anyway, and will see the unpark once it gets to it.
+                queue.offer(Job.Wakeup)
+            }
+        }
+    }
+
+    private fun unpark(job: Job.Unpark, sends: MutableList<Job.Send>) {
+        val jobs = parked.remove(job.target) ?: return
+        ready(jobs, job.queueName, sends)
+    }
+
+    private fun ready(jobs: List<Job.Send>, queueName: CordaFuture<String>, sends: MutableList<Job.Send>) {
+        try {
+            val name = queueName.getOrThrow()
+            jobs.forEach { it.queueName = name }
+            sends += jobs
+        } catch (e: Exception) {
+            log.error("Unable to create the queue of ${jobs.first().target}", e)
+            jobs.forEach { it.sentFuture.setException(e) }
+        }
+    }
+
+    private fun sendTransactional(sends: List<Job.Send>) {
+        if (sends.isEmpty()) return
+        sends.forEach { sendJob(it) }
+        session.commit()
+        sends.forEach { it.sentFuture.set(Unit) }
+    }
+
+    private fun sendOne(job: Job.Send) {
+        try {
+            sendJob(job)
+            session.commit()
+            job.sentFuture.set(Unit)
+        } catch (e: ActiveMQDuplicateIdException) {
+            // The broker already has this message from before a restart.
+            log.warn("Message duplication", e)
+            rollback()
+            job.sentFuture.set(Unit)
+        } catch (e: Throwable) {
+            log.error("Exception while sending $job, disregarding", e)
+            rollback()
+            job.sentFuture.setException(e)
+        }
+    }
+
+    private fun rollback() {
+        try {
+            session.rollback()
+        } catch (e: ActiveMQException) {
+            log.warn("Unable to roll back the messaging session", e)
+        }
+    }
+
+    private fun sendJob(job: Job.Send) {
+        val mqAddress = job.queueName ?: resolver.resolveTargetToArtemisQueue(job.target)
+        val artemisMessage = cordaToArtemisMessage(job.message)
+        log.trace {
+            "Send to: $mqAddress topic: ${job.message.topic} " +
+                    "sessionID: ${job.message.topic} id: ${job.message.uniqueMessageId}"
+        }
+        producer.send(SimpleString(mqAddress), artemisMessage)
+    }
+
     internal fun cordaToArtemisMessage(message: Message): ClientMessage? {
         return session.createMessage(true).apply {
             putStringProperty(P2PMessagingHeaders.cordaVendorProperty, cordaVendor)
             putStringProperty(P2PMessagingHeaders.releaseVersionProperty, releaseVersion)
             putIntProperty(P2PMessagingHeaders.platformVersionProperty, versionInfo.platformVersion)
             putStringProperty(P2PMessagingHeaders.topicProperty, SimpleString(message.topic))
-            writeBodyBufferBytes(message.data.bytes)
+            // Written straight from the message's bytes, as ByteSequence.bytes may make a copy of them.
+            message.data.writeTo(BodyBufferOutputStream(bodyBuffer))
             // Use the magic deduplication property built into Artemis as our message identity too
             putStringProperty(org.apache.activemq.artemis.api.core.Message.HDR_DUPLICATE_DETECTION_ID, SimpleString(message.uniqueMessageId.toString))
             // If we are the sender (ie. we are not going through recovery of some sort), use sequence number short cut.
@@ -84,3 +309,8 @@ class MessagingExecutor(
         }
     }
 }
+
+private class BodyBufferOutputStream(private val buffer: ActiveMQBuffer) : OutputStream() {
+    override fun write(b: Int) = buffer.writeByte(b.toByte())
+    override fun write(b: ByteArray, off: Int, len: Int) = buffer.writeBytes(b, off, len)
+}
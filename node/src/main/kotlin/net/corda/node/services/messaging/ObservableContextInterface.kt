@@ -18,4 +18,6 @@ interface ObservableContextInterface {
     val clientAddressToObservables: ConcurrentHashMap<SimpleString, HashSet<Trace.InvocationId>>
     val deduplicationIdentity: String
     val clientAddress: SimpleString
+    /** The flow control of the Observables in this context, or null if the client does not grant credits. */
+    val observationFlowControl: ObservationFlowControl? get() = null
 }
\ No newline at end of file
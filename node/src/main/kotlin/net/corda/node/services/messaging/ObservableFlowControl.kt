@@ -0,0 +1,133 @@
+package net.corda.node.services.messaging
+
+import rx.Notification
+import java.time.Duration
+import java.util.*
+
+/**
+ * What the RPC server does with the observations of an Observable whose client has run out of credits.
+ */
+sealed class ObservableBackpressurePolicy {
+    /**
+     * Buffer up to [ObservableFlowControlConfiguration.bufferSize] observations and drop any further ones. The next
+     * observation the client receives carries the number of observations dropped before it.
+     */
+    object Drop : ObservableBackpressurePolicy()
+
+    /** Keep only the latest observation. */
+    object Conflate : ObservableBackpressurePolicy()
+
+    /** Emit at most the latest observation per [interval], conflating while the client has no credits. */
+    data class Sample(val interval: Duration) : ObservableBackpressurePolicy()
+}
+
+/**
+ * Configures the server side flow control of RPC Observables. It only applies to clients that grant credits, see
+ * [net.corda.client.rpc.CordaRPCClientConfiguration.observationCreditWindow].
+ *
+ * @property bufferSize the maximum number of observations buffered per Observable.
+ * @property defaultPolicy the policy for Observables returned by RPCs not listed in [policies].
+ * @property policies policies keyed by the name of the RPC whose reply contains the Observable, e.g. `vaultTrackBy`.
+ * Observables nested in observations get the policy of the RPC they are rooted in.
+ */
+data class ObservableFlowControlConfiguration(
+        val bufferSize: Int = 1024,
+        val defaultPolicy: ObservableBackpressurePolicy = ObservableBackpressurePolicy.Drop,
+        val policies: Map<String, ObservableBackpressurePolicy> = emptyMap()
+) {
+    init {
+        require(bufferSize > 0) { "bufferSize must be positive" }
+    }
+
+    fun policyFor(methodName: String): ObservableBackpressurePolicy = policies[methodName] ?: defaultPolicy
+}
+
+/**
+ * The flow control settings of the Observables rooted in a single RPC.
+ *
+ * @property initialCredits the number of observations that may be sent per Observable before the client grants more.
+ * @property onDiscarded called with the number of observations dropped or conflated away.
+ */
+class ObservationFlowControl(
+        val initialCredits: Int,
+        val bufferSize: Int,
+        val policy: ObservableBackpressurePolicy,
+        val onDiscarded: (Int) -> Unit = {}
+)
+
+/**
+ * Sends the observations of a single Observable as the client grants credits, holding the others in a bounded buffer
+ * according to [ObservationFlowControl.policy]. Terminal notifications need no credit, but are never sent ahead of
+ * buffered observations.
+ *
+ * [send] is called with the notification and the number of observations dropped immediately before it.
+ */
+class CreditedObservationSender(
+        private val flowControl: ObservationFlowControl,
+        private val send: (Notification<*>, Int) -> Unit
+) {
+    private class Pending(val notification: Notification<*>, val droppedBefore: Int)
+
+    private var credits = flowControl.initialCredits
+    private val buffer = ArrayDeque<Pending>()
+    private var terminal: Pending? = null
+    private var dropped = 0
+
+    @Synchronized
+    fun onNotification(notification: Notification<*>) {
+        val pending = Pending(notification, dropped)
+        if (!notification.isOnNext) {
+            dropped = 0
+            terminal = pending
+        } else if (credits > 0 && buffer.isEmpty()) {
+            dropped = 0
+            credits--
+            send(notification, pending.droppedBefore)
+            return
+        } else {
+            bufferObservation(pending)
+        }
+        drain()
+    }
+
+    @Synchronized
+    fun grant(credits: Int) {
+        this.credits += credits
+        drain()
+    }
+
+    private fun bufferObservation(pending: Pending) {
+        when (flowControl.policy) {
+            ObservableBackpressurePolicy.Drop -> {
+                if (buffer.size < flowControl.bufferSize) {
+                    dropped = 0
+                    buffer.add(pending)
+                } else {
+                    dropped++
+                    flowControl.onDiscarded(1)
+                }
+            }
+            ObservableBackpressurePolicy.Conflate, is ObservableBackpressurePolicy.Sample -> {
+                if (buffer.isNotEmpty()) {
+                    flowControl.onDiscarded(buffer.size)
+                    buffer.clear()
+                }
+                buffer.add(pending)
+            }
+        }
+    }
+
+    private fun drain() {
+        while (credits > 0 && buffer.isNotEmpty()) {
+            credits--
+            val pending = buffer.poll()
+            send(pending.notification, pending.droppedBefore)
+        }
+        if (buffer.isEmpty()) {
+            terminal?.let {
+                terminal = null
+                send(it.notification, it.droppedBefore)
+            }
+        }
+    }
+}
@@ -39,21 +39,25 @@ class P2PMessageDeduplicator(private val database: CordaPersistence) {
         )
     }
 
-    private fun isDuplicateInDatabase(msg: ReceivedMessage): Boolean = database.transaction { msg.uniqueMessageId in processedMessages }
-
     // We need to incorporate the sending party, and the sessionInit flag as per the in-memory cache.
     private fun senderHash(senderKey: SenderKey) = SecureHash.sha256(senderKey.peer.toString() + senderKey.isSessionInit.toString() + senderKey.senderUUID).toString()
 
     /**
-     * @return true if we have seen this message before.
+     * @return the IDs of those of [msgs] which we have seen before, looking up any which are not being processed in a
+     * single database transaction.
      */
-    fun isDuplicate(msg: ReceivedMessage): Boolean {
-        if (beingProcessedMessages.containsKey(msg.uniqueMessageId)) {
-            return true
-        }
-        return isDuplicateInDatabase(msg)
+    fun duplicates(msgs: List<ReceivedMessage>): Set<DeduplicationId> {
+        val duplicates = msgs.mapNotNullTo(HashSet()) { msg -> msg.uniqueMessageId.takeIf { beingProcessedMessages.containsKey(it) } }
+        val unknown = msgs.filter { it.uniqueMessageId !in duplicates }
+        if (unknown.isEmpty()) return duplicates
+        return database.transaction { unknown.mapNotNullTo(duplicates) { msg -> msg.uniqueMessageId.takeIf { it in processedMessages } } }
     }
 
+    /**
+     * @return true if [msg] is being processed, but its ID has not been persisted yet.
+     */
+    fun isBeingProcessed(msg: ReceivedMessage): Boolean = beingProcessedMessages.containsKey(msg.uniqueMessageId)
+
     /**
      * Called the first time we encounter [deduplicationId].
      */
@@ -1,9 +1,14 @@
 package net.corda.node.services.messaging
 
 import co.paralleluniverse.fibers.Suspendable
+import com.codahale.metrics.MetricRegistry
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import net.corda.core.concurrent.CordaFuture
 import net.corda.core.crypto.toStringShort
 import net.corda.core.identity.CordaX500Name
 import net.corda.core.internal.ThreadBox
+import net.corda.core.internal.concurrent.doneFuture
+import net.corda.core.internal.concurrent.openFuture
 import net.corda.core.messaging.CordaRPCOps
 import net.corda.core.messaging.MessageRecipients
 import net.corda.core.messaging.SingleMessageRecipient
@@ -51,8 +56,12 @@ import rx.subjects.PublishSubject
 import java.security.PublicKey
 import java.time.Instant
 import java.util.*
+import java.util.concurrent.ArrayBlockingQueue
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
 import javax.annotation.concurrent.ThreadSafe
 
 /**
@@ -60,9 +69,15 @@ import javax.annotation.concurrent.ThreadSafe
  * Artemis is a message queue broker and here we run a client connecting to the specified broker instance
  * [ArtemisMessagingServer]. It's primarily concerned with peer-to-peer messaging.
  *
- * Message handlers are run on the provided [AffinityExecutor] synchronously, that is, the Artemis callback threads
- * are blocked until the handler is scheduled and completed. This allows backpressure to propagate from the given
- * executor through into Artemis and from there, back through to senders.
+ * Received messages are queued to the thread calling [run], which checks them for duplicates and hands them to their
+ * handlers in batches. The queue is bounded, so that the Artemis callback threads are blocked while the handlers fall
+ * behind. This allows backpressure to propagate from the handlers through into Artemis and from there, back through to
+ * senders.
+ *
+ * The queue of a peer is created, and its bridge deployed, the first time a message is sent to it. This is done on a
+ * background thread, while the messaging executor holds back the messages to that peer, so that senders to other peers
+ * are not held up. The bridge addresses of peers are looked up in the network map in the background when the client
+ * starts, rather than when the first message is sent to each of them.
  *
  * An implementation of [CordaRPCOps] can be provided. If given, clients using the CordaMQClient RPC library can
  * invoke methods on the provided implementation. There is more documentation on this in the docsite and the
@@ -79,6 +94,7 @@ import javax.annotation.concurrent.ThreadSafe
  * @param advertisedAddress The externally advertised version of the Artemis broker address used to construct myAddress and included
  * in the network map data.
  * @param maxMessageSize A bound applied to the message size.
+ * @param metricRegistry The registry to which the latency and batching of sent messages are reported.
  */
 @ThreadSafe
 class P2PMessagingClient(val config: NodeConfiguration,
@@ -92,10 +108,12 @@ class P2PMessagingClient(val config: NodeConfiguration,
                          advertisedAddress: NetworkHostAndPort = serverAddress,
                          private val maxMessageSize: Int,
                          private val isDrainingModeOn: () -> Boolean,
-                         private val drainingModeWasChangedEvents: Observable<Pair<Boolean, Boolean>>
+                         private val drainingModeWasChangedEvents: Observable<Pair<Boolean, Boolean>>,
+                         private val metricRegistry: MetricRegistry = MetricRegistry()
 ) : SingletonSerializeAsToken(), MessagingService, AddressToArtemisQueueResolver, AutoCloseable {
     companion object {
         private val log = contextLogger()
+        private const val MAX_INBOUND_BATCH_SIZE = 256
 
         class NodeClientMessage(override val topic: String, override val data: ByteSequence, override val uniqueMessageId: DeduplicationId, override val senderUUID: String?, override val additionalHeaders: Map<String, String>) : Message {
             override val debugTimestamp: Instant = Instant.now()
@@ -111,9 +129,11 @@ class P2PMessagingClient(val config: NodeConfiguration,
         var locator: ServerLocator? = null
         var producer: ClientProducer? = null
         var producerSession: ClientSession? = null
+        var sendSession: ClientSession? = null
         var bridgeSession: ClientSession? = null
         var bridgeNotifyConsumer: ClientConsumer? = null
         var networkChangeSubscription: Subscription? = null
+        var queueCreator: ExecutorService? = null
 
         fun sendMessage(address: String, message: ClientMessage) = producer!!.send(address, message)
     }
@@ -127,10 +147,36 @@ class P2PMessagingClient(val config: NodeConfiguration,
     private val state = ThreadBox(InnerState())
     private val knownQueues = Collections.newSetFromMap(ConcurrentHashMap<String, Boolean>())
     private val delayStartQueues = Collections.newSetFromMap(ConcurrentHashMap<String, Boolean>())
+    /** Queues being created in the background, by name. */
+    private val pendingQueues = ConcurrentHashMap<String, CordaFuture<String>>()
+    /** The bridges to the peers of each peer queue, as found in the network map. */
+    private val bridgeEntries = ConcurrentHashMap<String, List<BridgeEntry>>()
+    /** Counts the invalidations of [bridgeEntries], so that a lookup can tell whether its result has gone stale. */
+    private val bridgeEntriesVersion = AtomicLong()
+    /** The [bridgeEntriesVersion] at which the bridges of each peer queue were last invalidated. */
+    private val bridgeEntriesInvalidated = ConcurrentHashMap<String, Long>()
 
     private val handlers = ConcurrentHashMap<String, MessageHandler>()
 
+    private sealed class Inbound {
+        class Received(val message: ClientMessage) : Inbound()
+        object End : Inbound()
+    }
+
+    private val inbound = ArrayBlockingQueue<Inbound>(MAX_INBOUND_BATCH_SIZE * 4)
+
     private val deduplicator = P2PMessageDeduplicator(database)
+    /** Acknowledges the messages of many [MessageDeduplicationHandler]s in one call to the [messagingExecutor]. */
+    private val messageAcknowledger = object : DeduplicationAcknowledger {
+        override fun afterDatabaseTransaction(handlers: List<DeduplicationHandler>) {
+            val messages = handlers.map { handler ->
+                handler as MessageDeduplicationHandler
+                deduplicator.signalMessageProcessFinish(handler.receivedMessage.uniqueMessageId)
+                handler.artemisMessage
+            }
+            messagingExecutor!!.acknowledge(messages)
+        }
+    }
     internal var messagingExecutor: MessagingExecutor? = null
 
     fun start() {
@@ -173,17 +219,68 @@ class P2PMessagingClient(val config: NodeConfiguration,
 
             p2pConsumer = P2PMessagingConsumer(inboxes, createNewSession, isDrainingModeOn, drainingModeWasChangedEvents)
 
+            // Messages to peers are sent on a transacted session of their own, so that the messaging executor can commit
+            // them in batches.
+            sendSession = sessionFactory.createSession(ArtemisMessagingComponent.NODE_P2P_USER, ArtemisMessagingComponent.NODE_P2P_USER, false, false, true, false, ActiveMQClient.DEFAULT_ACK_BATCH_SIZE)
+            sendSession!!.start()
             messagingExecutor = MessagingExecutor(
-                    producerSession!!,
-                    producer!!,
+                    sendSession!!,
+                    sendSession!!.createProducer(),
                     versionInfo,
                     this@P2PMessagingClient,
+                    metricRegistry,
                     ourSenderUUID = ourSenderUUID
-            )
+            ).apply { start() }
 
+            queueCreator = Executors.newSingleThreadExecutor(ThreadFactoryBuilder().setNameFormat("p2p-queue-creator-%d").setDaemon(true).build())
             registerBridgeControl(bridgeSession!!, inboxes.toList())
             enumerateBridges(bridgeSession!!, inboxes.toList())
+            queueCreator!!.execute { cacheBridgeEntries() }
+        }
+    }
+
+    /** Looks up the bridges to every peer in the network map at once, so that sending to a peer needn't look them up. */
+    private fun cacheBridgeEntries() {
+        try {
+            val lookedUpAt = bridgeEntriesVersion.get()
+            val entries = networkMap.allNodes.flatMap { node ->
+                node.legalIdentities.filter { it.owningKey != myIdentity }.map {
+                    BridgeEntry(NodeAddress(it.owningKey, node.addresses.first()).queueName, node.addresses, node.legalIdentities.map { it.name })
+                }
+            }
+            entries.groupBy { it.queueName }.forEach { queueName, bridges -> cacheBridgeEntries(queueName, bridges, lookedUpAt) }
+            log.info("Cached the bridges to ${bridgeEntries.size} peers")
+        } catch (e: Exception) {
+            log.warn("Unable to cache the bridges to peers, they will be looked up as they are needed", e)
+        }
+    }
+
+    private fun bridgeEntriesOf(queueName: String): List<BridgeEntry> {
+        bridgeEntries[queueName]?.let { return it }
+        val lookedUpAt = bridgeEntriesVersion.get()
+        val keyHash = queueName.substring(PEERS_PREFIX.length)
+        val bridges = networkMap.getNodesByOwningKeyIndex(keyHash).map { node ->
+            BridgeEntry(queueName, node.addresses, node.legalIdentities.map { it.name })
         }
+        // A peer which isn't in the network map yet is looked up again next time.
+        if (bridges.isNotEmpty()) cacheBridgeEntries(queueName, bridges, lookedUpAt)
+        return bridges
+    }
+
+    /**
+     * Caches [bridges], which were looked up in the network map once [bridgeEntriesVersion] had reached [lookedUpAt], unless
+     * the bridges of [queueName] are already cached or have been invalidated by a network map change since then.
+     */
+    private fun cacheBridgeEntries(queueName: String, bridges: List<BridgeEntry>, lookedUpAt: Long) {
+        bridgeEntries.compute(queueName) { _, cached ->
+            cached ?: bridges.takeIf { (bridgeEntriesInvalidated[queueName] ?: 0) <= lookedUpAt }
+        }
+    }
+
+    private fun invalidateBridgeEntries(queueName: String) {
+        // Recorded before the entry is removed, so that a lookup which started earlier can't cache it again afterwards.
+        bridgeEntriesInvalidated[queueName] = bridgeEntriesVersion.incrementAndGet()
+        bridgeEntries -= queueName
     }
 
     private fun InnerState.registerBridgeControl(session: ClientSession, inboxes: List<String>) {
@@ -219,6 +316,8 @@ class P2PMessagingClient(val config: NodeConfiguration,
 
     private fun updateBridgesOnNetworkChange(change: NetworkMapCache.MapChange) {
         log.info("Updating bridges on network map change: ${change.node}")
+        val changedNodes = if (change is NetworkMapCache.MapChange.Modified) listOf(change.previousNode, change.node) else listOf(change.node)
+        changedNodes.forEach { node -> node.legalIdentities.forEach { invalidateBridgeEntries("$PEERS_PREFIX${it.owningKey.toStringShort()}") } }
         fun gatherAddresses(node: NodeInfo): Sequence<BridgeEntry> {
             return state.locked {
                 node.legalIdentitiesAndCerts.map {
@@ -259,13 +358,9 @@ class P2PMessagingClient(val config: NodeConfiguration,
     private fun enumerateBridges(session: ClientSession, inboxes: List<String>) {
         val requiredBridges = mutableListOf<BridgeEntry>()
         fun createBridgeEntry(queueName: SimpleString) {
-            val keyHash = queueName.substring(PEERS_PREFIX.length)
-            val peers = networkMap.getNodesByOwningKeyIndex(keyHash)
-            for (node in peers) {
-                val bridge = BridgeEntry(queueName.toString(), node.addresses, node.legalIdentities.map { it.name })
-                requiredBridges += bridge
-                knownQueues += queueName.toString()
-            }
+            val bridges = bridgeEntriesOf(queueName.toString())
+            requiredBridges += bridges
+            if (bridges.isNotEmpty()) knownQueues += queueName.toString()
         }
 
         val queues = session.addressQuery(SimpleString("$PEERS_PREFIX#")).queueNames
@@ -288,7 +383,6 @@ class P2PMessagingClient(val config: NodeConfiguration,
      * Starts the p2p event loop: this method only returns once [stop] has been called.
      */
     fun run() {
-        val latch = CountDownLatch(1)
         try {
             val consumer = state.locked {
                 check(started) { "start must be called first" }
@@ -298,22 +392,35 @@ class P2PMessagingClient(val config: NodeConfiguration,
                 if (p2pConsumer == null) {
                     return
                 }
+                // Messages are handed over to this thread, which delivers them in batches. The queue is bounded, so that a
+                // backlog still holds up the Artemis callback threads.
                 eventsSubscription = p2pConsumer!!.messages
                         .doOnError { error -> throw error }
-                        .doOnNext { message -> deliver(message) }
-                        // this `run()` method is semantically meant to block until the message consumption runs, hence the latch here
-                        .doOnCompleted(latch::countDown)
-                        .doOnError { error -> throw error }
+                        .doOnNext { message -> inbound.put(Inbound.Received(message)) }
+                        .doOnTerminate { inbound.put(Inbound.End) }
                         .subscribe()
                 p2pConsumer!!
             }
             consumer.start()
-            latch.await()
+            // this `run()` method is semantically meant to block until the message consumption runs, hence the loop here
+            deliverInBatches()
         } finally {
             shutdownLatch.countDown()
         }
     }
 
+    private fun deliverInBatches() {
+        val batch = ArrayList<Inbound>()
+        while (true) {
+            batch += inbound.take() // Block until at least one message is available.
+            inbound.drainTo(batch, MAX_INBOUND_BATCH_SIZE - 1)
+            val end = Inbound.End in batch
+            deliver(batch.mapNotNull { (it as? Inbound.Received)?.message })
+            batch.clear()
+            if (end) return
+        }
+    }
+
     private fun artemisToCordaMessage(message: ClientMessage): ReceivedMessage? {
         try {
             requireMessageSize(message.bodySize, maxMessageSize)
@@ -325,9 +432,11 @@ class P2PMessagingClient(val config: NodeConfiguration,
             val receivedSenderUUID = message.getStringProperty(P2PMessagingHeaders.senderUUID)
             val receivedSenderSeqNo = if (message.containsProperty(P2PMessagingHeaders.senderSeqNo)) message.getLongProperty(P2PMessagingHeaders.senderSeqNo) else null
             val isSessionInit = message.getStringProperty(P2PMessagingHeaders.Type.KEY) == P2PMessagingHeaders.Type.SESSION_INIT_VALUE
+            val sessionFraming = message.getStringProperty(P2PMessagingHeaders.SessionFraming.KEY)
+            val additionalHeaders = if (sessionFraming != null) mapOf(P2PMessagingHeaders.SessionFraming.KEY to sessionFraming) else emptyMap()
             log.trace { "Received message from: ${message.address} user: $user topic: $topic id: $uniqueMessageId senderUUID: $receivedSenderUUID senderSeqNo: $receivedSenderSeqNo isSessionInit: $isSessionInit" }
 
-            return ArtemisReceivedMessage(topic, CordaX500Name.parse(user), platformVersion, uniqueMessageId, receivedSenderUUID, receivedSenderSeqNo, isSessionInit, message)
+            return ArtemisReceivedMessage(topic, CordaX500Name.parse(user), platformVersion, uniqueMessageId, receivedSenderUUID, receivedSenderSeqNo, isSessionInit, additionalHeaders, message)
         } catch (e: Exception) {
             log.error("Unable to process message, ignoring it: $message", e)
             return null
@@ -346,23 +455,33 @@ class P2PMessagingClient(val config: NodeConfiguration,
                                          override val senderUUID: String?,
                                          override val senderSeqNo: Long?,
                                          override val isSessionInit: Boolean,
+                                         override val additionalHeaders: Map<String, String>,
                                          private val message: ClientMessage) : ReceivedMessage {
         override val data: ByteSequence by lazy { OpaqueBytes(ByteArray(message.bodySize).apply { message.bodyBuffer.readBytes(this) }) }
         override val debugTimestamp: Instant get() = Instant.ofEpochMilli(message.timestamp)
-        override val additionalHeaders: Map<String, String> = emptyMap()
         override fun toString() = "$topic#$data"
     }
 
-    internal fun deliver(artemisMessage: ClientMessage) {
-        artemisToCordaMessage(artemisMessage)?.let { cordaMessage ->
-            if (!deduplicator.isDuplicate(cordaMessage)) {
+    /**
+     * Delivers a batch of messages in the order they were received. The messages of a batch are checked for duplicates
+     * together, in a single database transaction, and the duplicates are acknowledged together.
+     */
+    internal fun deliver(artemisMessages: List<ClientMessage>) {
+        val received = artemisMessages.mapNotNull { artemisMessage -> artemisToCordaMessage(artemisMessage)?.let { Pair(it, artemisMessage) } }
+        if (received.isEmpty()) return
+        val duplicates = deduplicator.duplicates(received.map { it.first })
+        val discarded = ArrayList<ClientMessage>()
+        for ((cordaMessage, artemisMessage) in received) {
+            // Artemis may redeliver a message in the same batch, in which case only the first of them is processed.
+            if (cordaMessage.uniqueMessageId !in duplicates && !deduplicator.isBeingProcessed(cordaMessage)) {
                 deduplicator.signalMessageProcessStart(cordaMessage)
                 deliver(cordaMessage, artemisMessage)
             } else {
                 log.trace { "Discard duplicate message ${cordaMessage.uniqueMessageId} for ${cordaMessage.topic}" }
-                messagingExecutor!!.acknowledge(artemisMessage)
+                discarded += artemisMessage
             }
         }
+        if (discarded.isNotEmpty()) messagingExecutor!!.acknowledge(discarded)
     }
 
     private fun deliver(msg: ReceivedMessage, artemisMessage: ClientMessage) {
@@ -394,6 +513,9 @@ class P2PMessagingClient(val config: NodeConfiguration,
             messagingExecutor!!.acknowledge(artemisMessage)
         }
 
+        override val acknowledger: DeduplicationAcknowledger
+            get() = messageAcknowledger
+
         override fun toString(): String {
             return "${javaClass.simpleName}(${receivedMessage.uniqueMessageId})"
         }
@@ -406,6 +528,8 @@ class P2PMessagingClient(val config: NodeConfiguration,
      * it returns immediately and shutdown is asynchronous.
      */
     fun stop() {
+        // Outside the lock, as the messaging executor may need it to resolve the queue of a message still to be sent.
+        messagingExecutor?.close()
         val running = state.locked {
             // We allow stop() to be called without a run() in between, but it must have at least been started.
             check(started)
@@ -418,11 +542,16 @@ class P2PMessagingClient(val config: NodeConfiguration,
             close(p2pConsumer)
             p2pConsumer = null
 
+            close(sendSession)
+            sendSession = null
+
             close(producer)
             producer = null
             producerSession!!.commit()
 
             close(bridgeNotifyConsumer)
+            queueCreator?.shutdownNow()
+            queueCreator = null
             knownQueues.clear()
             eventsSubscription?.unsubscribe()
             eventsSubscription = null
@@ -456,9 +585,9 @@ class P2PMessagingClient(val config: NodeConfiguration,
 
     @Suspendable
     override fun send(addressedMessages: List<MessagingService.AddressedMessage>) {
-        for ((message, target, sequenceKey) in addressedMessages) {
-            send(message, target, sequenceKey)
-        }
+        addressedMessages.forEach { requireMessageSize(it.message.data.size, maxMessageSize) }
+        // Queued together so that they are committed in as few batches as possible.
+        messagingExecutor!!.send(addressedMessages.map { Pair(it.message, it.target) })
     }
 
     override fun resolveTargetToArtemisQueue(address: MessageRecipients): String {
@@ -477,13 +606,30 @@ class P2PMessagingClient(val config: NodeConfiguration,
         }
     }
 
+    override fun resolveTargetToArtemisQueueAsync(address: MessageRecipients): CordaFuture<String> {
+        if (address == myAddress) return doneFuture(RemoteInboxAddress(myIdentity).queueName)
+        val queueName = (address as? ArtemisAddress)?.queueName ?: throw IllegalArgumentException("Not an Artemis address")
+        if (queueName in knownQueues) return doneFuture(queueName)
+        val queueCreator = state.locked { queueCreator } ?: return doneFuture(resolveTargetToArtemisQueue(address))
+        return pendingQueues.computeIfAbsent(queueName) {
+            val created = openFuture<String>()
+            queueCreator.execute {
+                try {
+                    created.set(resolveTargetToArtemisQueue(address))
+                } catch (e: Exception) {
+                    created.setException(e)
+                } finally {
+                    pendingQueues -= queueName
+                }
+            }
+            created
+        }
+    }
+
     /** Attempts to create a durable queue on the broker which is bound to an address of the same name. */
     private fun createQueueIfAbsent(queueName: String, session: ClientSession, exclusive: Boolean) {
         fun sendBridgeCreateMessage() {
-            val keyHash = queueName.substring(PEERS_PREFIX.length)
-            val peers = networkMap.getNodesByOwningKeyIndex(keyHash)
-            for (node in peers) {
-                val bridge = BridgeEntry(queueName, node.addresses, node.legalIdentities.map { it.name })
+            for (bridge in bridgeEntriesOf(queueName)) {
                 val createBridgeMessage = BridgeControl.Create(myIdentity.toStringShort(), bridge)
                 sendBridgeControl(createBridgeMessage)
             }
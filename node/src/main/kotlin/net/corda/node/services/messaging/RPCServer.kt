@@ -1,6 +1,8 @@
 package net.corda.node.services.messaging
 
 import co.paralleluniverse.common.util.SameThreadExecutor
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.MetricRegistry
 import com.github.benmanes.caffeine.cache.Cache
 import com.github.benmanes.caffeine.cache.Caffeine
 import com.github.benmanes.caffeine.cache.RemovalListener
@@ -52,6 +54,7 @@ import java.lang.reflect.InvocationTargetException
 import java.lang.reflect.Method
 import java.time.Duration
 import java.util.*
+import java.util.concurrent.CompletableFuture
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.Executors
 import java.util.concurrent.LinkedBlockingQueue
@@ -68,13 +71,22 @@ data class RPCServerConfiguration(
         /** The interval of subscription reaping */
         val reapInterval: Duration,
         /** The cache expiry of a deduplication watermark per client. */
-        val deduplicationCacheExpiry: Duration
+        val deduplicationCacheExpiry: Duration,
+        /** The number of threads sending replies and observations. Each client address is pinned to one of them. */
+        val rpcSenderThreadCount: Int = 1,
+        /** The flow control of Observables for clients that grant observation credits. */
+        val observableFlowControl: ObservableFlowControlConfiguration = ObservableFlowControlConfiguration()
 ) {
+    init {
+        require(rpcSenderThreadCount > 0) { "rpcSenderThreadCount must be positive" }
+    }
+
     companion object {
         val DEFAULT = RPCServerConfiguration(
                 rpcThreadPoolSize = 4,
                 reapInterval = 1.seconds,
-                deduplicationCacheExpiry = 1.days
+                deduplicationCacheExpiry = 1.days,
+                rpcSenderThreadCount = 4
         )
     }
 }
@@ -86,6 +98,12 @@ data class RPCServerConfiguration(
  * address to forward observations arriving on the Observables.
  *
  * The way this is done is similar to that in [RPCClient], we use Kryo and add a context to stores the subscription map.
+ *
+ * Replies are serialised on the handler pool that executed the call, observations on one of
+ * [RPCServerConfiguration.rpcSenderThreadCount] sender lanes. Each client has its own queue of messages, see
+ * [RpcClientOutboxes], and a client address always maps to the same lane so the messages it receives keep their order.
+ * A lane only picks up a client once the message at the head of its queue is ready, so a large reply to one client
+ * does not hold up the others.
  */
 class RPCServer(
         private val ops: RPCOps,
@@ -94,7 +112,8 @@ class RPCServer(
         private val serverLocator: ServerLocator,
         private val securityManager: RPCSecurityManager,
         private val nodeLegalName: CordaX500Name,
-        private val rpcConfiguration: RPCServerConfiguration
+        private val rpcConfiguration: RPCServerConfiguration,
+        private val metrics: MetricRegistry = MetricRegistry()
 ) {
     private companion object {
         private val log = contextLogger()
@@ -123,21 +142,23 @@ class RPCServer(
     /** The scheduled reaper handle. */
     private var reaperScheduledFuture: ScheduledFuture<*>? = null
 
-    private var senderThread: Thread? = null
+    private var senderLanes: List<SenderLane> = emptyList()
     private var rpcExecutor: ScheduledExecutorService? = null
     private var reaperExecutor: ScheduledExecutorService? = null
 
     private var sessionFactory: ClientSessionFactory? = null
-    private var producerSession: ClientSession? = null
     private var consumerSession: ClientSession? = null
-    private var rpcProducer: ClientProducer? = null
     private var rpcConsumer: ClientConsumer? = null
     private var clientBindingRemovalConsumer: ClientConsumer? = null
     private var clientBindingAdditionConsumer: ClientConsumer? = null
     private var serverControl: ActiveMQServerControl? = null
 
     private val responseMessageBuffer = ConcurrentHashMap<SimpleString, BufferOrNone>()
-    private val sendJobQueue = LinkedBlockingQueue<RpcSendJob>()
+    private val clientOutboxes = RpcClientOutboxes<RpcSendJob>(
+            metrics,
+            isReady = { it.serialisedMessage?.isDone ?: true },
+            schedule = { senderLaneFor(it.clientAddress).schedule(it) })
+    private val discardedObservations = metrics.meter("RPCServer.Observations.Discarded")
 
     private val deduplicationChecker = DeduplicationChecker(rpcConfiguration.deduplicationCacheExpiry)
     private var deduplicationIdentity: String? = null
@@ -164,7 +185,6 @@ class RPCServer(
         try {
             lifeCycle.requireState(State.UNSTARTED)
             log.info("Starting RPC server with configuration $rpcConfiguration")
-            senderThread = startSenderThread()
             rpcExecutor = Executors.newScheduledThreadPool(
                     rpcConfiguration.rpcThreadPoolSize,
                     ThreadFactoryBuilder().setNameFormat("rpc-server-handler-pool-%d").build()
@@ -180,8 +200,8 @@ class RPCServer(
             )
 
             sessionFactory = serverLocator.createSessionFactory()
-            producerSession = sessionFactory!!.createSession(rpcServerUsername, rpcServerPassword, false, true, true, false, DEFAULT_ACK_BATCH_SIZE)
-            createRpcProducer(producerSession!!)
+            senderLanes = (0 until rpcConfiguration.rpcSenderThreadCount).map { SenderLane(it) }
+            senderLanes.forEach { it.start(sessionFactory!!) }
             consumerSession = sessionFactory!!.createSession(rpcServerUsername, rpcServerPassword, false, true, true, false, DEFAULT_ACK_BATCH_SIZE)
             createRpcConsumer(consumerSession!!)
             createNotificationConsumers(consumerSession!!)
@@ -190,7 +210,6 @@ class RPCServer(
             lifeCycle.transition(State.UNSTARTED, State.STARTED)
             // We delay the consumer session start because Artemis starts delivering messages immediately, so we need to be
             // fully initialised.
-            producerSession!!.start()
             consumerSession!!.start()
         } catch (exception: Throwable) {
             close()
@@ -198,10 +217,6 @@ class RPCServer(
         }
     }
 
-    private fun createRpcProducer(producerSession: ClientSession) {
-        rpcProducer = producerSession.createProducer()
-    }
-
     private fun createRpcConsumer(consumerSession: ClientSession) {
         rpcConsumer = consumerSession.createConsumer(RPCApi.RPC_SERVER_QUEUE_NAME)
         rpcConsumer!!.setMessageHandler(this::clientArtemisMessageHandler)
@@ -214,42 +229,8 @@ class RPCServer(
         clientBindingAdditionConsumer!!.setMessageHandler(this::bindingAdditionArtemisMessageHandler)
     }
 
-    private fun startSenderThread(): Thread {
-        return thread(name = "rpc-server-sender", isDaemon = true) {
-            var deduplicationSequenceNumber = 0L
-            while (true) {
-                val job = sendJobQueue.take()
-                when (job) {
-                    is RpcSendJob.Send -> handleSendJob(deduplicationSequenceNumber++, job)
-                    RpcSendJob.Stop -> return@thread
-                }
-            }
-        }
-    }
-
-    private fun handleSendJob(sequenceNumber: Long, job: RpcSendJob.Send) {
-        try {
-            val artemisMessage = producerSession!!.createMessage(false)
-            if (job.database != null) {
-                contextDatabase = job.database
-            }
-            // We must do the serialisation here as any encountered Observables may already have events, which would
-            // trigger more sends. We must make sure that the root of the Observables (e.g. the RPC reply) is sent
-            // before any child observations.
-            job.message.writeToClientMessage(job.serializationContext, artemisMessage)
-            artemisMessage.putLongProperty(RPCApi.DEDUPLICATION_SEQUENCE_NUMBER_FIELD_NAME, sequenceNumber)
-            rpcProducer!!.send(job.clientAddress, artemisMessage)
-            log.debug { "<- RPC <- ${job.message}" }
-        } catch (throwable: Throwable) {
-            log.error("Failed to send message, kicking client. Message was ${job.message}", throwable)
-            serverControl!!.closeConsumerConnectionsForAddress(job.clientAddress.toString())
-            invalidateClient(job.clientAddress)
-        }
-    }
-
     fun close() {
-        sendJobQueue.put(RpcSendJob.Stop)
-        senderThread?.join()
+        senderLanes.forEach { it.stop() }
         reaperScheduledFuture?.cancel(false)
         rpcExecutor?.shutdownNow()
         reaperExecutor?.shutdownNow()
@@ -303,6 +284,7 @@ class RPCServer(
             observableMap.invalidateAll(observableIds)
         }
         responseMessageBuffer.remove(clientAddress)
+        clientOutboxes.remove(clientAddress)
     }
 
     private fun clientArtemisMessageHandler(artemisMessage: ClientMessage) {
@@ -327,21 +309,27 @@ class RPCServer(
                     context.invocation.pushToLoggingContext()
                     when (arguments) {
                         is Try.Success -> {
+                            val flowControl = observationFlowControl(clientToServer.methodName, clientToServer.observationCredits)
                             rpcExecutor!!.submit {
                                 val result = invokeRpc(context, clientToServer.methodName, arguments.value)
-                                sendReply(clientToServer.replyId, clientToServer.clientAddress, result)
+                                sendReply(clientToServer.replyId, clientToServer.clientAddress, result, flowControl)
                             }
                         }
                         is Try.Failure -> {
                             // We failed to deserialise the arguments, route back the error
                             log.warn("Inbound RPC failed", arguments.exception)
-                            sendReply(clientToServer.replyId, clientToServer.clientAddress, arguments)
+                            sendReply(clientToServer.replyId, clientToServer.clientAddress, arguments, null)
                         }
                     }
                 }
                 is RPCApi.ClientToServer.ObservablesClosed -> {
                     observableMap.invalidateAll(clientToServer.ids)
                 }
+                is RPCApi.ClientToServer.ObservationCreditsGranted -> {
+                    clientToServer.credits.forEach { id, credits ->
+                        observableMap.getIfPresent(id)?.creditedSender?.grant(credits)
+                    }
+                }
             }
         } finally {
             artemisMessage.acknowledge()
@@ -364,7 +352,18 @@ class RPCServer(
         }
     }
 
-    private fun sendReply(replyId: InvocationId, clientAddress: SimpleString, result: Try<Any>) {
+    private fun observationFlowControl(methodName: String, observationCredits: Int): ObservationFlowControl? {
+        if (observationCredits <= 0) return null
+        val configuration = rpcConfiguration.observableFlowControl
+        return ObservationFlowControl(
+                initialCredits = observationCredits,
+                bufferSize = configuration.bufferSize,
+                policy = configuration.policyFor(methodName),
+                onDiscarded = { discardedObservations.mark(it.toLong()) }
+        )
+    }
+
+    private fun sendReply(replyId: InvocationId, clientAddress: SimpleString, result: Try<Any>, flowControl: ObservationFlowControl?) {
         val reply = RPCApi.ServerToClient.RpcReply(
                 id = replyId,
                 result = result,
@@ -374,11 +373,12 @@ class RPCServer(
                 observableMap,
                 clientAddressToObservables,
                 deduplicationIdentity!!,
-                clientAddress
+                clientAddress,
+                flowControl
         )
 
         val buffered = bufferIfQueueNotBound(clientAddress, reply, observableContext)
-        if (!buffered) observableContext.sendMessage(reply)
+        if (!buffered) observableContext.serialiseAndSendMessage(reply)
     }
 
     /**
@@ -407,6 +407,84 @@ class RPCServer(
         observableMap.cleanUp()
     }
 
+    private fun senderLaneFor(clientAddress: SimpleString): SenderLane {
+        return senderLanes[Math.floorMod(clientAddress.hashCode(), senderLanes.size)]
+    }
+
+    /**
+     * A sender thread with its own Artemis session. Messages to a client are all sent through the lane its address
+     * maps to, in the order they were enqueued. The lane's queue holds the clients with a message ready to send, and
+     * the lane sends one message per client in turn.
+     */
+    private inner class SenderLane(private val index: Int) {
+        private val readyClients = LinkedBlockingQueue<LaneTask>()
+        private var session: ClientSession? = null
+        private var producer: ClientProducer? = null
+        private var thread: Thread? = null
+
+        fun start(sessionFactory: ClientSessionFactory) {
+            session = sessionFactory.createSession(rpcServerUsername, rpcServerPassword, false, true, true, false, DEFAULT_ACK_BATCH_SIZE)
+            producer = session!!.createProducer()
+            metrics.register("RPCServer.SenderLanes.$index.QueueDepth", Gauge<Int> { readyClients.size })
+            thread = startSenderThread()
+            session!!.start()
+        }
+
+        fun stop() {
+            readyClients.put(LaneTask.Stop)
+            thread?.join()
+        }
+
+        fun schedule(outbox: RpcClientOutboxes<RpcSendJob>.Outbox) {
+            readyClients.put(LaneTask.Send(outbox))
+        }
+
+        /**
+         * Creates an empty message for this lane. [ClientSession.createMessage] only constructs the message and does not
+         * touch the session state, so this is safe to call from the handler pool.
+         */
+        fun createMessage(): ClientMessage = session!!.createMessage(false)
+
+        private fun startSenderThread(): Thread {
+            return thread(name = "rpc-server-sender-$index", isDaemon = true) {
+                var deduplicationSequenceNumber = 0L
+                while (true) {
+                    val task = readyClients.take()
+                    when (task) {
+                        is LaneTask.Send -> {
+                            val job = task.outbox.poll() ?: continue
+                            handleSendJob(deduplicationSequenceNumber++, job)
+                            task.outbox.sent()
+                        }
+                        LaneTask.Stop -> return@thread
+                    }
+                }
+            }
+        }
+
+        private fun handleSendJob(sequenceNumber: Long, job: RpcSendJob) {
+            try {
+                // A reply serialised on the handler pool only reaches the lane once its serialisation has finished.
+                val artemisMessage = job.serialisedMessage?.get() ?: createMessage().also {
+                    if (job.database != null) {
+                        contextDatabase = job.database
+                    }
+                    // We must do the serialisation here as any encountered Observables may already have events, which
+                    // would trigger more sends. We must make sure that the root of the Observables is sent before any
+                    // child observations.
+                    job.message.writeToClientMessage(job.serializationContext, it)
+                }
+                artemisMessage.putLongProperty(RPCApi.DEDUPLICATION_SEQUENCE_NUMBER_FIELD_NAME, sequenceNumber)
+                producer!!.send(job.clientAddress, artemisMessage)
+                log.debug { "<- RPC <- ${job.message}" }
+            } catch (throwable: Throwable) {
+                log.error("Failed to send message, kicking client. Message was ${job.message}", throwable)
+                serverControl!!.closeConsumerConnectionsForAddress(job.clientAddress.toString())
+                invalidateClient(job.clientAddress)
+            }
+        }
+    }
+
     private fun ClientMessage.context(sessionId: Trace.SessionId): RpcAuthContext {
         val trace = Trace.newInstance(sessionId = sessionId)
         val externalTrace = externalTrace()
@@ -430,28 +508,55 @@ class RPCServer(
             override val observableMap: ObservableSubscriptionMap,
             override val clientAddressToObservables: ConcurrentHashMap<SimpleString, HashSet<InvocationId>>,
             override val deduplicationIdentity: String,
-            override val clientAddress: SimpleString
+            override val clientAddress: SimpleString,
+            override val observationFlowControl: ObservationFlowControl? = null
     ) : ObservableContextInterface {
         private val serializationContextWithObservableContext = RpcServerObservableSerializer.createContext(
                 observableContext = this,
                 serializationContext = SerializationDefaults.RPC_SERVER_CONTEXT)
+        // Buffered observations are sent when credits arrive, on a thread that has no database of its own.
+        private val database = contextDatabaseOrNull
 
         override fun sendMessage(serverToClient: RPCApi.ServerToClient) {
-            sendJobQueue.put(RpcSendJob.Send(contextDatabaseOrNull, clientAddress,
+            clientOutboxes.outboxFor(clientAddress).add(RpcSendJob(contextDatabaseOrNull ?: database, clientAddress,
                     serializationContextWithObservableContext, serverToClient))
         }
+
+        /**
+         * Like [sendMessage] but serialises [serverToClient] on the calling thread instead of the sender lane. The job is
+         * queued before serialisation starts so that it is still sent ahead of any observations it triggers, but the
+         * client's messages are only picked up by its sender lane once serialisation has finished.
+         */
+        fun serialiseAndSendMessage(serverToClient: RPCApi.ServerToClient) {
+            val outbox = clientOutboxes.outboxFor(clientAddress)
+            val serialisedMessage = CompletableFuture<ClientMessage>()
+            outbox.add(RpcSendJob(contextDatabaseOrNull, clientAddress,
+                    serializationContextWithObservableContext, serverToClient, serialisedMessage))
+            try {
+                val artemisMessage = senderLaneFor(clientAddress).createMessage()
+                serverToClient.writeToClientMessage(serializationContextWithObservableContext, artemisMessage)
+                serialisedMessage.complete(artemisMessage)
+            } catch (throwable: Throwable) {
+                serialisedMessage.completeExceptionally(throwable)
+            }
+            outbox.headMayBeReady()
+        }
     }
 
-    private sealed class RpcSendJob {
-        data class Send(
-                // TODO HACK this is because during serialisation we subscribe to observables that may use
-                // DatabaseTransactionWrappingSubscriber which tries to access the current database,
-                val database: CordaPersistence?,
-                val clientAddress: SimpleString,
-                val serializationContext: SerializationContext,
-                val message: RPCApi.ServerToClient
-        ) : RpcSendJob()
-        object Stop : RpcSendJob()
+    private data class RpcSendJob(
+            // TODO HACK this is because during serialisation we subscribe to observables that may use
+            // DatabaseTransactionWrappingSubscriber which tries to access the current database,
+            val database: CordaPersistence?,
+            val clientAddress: SimpleString,
+            val serializationContext: SerializationContext,
+            val message: RPCApi.ServerToClient,
+            /** Completed with the serialised [message] if it is serialised off the sender lane. */
+            val serialisedMessage: CompletableFuture<ClientMessage>? = null
+    )
+
+    private sealed class LaneTask {
+        class Send(val outbox: RpcClientOutboxes<RpcSendJob>.Outbox) : LaneTask()
+        object Stop : LaneTask()
     }
 }
 
@@ -495,7 +600,9 @@ internal fun context(): InvocationContext = rpcContext().invocation
 fun rpcContext(): RpcAuthContext = CURRENT_RPC_CONTEXT.get()
 
 class ObservableSubscription(
-        val subscription: Subscription
+        val subscription: Subscription,
+        /** Set if the observations are subject to flow control, see [ObservableFlowControlConfiguration]. */
+        val creditedSender: CreditedObservationSender? = null
 )
 
 
@@ -0,0 +1,91 @@
+package net.corda.node.services.messaging
+
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.MetricRegistry
+import org.apache.activemq.artemis.api.core.SimpleString
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * The messages waiting to be sent to each RPC client, in the order they must be sent.
+ *
+ * A client's [Outbox] is handed to [schedule] only once the message at its head [isReady], and stays with whoever it was
+ * handed to until [Outbox.sent] is called, so a client's messages are sent one at a time and in order. A reply that is
+ * still being serialised therefore holds up only the client it is for, never the other clients sharing a sender.
+ *
+ * The number of messages waiting for each client is published as the `RPCServer.Clients.<address>.QueueDepth` gauge.
+ */
+internal class RpcClientOutboxes<T>(
+        private val metrics: MetricRegistry,
+        private val isReady: (T) -> Boolean,
+        private val schedule: (RpcClientOutboxes<T>.Outbox) -> Unit
+) {
+    companion object {
+        fun queueDepthMetricName(clientAddress: SimpleString) = "RPCServer.Clients.$clientAddress.QueueDepth"
+    }
+
+    private val outboxes = ConcurrentHashMap<SimpleString, Outbox>()
+
+    inner class Outbox(val clientAddress: SimpleString) {
+        private val messages = ArrayDeque<T>()
+        /** Whether the outbox has been handed to [schedule] and not yet given back through [sent] or an empty [poll]. */
+        private var scheduled = false
+
+        val depth: Int get() = synchronized(this) { messages.size }
+
+        fun add(message: T) = synchronized(this) {
+            messages.add(message)
+            scheduleIfReady()
+        }
+
+        /** To be called when the message at the head may have become ready. */
+        fun headMayBeReady() = synchronized(this) { scheduleIfReady() }
+
+        /**
+         * Removes and returns the message at the head if it is ready. Otherwise returns null and gives the outbox back,
+         * to be scheduled again when a message becomes ready.
+         */
+        fun poll(): T? = synchronized(this) {
+            val head = messages.peek()
+            if (head != null && isReady(head)) {
+                messages.poll()
+            } else {
+                scheduled = false
+                null
+            }
+        }
+
+        /** Gives the outbox back once the message returned by [poll] has been sent. */
+        fun sent() = synchronized(this) {
+            scheduled = false
+            scheduleIfReady()
+        }
+
+        private fun scheduleIfReady() {
+            if (scheduled) return
+            val head = messages.peek() ?: return
+            if (isReady(head)) {
+                scheduled = true
+                schedule(this)
+            }
+        }
+    }
+
+    fun outboxFor(clientAddress: SimpleString): Outbox {
+        return outboxes.computeIfAbsent(clientAddress) { address ->
+            Outbox(address).also { outbox ->
+                // The gauge of a removed client may not have been removed yet.
+                val name = queueDepthMetricName(address)
+                metrics.remove(name)
+                metrics.register(name, Gauge<Int> { outbox.depth })
+            }
+        }
+    }
+
+    /** Forgets [clientAddress] and its gauge. Messages already waiting in its outbox are still sent. */
+    fun remove(clientAddress: SimpleString) {
+        if (outboxes.remove(clientAddress) != null) {
+            metrics.remove(queueDepthMetricName(clientAddress))
+        }
+    }
+}
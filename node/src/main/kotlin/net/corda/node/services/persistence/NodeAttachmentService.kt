@@ -11,11 +11,12 @@ import net.corda.core.contracts.Attachment
 import net.corda.core.contracts.ContractAttachment
 import net.corda.core.contracts.ContractClassName
 import net.corda.core.crypto.SecureHash
-import net.corda.core.crypto.sha256
 import net.corda.core.internal.AbstractAttachment
 import net.corda.core.internal.UNKNOWN_UPLOADER
 import net.corda.core.internal.VisibleForTesting
-import net.corda.core.internal.readFully
+import net.corda.core.internal.hash
+import net.corda.core.internal.read
+import net.corda.core.internal.size
 import net.corda.core.node.services.AttachmentId
 import net.corda.core.node.services.AttachmentStorage
 import net.corda.core.node.services.vault.AttachmentQueryCriteria
@@ -30,16 +31,18 @@ import net.corda.nodeapi.exceptions.DuplicateAttachmentException
 import net.corda.nodeapi.internal.persistence.CordaPersistence
 import net.corda.nodeapi.internal.persistence.NODE_DATABASE_PREFIX
 import net.corda.nodeapi.internal.persistence.currentDBSession
-import net.corda.nodeapi.internal.withContractsInJar
+import net.corda.nodeapi.internal.withContractsInJarFile
 import java.io.FilterInputStream
 import java.io.IOException
 import java.io.InputStream
 import java.nio.file.Paths
+import java.sql.Blob
 import java.time.Instant
 import java.util.*
 import java.util.jar.JarInputStream
 import javax.annotation.concurrent.ThreadSafe
 import javax.persistence.*
+import javax.sql.rowset.serial.SerialBlob
 
 /**
  * Stores attachments using Hibernate to database.
@@ -83,9 +86,10 @@ class NodeAttachmentService(
             @Column(name = "att_id", nullable = false)
             var attId: String,
 
+            // Bound as a stream, so that an attachment is copied into the database without being held in memory.
             @Column(name = "content", nullable = false)
             @Lob
-            var content: ByteArray,
+            var contentBlob: Blob,
 
             @Column(name = "insertion_date", nullable = false, updatable = false)
             var insertionDate: Instant = Instant.now(),
@@ -101,7 +105,16 @@ class NodeAttachmentService(
             @CollectionTable(name = "${NODE_DATABASE_PREFIX}attachments_contracts", joinColumns = [(JoinColumn(name = "att_id", referencedColumnName = "att_id"))],
                     foreignKey = ForeignKey(name = "FK__ctr_class__attachments"))
             var contractClassNames: List<ContractClassName>? = null
-    )
+    ) {
+        constructor(attId: String, content: ByteArray) : this(attId, SerialBlob(content))
+
+        /** The attachment's bytes. Must be read within the transaction the entity was loaded in. */
+        var content: ByteArray
+            get() = contentBlob.binaryStream.use { it.readBytes() }
+            set(value) {
+                contentBlob = SerialBlob(value)
+            }
+    }
 
     @VisibleForTesting
     var checkAttachmentsOnLoad = true
@@ -220,7 +233,8 @@ class NodeAttachmentService(
     private fun loadAttachmentContent(id: SecureHash): Pair<Attachment, ByteArray>? {
         return database.transaction {
             val attachment = currentDBSession().get(NodeAttachmentService.DBAttachment::class.java, id.toString()) ?: return@transaction null
-            val attachmentImpl = AttachmentImpl(id, { attachment.content }, checkAttachmentsOnLoad).let {
+            val content = attachment.content
+            val attachmentImpl = AttachmentImpl(id, { content }, checkAttachmentsOnLoad).let {
                 val contracts = attachment.contractClassNames
                 if (contracts != null && contracts.isNotEmpty()) {
                     ContractAttachment(it, contracts.first(), contracts.drop(1).toSet(), attachment.uploader)
@@ -228,7 +242,7 @@ class NodeAttachmentService(
                     it
                 }
             }
-            Pair(attachmentImpl, attachment.content)
+            Pair(attachmentImpl, content)
         }
     }
 
@@ -272,22 +286,13 @@ class NodeAttachmentService(
     // TODO: PLT-147: The attachment should be randomised to prevent brute force guessing and thus privacy leaks.
     private fun import(jar: InputStream, uploader: String?, filename: String?): AttachmentId {
         return database.transaction {
-            withContractsInJar(jar) { contractClassNames, inputStream ->
-                require(inputStream !is JarInputStream)
-
-                // Read the file into RAM and then calculate its hash. The attachment must fit into memory.
-                // TODO: Switch to a two-phase insert so we can handle attachments larger than RAM.
-                // To do this we must pipe stream into the database without knowing its hash, which we will learn only once
-                // the insert/upload is complete. We can then query to see if it's a duplicate and if so, erase, and if not
-                // set the hash field of the new attachment record.
-
-                val bytes = inputStream.readFully()
-                val id = bytes.sha256()
+            // The JAR is spooled to a temporary file so that it can be hashed, validated and piped into the database
+            // in turn without ever holding the whole attachment in memory.
+            withContractsInJarFile(jar) { contractClassNames, file ->
+                val id = file.hash
                 if (!hasAttachment(id)) {
-                    checkIsAValidJAR(bytes.inputStream())
-                    val session = currentDBSession()
-                    val attachment = NodeAttachmentService.DBAttachment(attId = id.toString(), content = bytes, uploader = uploader, filename = filename, contractClassNames = contractClassNames)
-                    session.save(attachment)
+                    file.read { checkIsAValidJAR(it) }
+                    file.read { insertAttachment(id, it, file.size, uploader, filename, contractClassNames) }
                     attachmentCount.inc()
                     log.info("Stored new attachment $id")
                     id
@@ -298,6 +303,21 @@ class NodeAttachmentService(
         }
     }
 
+    /** Persists the attachment with [content] as a [Blob] stream, which the JDBC driver copies into the database in chunks. */
+    private fun insertAttachment(id: SecureHash, content: InputStream, size: Long, uploader: String?, filename: String?, contractClassNames: List<ContractClassName>) {
+        val session = currentDBSession()
+        val attachment = DBAttachment(
+                attId = id.toString(),
+                contentBlob = session.lobHelper.createBlob(content, size),
+                uploader = uploader,
+                filename = filename,
+                contractClassNames = contractClassNames
+        )
+        session.save(attachment)
+        // Flush while the stream is still open.
+        session.flush()
+    }
+
     @Suppress("OverridingDeprecatedMember")
     override fun importOrGetAttachment(jar: InputStream): AttachmentId = try {
         import(jar, UNKNOWN_UPLOADER, null)
@@ -3,6 +3,7 @@ package net.corda.node.services.rpc
 import net.corda.core.internal.div
 import net.corda.core.utilities.NetworkHostAndPort
 import net.corda.node.internal.artemis.BrokerJaasLoginModule
+import net.corda.node.internal.artemis.BrokerTuning
 import net.corda.node.internal.artemis.SecureArtemisConfiguration
 import net.corda.nodeapi.ArtemisTcpTransport.Companion.rpcAcceptorTcpTransport
 import net.corda.nodeapi.ArtemisTcpTransport.Companion.rpcInternalAcceptorTcpTransport
@@ -17,7 +18,7 @@ import org.apache.activemq.artemis.core.settings.impl.AddressFullMessagePolicy
 import org.apache.activemq.artemis.core.settings.impl.AddressSettings
 import java.nio.file.Path
 
-internal class RpcBrokerConfiguration(baseDirectory: Path, maxMessageSize: Int, jmxEnabled: Boolean, address: NetworkHostAndPort, adminAddress: NetworkHostAndPort?, sslOptions: BrokerRpcSslOptions?, useSsl: Boolean, nodeConfiguration: SSLConfiguration, shouldStartLocalShell: Boolean) : SecureArtemisConfiguration() {
+internal class RpcBrokerConfiguration(baseDirectory: Path, maxMessageSize: Int, jmxEnabled: Boolean, address: NetworkHostAndPort, adminAddress: NetworkHostAndPort?, sslOptions: BrokerRpcSslOptions?, useSsl: Boolean, nodeConfiguration: SSLConfiguration, shouldStartLocalShell: Boolean, brokerTuning: BrokerTuning = BrokerTuning()) : SecureArtemisConfiguration() {
     val loginListener: (String) -> Unit
 
     init {
@@ -34,14 +35,18 @@ internal class RpcBrokerConfiguration(baseDirectory: Path, maxMessageSize: Int,
         queueConfigurations = queueConfigurations()
 
         managementNotificationAddress = SimpleString(ArtemisMessagingComponent.NOTIFICATIONS_ADDRESS)
-        addressesSettings = mapOf(
-                "${RPCApi.RPC_CLIENT_QUEUE_NAME_PREFIX}.#" to AddressSettings().apply {
-                    maxSizeBytes = 10L * maxMessageSize
-                    addressFullMessagePolicy = AddressFullMessagePolicy.FAIL
-                }
-        )
+        val clientAddressSettings = "${RPCApi.RPC_CLIENT_QUEUE_NAME_PREFIX}.#" to AddressSettings().apply {
+            maxSizeBytes = 10L * maxMessageSize
+            addressFullMessagePolicy = AddressFullMessagePolicy.FAIL
+        }
+        // Requests beyond rpcMaxSizeBytes are paged to disk rather than held on the heap.
+        val serverAddressSettings = brokerTuning.rpcMaxSizeBytes?.let {
+            RPCApi.RPC_SERVER_QUEUE_NAME to brokerTuning.pagedAddressSettings(it, maxMessageSize)
+        }
+        addressesSettings = listOfNotNull(clientAddressSettings, serverAddressSettings).toMap()
 
         initialiseSettings(maxMessageSize)
+        brokerTuning.applyJournalSettings(this)
 
         val nodeInternalRole = Role(BrokerJaasLoginModule.NODE_RPC_ROLE, true, true, true, true, true, true, true, true, true, true)
 
@@ -108,6 +113,7 @@ internal class RpcBrokerConfiguration(baseDirectory: Path, maxMessageSize: Int,
         bindingsDirectory = (baseDirectory / "bindings").toString()
         journalDirectory = (baseDirectory / "journal").toString()
         largeMessagesDirectory = (baseDirectory / "large-messages").toString()
+        pagingDirectory = (baseDirectory / "paging").toString()
     }
 
     private fun queueConfiguration(name: String, address: String = name, filter: String? = null, durable: Boolean): CoreQueueConfiguration {
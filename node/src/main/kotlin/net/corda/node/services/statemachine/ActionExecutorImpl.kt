@@ -11,6 +11,7 @@ import net.corda.core.utilities.contextLogger
 import net.corda.core.utilities.trace
 import net.corda.node.services.api.CheckpointStorage
 import net.corda.node.services.api.ServiceHubInternal
+import net.corda.node.services.messaging.afterDatabaseTransaction
 import net.corda.nodeapi.internal.persistence.contextDatabase
 import net.corda.nodeapi.internal.persistence.contextTransaction
 import net.corda.nodeapi.internal.persistence.contextTransactionOrNull
@@ -119,9 +120,7 @@ class ActionExecutorImpl(
 
     @Suspendable
     private fun executeAcknowledgeMessages(action: Action.AcknowledgeMessages) {
-        action.deduplicationHandlers.forEach {
-            it.afterDatabaseTransaction()
-        }
+        action.deduplicationHandlers.afterDatabaseTransaction()
     }
 
     @Suspendable
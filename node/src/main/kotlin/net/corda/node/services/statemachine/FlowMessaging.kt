@@ -4,9 +4,11 @@ import co.paralleluniverse.fibers.Suspendable
 import com.esotericsoftware.kryo.KryoException
 import net.corda.core.context.InvocationOrigin
 import net.corda.core.flows.FlowException
+import net.corda.core.identity.CordaX500Name
 import net.corda.core.identity.Party
-import net.corda.core.serialization.SerializedBytes
+import net.corda.core.serialization.deserialize
 import net.corda.core.serialization.serialize
+import net.corda.core.utilities.ByteSequence
 import net.corda.core.utilities.contextLogger
 import net.corda.core.utilities.trace
 import net.corda.node.services.api.ServiceHubInternal
@@ -14,6 +16,7 @@ import net.corda.node.services.messaging.DeduplicationHandler
 import net.corda.node.services.messaging.ReceivedMessage
 import net.corda.nodeapi.internal.ArtemisMessagingComponent.Companion.P2PMessagingHeaders
 import java.io.NotSerializableException
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * A wrapper interface around flow messaging.
@@ -40,10 +43,25 @@ class FlowMessagingImpl(val serviceHub: ServiceHubInternal): FlowMessaging {
         val log = contextLogger()
 
         const val sessionTopic = "platform.session"
+
+        private val sessionInitHeaders = mapOf(P2PMessagingHeaders.Type.KEY to P2PMessagingHeaders.Type.SESSION_INIT_VALUE)
+        private val sessionFramingHeaders = mapOf(P2PMessagingHeaders.SessionFraming.KEY to P2PMessagingHeaders.SessionFraming.SUPPORTED_VALUE)
+
+        /** Reads a [SessionMessage] sent by [FlowMessagingImpl], whether framed or serialised with AMQP. */
+        fun deserializeSessionMessage(data: ByteSequence): SessionMessage {
+            return if (SessionMessageFraming.isFramed(data)) SessionMessageFraming.decode(data) else data.deserialize()
+        }
     }
 
+    private val framingEnabled = serviceHub.configuration.sessionMessageFraming
+    /** The peers which have told us, with a header on their session messages, that they can read framed messages. */
+    private val framingPeers: MutableSet<CordaX500Name> = ConcurrentHashMap.newKeySet()
+
     override fun start(onMessage: (ReceivedMessage, deduplicationHandler: DeduplicationHandler) -> Unit) {
         serviceHub.networkService.addMessageHandler(sessionTopic) { receivedMessage, _, deduplicationHandler ->
+            if (framingEnabled && P2PMessagingHeaders.SessionFraming.KEY in receivedMessage.additionalHeaders) {
+                framingPeers += receivedMessage.peer
+            }
             onMessage(receivedMessage, deduplicationHandler)
         }
     }
@@ -51,8 +69,8 @@ class FlowMessagingImpl(val serviceHub: ServiceHubInternal): FlowMessaging {
     @Suspendable
     override fun sendSessionMessage(party: Party, message: SessionMessage, deduplicationId: SenderDeduplicationId) {
         log.trace { "Sending message $deduplicationId $message to party $party" }
-        val networkMessage = serviceHub.networkService.createMessage(sessionTopic, serializeSessionMessage(message).bytes, deduplicationId, message.additionalHeaders(party))
         val partyInfo = serviceHub.networkMapCache.getPartyInfo(party) ?: throw IllegalArgumentException("Don't know about $party")
+        val networkMessage = serviceHub.networkService.createMessage(sessionTopic, sessionMessageBytes(party, message), deduplicationId, message.additionalHeaders(party))
         val address = serviceHub.networkService.getAddressOfParty(partyInfo)
         val sequenceKey = when (message) {
             is InitialSessionMessage -> message.initiatorSessionId
@@ -65,22 +83,34 @@ class FlowMessagingImpl(val serviceHub: ServiceHubInternal): FlowMessaging {
         // This prevents a "deadlock" in case an initiated flow tries to start a session against a draining node that is also the initiator.
         // It does not help in case more than 2 nodes are involved in a circle, so the kill switch via RPC should be used in that case.
         val mightDeadlockDrainingTarget = FlowStateMachineImpl.currentStateMachine()?.context?.origin.let { it is InvocationOrigin.Peer && it.party == target.name }
-        return when {
+        val typeHeaders = when {
             this !is InitialSessionMessage || mightDeadlockDrainingTarget -> emptyMap()
-            else -> mapOf(P2PMessagingHeaders.Type.KEY to P2PMessagingHeaders.Type.SESSION_INIT_VALUE)
+            else -> sessionInitHeaders
+        }
+        return if (framingEnabled) typeHeaders + sessionFramingHeaders else typeHeaders
+    }
+
+    /**
+     * Frames [message] if framing is enabled and [party] has told us it can read frames, and otherwise serialises it with
+     * AMQP. The first message to a peer is therefore always AMQP.
+     */
+    private fun sessionMessageBytes(party: Party, message: SessionMessage): ByteArray {
+        if (framingEnabled && party.name in framingPeers) {
+            SessionMessageFraming.encode(message)?.let { return it }
         }
+        return serializeSessionMessage(message)
     }
 
-    private fun serializeSessionMessage(message: SessionMessage): SerializedBytes<SessionMessage> {
+    private fun serializeSessionMessage(message: SessionMessage): ByteArray {
         return try {
-            message.serialize()
+            message.serialize().bytes
         } catch (exception: Exception) {
             // Handling Kryo and AMQP serialization problems. Unfortunately the two exception types do not share much of a common exception interface.
             if ((exception is KryoException || exception is NotSerializableException)
                     && message is ExistingSessionMessage && message.payload is ErrorSessionMessage) {
                 val error = message.payload.flowException
                 val rewrappedError = FlowException(error?.message)
-                message.copy(payload = message.payload.copy(flowException = rewrappedError)).serialize()
+                message.copy(payload = message.payload.copy(flowException = rewrappedError)).serialize().bytes
             } else {
                 throw exception
             }
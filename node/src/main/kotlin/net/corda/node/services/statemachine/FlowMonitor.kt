@@ -1,6 +1,7 @@
 package net.corda.node.services.statemachine
 
 import net.corda.core.flows.FlowSession
+import net.corda.core.flows.StateMachineRunId
 import net.corda.core.internal.FlowIORequest
 import net.corda.core.utilities.loggerFor
 import net.corda.node.internal.LifecycleSupport
@@ -13,6 +14,7 @@ import java.util.concurrent.ScheduledExecutorService
 import java.util.concurrent.TimeUnit
 
 internal class FlowMonitor constructor(private val retrieveFlows: () -> Set<FlowStateMachineImpl<*>>,
+                                       private val retrieveParkedFlows: () -> List<StateMachineManager.ParkedFlow>,
                                        private val monitoringPeriod: Duration,
                                        private val suspensionLoggingThreshold: Duration,
                                        private var scheduler: ScheduledExecutorService? = null) : LifecycleSupport {
@@ -53,14 +55,22 @@ internal class FlowMonitor constructor(private val retrieveFlows: () -> Set<Flow
         val now = Instant.now()
         val flows = retrieveFlows()
         for (flow in flows) {
-            if (flow.isStarted() && flow.ongoingDuration(now) >= suspensionLoggingThreshold) {
-                flow.ioRequest()?.let { request -> warningMessageForFlowWaitingOnIo(request, flow, now) }?.let(logger::info)
+            val ongoingDuration = flow.ongoingDuration(now)
+            if (flow.isStarted() && ongoingDuration >= suspensionLoggingThreshold) {
+                flow.ioRequest()?.let { request -> warningMessageForFlowWaitingOnIo(request, flow.id, ongoingDuration) }?.let(logger::info)
+            }
+        }
+        // Parked flows are described by their checkpoints, so listing them does not deserialise their fibers.
+        for (flow in retrieveParkedFlows()) {
+            val ongoingDuration = Duration.between(flow.context.trace.invocationId.timestamp, now)
+            if (ongoingDuration >= suspensionLoggingThreshold) {
+                logger.info(warningMessageForFlowWaitingOnIo(flow.receive, flow.id, ongoingDuration))
             }
         }
     }
 
-    private fun warningMessageForFlowWaitingOnIo(request: FlowIORequest<*>, flow: FlowStateMachineImpl<*>, now: Instant): String {
-        val message = StringBuilder("Flow with id ${flow.id.uuid} has been waiting for ${flow.ongoingDuration(now).toMillis() / 1000} seconds ")
+    private fun warningMessageForFlowWaitingOnIo(request: FlowIORequest<*>, id: StateMachineRunId, ongoingDuration: Duration): String {
+        val message = StringBuilder("Flow with id ${id.uuid} has been waiting for ${ongoingDuration.toMillis() / 1000} seconds ")
         message.append(
                 when (request) {
                     is FlowIORequest.Send -> "to send a message to parties ${request.sessionToMessage.keys.partiesInvolved()}"
@@ -70,12 +70,17 @@ class FlowStateMachineImpl<R>(override val id: StateMachineRunId,
             val stateMachine: StateMachine,
             val serviceHub: ServiceHubInternal,
             val checkpointSerializationContext: SerializationContext,
-            val unfinishedFibers: ReusableLatch
+            val unfinishedFibers: ReusableLatch,
+            val flowTimings: FlowTimings
     )
 
     internal var transientValues: TransientReference<TransientValues>? = null
     internal var transientState: TransientReference<StateMachineState>? = null
 
+    // When the checkpoint of the current suspension finished, or zero if the fiber was restored from a checkpoint since.
+    @Transient
+    private var checkpointedAt: Long = 0L
+
     /**
      * What sender identifier to put on messages sent by this flow.  This will either be the identifier for the current
      * state machine manager / messaging client, or null to indicate this flow is restored from a checkpoint and
@@ -355,6 +360,7 @@ class FlowStateMachineImpl<R>(override val id: StateMachineRunId,
     override fun <R : Any> suspend(ioRequest: FlowIORequest<R>, maySkipCheckpoint: Boolean): R {
         val serializationContext = TransientReference(getTransientField(TransientValues::checkpointSerializationContext))
         val transaction = extractThreadLocalTransaction()
+        val suspendedAt = System.nanoTime()
         parkAndSerialize { _, _ ->
             setLoggingContext()
             logger.trace { "Suspended on $ioRequest" }
@@ -381,12 +387,31 @@ class FlowStateMachineImpl<R>(override val id: StateMachineRunId,
                     isDbTransactionOpenOnExit = false
             )
             require(continuation == FlowContinuation.ProcessEvents)
+            checkpointedAt = System.nanoTime()
+            // A skipped checkpoint is not persisted, so it would only understate the cost of checkpointing.
+            if (event is Event.Suspend && !skipPersistingCheckpoint) {
+                recordSuspension(FlowSuspension.CHECKPOINT, checkpointedAt - suspendedAt)
+            }
             unpark(SERIALIZER_BLOCKER)
         }
-        return uncheckedCast(processEventsUntilFlowIsResumed(
+        val result = processEventsUntilFlowIsResumed(
                 isDbTransactionOpenOnEntry = false,
                 isDbTransactionOpenOnExit = true
-        ))
+        )
+        if (checkpointedAt != 0L) {
+            recordSuspension(FlowSuspension.of(ioRequest), System.nanoTime() - checkpointedAt)
+            checkpointedAt = 0L
+        }
+        return uncheckedCast(result)
+    }
+
+    /** Records a suspension against the flow's class and, if it happened inside a sub-flow, the sub-flow's class. */
+    private fun recordSuspension(suspension: FlowSuspension, nanos: Long) {
+        flowTimings.recordSuspension(logic.javaClass, suspension, nanos)
+        val subFlowClass = transientState?.value?.checkpoint?.subFlowStack?.lastOrNull()?.flowClass
+        if (subFlowClass != null && subFlowClass != logic.javaClass) {
+            flowTimings.recordSuspension(subFlowClass, suspension, nanos)
+        }
     }
 
     private fun containsIdempotentFlows(): Boolean {
@@ -405,6 +430,8 @@ class FlowStateMachineImpl<R>(override val id: StateMachineRunId,
 
     override val stateMachine get() = getTransientField(TransientValues::stateMachine)
 
+    internal val flowTimings: FlowTimings get() = getTransientField(TransientValues::flowTimings)
+
     /**
      * Records the duration of this flow – from call() to completion or failure.
      * Note that the duration will include the time the flow spent being parked, and not just the total
@@ -416,6 +443,7 @@ class FlowStateMachineImpl<R>(override val id: StateMachineRunId,
         // Start time gets serialized along with the fiber when it suspends
         val duration = System.nanoTime() - startTime
         timer.update(duration, TimeUnit.NANOSECONDS)
+        flowTimings.recordFinished(logic.javaClass, duration)
     }
 }
 
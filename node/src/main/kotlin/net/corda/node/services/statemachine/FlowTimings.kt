@@ -0,0 +1,144 @@
+package net.corda.node.services.statemachine
+
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.MetricRegistry
+import net.corda.core.flows.FlowLogic
+import net.corda.core.flows.StartableByRPC
+import net.corda.core.internal.FlowIORequest
+import net.corda.core.serialization.CordaSerializable
+import java.time.Duration
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * What a flow was doing while it was suspended, as recorded by [FlowTimings].
+ */
+enum class FlowSuspension(val displayName: String) {
+    SEND("Send"),
+    RECEIVE("Receive"),
+    SEND_AND_RECEIVE("SendAndReceive"),
+    WAIT_FOR_LEDGER_COMMIT("WaitForLedgerCommit"),
+    GET_FLOW_INFO("GetFlowInfo"),
+    SLEEP("Sleep"),
+    WAIT_FOR_SESSION_CONFIRMATIONS("WaitForSessionConfirmations"),
+    EXECUTE_ASYNC_OPERATION("ExecuteAsyncOperation"),
+    FORCE_CHECKPOINT("ForceCheckpoint"),
+    /** Serialising the fiber and persisting its checkpoint, which happens before the flow waits for any of the above. */
+    CHECKPOINT("Checkpoint");
+
+    companion object {
+        fun of(ioRequest: FlowIORequest<*>): FlowSuspension {
+            return when (ioRequest) {
+                is FlowIORequest.Send -> SEND
+                is FlowIORequest.Receive -> RECEIVE
+                is FlowIORequest.SendAndReceive -> SEND_AND_RECEIVE
+                is FlowIORequest.WaitForLedgerCommit -> WAIT_FOR_LEDGER_COMMIT
+                is FlowIORequest.GetFlowInfo -> GET_FLOW_INFO
+                is FlowIORequest.Sleep -> SLEEP
+                FlowIORequest.WaitForSessionConfirmations -> WAIT_FOR_SESSION_CONFIRMATIONS
+                is FlowIORequest.ExecuteAsyncOperation<*> -> EXECUTE_ASYNC_OPERATION
+                FlowIORequest.ForceCheckpoint -> FORCE_CHECKPOINT
+            }
+        }
+    }
+}
+
+/**
+ * Latencies recorded by the node for a flow class since the node started.
+ *
+ * @property flowLogicClassName The JVM class name of the flow code.
+ * @property finished The number of flows of this class that have finished, successfully or not. This is zero for classes
+ * that have only run as sub-flows.
+ * @property totalDuration The combined time from the flows of this class being started to finishing.
+ * @property suspensions The number of suspensions and the combined time spent in them by flows of this class, keyed by
+ * [FlowSuspension.displayName].
+ */
+@CordaSerializable
+data class FlowTimingInfo(
+        val flowLogicClassName: String,
+        val finished: Long,
+        val totalDuration: Duration,
+        val suspensions: Map<String, SuspensionTimingInfo>
+)
+
+/** The number of suspensions of a given kind recorded in a [FlowTimingInfo], and the combined time spent in them. */
+@CordaSerializable
+data class SuspensionTimingInfo(val count: Long, val totalDuration: Duration)
+
+/**
+ * Records, per [FlowLogic] class, how long flows take and where they spend their time suspended. The counters of a
+ * class are created the first time it is seen, after which recording allocates nothing and takes no locks, so it is
+ * cheap enough to do on every suspension.
+ *
+ * Each counter is also registered in [metrics] as a gauge named "FlowTimings.<flow class>.<what>", which makes it
+ * visible over JMX.
+ */
+class FlowTimings(private val metrics: MetricRegistry) {
+    // Keyed by name as well as by class so that a flow class loaded by more than one class loader shares its counters.
+    private val timingsByName = ConcurrentHashMap<String, FlowClassTimings>()
+
+    private val timingsByClass = object : ClassValue<FlowClassTimings>() {
+        override fun computeValue(type: Class<*>): FlowClassTimings {
+            return timingsByName.computeIfAbsent(type.name) { name -> FlowClassTimings(name).apply { register(metrics) } }
+        }
+    }
+
+    fun recordSuspension(flowClass: Class<*>, suspension: FlowSuspension, nanos: Long) {
+        if (nanos >= 0) timingsByClass.get(flowClass).recordSuspension(suspension, nanos)
+    }
+
+    fun recordFinished(flowClass: Class<out FlowLogic<*>>, nanos: Long) {
+        if (nanos >= 0) timingsByClass.get(flowClass).recordFinished(nanos)
+    }
+
+    fun snapshot(): List<FlowTimingInfo> = timingsByName.values.map { it.snapshot() }.sortedBy { it.flowLogicClassName }
+
+    private class FlowClassTimings(val flowClassName: String) {
+        private val finished = LongAdder()
+        private val totalNanos = LongAdder()
+        private val suspensionCounts = Array(FlowSuspension.values().size) { LongAdder() }
+        private val suspensionNanos = Array(FlowSuspension.values().size) { LongAdder() }
+
+        fun recordSuspension(suspension: FlowSuspension, nanos: Long) {
+            suspensionCounts[suspension.ordinal].increment()
+            suspensionNanos[suspension.ordinal].add(nanos)
+        }
+
+        fun recordFinished(nanos: Long) {
+            finished.increment()
+            totalNanos.add(nanos)
+        }
+
+        fun register(metrics: MetricRegistry) {
+            fun gauge(name: String, value: LongAdder) {
+                val metricName = "FlowTimings.$flowClassName.$name"
+                metrics.remove(metricName)
+                metrics.register(metricName, Gauge<Long> { value.sum() })
+            }
+            gauge("Finished", finished)
+            gauge("TotalNanos", totalNanos)
+            for (suspension in FlowSuspension.values()) {
+                gauge("${suspension.displayName}.Count", suspensionCounts[suspension.ordinal])
+                gauge("${suspension.displayName}.Nanos", suspensionNanos[suspension.ordinal])
+            }
+        }
+
+        fun snapshot(): FlowTimingInfo {
+            val suspensions = FlowSuspension.values()
+                    .filter { suspensionCounts[it.ordinal].sum() > 0 }
+                    .associate {
+                        it.displayName to SuspensionTimingInfo(suspensionCounts[it.ordinal].sum(), Duration.ofNanos(suspensionNanos[it.ordinal].sum()))
+                    }
+            return FlowTimingInfo(flowClassName, finished.sum(), Duration.ofNanos(totalNanos.sum()), suspensions)
+        }
+    }
+}
+
+/**
+ * Returns the [FlowTimings] of the node it is started on, so that RPC clients can read the figures which are also
+ * exported over JMX. The flow does not suspend.
+ */
+@StartableByRPC
+class FlowTimingsSnapshotFlow : FlowLogic<List<FlowTimingInfo>>() {
+    override fun call(): List<FlowTimingInfo> = FlowStateMachineImpl.currentStateMachine()!!.flowTimings.snapshot()
+}
@@ -0,0 +1,153 @@
+package net.corda.node.services.statemachine
+
+import net.corda.core.flows.FlowInfo
+import net.corda.core.serialization.SerializedBytes
+import net.corda.core.utilities.ByteSequence
+import java.io.DataInputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+
+/**
+ * A compact binary framing of [SessionMessage]s, used instead of serialising the whole message with AMQP. The envelope
+ * of a session message has a fixed shape, so writing it with AMQP spends most of the effort, and most of the bytes, on
+ * the schema. Only the user payloads, which are already serialised by the time they get here, are AMQP.
+ *
+ * A frame starts with [MAGIC], which can never start an AMQP serialised message, so a receiver can accept both. Messages
+ * whose contents can't be framed, namely [ErrorSessionMessage]s which carry an arbitrary exception, are still sent as
+ * AMQP. Frames are only sent to peers which have said they can read them, see [FlowMessagingImpl].
+ */
+object SessionMessageFraming {
+    private val MAGIC = byteArrayOf(0, 'S'.toByte(), 'M'.toByte(), 1)
+
+    private const val INITIAL: Byte = 0
+    private const val CONFIRM: Byte = 1
+    private const val DATA: Byte = 2
+    private const val END: Byte = 3
+    private const val REJECT: Byte = 4
+
+    /** Returns whether [data] holds a framed message rather than an AMQP one. */
+    fun isFramed(data: ByteSequence): Boolean {
+        if (data.size < MAGIC.size) return false
+        val prefix = data.open()
+        return MAGIC.all { it.toInt() == prefix.read() }
+    }
+
+    /** Returns the frame of [message], or null if the message can't be framed. */
+    fun encode(message: SessionMessage): ByteArray? {
+        return when (message) {
+            is InitialSessionMessage -> {
+                val flowClassName = message.initiatorFlowClassName.toByteArray(Charsets.UTF_8)
+                val appName = message.appName.toByteArray(Charsets.UTF_8)
+                val payloadSize = message.firstPayload?.size ?: 0
+                frame(INITIAL, 8 + 8 + 4 + flowClassName.size + 4 + 4 + appName.size + 4 + payloadSize) {
+                    putLong(message.initiatorSessionId.toLong)
+                    putLong(message.initiationEntropy)
+                    putBytes(flowClassName)
+                    putInt(message.flowVersion)
+                    putBytes(appName)
+                    val payload = message.firstPayload
+                    if (payload == null) putInt(-1) else putBytes(payload)
+                }
+            }
+            is ExistingSessionMessage -> {
+                val recipient = message.recipientSessionId.toLong
+                val payload = message.payload
+                when (payload) {
+                    is ConfirmSessionMessage -> {
+                        val appName = payload.initiatedFlowInfo.appName.toByteArray(Charsets.UTF_8)
+                        frame(CONFIRM, 8 + 8 + 4 + 4 + appName.size) {
+                            putLong(recipient)
+                            putLong(payload.initiatedSessionId.toLong)
+                            putInt(payload.initiatedFlowInfo.flowVersion)
+                            putBytes(appName)
+                        }
+                    }
+                    // The payload takes up the rest of the frame, so its size isn't written.
+                    is DataSessionMessage -> frame(DATA, 8 + payload.payload.size) {
+                        putLong(recipient)
+                        payload.payload.putTo(this)
+                    }
+                    is EndSessionMessage -> frame(END, 8) { putLong(recipient) }
+                    is RejectSessionMessage -> {
+                        val text = payload.message.toByteArray(Charsets.UTF_8)
+                        frame(REJECT, 8 + 8 + 4 + text.size) {
+                            putLong(recipient)
+                            putLong(payload.errorId)
+                            putBytes(text)
+                        }
+                    }
+                    is ErrorSessionMessage -> null
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the framed message in [data].
+     * @throws IOException if [data] is not a valid frame.
+     */
+    fun decode(data: ByteSequence): SessionMessage {
+        val input = DataInputStream(data.open())
+        val magic = ByteArray(MAGIC.size).also { input.readFully(it) }
+        if (!magic.contentEquals(MAGIC)) throw IOException("Not a framed session message")
+        val type = input.readByte()
+        return when (type) {
+            INITIAL -> InitialSessionMessage(
+                    initiatorSessionId = SessionId(input.readLong()),
+                    initiationEntropy = input.readLong(),
+                    initiatorFlowClassName = input.readString(),
+                    flowVersion = input.readInt(),
+                    appName = input.readString(),
+                    firstPayload = input.readSized(input.readInt())?.let { SerializedBytes<Any>(it) }
+            )
+            CONFIRM -> {
+                val recipient = SessionId(input.readLong())
+                val initiatedSessionId = SessionId(input.readLong())
+                val flowVersion = input.readInt()
+                ExistingSessionMessage(recipient, ConfirmSessionMessage(initiatedSessionId, FlowInfo(flowVersion, input.readString())))
+            }
+            DATA -> {
+                val recipient = SessionId(input.readLong())
+                ExistingSessionMessage(recipient, DataSessionMessage(SerializedBytes(input.readSized(input.available())!!)))
+            }
+            END -> ExistingSessionMessage(SessionId(input.readLong()), EndSessionMessage)
+            REJECT -> {
+                val recipient = SessionId(input.readLong())
+                val errorId = input.readLong()
+                ExistingSessionMessage(recipient, RejectSessionMessage(input.readString(), errorId))
+            }
+            else -> throw IOException("Unknown session message type $type")
+        }
+    }
+
+    private inline fun frame(type: Byte, size: Int, body: ByteBuffer.() -> Unit): ByteArray {
+        val buffer = ByteBuffer.allocate(MAGIC.size + 1 + size)
+        buffer.put(MAGIC)
+        buffer.put(type)
+        buffer.body()
+        check(!buffer.hasRemaining()) { "Session message frame is ${buffer.remaining()} bytes shorter than allocated" }
+        return buffer.array()
+    }
+
+    private fun ByteBuffer.putBytes(bytes: ByteArray) {
+        putInt(bytes.size)
+        put(bytes)
+    }
+
+    private fun ByteBuffer.putBytes(bytes: ByteSequence) {
+        putInt(bytes.size)
+        bytes.putTo(this)
+    }
+
+    /** Reads [size] bytes, or returns null if [size] is -1. */
+    private fun DataInputStream.readSized(size: Int): ByteArray? {
+        if (size == -1) return null
+        if (size < 0 || size > available()) throw IOException("Invalid length $size in session message frame")
+        return ByteArray(size).also { readFully(it) }
+    }
+
+    private fun DataInputStream.readString(): String {
+        val bytes = readSized(readInt()) ?: throw IOException("Missing string in session message frame")
+        return String(bytes, Charsets.UTF_8)
+    }
+}
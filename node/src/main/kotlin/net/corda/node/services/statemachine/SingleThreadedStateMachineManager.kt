@@ -6,6 +6,7 @@ import co.paralleluniverse.fibers.Suspendable
 import co.paralleluniverse.fibers.instrument.SuspendableHelper
 import co.paralleluniverse.strands.channels.Channels
 import com.codahale.metrics.Gauge
+import com.google.common.util.concurrent.ThreadFactoryBuilder
 import net.corda.core.concurrent.CordaFuture
 import net.corda.core.context.InvocationContext
 import net.corda.core.flows.FlowException
@@ -19,16 +20,20 @@ import net.corda.core.internal.concurrent.map
 import net.corda.core.internal.concurrent.openFuture
 import net.corda.core.messaging.DataFeed
 import net.corda.core.serialization.*
+import net.corda.core.serialization.internal._contextSerializationEnv
 import net.corda.core.utilities.ProgressTracker
 import net.corda.core.utilities.Try
 import net.corda.core.utilities.contextLogger
 import net.corda.core.utilities.debug
+import net.corda.core.utilities.getOrThrow
 import net.corda.node.internal.InitiatedFlowFactory
 import net.corda.node.services.api.CheckpointStorage
 import net.corda.node.services.api.ServiceHubInternal
+import net.corda.node.services.config.FlowRestoreConfiguration
 import net.corda.node.services.config.shouldCheckCheckpoints
 import net.corda.node.services.messaging.DeduplicationHandler
 import net.corda.node.services.messaging.ReceivedMessage
+import net.corda.node.services.messaging.afterDatabaseTransaction
 import net.corda.node.services.statemachine.FlowStateMachineImpl.Companion.createSubFlowVersion
 import net.corda.node.services.statemachine.interceptors.*
 import net.corda.node.services.statemachine.transitions.StateMachine
@@ -44,6 +49,7 @@ import rx.subjects.PublishSubject
 import java.security.SecureRandom
 import java.util.*
 import java.util.concurrent.*
+import java.util.concurrent.atomic.AtomicBoolean
 import javax.annotation.concurrent.ThreadSafe
 import kotlin.collections.ArrayList
 import kotlin.collections.HashMap
@@ -65,10 +71,23 @@ class SingleThreadedStateMachineManager(
 ) : StateMachineManager, StateMachineManagerInternal {
     companion object {
         private val logger = contextLogger()
+        /** The most session messages delivered, and the most initial checkpoints persisted together, by one task. */
+        private const val MAX_INBOUND_BATCH_SIZE = 256
     }
 
     private class Flow(val fiber: FlowStateMachineImpl<*>, val resultFuture: OpenFuture<Any?>)
 
+    /** A flow restored from its checkpoint, either with its fiber or parked until a session message arrives for it. */
+    private sealed class RestoredFlow {
+        class Resumed(val flow: Flow) : RestoredFlow()
+        class Parked(val id: StateMachineRunId, val checkpoint: Checkpoint) : RestoredFlow()
+    }
+
+    private class RestoredFlows(val flows: List<Flow>, val parked: Map<StateMachineRunId, Checkpoint>)
+
+    /** A flow started by a session-init message, which is held back until its initial checkpoint has been persisted. */
+    private class UnpersistedFlowStart(val id: StateMachineRunId, val flow: Flow, val deduplicationHandler: DeduplicationHandler)
+
     private data class ScheduledTimeout(
             /** Will fire a [FlowTimeoutException] indicating to the flow hospital to restart the flow. */
             val scheduledFuture: ScheduledFuture<*>,
@@ -86,6 +105,8 @@ class SingleThreadedStateMachineManager(
         val startedFutures = HashMap<StateMachineRunId, OpenFuture<Unit>>()
         /** Flows scheduled to be retried if not finished within the specified timeout period. */
         val timedFlows = HashMap<StateMachineRunId, ScheduledTimeout>()
+        /** Checkpoints of restored flows whose fibers are only created once a session message arrives for them. */
+        val parkedFlows = HashMap<StateMachineRunId, Checkpoint>()
     }
 
     override val flowHospital: StaffedFlowHospital = StaffedFlowHospital()
@@ -97,11 +118,15 @@ class SingleThreadedStateMachineManager(
     private val liveFibers = ReusableLatch()
     // Monitoring support.
     private val metrics = serviceHub.monitoringService.metrics
+    override val flowTimings = FlowTimings(metrics)
     private val sessionToFlow = ConcurrentHashMap<SessionId, StateMachineRunId>()
     private val flowMessaging: FlowMessaging = FlowMessagingImpl(serviceHub)
     private val fiberDeserializationChecker = if (serviceHub.configuration.shouldCheckCheckpoints()) FiberDeserializationChecker() else null
     private val transitionExecutor = makeTransitionExecutor()
     private val ourSenderUUID = serviceHub.networkService.ourSenderUUID
+    /** Session messages received but not delivered yet, and whether a task to deliver them has been submitted. */
+    private val inboundEvents = ConcurrentLinkedQueue<ExternalEvent>()
+    private val inboundEventsScheduled = AtomicBoolean()
 
     private var checkpointSerializationContext: SerializationContext? = null
     private var actionExecutor: ActionExecutor? = null
@@ -128,22 +153,28 @@ class SingleThreadedStateMachineManager(
         this.checkpointSerializationContext = checkpointSerializationContext
         this.actionExecutor = makeActionExecutor(checkpointSerializationContext)
         fiberDeserializationChecker?.start(checkpointSerializationContext)
-        val fibers = restoreFlowsFromCheckpoints()
-        metrics.register("Flows.InFlight", Gauge<Int> { mutex.content.flows.size })
+        val restoredFlows = restoreFlowsFromCheckpoints()
+        metrics.register("Flows.InFlight", Gauge<Int> { mutex.content.flows.size + mutex.content.parkedFlows.size })
+        metrics.register("Flows.Parked", Gauge<Int> { mutex.content.parkedFlows.size })
         Fiber.setDefaultUncaughtExceptionHandler { fiber, throwable ->
             (fiber as FlowStateMachineImpl<*>).logger.warn("Caught exception from flow", throwable)
         }
         serviceHub.networkMapCache.nodeReady.then {
-            resumeRestoredFlows(fibers)
+            resumeRestoredFlows(restoredFlows)
             flowMessaging.start { _, deduplicationHandler ->
-                executor.execute {
-                    deliverExternalEvent(deduplicationHandler.externalCause)
-                }
+                inboundEvents += deduplicationHandler.externalCause
+                scheduleInboundEvents()
             }
         }
     }
 
-    override fun snapshot(): Set<FlowStateMachineImpl<*>> = mutex.content.flows.values.map { it.fiber }.toSet()
+    override fun snapshot(): Set<FlowStateMachineImpl<*>> {
+        return mutex.locked { flows.values.map { it.fiber }.toSet() }
+    }
+
+    override fun parkedFlows(): List<StateMachineManager.ParkedFlow> {
+        return mutex.locked { parkedFlowsSnapshot() }
+    }
 
     override fun <A : FlowLogic<*>> findStateMachines(flowClass: Class<A>): List<Pair<A, CordaFuture<*>>> {
         return mutex.locked {
@@ -181,10 +212,11 @@ class SingleThreadedStateMachineManager(
      * Atomic get snapshot + subscribe. This is needed so we don't miss updates between subscriptions to [changes] and
      * calls to [allStateMachines]
      */
-    override fun track(): DataFeed<List<FlowLogic<*>>, StateMachineManager.Change> {
+    override fun track(): DataFeed<StateMachineManager.StateMachines, StateMachineManager.Change> {
         return mutex.locked {
             database.transaction {
-                DataFeed(flows.values.map { it.fiber.logic }, changesPublisher.bufferUntilSubscribed().wrapWithDatabaseTransaction(database))
+                val stateMachines = StateMachineManager.StateMachines(flows.values.map { it.fiber.logic }, parkedFlowsSnapshot())
+                DataFeed(stateMachines, changesPublisher.bufferUntilSubscribed().wrapWithDatabaseTransaction(database))
             }
         }
     }
@@ -207,6 +239,15 @@ class SingleThreadedStateMachineManager(
 
     override fun killFlow(id: StateMachineRunId): Boolean {
         return mutex.locked {
+            val parkedCheckpoint = parkedFlows.remove(id)
+            if (parkedCheckpoint != null) {
+                logger.debug("Killing parked flow.")
+                removeSessionBindings(getFlowSessionIds(parkedCheckpoint))
+                database.transaction {
+                    checkpointStorage.removeCheckpoint(id)
+                }
+                return@locked true
+            }
             cancelTimeoutIfScheduled(id)
             val flow = flows.remove(id)
             if (flow != null) {
@@ -300,26 +341,134 @@ class SingleThreadedStateMachineManager(
         liveFibers.countUp()
     }
 
-    private fun restoreFlowsFromCheckpoints(): List<Flow> {
-        return checkpointStorage.getAllCheckpoints().map { (id, serializedCheckpoint) ->
-            // If a flow is added before start() then don't attempt to restore it
-            mutex.locked { if (flows.containsKey(id)) return@map null }
-            val checkpoint = deserializeCheckpoint(serializedCheckpoint) ?: return@map null
-            logger.debug { "Restored $checkpoint" }
-            createFlowFromCheckpoint(
-                    id = id,
-                    checkpoint = checkpoint,
-                    initialDeduplicationHandler = null,
-                    isAnyCheckpointPersisted = true,
-                    isStartIdempotent = false
-            )
-        }.toList().filterNotNull()
+    /**
+     * Deserialises the checkpoints on a pool of [FlowRestoreConfiguration.parallelism] threads. In lazy mode, flows that
+     * are only waiting for session messages are parked rather than having their fibers deserialised.
+     */
+    private fun restoreFlowsFromCheckpoints(): RestoredFlows {
+        val flowRestore = serviceHub.configuration.flowRestore
+        val threadFactory = ThreadFactoryBuilder().setNameFormat("flow-restore-%d").setDaemon(true).build()
+        // The restoring threads deserialise with the serialization environment of the starting thread.
+        val serializationEnv = _contextSerializationEnv.get()
+        val restorePool = Executors.newFixedThreadPool(flowRestore.parallelism) { task ->
+            threadFactory.newThread {
+                serializationEnv?.let { _contextSerializationEnv.set(it) }
+                task.run()
+            }
+        }
+        // Bound the number of serialised checkpoints read ahead of the restoring threads.
+        val readAhead = Semaphore(flowRestore.parallelism * 4)
+        try {
+            val restoring = checkpointStorage.getAllCheckpoints().map { (id, serializedCheckpoint) ->
+                // If a flow is added before start() then don't attempt to restore it
+                mutex.locked { if (flows.containsKey(id)) return@map null }
+                readAhead.acquire()
+                restorePool.submit(Callable {
+                    try {
+                        restoreFlow(id, serializedCheckpoint, flowRestore.lazy)
+                    } finally {
+                        readAhead.release()
+                    }
+                })
+            }.toList().filterNotNull()
+            val flows = ArrayList<Flow>()
+            val parked = LinkedHashMap<StateMachineRunId, Checkpoint>()
+            for (future in restoring) {
+                val restored = future.getOrThrow() ?: continue
+                when (restored) {
+                    is RestoredFlow.Resumed -> flows += restored.flow
+                    is RestoredFlow.Parked -> parked[restored.id] = restored.checkpoint
+                }
+            }
+            return RestoredFlows(flows, parked)
+        } finally {
+            restorePool.shutdown()
+        }
     }
 
-    private fun resumeRestoredFlows(flows: List<Flow>) {
-        for (flow in flows) {
+    /** Returns null if the checkpoint is unrestorable. */
+    private fun restoreFlow(id: StateMachineRunId, serializedCheckpoint: SerializedBytes<Checkpoint>, lazy: Boolean): RestoredFlow? {
+        val checkpoint = deserializeCheckpoint(serializedCheckpoint) ?: return null
+        logger.debug { "Restored $checkpoint" }
+        if (lazy && isOnlyWaitingForMessages(checkpoint)) {
+            return RestoredFlow.Parked(id, checkpoint)
+        }
+        return RestoredFlow.Resumed(createFlowFromCheckpoint(
+                id = id,
+                checkpoint = checkpoint,
+                initialDeduplicationHandler = null,
+                isAnyCheckpointPersisted = true,
+                isStartIdempotent = false
+        ))
+    }
+
+    /**
+     * Returns true if resuming the flow would only leave it waiting for a message on sessions which have nothing
+     * buffered. Timed flows are excluded as their timeout is only scheduled once they are resumed.
+     */
+    private fun isOnlyWaitingForMessages(checkpoint: Checkpoint): Boolean {
+        val flowState = checkpoint.flowState as? FlowState.Started ?: return false
+        val receive = flowState.flowIORequest as? FlowIORequest.Receive ?: return false
+        if (checkpoint.errorState != ErrorState.Clean) return false
+        if (checkpoint.subFlowStack.any { TimedFlow::class.java.isAssignableFrom(it.flowClass) }) return false
+        return receive.sessions.all {
+            val sessionState = checkpoint.sessions[(it as FlowSessionImpl).sourceSessionId]
+            when (sessionState) {
+                is SessionState.Initiating -> true
+                is SessionState.Initiated -> sessionState.receivedMessages.isEmpty() && sessionState.errors.isEmpty()
+                else -> false
+            }
+        }
+    }
+
+    private fun resumeRestoredFlows(restoredFlows: RestoredFlows) {
+        for (flow in restoredFlows.flows) {
             addAndStartFlow(flow.fiber.id, flow)
         }
+        if (restoredFlows.parked.isNotEmpty()) {
+            for ((id, checkpoint) in restoredFlows.parked) {
+                for (sessionId in getFlowSessionIds(checkpoint)) {
+                    sessionToFlow[sessionId] = id
+                }
+            }
+            mutex.locked { parkedFlows.putAll(restoredFlows.parked) }
+            logger.info("Parked ${restoredFlows.parked.size} flows until messages arrive for them")
+        }
+    }
+
+    /**
+     * Creates and starts the fiber of a parked flow, returning null if [id] is not parked.
+     *
+     * Assumes lock is taken on the [InnerState].
+     */
+    private fun InnerState.unparkFlow(id: StateMachineRunId): Flow? {
+        val checkpoint = parkedFlows.remove(id) ?: return null
+        logger.debug { "Resuming parked flow $id" }
+        val flow = createFlowFromCheckpoint(
+                id = id,
+                checkpoint = checkpoint,
+                initialDeduplicationHandler = null,
+                isAnyCheckpointPersisted = true,
+                isStartIdempotent = false
+        )
+        addAndStartFlow(id, flow)
+        return flow
+    }
+
+    /**
+     * Describes the parked flows from their checkpoints, which were only parked if they are waiting on a receive.
+     *
+     * Assumes lock is taken on the [InnerState].
+     */
+    private fun InnerState.parkedFlowsSnapshot(): List<StateMachineManager.ParkedFlow> {
+        return parkedFlows.map { (id, checkpoint) ->
+            StateMachineManager.ParkedFlow(
+                    id = id,
+                    flowClass = checkpoint.subFlowStack.first().flowClass,
+                    context = checkpoint.invocationContext,
+                    receive = (checkpoint.flowState as FlowState.Started).flowIORequest as FlowIORequest.Receive
+            )
+        }
     }
 
     override fun retryFlowFromSafePoint(currentState: StateMachineState) {
@@ -381,27 +530,105 @@ class SingleThreadedStateMachineManager(
     }
 
     override fun deliverExternalEvent(event: ExternalEvent) {
+        deliverExternalEvent(event, null)
+    }
+
+    /**
+     * Delivers [event]. If it starts an initiated flow and [unpersistedStarts] is given, the flow is added to it rather than
+     * started, so that its initial checkpoint can be persisted together with others.
+     */
+    private fun deliverExternalEvent(event: ExternalEvent, unpersistedStarts: MutableList<UnpersistedFlowStart>?) {
         mutex.locked {
             if (!stopping) {
                 when (event) {
-                    is ExternalEvent.ExternalMessageEvent -> onSessionMessage(event)
+                    is ExternalEvent.ExternalMessageEvent -> onSessionMessage(event, unpersistedStarts)
                     is ExternalEvent.ExternalStartFlowEvent<*> -> onExternalStartFlow(event)
                 }
             }
         }
     }
 
+    private fun scheduleInboundEvents() {
+        if (inboundEventsScheduled.compareAndSet(false, true)) {
+            executor.execute { deliverInboundEvents() }
+        }
+    }
+
+    /**
+     * Delivers up to [MAX_INBOUND_BATCH_SIZE] of the session messages received since the last call, in the order they were
+     * received. The flows initiated by them only start once all their initial checkpoints, and the deduplication IDs of
+     * their session-init messages, have been persisted in a single database transaction. The session-init messages are
+     * then acknowledged together. Any messages left over are delivered by another task, so that flows already scheduled
+     * on the executor get to run in between.
+     */
+    private fun deliverInboundEvents() {
+        // Cleared first, so that an event which arrives while these are delivered is either taken here or by a new task.
+        inboundEventsScheduled.set(false)
+        val unpersistedStarts = ArrayList<UnpersistedFlowStart>()
+        for (i in 1..MAX_INBOUND_BATCH_SIZE) {
+            val event = inboundEvents.poll() ?: break
+            deliverExternalEvent(event, unpersistedStarts)
+        }
+        if (unpersistedStarts.isNotEmpty()) {
+            startWithInitialCheckpoints(unpersistedStarts)
+        }
+        if (inboundEvents.isNotEmpty()) {
+            scheduleInboundEvents()
+        }
+    }
+
+    private fun startWithInitialCheckpoints(starts: List<UnpersistedFlowStart>) {
+        val persisted = try {
+            persistInitialCheckpoints(starts)
+            true
+        } catch (e: Exception) {
+            // Each flow will try again to persist its own initial checkpoint when it starts.
+            logger.warn("Unable to persist the initial checkpoints of ${starts.size} flows together", e)
+            false
+        }
+        if (persisted) {
+            starts.map { it.deduplicationHandler }.afterDatabaseTransaction()
+            for (start in starts) {
+                val fiber = start.flow.fiber
+                fiber.transientState = TransientReference(fiber.snapshot().copy(
+                        pendingDeduplicationHandlers = emptyList(),
+                        isAnyCheckpointPersisted = true
+                ))
+            }
+        }
+        for (start in starts) {
+            addAndStartFlow(start.id, start.flow)
+        }
+    }
+
+    private fun persistInitialCheckpoints(starts: List<UnpersistedFlowStart>) {
+        val actionExecutor = actionExecutor!!
+        val firstFiber = starts.first().flow.fiber
+        actionExecutor.executeAction(firstFiber, Action.CreateTransaction)
+        try {
+            for (start in starts) {
+                val fiber = start.flow.fiber
+                actionExecutor.executeAction(fiber, Action.PersistCheckpoint(start.id, fiber.snapshot().checkpoint))
+                actionExecutor.executeAction(fiber, Action.PersistDeduplicationFacts(listOf(start.deduplicationHandler)))
+            }
+        } catch (e: Exception) {
+            actionExecutor.executeAction(firstFiber, Action.RollbackTransaction)
+            throw e
+        }
+        actionExecutor.executeAction(firstFiber, Action.CommitTransaction)
+    }
+
     private fun <T> onExternalStartFlow(event: ExternalEvent.ExternalStartFlowEvent<T>) {
         val future = startFlow(event.flowLogic, event.context, ourIdentity = null, deduplicationHandler = event.deduplicationHandler)
         event.wireUpFuture(future)
     }
 
-    private fun onSessionMessage(event: ExternalEvent.ExternalMessageEvent) {
+    private fun onSessionMessage(event: ExternalEvent.ExternalMessageEvent, unpersistedStarts: MutableList<UnpersistedFlowStart>?) {
         val message: ReceivedMessage = event.receivedMessage
         val deduplicationHandler: DeduplicationHandler = event.deduplicationHandler
         val peer = message.peer
         val sessionMessage = try {
-            message.data.deserialize<SessionMessage>()
+            FlowMessagingImpl.deserializeSessionMessage(message.data)
         } catch (ex: Exception) {
             logger.error("Received corrupt SessionMessage data from $peer")
             deduplicationHandler.afterDatabaseTransaction()
@@ -411,7 +638,7 @@ class SingleThreadedStateMachineManager(
         if (sender != null) {
             when (sessionMessage) {
                 is ExistingSessionMessage -> onExistingSessionMessage(sessionMessage, deduplicationHandler, sender)
-                is InitialSessionMessage -> onSessionInit(sessionMessage, message.platformVersion, deduplicationHandler, sender)
+                is InitialSessionMessage -> onSessionInit(sessionMessage, message.platformVersion, deduplicationHandler, sender, unpersistedStarts)
             }
         } else {
             logger.error("Unknown peer $peer in $sessionMessage")
@@ -433,7 +660,7 @@ class SingleThreadedStateMachineManager(
                     logger.warn("Cannot find flow corresponding to session ID $recipientId.")
                 }
             } else {
-                val flow = mutex.locked { flows[flowId] }
+                val flow = mutex.locked { flows[flowId] ?: unparkFlow(flowId) }
                         ?: throw IllegalStateException("Cannot find fiber corresponding to ID $flowId")
                 flow.fiber.scheduleEvent(Event.DeliverSessionMessage(sessionMessage, deduplicationHandler, sender))
             }
@@ -443,7 +670,11 @@ class SingleThreadedStateMachineManager(
         }
     }
 
-    private fun onSessionInit(sessionMessage: InitialSessionMessage, senderPlatformVersion: Int, deduplicationHandler: DeduplicationHandler, sender: Party) {
+    private fun onSessionInit(sessionMessage: InitialSessionMessage,
+                              senderPlatformVersion: Int,
+                              deduplicationHandler: DeduplicationHandler,
+                              sender: Party,
+                              unpersistedStarts: MutableList<UnpersistedFlowStart>?) {
         fun createErrorMessage(initiatorSessionId: SessionId, message: String): ExistingSessionMessage {
             val errorId = secureRandom.nextLong()
             val payload = RejectSessionMessage(message, errorId)
@@ -463,7 +694,7 @@ class SingleThreadedStateMachineManager(
                 is InitiatedFlowFactory.Core -> senderPlatformVersion
                 is InitiatedFlowFactory.CorDapp -> null
             }
-            startInitiatedFlow(flowLogic, deduplicationHandler, senderSession, initiatedSessionId, sessionMessage, senderCoreFlowVersion, initiatedFlowInfo)
+            startInitiatedFlow(flowLogic, deduplicationHandler, senderSession, initiatedSessionId, sessionMessage, senderCoreFlowVersion, initiatedFlowInfo, unpersistedStarts)
             null
         } catch (exception: Exception) {
             logger.warn("Exception while creating initiated flow", exception)
@@ -503,14 +734,16 @@ class SingleThreadedStateMachineManager(
             initiatedSessionId: SessionId,
             initiatingMessage: InitialSessionMessage,
             senderCoreFlowVersion: Int?,
-            initiatedFlowInfo: FlowInfo
+            initiatedFlowInfo: FlowInfo,
+            unpersistedStarts: MutableList<UnpersistedFlowStart>?
     ) {
         val flowStart = FlowStart.Initiated(peerSession, initiatedSessionId, initiatingMessage, senderCoreFlowVersion, initiatedFlowInfo)
         val ourIdentity = getOurFirstIdentity()
         startFlowInternal(
                 InvocationContext.peer(peerSession.counterparty.name), flowLogic, flowStart, ourIdentity,
                 initiatingMessageDeduplicationHandler,
-                isStartIdempotent = false
+                isStartIdempotent = false,
+                unpersistedStarts = unpersistedStarts
         )
     }
 
@@ -520,7 +753,8 @@ class SingleThreadedStateMachineManager(
             flowStart: FlowStart,
             ourIdentity: Party,
             deduplicationHandler: DeduplicationHandler?,
-            isStartIdempotent: Boolean
+            isStartIdempotent: Boolean,
+            unpersistedStarts: MutableList<UnpersistedFlowStart>? = null
     ): CordaFuture<FlowStateMachine<A>> {
         val flowId = StateMachineRunId.createRandom()
 
@@ -552,7 +786,12 @@ class SingleThreadedStateMachineManager(
             startedFutures[flowId] = startedFuture
         }
         totalStartedFlows.inc()
-        addAndStartFlow(flowId, Flow(flowStateMachineImpl, resultFuture))
+        val flow = Flow(flowStateMachineImpl, resultFuture)
+        if (unpersistedStarts != null && deduplicationHandler != null && !isStartIdempotent) {
+            unpersistedStarts += UnpersistedFlowStart(flowId, flow, deduplicationHandler)
+        } else {
+            addAndStartFlow(flowId, flow)
+        }
         return startedFuture.map { flowStateMachineImpl as FlowStateMachine<A> }
     }
 
@@ -641,7 +880,8 @@ class SingleThreadedStateMachineManager(
                 stateMachine = StateMachine(id, secureRandom),
                 serviceHub = serviceHub,
                 checkpointSerializationContext = checkpointSerializationContext!!,
-                unfinishedFibers = unfinishedFibers
+                unfinishedFibers = unfinishedFibers,
+                flowTimings = flowTimings
         )
     }
 
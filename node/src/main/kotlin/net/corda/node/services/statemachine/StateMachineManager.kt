@@ -4,6 +4,7 @@ import net.corda.core.concurrent.CordaFuture
 import net.corda.core.context.InvocationContext
 import net.corda.core.flows.FlowLogic
 import net.corda.core.flows.StateMachineRunId
+import net.corda.core.internal.FlowIORequest
 import net.corda.core.internal.FlowStateMachine
 import net.corda.core.messaging.DataFeed
 import net.corda.core.utilities.Try
@@ -51,9 +52,26 @@ interface StateMachineManager {
     }
 
     /**
-     * Returns the list of live state machines and a stream of subsequent additions/removals of them.
+     * A flow restored from its checkpoint which only gets a fiber, and so a [FlowLogic], once a message arrives for it,
+     * see [net.corda.node.services.config.FlowRestoreConfiguration.lazy]. Until then it is waiting on [receive].
      */
-    fun track(): DataFeed<List<FlowLogic<*>>, Change>
+    data class ParkedFlow(
+            val id: StateMachineRunId,
+            val flowClass: Class<out FlowLogic<*>>,
+            val context: InvocationContext,
+            val receive: FlowIORequest.Receive
+    )
+
+    /**
+     * The live state machines, split into those with a [FlowLogic] and those which are parked. No [Change.Add] is
+     * emitted when a parked flow gets its fiber.
+     */
+    data class StateMachines(val flows: List<FlowLogic<*>>, val parkedFlows: List<ParkedFlow>)
+
+    /**
+     * Returns the live state machines and a stream of subsequent additions/removals of them.
+     */
+    fun track(): DataFeed<StateMachines, Change>
 
     /**
      * The stream of additions/removals of flows.
@@ -61,12 +79,13 @@ interface StateMachineManager {
     val changes: Observable<Change>
 
     /**
-     * Returns the currently live flows of type [flowClass], and their corresponding result future.
+     * Returns the currently live flows of type [flowClass], and their corresponding result future. Parked flows are not
+     * included.
      */
     fun <A : FlowLogic<*>> findStateMachines(flowClass: Class<A>): List<Pair<A, CordaFuture<*>>>
 
     /**
-     * Returns all currently live flows.
+     * Returns all currently live flows, except for parked ones.
      */
     val allStateMachines: List<FlowLogic<*>>
 
@@ -85,10 +104,18 @@ interface StateMachineManager {
 
     val flowHospital: StaffedFlowHospital
 
+    /** The latencies of each flow class, and where their time was spent suspended. */
+    val flowTimings: FlowTimings
+
     /**
-     * Returns a snapshot of all [FlowStateMachineImpl]s currently managed.
+     * Returns a snapshot of all [FlowStateMachineImpl]s currently managed. Parked flows have none, see [parkedFlows].
      */
     fun snapshot(): Set<FlowStateMachineImpl<*>>
+
+    /**
+     * Returns the flows which are parked until a message arrives for them, as described by their checkpoints.
+     */
+    fun parkedFlows(): List<ParkedFlow>
 }
 
 // These must be idempotent! A later failure in the state transition may error the flow state, and a replay may call
@@ -2,6 +2,7 @@ package net.corda.node.services.statemachine.interceptors
 
 import co.paralleluniverse.fibers.Suspendable
 import com.codahale.metrics.MetricRegistry
+import com.codahale.metrics.Timer
 import net.corda.core.flows.StateMachineRunId
 import net.corda.node.services.statemachine.Action
 import net.corda.node.services.statemachine.ActionExecutor
@@ -13,22 +14,32 @@ import net.corda.node.services.statemachine.transitions.FlowContinuation
 import net.corda.node.services.statemachine.transitions.TransitionResult
 
 class MetricInterceptor(val metrics: MetricRegistry, val delegate: TransitionExecutor) : TransitionExecutor {
+    private val actionTimers = ActionTimers(metrics)
+
     override fun forceRemoveFlow(id: StateMachineRunId) {
         delegate.forceRemoveFlow(id)
     }
 
     @Suspendable
     override fun executeTransition(fiber: FlowFiber, previousState: StateMachineState, event: Event, transition: TransitionResult, actionExecutor: ActionExecutor): Pair<FlowContinuation, StateMachineState> {
-        val metricActionInterceptor = MetricActionInterceptor(metrics, actionExecutor)
+        val metricActionInterceptor = MetricActionInterceptor(actionTimers, actionExecutor)
         return delegate.executeTransition(fiber, previousState, event, transition, metricActionInterceptor)
     }
 }
 
-class MetricActionInterceptor(val metrics: MetricRegistry, val delegate: ActionExecutor) : ActionExecutor {
+/**
+ * The timer of each [Action] type. Looking timers up by class avoids building their names and searching the registry on
+ * every action.
+ */
+class ActionTimers(private val metrics: MetricRegistry) : ClassValue<Timer>() {
+    override fun computeValue(type: Class<*>): Timer = metrics.timer("Flows.Actions.${type.simpleName}")
+}
+
+class MetricActionInterceptor(val timers: ActionTimers, val delegate: ActionExecutor) : ActionExecutor {
     @Suspendable
     override fun executeAction(fiber: FlowFiber, action: Action) {
-        val context = metrics.timer("Flows.Actions.${action.javaClass.simpleName}").time()
+        val context = timers.get(action.javaClass).time()
         delegate.executeAction(fiber, action)
         context.stop()
     }
-}
\ No newline at end of file
+}
@@ -33,6 +33,7 @@ import net.corda.node.services.Permissions.Companion.invokeRpc
 import net.corda.node.services.Permissions.Companion.startFlow
 import net.corda.node.services.messaging.CURRENT_RPC_CONTEXT
 import net.corda.node.services.messaging.RpcAuthContext
+import net.corda.node.services.statemachine.FlowTimingsSnapshotFlow
 import net.corda.nodeapi.exceptions.NonRpcFlowException
 import net.corda.nodeapi.internal.config.User
 import net.corda.testing.core.ALICE_NAME
@@ -323,6 +324,20 @@ class CordaRPCOpsImplTest {
         }
     }
 
+    @Test
+    fun `flow timings are returned by a flow started over RPC`() {
+        withPermissions(startFlow<CashIssueFlow>(), startFlow<FlowTimingsSnapshotFlow>()) {
+            val result = rpc.startFlow(::CashIssueFlow, Amount(100, GBP), OpaqueBytes.of(1), notary)
+            mockNet.runNetwork()
+            result.returnValue.getOrThrow()
+
+            val snapshot = rpc.startFlow(::FlowTimingsSnapshotFlow).returnValue
+            mockNet.runNetwork()
+            val issueTimings = snapshot.getOrThrow().single { it.flowLogicClassName == CashIssueFlow::class.java.name }
+            assertEquals(1, issueTimings.finished)
+        }
+    }
+
     @Test
     fun `kill a nonexistent flow through RPC`() {
         withPermissions(invokeRpc(CordaRPCOps::killFlow)) {
@@ -0,0 +1,152 @@
+package net.corda.node.internal.artemis
+
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.MetricRegistry
+import com.nhaarman.mockito_kotlin.doReturn
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.whenever
+import com.typesafe.config.ConfigFactory
+import net.corda.core.utilities.millis
+import net.corda.nodeapi.internal.ArtemisMessagingComponent.Companion.JOURNAL_HEADER_SIZE
+import net.corda.nodeapi.internal.config.parseAs
+import org.apache.activemq.artemis.api.core.SimpleString
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl
+import org.apache.activemq.artemis.core.management.impl.ActiveMQServerControlImpl
+import org.apache.activemq.artemis.core.paging.PagingManager
+import org.apache.activemq.artemis.core.paging.PagingStore
+import org.apache.activemq.artemis.core.server.ActiveMQServer
+import org.apache.activemq.artemis.core.server.JournalType
+import org.apache.activemq.artemis.core.settings.impl.AddressFullMessagePolicy
+import org.assertj.core.api.Assertions.assertThatIllegalArgumentException
+import org.junit.Test
+import kotlin.test.assertEquals
+
+class BrokerTuningTest {
+    @Test
+    fun `parses from config`() {
+        val config = ConfigFactory.parseString("""
+            journalType = NIO
+            journalSyncTransactional = false
+            journalSyncNonTransactional = false
+            journalBufferTimeout = 2ms
+            journalMaxIO = 100
+            journalCompactMinFiles = 5
+            journalCompactPercentage = 40
+            p2pMaxSizeBytes = 1048576
+            rpcMaxSizeBytes = 2097152
+            pageSizeBytes = 524288
+        """)
+        val expected = BrokerTuning(
+                journalType = JournalType.NIO,
+                journalSyncTransactional = false,
+                journalSyncNonTransactional = false,
+                journalBufferTimeout = 2.millis,
+                journalMaxIO = 100,
+                journalCompactMinFiles = 5,
+                journalCompactPercentage = 40,
+                p2pMaxSizeBytes = 1048576,
+                rpcMaxSizeBytes = 2097152,
+                pageSizeBytes = 524288)
+        assertEquals(expected, config.parseAs())
+    }
+
+    @Test
+    fun `empty config keeps the defaults`() {
+        assertEquals(BrokerTuning(), ConfigFactory.empty().parseAs())
+    }
+
+    @Test
+    fun `invalid values are rejected`() {
+        assertThatIllegalArgumentException().isThrownBy { BrokerTuning(journalCompactPercentage = 101) }
+        assertThatIllegalArgumentException().isThrownBy { BrokerTuning(journalMaxIO = 0) }
+        assertThatIllegalArgumentException().isThrownBy { BrokerTuning(p2pMaxSizeBytes = -1) }
+    }
+
+    @Test
+    fun `journal settings are applied to the broker configuration`() {
+        val configuration = ConfigurationImpl()
+        BrokerTuning(
+                journalType = JournalType.MAPPED,
+                journalSyncTransactional = false,
+                journalBufferTimeout = 2.millis,
+                journalMaxIO = 100,
+                journalCompactMinFiles = 5,
+                journalCompactPercentage = 40
+        ).applyJournalSettings(configuration)
+
+        assertEquals(JournalType.MAPPED, configuration.journalType)
+        assertEquals(false, configuration.isJournalSyncTransactional)
+        assertEquals(true, configuration.isJournalSyncNonTransactional)
+        assertEquals(2000000, configuration.journalBufferTimeout_NIO)
+        assertEquals(2000000, configuration.journalBufferTimeout_AIO)
+        assertEquals(100, configuration.journalMaxIO_AIO)
+        assertEquals(5, configuration.journalCompactMinFiles)
+        assertEquals(40, configuration.journalCompactPercentage)
+    }
+
+    @Test
+    fun `unset journal settings keep the Artemis defaults`() {
+        val defaults = ConfigurationImpl()
+        val configuration = ConfigurationImpl()
+        BrokerTuning().applyJournalSettings(configuration)
+
+        assertEquals(defaults.journalType, configuration.journalType)
+        assertEquals(defaults.journalBufferTimeout_NIO, configuration.journalBufferTimeout_NIO)
+        assertEquals(defaults.journalMaxIO_AIO, configuration.journalMaxIO_AIO)
+        assertEquals(defaults.journalCompactMinFiles, configuration.journalCompactMinFiles)
+        assertEquals(defaults.journalCompactPercentage, configuration.journalCompactPercentage)
+    }
+
+    @Test
+    fun `paged address settings page once the address is full`() {
+        val settings = BrokerTuning(pageSizeBytes = 1024 * 1024).pagedAddressSettings(8 * 1024 * 1024, 64 * 1024)
+        assertEquals(8L * 1024 * 1024, settings.maxSizeBytes)
+        assertEquals(1024 * 1024, settings.pageSizeBytes)
+        assertEquals(AddressFullMessagePolicy.PAGE, settings.addressFullMessagePolicy)
+    }
+
+    @Test
+    fun `page size is never less than the maximum message size`() {
+        val maxMessageSize = 10 * 1024 * 1024
+        val settings = BrokerTuning(pageSizeBytes = 1024).pagedAddressSettings(64 * 1024 * 1024, maxMessageSize)
+        assertEquals(maxMessageSize + JOURNAL_HEADER_SIZE, settings.pageSizeBytes)
+    }
+
+    @Test
+    fun `broker metrics read the running broker`() {
+        val pagingStore = mock<PagingStore>().also { doReturn(true).whenever(it).isPaging }
+        val pagingManager = mock<PagingManager>().also {
+            doReturn(4096L).whenever(it).globalSize
+            doReturn(arrayOf(SimpleString("paging"), SimpleString("idle"))).whenever(it).storeNames
+            doReturn(pagingStore).whenever(it).getPageStore(SimpleString("paging"))
+        }
+        val control = mock<ActiveMQServerControlImpl>().also {
+            doReturn(7L).whenever(it).totalMessageCount
+            doReturn(9L).whenever(it).totalMessagesAdded
+        }
+        val server = mock<ActiveMQServer>().also {
+            doReturn(true).whenever(it).isStarted
+            doReturn(pagingManager).whenever(it).pagingManager
+            doReturn(control).whenever(it).activeMQServerControl
+            doReturn(3).whenever(it).connectionCount
+        }
+        val metrics = MetricRegistry()
+        registerBrokerMetrics(metrics, "Broker") { server }
+
+        fun gauge(name: String) = (metrics.gauges["Broker.$name"] as Gauge<*>).value
+        assertEquals(4096L, gauge("AddressMemoryUsage"))
+        assertEquals(7L, gauge("MessageCount"))
+        assertEquals(9L, gauge("MessagesAdded"))
+        assertEquals(3L, gauge("ConnectionCount"))
+        assertEquals(1L, gauge("PagingAddresses"))
+    }
+
+    @Test
+    fun `broker metrics read zero while the broker is stopped`() {
+        val metrics = MetricRegistry()
+        registerBrokerMetrics(metrics, "Broker") { null }
+        assertEquals(setOf("AddressMemoryUsage", "MessageCount", "MessagesAdded", "ConnectionCount", "PagingAddresses").map { "Broker.$it" }.toSet(),
+                metrics.gauges.keys)
+        metrics.gauges.values.forEach { assertEquals(0L, it.value) }
+    }
+}
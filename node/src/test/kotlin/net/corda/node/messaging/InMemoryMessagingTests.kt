@@ -1,13 +1,17 @@
 package net.corda.node.messaging
 
 import net.corda.core.messaging.AllPossibleRecipients
+import net.corda.core.messaging.SingleMessageRecipient
 import net.corda.node.services.messaging.Message
 import net.corda.node.services.messaging.TopicStringValidator
 import net.corda.testing.internal.rigorousMock
+import net.corda.testing.node.InMemoryMessagingNetwork
 import net.corda.testing.node.internal.InternalMockNetwork
+import net.corda.testing.node.internal.pumpReceive
 import org.junit.After
 import org.junit.Before
 import org.junit.Test
+import java.time.Duration
 import java.util.*
 import kotlin.test.assertEquals
 import kotlin.test.assertFails
@@ -112,4 +116,27 @@ class InMemoryMessagingTests {
         mockNet.runNetwork()
         assertEquals(2, received)
     }
+
+    @Test
+    fun `latency does not reorder messages`() {
+        mockNet.stopNodes()
+        // Every other message is held back for longer than the one after it.
+        var sent = 0
+        val latencyCalculator = object : InMemoryMessagingNetwork.LatencyCalculator {
+            override fun between(sender: SingleMessageRecipient, receiver: SingleMessageRecipient): Duration {
+                return Duration.ofMillis(if (sent++ % 2 == 0) 50 else 0)
+            }
+        }
+        mockNet = InternalMockNetwork(latencyCalculator = latencyCalculator)
+        val node1 = mockNet.createNode()
+        val node2 = mockNet.createNode()
+        val received = ArrayList<Byte>()
+        node2.network.addMessageHandler("test.topic") { msg, _, _ -> received += msg.data.bytes[0] }
+
+        (0 until 10).forEach {
+            node1.network.send(node1.network.createMessage("test.topic", data = byteArrayOf(it.toByte())), node2.network.myAddress)
+        }
+        repeat(10) { node2.pumpReceive(block = true) }
+        assertEquals((0 until 10).map { it.toByte() }, received)
+    }
 }
@@ -0,0 +1,57 @@
+package net.corda.node.serialization.kryo
+
+import net.corda.serialization.internal.CordaSerializationEncoding
+import net.corda.serialization.internal.SerializationFactoryImpl
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNotSame
+import kotlin.test.assertSame
+
+class KryoCheckpointCompressionTest {
+    private val metrics = KryoCheckpointMetrics()
+    private val factory = SerializationFactoryImpl().apply {
+        registerScheme(KryoServerSerializationScheme(CheckpointCompression(CordaSerializationEncoding.SNAPPY, 1024), metrics))
+    }
+
+    @Test
+    fun `checkpoints above the threshold are compressed`() {
+        val large = "a".repeat(100000)
+        val bytes = factory.serialize(large, KRYO_CHECKPOINT_CONTEXT)
+        assertThat(bytes.size).isLessThan(large.length / 10)
+        assertEquals(large, factory.deserialize(bytes, String::class.java, KRYO_CHECKPOINT_CONTEXT))
+        assertEquals(1, metrics.compressionRatio.count)
+        assertEquals(1, metrics.compressionTime.count)
+    }
+
+    @Test
+    fun `checkpoints below the threshold are not compressed`() {
+        val small = "small"
+        val bytes = factory.serialize(small, KRYO_CHECKPOINT_CONTEXT)
+        assertEquals(small, factory.deserialize(bytes, String::class.java, KRYO_CHECKPOINT_CONTEXT))
+        assertEquals(0, metrics.compressionRatio.count)
+    }
+
+    @Test
+    fun `output streams are reused by the size they have grown to`() {
+        val pool = SizeClassedOutputStreamPool(1024, intArrayOf(16, 64))
+        val grown = pool.borrow(10).apply { write(ByteArray(40)) }
+        pool.release(grown)
+        val large = pool.borrow(50)
+        assertThat(large.capacity).isEqualTo(64)
+        val reused = pool.borrow(10)
+        assertSame(grown, reused)
+        assertEquals(0, reused.size())
+    }
+
+    @Test
+    fun `output streams beyond the retention cap are not kept`() {
+        val pool = SizeClassedOutputStreamPool(100, intArrayOf(16, 64))
+        val streams = List(3) { pool.borrow(50) }
+        streams.forEach { pool.release(it) }
+        assertEquals(64, pool.retained)
+        assertSame(streams[0], pool.borrow(50))
+        assertEquals(0, pool.retained)
+        assertNotSame(streams[1], pool.borrow(50))
+    }
+}
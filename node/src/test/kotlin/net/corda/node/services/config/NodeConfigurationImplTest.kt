@@ -4,6 +4,7 @@ import com.typesafe.config.*
 import net.corda.core.internal.toPath
 import net.corda.core.utilities.NetworkHostAndPort
 import net.corda.core.utilities.seconds
+import net.corda.node.services.messaging.ObservableBackpressurePolicy
 import net.corda.nodeapi.internal.config.getBooleanCaseInsensitive
 import net.corda.testing.core.ALICE_NAME
 import net.corda.testing.node.MockServices.Companion.makeTestDataSourceProperties
@@ -208,6 +209,49 @@ class NodeConfigurationImplTest {
         assertEquals(compatibilityZoneURL, configuration.networkServices!!.networkMapURL)
     }
 
+    @Test
+    fun `checkpointBufferPoolMegaBytes sets the checkpoint buffer retention cap`() {
+        var rawConfig = ConfigFactory.parseResources("working-config.conf", ConfigParseOptions.defaults().setAllowMissing(false))
+        assertEquals(NodeConfiguration.defaultCheckpointBufferPoolSize, rawConfig.parseAsNodeConfiguration().checkpointBufferPoolBytes)
+        rawConfig = rawConfig.withValue("checkpointBufferPoolMegaBytes", ConfigValueFactory.fromAnyRef(4))
+
+        assertEquals(4.MB, rawConfig.parseAsNodeConfiguration().checkpointBufferPoolBytes)
+    }
+
+    @Test
+    fun `rpcServerTuning sets the number of RPC sender threads`() {
+        var rawConfig = ConfigFactory.parseResources("working-config.conf", ConfigParseOptions.defaults().setAllowMissing(false))
+        assertEquals(RpcServerTuning(), rawConfig.parseAsNodeConfiguration().rpcServerTuning)
+        rawConfig = rawConfig.withValue("rpcServerTuning.senderThreads", ConfigValueFactory.fromAnyRef(2))
+
+        assertEquals(2, rawConfig.parseAsNodeConfiguration().rpcServerTuning.senderThreads)
+    }
+
+    @Test
+    fun `rpcServerTuning sets the flow control of RPC Observables`() {
+        val rawConfig = ConfigFactory.parseResources("working-config.conf", ConfigParseOptions.defaults().setAllowMissing(false))
+                .withFallback(ConfigFactory.parseString("""
+                    rpcServerTuning.observableFlowControl {
+                        bufferSize = 16
+                        defaultPolicy = Conflate
+                        policies = [ { rpc = vaultTrackBy, policy = Sample, sampleInterval = 2s } ]
+                    }
+                """))
+
+        val flowControl = rawConfig.parseAsNodeConfiguration().rpcServerTuning.observableFlowControl.toConfiguration()
+        assertEquals(16, flowControl.bufferSize)
+        assertEquals(ObservableBackpressurePolicy.Conflate, flowControl.policyFor("stateMachinesFeed"))
+        assertEquals(ObservableBackpressurePolicy.Sample(2.seconds), flowControl.policyFor("vaultTrackBy"))
+    }
+
+    @Test
+    fun `the Sample policy needs a sampleInterval`() {
+        val rawConfig = ConfigFactory.parseResources("working-config.conf", ConfigParseOptions.defaults().setAllowMissing(false))
+                .withValue("rpcServerTuning.observableFlowControl.defaultPolicy", ConfigValueFactory.fromAnyRef("Sample"))
+
+        assertThatIllegalArgumentException().isThrownBy { rawConfig.parseAsNodeConfiguration() }
+    }
+
     private fun configDebugOptions(devMode: Boolean, devModeOptions: DevModeOptions?): NodeConfiguration {
         return testConfiguration.copy(devMode = devMode, devModeOptions = devModeOptions)
     }
@@ -123,6 +123,20 @@ class PersistentIdentityServiceTests {
         }
     }
 
+    @Test
+    fun `identity registered in a rolled back transaction is forgotten`() {
+        assertFailsWith<IllegalStateException> {
+            database.transaction {
+                identityService.verifyAndRegisterIdentity(ALICE_IDENTITY)
+                assertEquals(ALICE, identityService.partyFromKey(ALICE_PUBKEY))
+                throw IllegalStateException("Roll back")
+            }
+        }
+        assertNull(identityService.partyFromKey(ALICE_PUBKEY))
+        assertNull(identityService.wellKnownPartyFromX500Name(ALICE.name))
+        assertEquals(emptySet(), identityService.partiesFromName("Alice Corp", true))
+    }
+
     /**
      * Generate a certificate path from a root CA, down to a transaction key, store and verify the association.
      */
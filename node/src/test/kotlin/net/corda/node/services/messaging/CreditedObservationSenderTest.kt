@@ -0,0 +1,62 @@
+package net.corda.node.services.messaging
+
+import org.junit.Test
+import rx.Notification
+import kotlin.test.assertEquals
+
+class CreditedObservationSenderTest {
+    private val sent = ArrayList<Pair<Notification<*>, Int>>()
+    private var discarded = 0
+
+    private fun sender(policy: ObservableBackpressurePolicy, initialCredits: Int = 2, bufferSize: Int = 2): CreditedObservationSender {
+        val flowControl = ObservationFlowControl(initialCredits, bufferSize, policy) { discarded += it }
+        return CreditedObservationSender(flowControl) { notification, dropped -> sent += Pair(notification, dropped) }
+    }
+
+    private fun CreditedObservationSender.emit(vararg values: Int) = values.forEach { onNotification(Notification.createOnNext(it)) }
+
+    private fun sentValues() = sent.filter { it.first.isOnNext }.map { it.first.value }
+
+    @Test
+    fun `observations are sent while the client has credits`() {
+        val sender = sender(ObservableBackpressurePolicy.Drop)
+        sender.emit(1, 2, 3)
+        assertEquals(listOf<Any?>(1, 2), sentValues())
+        sender.grant(1)
+        assertEquals(listOf<Any?>(1, 2, 3), sentValues())
+    }
+
+    @Test
+    fun `drop policy bounds the buffer and marks the next observation`() {
+        val sender = sender(ObservableBackpressurePolicy.Drop, initialCredits = 0)
+        sender.emit(1, 2, 3, 4)
+        assertEquals(2, discarded)
+        sender.grant(2)
+        sender.emit(5)
+        assertEquals(listOf<Any?>(1, 2), sentValues())
+        sender.grant(1)
+        assertEquals(listOf<Any?>(1, 2, 5), sentValues())
+        assertEquals(listOf(0, 0, 2), sent.map { it.second })
+    }
+
+    @Test
+    fun `conflate policy keeps only the latest observation`() {
+        val sender = sender(ObservableBackpressurePolicy.Conflate, initialCredits = 0)
+        sender.emit(1, 2, 3)
+        sender.grant(5)
+        assertEquals(listOf<Any?>(3), sentValues())
+        assertEquals(2, discarded)
+    }
+
+    @Test
+    fun `completion is sent after buffered observations without needing credits`() {
+        val sender = sender(ObservableBackpressurePolicy.Drop, initialCredits = 0)
+        sender.emit(1)
+        sender.onNotification(Notification.createOnCompleted<Int>())
+        assertEquals(0, sent.size)
+        sender.grant(1)
+        assertEquals(2, sent.size)
+        assertEquals(listOf<Any?>(1), sentValues())
+        assertEquals(true, sent.last().first.isOnCompleted)
+    }
+}
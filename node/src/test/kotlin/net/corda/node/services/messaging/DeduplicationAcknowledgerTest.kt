@@ -0,0 +1,39 @@
+package net.corda.node.services.messaging
+
+import net.corda.node.services.statemachine.ExternalEvent
+import org.junit.Test
+import kotlin.test.assertEquals
+
+class DeduplicationAcknowledgerTest {
+    private val acknowledged = ArrayList<String>()
+
+    private inner class Acknowledger(private val name: String) : DeduplicationAcknowledger {
+        override fun afterDatabaseTransaction(handlers: List<DeduplicationHandler>) {
+            acknowledged += "$name:${handlers.joinToString(",")}"
+        }
+    }
+
+    private inner class Handler(private val name: String, override val acknowledger: DeduplicationAcknowledger?) : DeduplicationHandler {
+        override val externalCause: ExternalEvent get() = throw UnsupportedOperationException()
+        override fun insideDatabaseTransaction() {}
+        override fun afterDatabaseTransaction() {
+            acknowledged += name
+        }
+
+        override fun toString() = name
+    }
+
+    @Test
+    fun `handlers sharing an acknowledger are acknowledged together`() {
+        val p2p = Acknowledger("p2p")
+        val other = Acknowledger("other")
+        listOf(Handler("a", p2p), Handler("b", null), Handler("c", other), Handler("d", p2p)).afterDatabaseTransaction()
+        assertEquals(listOf("p2p:a,d", "b", "other:c"), acknowledged)
+    }
+
+    @Test
+    fun `a single handler is acknowledged on its own`() {
+        listOf(Handler("a", Acknowledger("p2p"))).afterDatabaseTransaction()
+        assertEquals(listOf("a"), acknowledged)
+    }
+}
@@ -0,0 +1,77 @@
+package net.corda.node.services.messaging
+
+import com.codahale.metrics.MetricRegistry
+import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.doAnswer
+import com.nhaarman.mockito_kotlin.doReturn
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.times
+import com.nhaarman.mockito_kotlin.verify
+import com.nhaarman.mockito_kotlin.whenever
+import net.corda.core.concurrent.CordaFuture
+import net.corda.core.messaging.MessageRecipients
+import net.corda.core.utilities.ByteSequence
+import net.corda.core.utilities.OpaqueBytes
+import net.corda.node.VersionInfo
+import net.corda.node.services.statemachine.DeduplicationId
+import org.apache.activemq.artemis.api.core.ActiveMQBuffer
+import org.apache.activemq.artemis.api.core.SimpleString
+import org.apache.activemq.artemis.api.core.client.ClientMessage
+import org.apache.activemq.artemis.api.core.client.ClientProducer
+import org.apache.activemq.artemis.api.core.client.ClientSession
+import org.junit.After
+import org.junit.Test
+import java.security.SecureRandom
+import java.time.Instant
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Future
+
+class MessagingExecutorTest {
+    private class TestMessage(override val topic: String) : Message {
+        override val data: ByteSequence = OpaqueBytes.of(1)
+        override val debugTimestamp: Instant = Instant.now()
+        override val uniqueMessageId: DeduplicationId = DeduplicationId.createRandom(SecureRandom())
+        override val senderUUID: String? = null
+        override val additionalHeaders: Map<String, String> = emptyMap()
+    }
+
+    /**
+     * Reports that it is not done, but then runs any callback straight away on the registering thread, as a queue creation
+     * which completes in between would.
+     */
+    private class CompletingQueueName(queueName: String) : CordaFuture<String>, Future<String> by CompletableFuture.completedFuture(queueName) {
+        override fun isDone() = false
+        override fun <W> then(callback: (CordaFuture<String>) -> W) {
+            callback(this)
+        }
+
+        override fun toCompletableFuture(): CompletableFuture<String> = CompletableFuture.completedFuture(get())
+    }
+
+    private val session = mock<ClientSession>().also { session ->
+        doAnswer { mock<ClientMessage>().also { doReturn(mock<ActiveMQBuffer>()).whenever(it).bodyBuffer } }.whenever(session).createMessage(true)
+    }
+    private val producer = mock<ClientProducer>()
+    private lateinit var executor: MessagingExecutor
+
+    @After
+    fun cleanUp() {
+        executor.close()
+    }
+
+    private fun createExecutor(resolver: AddressToArtemisQueueResolver, queueBound: Int): MessagingExecutor {
+        executor = MessagingExecutor(session, producer, VersionInfo(1, "1", "rev", "vendor"), resolver, MetricRegistry(), "sender", queueBound)
+        executor.start()
+        return executor
+    }
+
+    @Test(timeout = 10_000)
+    fun `queue creation completing on the executor thread does not block it on a full queue`() {
+        val resolver = mock<AddressToArtemisQueueResolver>().also {
+            doReturn(CompletingQueueName("peer-queue")).whenever(it).resolveTargetToArtemisQueueAsync(any())
+        }
+        val target = mock<MessageRecipients>()
+        createExecutor(resolver, queueBound = 1).send((1..10).map { Pair<Message, MessageRecipients>(TestMessage("topic"), target) })
+        verify(producer, times(10)).send(any<SimpleString>(), any<ClientMessage>())
+    }
+}
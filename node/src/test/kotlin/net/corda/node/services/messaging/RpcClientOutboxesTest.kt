@@ -0,0 +1,84 @@
+package net.corda.node.services.messaging
+
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.MetricRegistry
+import org.apache.activemq.artemis.api.core.SimpleString
+import org.junit.Test
+import java.util.concurrent.CompletableFuture
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class RpcClientOutboxesTest {
+    private class Message(val name: String, val serialised: CompletableFuture<Unit>? = null)
+
+    private val metrics = MetricRegistry()
+    private val scheduled = ArrayList<RpcClientOutboxes<Message>.Outbox>()
+    private val outboxes = RpcClientOutboxes<Message>(metrics, { it.serialised?.isDone ?: true }, { scheduled += it })
+    private val alice = SimpleString("alice")
+    private val bob = SimpleString("bob")
+
+    /** Sends messages the way a sender lane does, one per scheduled client in turn, until no client is ready. */
+    private fun sendAll(): List<String> {
+        val sent = ArrayList<String>()
+        while (scheduled.isNotEmpty()) {
+            val outbox = scheduled.removeAt(0)
+            val message = outbox.poll() ?: continue
+            sent += "${outbox.clientAddress}:${message.name}"
+            outbox.sent()
+        }
+        return sent
+    }
+
+    @Test
+    fun `messages to a client are sent in order`() {
+        val outbox = outboxes.outboxFor(alice)
+        (1..5).forEach { outbox.add(Message("$it")) }
+        assertEquals((1..5).map { "alice:$it" }, sendAll())
+    }
+
+    @Test
+    fun `a reply being serialised holds up only its own client`() {
+        val reply = CompletableFuture<Unit>()
+        outboxes.outboxFor(alice).add(Message("reply", reply))
+        outboxes.outboxFor(alice).add(Message("observation"))
+        outboxes.outboxFor(bob).add(Message("reply"))
+        assertEquals(listOf("bob:reply"), sendAll())
+
+        reply.complete(Unit)
+        outboxes.outboxFor(alice).headMayBeReady()
+        assertEquals(listOf("alice:reply", "alice:observation"), sendAll())
+    }
+
+    @Test
+    fun `clients are sent to in turn`() {
+        (1..2).forEach {
+            outboxes.outboxFor(alice).add(Message("$it"))
+            outboxes.outboxFor(bob).add(Message("$it"))
+        }
+        assertEquals(listOf("alice:1", "bob:1", "alice:2", "bob:2"), sendAll())
+    }
+
+    @Test
+    fun `an outbox is only scheduled once at a time`() {
+        val outbox = outboxes.outboxFor(alice)
+        outbox.add(Message("1"))
+        outbox.add(Message("2"))
+        outbox.headMayBeReady()
+        assertEquals(1, scheduled.size)
+    }
+
+    @Test
+    fun `queue depth gauge tracks waiting messages`() {
+        val outbox = outboxes.outboxFor(alice)
+        val gauge = metrics.gauges[RpcClientOutboxes.queueDepthMetricName(alice)] as Gauge<*>
+        outbox.add(Message("1", CompletableFuture()))
+        outbox.add(Message("2"))
+        assertEquals(2, gauge.value)
+        assertTrue(sendAll().isEmpty())
+        assertEquals(2, gauge.value)
+
+        outboxes.remove(alice)
+        assertFalse(RpcClientOutboxes.queueDepthMetricName(alice) in metrics.gauges)
+    }
+}
@@ -24,11 +24,13 @@ import java.nio.charset.StandardCharsets
 import java.nio.file.FileAlreadyExistsException
 import java.nio.file.FileSystem
 import java.nio.file.Path
+import java.util.*
 import java.util.jar.JarEntry
 import java.util.jar.JarOutputStream
 import kotlin.test.assertEquals
 import kotlin.test.assertFailsWith
 import kotlin.test.assertNull
+import kotlin.test.assertTrue
 
 class NodeAttachmentStorageTest {
     // Use an in memory file system for testing attachment storage.
@@ -75,6 +77,28 @@ class NodeAttachmentStorageTest {
         }
     }
 
+    @Test
+    fun `large attachment is streamed into the database with its metadata`() {
+        val random = Random(0)
+        val largeContent = String(CharArray(4 * 1024 * 1024) { 'a' + random.nextInt(26) })
+        val (testJar, expectedHash) = makeTestJar(listOf(Pair("large.txt", largeContent)))
+
+        val id = testJar.read { storage.importAttachment(it, "uploader", "large.jar") }
+        assertEquals(expectedHash, id)
+
+        database.transaction {
+            val attachment = session.get(NodeAttachmentService.DBAttachment::class.java, id.toString())
+            assertEquals("uploader", attachment.uploader)
+            assertEquals("large.jar", attachment.filename)
+            assertEquals(emptyList(), attachment.contractClassNames)
+            assertTrue(testJar.readAll().contentEquals(attachment.content))
+        }
+        storage.openAttachment(id)!!.openAsJAR().use {
+            generateSequence { it.nextJarEntry }.first { it.name == "large.txt" }
+            assertEquals(largeContent, it.readBytes().toString(StandardCharsets.UTF_8))
+        }
+    }
+
     @Test
     fun `missing is not cached`() {
         val (testJar, expectedHash) = makeTestJar()
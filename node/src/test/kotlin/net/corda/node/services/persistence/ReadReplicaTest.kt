@@ -0,0 +1,49 @@
+package net.corda.node.services.persistence
+
+import net.corda.node.internal.configureDatabase
+import net.corda.nodeapi.internal.persistence.DatabaseConfig
+import net.corda.testing.node.MockServices.Companion.makeTestDataSourceProperties
+import org.junit.After
+import org.junit.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class ReadReplicaTest {
+    private val primaryProperties = makeTestDataSourceProperties()
+    private val replicaProperties = makeTestDataSourceProperties()
+    private val database = configureDatabase(primaryProperties, DatabaseConfig(readReplicaDataSourceProperties = replicaProperties), { null }, { null })
+
+    @After
+    fun closeDatabase() {
+        database.close()
+    }
+
+    @Test
+    fun `read-only transactions read from the replica`() {
+        database.readOnlyTransaction {
+            assertTrue(readOnly)
+            assertTrue(connection.isReadOnly)
+            assertEquals(replicaProperties.getProperty("dataSource.url"), connection.metaData.url)
+        }
+    }
+
+    @Test
+    fun `other transactions use the primary database`() {
+        database.transaction {
+            assertFalse(connection.isReadOnly)
+            assertEquals(primaryProperties.getProperty("dataSource.url"), connection.metaData.url)
+        }
+    }
+
+    @Test
+    fun `a read-only transaction joins an outer transaction so that it sees its writes`() {
+        database.transaction {
+            val outer = this
+            database.readOnlyTransaction {
+                assertEquals(outer.id, id)
+                assertEquals(primaryProperties.getProperty("dataSource.url"), connection.metaData.url)
+            }
+        }
+    }
+}
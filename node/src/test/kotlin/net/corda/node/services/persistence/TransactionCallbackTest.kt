@@ -45,4 +45,33 @@ class TransactionCallbackTest {
         assertEquals(0, onCommitCount)
         assertEquals(1, onRollbackCount)
     }
-}
\ No newline at end of file
+
+    @Test
+    fun `callbacks registered in nested statements run once the top-level transaction closes`() {
+        val calls = ArrayList<String>()
+        database.transaction {
+            onCommit { calls += "outer" }
+            database.transaction {
+                onCommit { calls += "inner" }
+            }
+            assertEquals(emptyList<String>(), calls)
+        }
+        assertEquals(listOf("outer", "inner"), calls)
+    }
+
+    @Test
+    fun `a failing callback does not stop the others`() {
+        var onCommitCount = 0
+        database.transaction {
+            onCommit { throw IllegalStateException() }
+            onCommit { onCommitCount++ }
+        }
+        assertEquals(1, onCommitCount)
+    }
+
+    @Test
+    fun `transactions have distinct ids`() {
+        val ids = (1..100).map { database.transaction { id } }
+        assertEquals(ids.size, ids.toSet().size)
+    }
+}
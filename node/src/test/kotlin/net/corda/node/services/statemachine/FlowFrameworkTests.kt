@@ -4,11 +4,14 @@ import co.paralleluniverse.fibers.Fiber
 import co.paralleluniverse.fibers.Suspendable
 import co.paralleluniverse.strands.Strand
 import co.paralleluniverse.strands.concurrent.Semaphore
+import com.nhaarman.mockito_kotlin.doReturn
+import com.nhaarman.mockito_kotlin.whenever
 import net.corda.core.concurrent.CordaFuture
 import net.corda.core.contracts.ContractState
 import net.corda.core.contracts.StateAndRef
 import net.corda.core.crypto.random63BitValue
 import net.corda.core.flows.*
+import net.corda.core.identity.CordaX500Name
 import net.corda.core.identity.Party
 import net.corda.core.internal.FlowStateMachine
 import net.corda.core.internal.concurrent.flatMap
@@ -17,7 +20,6 @@ import net.corda.core.internal.uncheckedCast
 import net.corda.core.messaging.MessageRecipients
 import net.corda.core.node.services.PartyInfo
 import net.corda.core.node.services.queryBy
-import net.corda.core.serialization.deserialize
 import net.corda.core.serialization.serialize
 import net.corda.core.toFuture
 import net.corda.core.transactions.SignedTransaction
@@ -28,6 +30,7 @@ import net.corda.core.utilities.getOrThrow
 import net.corda.core.utilities.unwrap
 import net.corda.node.internal.InitiatedFlowFactory
 import net.corda.node.internal.StartedNode
+import net.corda.node.services.config.FlowRestoreConfiguration
 import net.corda.node.services.persistence.checkpoints
 import net.corda.testing.contracts.DummyContract
 import net.corda.testing.contracts.DummyState
@@ -106,6 +109,22 @@ class FlowFrameworkTests {
         assertThat(flow.lazyTime).isNotNull()
     }
 
+    @Test
+    fun `flow timings are recorded per flow class and exported as metrics`() {
+        bobNode.registerFlowFactory(ReceiveFlow::class) { InitiatedSendFlow("Hello", it) }
+        val result = aliceNode.services.startFlow(ReceiveFlow(bob)).resultFuture
+        mockNet.runNetwork()
+        result.getOrThrow()
+
+        val flowClassName = ReceiveFlow::class.java.name
+        val timings = aliceNode.smm.flowTimings.snapshot().single { it.flowLogicClassName == flowClassName }
+        assertEquals(1L, timings.finished)
+        assertThat(timings.suspensions).containsKeys("Checkpoint", "Receive")
+        val gauges = aliceNode.services.monitoringService.metrics.gauges
+        assertEquals(1L, gauges["FlowTimings.$flowClassName.Finished"]!!.value)
+        assertEquals(timings.suspensions["Receive"]!!.count, gauges["FlowTimings.$flowClassName.Receive.Count"]!!.value)
+    }
+
     class SuspendThrowingActionExecutor(private val exception: Exception, val delegate: ActionExecutor) : ActionExecutor {
         var thrown = false
         @Suspendable
@@ -329,6 +348,15 @@ class FlowFrameworkTests {
         assertThat(receiveFlowFuture.getOrThrow().receivedPayloads).containsOnly("Hello")
     }
 
+    @Test
+    fun `more initiated flows than fit in one inbound batch all start`() {
+        bobNode.registerFlowFactory(SendFlow::class) { InitiatedReceiveFlow(it) }
+        val results = (1..300).map { aliceNode.services.startFlow(SendFlow("Hello $it", bob)).resultFuture }
+        mockNet.runNetwork()
+        results.forEach { it.getOrThrow() }
+        assertThat(bobNode.smm.allStateMachines).isEmpty()
+    }
+
     @Test
     fun `customised client flow which has annotated @InitiatingFlow again`() {
         assertThatExceptionOfType(IllegalArgumentException::class.java).isThrownBy {
@@ -627,6 +655,67 @@ class FlowFrameworkTripartyTests {
 
 }
 
+class FlowFrameworkFramingTests {
+    private lateinit var mockNet: InternalMockNetwork
+    /** The sender of each session message sent, and whether it was framed. */
+    private val sentSessionMessages = ArrayList<Pair<Int, Boolean>>()
+
+    @Before
+    fun start() {
+        mockNet = InternalMockNetwork(cordappPackages = listOf("net.corda.testing.contracts"))
+        mockNet.messagingNetwork.sentMessages
+                .filter { it.getMessage().topic == FlowMessagingImpl.sessionTopic }
+                .forEach { sentSessionMessages += Pair(it.sender.id, SessionMessageFraming.isFramed(it.messageData)) }
+    }
+
+    @After
+    fun cleanUp() {
+        mockNet.stopNodes()
+    }
+
+    private fun createNode(name: CordaX500Name, sessionMessageFraming: Boolean): StartedNode<MockNode> {
+        return mockNet.createNode(InternalMockNodeParameters(legalName = name, configOverrides = {
+            doReturn(sessionMessageFraming).whenever(it).sessionMessageFraming
+        }))
+    }
+
+    private fun exchangeGreeting(initiatorFraming: Boolean, initiatedFraming: Boolean): Pair<StartedNode<MockNode>, StartedNode<MockNode>> {
+        val aliceNode = createNode(ALICE_NAME, initiatorFraming)
+        val bobNode = createNode(BOB_NAME, initiatedFraming)
+        bobNode.registerFlowFactory(ReceiveFlow::class) { InitiatedSendFlow("Hello", it) }
+        val flow = ReceiveFlow(bobNode.info.singleIdentity())
+        val result = aliceNode.services.startFlow(flow).resultFuture
+        mockNet.runNetwork()
+        result.getOrThrow()
+        assertEquals(listOf("Hello"), flow.receivedPayloads)
+        return Pair(aliceNode, bobNode)
+    }
+
+    private fun framedBy(node: StartedNode<MockNode>) = sentSessionMessages.filter { it.first == node.internals.id }.map { it.second }
+
+    @Test
+    fun `session messages between nodes with framing on are framed once the peer has said it reads frames`() {
+        val (aliceNode, bobNode) = exchangeGreeting(initiatorFraming = true, initiatedFraming = true)
+        // The session init goes before Alice has heard from Bob, everything after it is framed.
+        assertThat(framedBy(aliceNode)).containsExactly(false, true)
+        assertThat(framedBy(bobNode)).isNotEmpty.containsOnly(true)
+    }
+
+    @Test
+    fun `session messages to a node with framing off are not framed`() {
+        val (aliceNode, bobNode) = exchangeGreeting(initiatorFraming = true, initiatedFraming = false)
+        assertThat(framedBy(aliceNode)).isNotEmpty.containsOnly(false)
+        assertThat(framedBy(bobNode)).isNotEmpty.containsOnly(false)
+    }
+
+    @Test
+    fun `session messages are not framed when framing is off`() {
+        val (aliceNode, bobNode) = exchangeGreeting(initiatorFraming = false, initiatedFraming = true)
+        assertThat(framedBy(aliceNode)).isNotEmpty.containsOnly(false)
+        assertThat(framedBy(bobNode)).isNotEmpty.containsOnly(false)
+    }
+}
+
 class FlowFrameworkPersistenceTests {
     companion object {
         init {
@@ -696,6 +785,42 @@ class FlowFrameworkPersistenceTests {
         assertThat(restoredFlow.receivedPayloads[0]).isEqualTo("Hello")
     }
 
+    @Test
+    fun `lazily restored flow is resumed by a message from before start`() {
+        aliceNode.registerFlowFactory(ReceiveFlow::class) { InitiatedSendFlow("Hello", it) }
+        bobNode.services.startFlow(ReceiveFlow(alice).nonTerminating())
+        bobNode.internals.disableDBCloseOnStop()
+        bobNode.dispose()
+        val restartedBob = mockNet.createNode(InternalMockNodeParameters(legalName = BOB_NAME, forcedID = bobNode.internals.id, configOverrides = {
+            doReturn(FlowRestoreConfiguration(parallelism = 2, lazy = true)).whenever(it).flowRestore
+        }))
+        restartedBob.internals.acceptableLiveFiberCountOnStop = 1
+        mockNet.runNetwork()
+        val restoredFlow = restartedBob.getSingleFlow<ReceiveFlow>().first
+        assertThat(restoredFlow.receivedPayloads[0]).isEqualTo("Hello")
+    }
+
+    @Test
+    fun `lazily restored flow is listed from its checkpoint before a message arrives for it`() {
+        aliceNode.registerFlowFactory(ReceiveFlow::class) { InitiatedReceiveFlow(it) }
+        bobNode.services.startFlow(ReceiveFlow(alice))
+        mockNet.runNetwork()
+        bobNode.internals.disableDBCloseOnStop()
+        bobNode.dispose()
+        val restartedBob = mockNet.createNode(InternalMockNodeParameters(legalName = BOB_NAME, forcedID = bobNode.internals.id, configOverrides = {
+            doReturn(FlowRestoreConfiguration(parallelism = 2, lazy = true)).whenever(it).flowRestore
+        }))
+        mockNet.runNetwork()
+        val stateMachines = restartedBob.smm.track().snapshot
+        assertThat(stateMachines.flows).isEmpty()
+        val parkedFlow = stateMachines.parkedFlows.single()
+        assertEquals(ReceiveFlow::class.java, parkedFlow.flowClass)
+        assertEquals(listOf(alice), parkedFlow.receive.sessions.map { it.counterparty })
+        // Listing the flows leaves them parked.
+        assertThat(restartedBob.smm.snapshot()).isEmpty()
+        assertEquals(listOf(parkedFlow), restartedBob.smm.parkedFlows())
+    }
+
     @Ignore("Some changes in startup order make this test's assumptions fail.")
     @Test
     fun `flow with send will resend on interrupted restart`() {
@@ -802,7 +927,7 @@ private fun sanitise(message: SessionMessage) = when (message) {
 private fun Observable<MessageTransfer>.toSessionTransfers(): Observable<SessionTransfer> {
     return filter { it.getMessage().topic == FlowMessagingImpl.sessionTopic }.map {
         val from = it.sender.id
-        val message = it.messageData.deserialize<SessionMessage>()
+        val message = FlowMessagingImpl.deserializeSessionMessage(it.messageData)
         SessionTransfer(from, sanitise(message), it.recipients)
     }
 }
@@ -0,0 +1,62 @@
+package net.corda.node.services.statemachine
+
+import net.corda.core.flows.FlowException
+import net.corda.core.flows.FlowInfo
+import net.corda.core.serialization.SerializedBytes
+import net.corda.core.serialization.serialize
+import net.corda.core.utilities.OpaqueBytes
+import net.corda.testing.core.SerializationEnvironmentRule
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.Rule
+import org.junit.Test
+import java.io.IOException
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+class SessionMessageFramingTest {
+    @Rule
+    @JvmField
+    val testSerialization = SerializationEnvironmentRule()
+
+    private val payload = SerializedBytes<Any>("payload".serialize().bytes)
+
+    private fun roundTrip(message: SessionMessage): SessionMessage {
+        val frame = OpaqueBytes(SessionMessageFraming.encode(message)!!)
+        assertTrue(SessionMessageFraming.isFramed(frame))
+        return FlowMessagingImpl.deserializeSessionMessage(frame)
+    }
+
+    @Test
+    fun `session messages are framed and read back`() {
+        val messages = listOf(
+                InitialSessionMessage(SessionId(1), 2, "com.example.Flow", 3, "app", payload),
+                InitialSessionMessage(SessionId(-1), Long.MIN_VALUE, "com.example.Flow", 1, "corda", null),
+                ExistingSessionMessage(SessionId(4), ConfirmSessionMessage(SessionId(5), FlowInfo(6, "app"))),
+                ExistingSessionMessage(SessionId(7), DataSessionMessage(payload)),
+                ExistingSessionMessage(SessionId(8), EndSessionMessage),
+                ExistingSessionMessage(SessionId(9), RejectSessionMessage("Don't know about that flow", 10))
+        )
+        messages.forEach { assertEquals(it, roundTrip(it)) }
+    }
+
+    @Test
+    fun `errors are not framed`() {
+        assertNull(SessionMessageFraming.encode(ExistingSessionMessage(SessionId(1), ErrorSessionMessage(FlowException("Boom"), 2))))
+    }
+
+    @Test
+    fun `messages serialised with AMQP are still read`() {
+        val message = ExistingSessionMessage(SessionId(1), DataSessionMessage(payload))
+        val serialised = message.serialize()
+        assertFalse(SessionMessageFraming.isFramed(serialised))
+        assertEquals<SessionMessage>(message, FlowMessagingImpl.deserializeSessionMessage(serialised))
+    }
+
+    @Test
+    fun `truncated frames are rejected`() {
+        val frame = SessionMessageFraming.encode(InitialSessionMessage(SessionId(1), 2, "com.example.Flow", 3, "app", payload))!!
+        assertThatThrownBy { SessionMessageFraming.decode(OpaqueBytes(frame.copyOf(frame.size - 1))) }.isInstanceOf(IOException::class.java)
+    }
+}
@@ -2,7 +2,13 @@ package net.corda.irs.api
 
 import co.paralleluniverse.fibers.Suspendable
 import net.corda.core.contracts.Command
+import net.corda.core.crypto.Crypto
+import net.corda.core.crypto.MerkleTree
+import net.corda.core.crypto.PartialMerkleTree
+import net.corda.core.crypto.SignableData
+import net.corda.core.crypto.SignatureMetadata
 import net.corda.core.crypto.TransactionSignature
+import net.corda.core.crypto.sha256
 import net.corda.core.flows.*
 import net.corda.core.internal.ThreadBox
 import net.corda.core.node.AppServiceHub
@@ -21,8 +27,10 @@ import net.corda.finance.contracts.math.InterpolatorFactory
 import net.corda.irs.flows.RatesFixFlow
 import org.apache.commons.io.IOUtils
 import java.math.BigDecimal
+import java.security.PublicKey
 import java.time.LocalDate
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 import javax.annotation.concurrent.ThreadSafe
 import kotlin.collections.HashSet
 import kotlin.collections.component1
@@ -50,6 +58,16 @@ object NodeInterestRates {
         }
     }
 
+    @InitiatedBy(RatesFixFlow.FixSignBatchFlow::class)
+    class FixSignBatchHandler(private val otherPartySession: FlowSession) : FlowLogic<Unit>() {
+        @Suspendable
+        override fun call() {
+            val request = otherPartySession.receive<RatesFixFlow.SignBatchRequest>().unwrap { it }
+            val oracle = serviceHub.cordaService(Oracle::class.java)
+            otherPartySession.send(oracle.sign(request.ftxs))
+        }
+    }
+
     @InitiatedBy(RatesFixFlow.FixQueryFlow::class)
     class FixQueryHandler(private val otherPartySession: FlowSession) : FlowLogic<Unit>() {
         object RECEIVED : ProgressTracker.Step("Received fix request")
@@ -108,14 +126,14 @@ object NodeInterestRates {
         @Suspendable
         fun query(queries: List<FixOf>): List<Fix> {
             require(queries.isNotEmpty())
-            return mutex.locked {
-                val answers: List<Fix?> = queries.map { container[it] }
-                val firstNull = answers.indexOf(null)
-                if (firstNull != -1) {
-                    throw UnknownFix(queries[firstNull])
-                } else {
-                    answers.filterNotNull()
-                }
+            // The container is immutable apart from its answer cache, so it can be queried outside of the lock.
+            val container = knownFixes
+            val answers: List<Fix?> = queries.map { container[it] }
+            val firstNull = answers.indexOf(null)
+            if (firstNull != -1) {
+                throw UnknownFix(queries[firstNull])
+            } else {
+                return answers.filterNotNull()
             }
         }
 
@@ -124,14 +142,44 @@ object NodeInterestRates {
         //      It will be fixed by adding partial signatures later.
         // DOCSTART 1
         fun sign(ftx: FilteredTransaction): TransactionSignature {
+            val oracleKey = services.myInfo.legalIdentities.first().owningKey
+            checkFixes(ftx, oracleKey, knownFixes)
+            // It all checks out, so we can return a signature.
+            //
+            // Note that we will happily sign an invalid transaction, as we are only being presented with a filtered
+            // version so we can't resolve or check it ourselves. However, that doesn't matter much, as if we sign
+            // an invalid transaction the signature is worthless.
+            return services.createSignature(ftx, oracleKey)
+        }
+        // DOCEND 1
+
+        /**
+         * Checks and signs several filtered transactions at once. A single signature is made over the root of a Merkle
+         * tree of their ids, and each transaction is given that signature with the partial tree proving its id is a
+         * leaf, so that the signing key is only used once however many transactions are in the batch.
+         */
+        fun sign(ftxs: List<FilteredTransaction>): List<TransactionSignature> {
+            require(ftxs.isNotEmpty())
+            if (ftxs.size == 1) return listOf(sign(ftxs.single()))
+            val oracleKey = services.myInfo.legalIdentities.first().owningKey
+            val container = knownFixes
+            ftxs.forEach { checkFixes(it, oracleKey, container) }
+            val leaves = ftxs.map { it.id.sha256() }
+            val tree = MerkleTree.getMerkleTree(leaves)
+            val metadata = SignatureMetadata(services.myInfo.platformVersion, Crypto.findSignatureScheme(oracleKey).schemeNumberID)
+            val signature = services.keyManagementService.sign(SignableData(tree.hash, metadata), oracleKey)
+            return leaves.map { TransactionSignature(signature.bytes, signature.by, signature.signatureMetadata, PartialMerkleTree.build(tree, listOf(it))) }
+        }
+
+        private fun checkFixes(ftx: FilteredTransaction, oracleKey: PublicKey, container: FixContainer) {
             ftx.verify()
             // Performing validation of obtained filtered components.
             fun commandValidator(elem: Command<*>): Boolean {
-                require(services.myInfo.legalIdentities.first().owningKey in elem.signers && elem.value is Fix) {
+                require(oracleKey in elem.signers && elem.value is Fix) {
                     "Oracle received unknown command (not in signers or not Fix)."
                 }
                 val fix = elem.value as Fix
-                val known = knownFixes[fix.of]
+                val known = container[fix.of]
                 if (known == null || known != fix)
                     throw UnknownFix(fix.of)
                 return true
@@ -145,15 +193,8 @@ object NodeInterestRates {
             }
 
             require(ftx.checkWithFun(::check))
-            ftx.checkCommandVisibility(services.myInfo.legalIdentities.first().owningKey)
-            // It all checks out, so we can return a signature.
-            //
-            // Note that we will happily sign an invalid transaction, as we are only being presented with a filtered
-            // version so we can't resolve or check it ourselves. However, that doesn't matter much, as if we sign
-            // an invalid transaction the signature is worthless.
-            return services.createSignature(ftx, services.myInfo.legalIdentities.first().owningKey)
+            ftx.checkCommandVisibility(oracleKey)
         }
-        // DOCEND 1
 
         fun uploadFixes(s: String) {
             knownFixes = parseFile(s)
@@ -174,15 +215,22 @@ object NodeInterestRates {
         override fun call() = serviceHub.cordaService(Oracle::class.java).uploadFixes(s)
     }
 
-    /** Fix container, for every fix name & date pair stores a tenor to interest rate map - [InterpolatingRateMap] */
+    /**
+     * Fix container, for every fix name & date pair stores a tenor to interest rate map - [InterpolatingRateMap]. The
+     * maps are built up front, and every fix that has been answered is cached, so that repeated queries for the same
+     * fix, as are made when it is first queried and then signed, are a single lookup.
+     */
+    @ThreadSafe
     class FixContainer(val fixes: Set<Fix>, val factory: InterpolatorFactory = CubicSplineInterpolator) {
         private val container = buildContainer(fixes)
+        private val answers = ConcurrentHashMap<FixOf, Fix>()
         val size: Int get() = fixes.size
 
         operator fun get(fixOf: FixOf): Fix? {
+            answers[fixOf]?.let { return it }
             val rates = container[fixOf.name to fixOf.forDay]
             val fixValue = rates?.getRate(fixOf.ofTenor) ?: return null
-            return Fix(fixOf, fixValue)
+            return answers.getOrPut(fixOf) { Fix(fixOf, fixValue) }
         }
 
         private fun buildContainer(fixes: Set<Fix>): Map<Pair<String, LocalDate>, InterpolatingRateMap> {
@@ -201,22 +249,23 @@ object NodeInterestRates {
 
     /**
      * Stores a mapping between tenors and interest rates.
-     * Interpolates missing values using the provided interpolation mechanism.
+     * Interpolates missing values using the provided interpolation mechanism, which is built when the map is created.
      */
+    @ThreadSafe
     class InterpolatingRateMap(val date: LocalDate,
                                inputRates: Map<Tenor, BigDecimal>,
                                val calendar: BusinessCalendar,
                                val factory: InterpolatorFactory) {
 
-        /** Snapshot of the input */
-        private val rates = HashMap(inputRates)
+        /** Snapshot of the input, to which interpolated rates are added as they are calculated */
+        private val rates = ConcurrentHashMap(inputRates)
 
         /** Number of rates excluding the interpolated ones */
         val size = inputRates.size
 
-        private val interpolator: Interpolator? by lazy {
+        private val interpolator: Interpolator? = run {
             // Need to convert tenors to doubles for interpolation
-            val numericMap = rates.mapKeys { daysToMaturity(it.key) }.toSortedMap()
+            val numericMap = inputRates.mapKeys { daysToMaturity(it.key) }.toSortedMap()
             val keys = numericMap.keys.map { it.toDouble() }.toDoubleArray()
             val values = numericMap.values.map { it.toDouble() }.toDoubleArray()
 
@@ -232,11 +281,9 @@ object NodeInterestRates {
          * or _null_ if the rate is not found and cannot be interpolated.
          */
         fun getRate(tenor: Tenor): BigDecimal? {
-            return rates.getOrElse(tenor) {
-                val rate = interpolate(tenor)
-                if (rate != null) rates[tenor] = rate
-                return rate
-            }
+            rates[tenor]?.let { return it }
+            val rate = interpolate(tenor) ?: return null
+            return rates.putIfAbsent(tenor, rate) ?: rate
         }
 
         private fun daysToMaturity(tenor: Tenor) = tenor.daysToMaturity(date, calendar)
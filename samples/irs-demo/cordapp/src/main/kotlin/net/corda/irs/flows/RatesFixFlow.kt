@@ -51,6 +51,9 @@ open class RatesFixFlow(protected val tx: TransactionBuilder,
     @CordaSerializable
     data class SignRequest(val ftx: FilteredTransaction)
 
+    @CordaSerializable
+    data class SignBatchRequest(val ftxs: List<FilteredTransaction>)
+
     // DOCSTART 2
     @Suspendable
     override fun call(): TransactionSignature {
@@ -124,4 +127,27 @@ open class RatesFixFlow(protected val tx: TransactionBuilder,
         }
     }
     // DOCEND 1
+
+    /**
+     * Asks the oracle to sign several filtered transactions in one round trip, such as the fixings of a day's worth of
+     * deals. The oracle signs them all at once, so each returned signature carries a partial Merkle tree linking the
+     * transaction's id to the signed root.
+     */
+    @InitiatingFlow
+    class FixSignBatchFlow(val oracle: Party,
+                           val partialMerkleTxs: List<FilteredTransaction>) : FlowLogic<List<TransactionSignature>>() {
+        @Suspendable
+        override fun call(): List<TransactionSignature> {
+            val oracleSession = initiateFlow(oracle)
+            val resp = oracleSession.sendAndReceive<List<TransactionSignature>>(SignBatchRequest(partialMerkleTxs))
+            return resp.unwrap { sigs ->
+                check(sigs.size == partialMerkleTxs.size)
+                sigs.zip(partialMerkleTxs).forEach { (sig, ftx) ->
+                    check(oracleSession.counterparty.owningKey.isFulfilledBy(listOf(sig.by)))
+                    sig.verify(ftx.id)
+                }
+                sigs
+            }
+        }
+    }
 }
@@ -162,6 +162,18 @@ class NodeInterestRatesTest {
         }
     }
 
+    @Test
+    fun `sign several transactions at once`() {
+        database.transaction {
+            val fixes = oracle.query(listOf("LIBOR 2016-03-16 1M", "LIBOR 2016-03-16 2M", "EURIBOR 2016-03-15 1M").map(NodeInterestRates::parseFixOf))
+            val wtxs = fixes.map { fix -> makePartialTX().addCommand(fix, identity.owningKey).toWireTransaction(services) }
+            val signatures = oracle.sign(wtxs.map { wtx -> wtx.buildFilteredTransaction(Predicate { fixCmdFilter(it) }) })
+            assertEquals(wtxs.size, signatures.size)
+            wtxs.zip(signatures).forEach { (wtx, signature) -> wtx.checkSignature(signature) }
+            assertFailsWith<IllegalArgumentException> { wtxs[0].checkSignature(signatures[1]) }
+        }
+    }
+
     @Test
     fun `do not sign with unknown fix`() {
         database.transaction {
@@ -27,7 +27,11 @@ import java.time.LocalDate
 abstract class AnalyticsEngine {
 
     data class CurrencyAmount(val currencyParameterSensitivities: CurrencyParameterSensitivities,
-                              val multiCurrencyAmount: MultiCurrencyAmount)
+                              val multiCurrencyAmount: MultiCurrencyAmount) {
+        operator fun plus(other: CurrencyAmount) = CurrencyAmount(
+                currencyParameterSensitivities.combinedWith(other.currencyParameterSensitivities),
+                multiCurrencyAmount.plus(other.multiCurrencyAmount))
+    }
 
     abstract fun curveGroup(): CurveGroupDefinition
     abstract fun marketData(asOf: LocalDate): MarketData
@@ -56,6 +60,7 @@ abstract class AnalyticsEngine {
 class OGSIMMAnalyticsEngine : AnalyticsEngine() {
     private companion object {
         private val log = contextLogger()
+        private val EMPTY_AMOUNT = CurrencyAmount(CurrencyParameterSensitivities.empty(), MultiCurrencyAmount.empty())
     }
 
     override fun curveGroup(): CurveGroupDefinition {
@@ -69,19 +74,17 @@ class OGSIMMAnalyticsEngine : AnalyticsEngine() {
     override fun sensitivities(trades: List<ResolvedSwapTrade>, pricer: DiscountingSwapProductPricer, combinedRatesProvider: ImmutableRatesProvider): Pair<CurrencyParameterSensitivities, MultiCurrencyAmount> {
         log.info("Running sensitivities on ${trades.size} trades")
 
-        var totalSensitivities = CurrencyParameterSensitivities.empty()
-        var totalCurrencyExposure = MultiCurrencyAmount.empty()
-        for (resolvedTrade in trades) {
-            val swap = resolvedTrade.product
-
-            val pointSensitivities = pricer.presentValueSensitivity(swap, combinedRatesProvider).build()
-            val sensitivities = combinedRatesProvider.parameterSensitivity(pointSensitivities)
-            val currencyExposure = pricer.currencyExposure(swap, combinedRatesProvider)
+        val total = trades.fold(EMPTY_AMOUNT) { total, trade -> total + tradeSensitivities(trade, pricer, combinedRatesProvider) }
+        return Pair(total.currencyParameterSensitivities, total.multiCurrencyAmount)
+    }
 
-            totalSensitivities = totalSensitivities.combinedWith(sensitivities)
-            totalCurrencyExposure = totalCurrencyExposure.plus(currencyExposure)
-        }
-        return Pair(totalSensitivities, totalCurrencyExposure)
+    /** Returns the sensitivities and currency exposure of a single trade. */
+    fun tradeSensitivities(trade: ResolvedSwapTrade, pricer: DiscountingSwapProductPricer, combinedRatesProvider: ImmutableRatesProvider): CurrencyAmount {
+        val swap = trade.product
+        val pointSensitivities = pricer.presentValueSensitivity(swap, combinedRatesProvider).build()
+        val sensitivities = combinedRatesProvider.parameterSensitivity(pointSensitivities)
+        val currencyExposure = pricer.currencyExposure(swap, combinedRatesProvider)
+        return CurrencyAmount(sensitivities, currencyExposure)
     }
 
     override fun margin(combinedRatesProvider: ImmutableRatesProvider, fxRateProvider: MarketDataFxRateProvider,
@@ -126,11 +129,25 @@ class OGSIMMAnalyticsEngine : AnalyticsEngine() {
     override fun calculateSensitivitiesBatch(trades: List<ResolvedSwapTrade>,
                                              pricer: DiscountingSwapProductPricer,
                                              ratesProvider: ImmutableRatesProvider): Map<ResolvedSwapTrade, CurrencyAmount> {
-        return trades
-                .map {
-                    val sensAmountPair = this.sensitivities(trades.omit(it), pricer, ratesProvider)
-                    it to CurrencyAmount(sensAmountPair.first, sensAmountPair.second)
-                }.toMap()
+        return sensitivitiesExcludingEach(trades.map { it to tradeSensitivities(it, pricer, ratesProvider) })
+    }
+
+    /**
+     * Given the sensitivities of each trade, returns the sensitivities of the rest of the portfolio excluding each one.
+     * These are combined from running totals of the trades before and after each trade, so the portfolio is summed
+     * a constant number of times rather than once per trade.
+     */
+    fun sensitivitiesExcludingEach(tradeSensitivities: List<Pair<ResolvedSwapTrade, CurrencyAmount>>): Map<ResolvedSwapTrade, CurrencyAmount> {
+        val before = tradeSensitivities.scan { total, sensitivities -> total + sensitivities }
+        val after = tradeSensitivities.asReversed().scan { total, sensitivities -> total + sensitivities }.asReversed()
+        return tradeSensitivities.indices.associate { tradeSensitivities[it].first to before[it] + after[it + 1] }
+    }
+
+    private fun List<Pair<ResolvedSwapTrade, CurrencyAmount>>.scan(add: (CurrencyAmount, CurrencyAmount) -> CurrencyAmount): List<CurrencyAmount> {
+        val totals = ArrayList<CurrencyAmount>(size + 1)
+        totals += EMPTY_AMOUNT
+        forEach { totals += add(totals.last(), it.second) }
+        return totals
     }
 
     override fun calculateMarginBatch(tradeSensitivitiesMap: Map<ResolvedSwapTrade, CurrencyAmount>,
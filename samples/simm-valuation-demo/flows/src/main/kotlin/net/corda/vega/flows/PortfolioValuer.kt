@@ -0,0 +1,123 @@
+package net.corda.vega.flows
+
+import com.opengamma.strata.basics.ReferenceData
+import com.opengamma.strata.basics.currency.Currency
+import com.opengamma.strata.basics.currency.MultiCurrencyAmount
+import com.opengamma.strata.data.MarketData
+import com.opengamma.strata.data.MarketDataFxRateProvider
+import com.opengamma.strata.market.param.CurrencyParameterSensitivities
+import com.opengamma.strata.pricer.curve.CalibrationMeasures
+import com.opengamma.strata.pricer.curve.CurveCalibrator
+import com.opengamma.strata.pricer.rate.ImmutableRatesProvider
+import com.opengamma.strata.pricer.swap.DiscountingSwapProductPricer
+import com.opengamma.strata.product.swap.ResolvedSwapTrade
+import net.corda.core.concurrent.CordaFuture
+import net.corda.core.identity.Party
+import net.corda.core.internal.FlowAsyncOperation
+import net.corda.core.internal.concurrent.asCordaFuture
+import net.corda.core.utilities.contextLogger
+import net.corda.vega.analytics.AnalyticsEngine.CurrencyAmount
+import net.corda.vega.analytics.BimmAnalysisUtils
+import net.corda.vega.analytics.InitialMarginTriple
+import net.corda.vega.analytics.IsdaConfiguration
+import net.corda.vega.analytics.OGSIMMAnalyticsEngine
+import net.corda.vega.analytics.PortfolioNormalizer
+import net.corda.vega.analytics.RwamBimmNotProductClassesCalculator
+import net.corda.vega.contracts.PortfolioValuation
+import net.corda.vega.portfolio.Portfolio
+import java.time.LocalDate
+import java.util.concurrent.Callable
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinTask
+import java.util.function.Supplier
+
+/**
+ * Values a portfolio with SIMM off the flow's fiber, so that the flow is suspended rather than holding a flow thread
+ * while its trades are priced. Run with [net.corda.core.internal.executeAsync].
+ */
+class PortfolioValuationOperation(private val portfolio: Portfolio,
+                                  private val asOf: LocalDate,
+                                  private val valuer: Party) : FlowAsyncOperation<PortfolioValuation> {
+    override fun execute(): CordaFuture<PortfolioValuation> {
+        return CompletableFuture.supplyAsync(Supplier { PortfolioValuer.value(portfolio, asOf, valuer) }, PortfolioValuer.pool).asCordaFuture()
+    }
+}
+
+/**
+ * Prices portfolios on a fork-join pool, a trade per task. Curves are calibrated once per valuation date, and the
+ * valuation of each trade is kept with them, so that revaluing a portfolio on the same date only prices the trades
+ * which have been added or changed since.
+ */
+object PortfolioValuer {
+    private val log = contextLogger()
+    private const val MAX_CACHED_DATES = 8
+    private val calibrator = CurveCalibrator.of(1e-9, 1e-9, 100, CalibrationMeasures.PAR_SPREAD)
+    private val referenceData = ReferenceData.standard()
+    private val pricer = DiscountingSwapProductPricer.DEFAULT
+    private val analyticsEngine = OGSIMMAnalyticsEngine()
+
+    val pool = ForkJoinPool()
+
+    private val calibrations = object : LinkedHashMap<LocalDate, Calibration>(MAX_CACHED_DATES, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<LocalDate, Calibration>): Boolean = size > MAX_CACHED_DATES
+    }
+
+    private class TradeValuation(val presentValue: MultiCurrencyAmount, val sensitivities: CurrencyAmount)
+
+    private class Calibration(asOf: LocalDate) {
+        val marketData: MarketData = analyticsEngine.marketData(asOf)
+        val ratesProvider: ImmutableRatesProvider = calibrator.calibrate(analyticsEngine.curveGroup(), marketData, referenceData)
+        val fxRateProvider: MarketDataFxRateProvider = MarketDataFxRateProvider.of(marketData)
+        val combinedRatesProvider: ImmutableRatesProvider = ImmutableRatesProvider.combined(fxRateProvider, ratesProvider)
+        private val trades = ConcurrentHashMap<ResolvedSwapTrade, TradeValuation>()
+
+        fun value(trade: ResolvedSwapTrade): TradeValuation = trades.computeIfAbsent(trade) {
+            TradeValuation(
+                    pricer.presentValue(trade.product, combinedRatesProvider).toCordaCompatible(),
+                    analyticsEngine.tradeSensitivities(trade, pricer, ratesProvider))
+        }
+    }
+
+    private fun calibration(asOf: LocalDate): Calibration = synchronized(calibrations) {
+        calibrations.getOrPut(asOf) { Calibration(asOf) }
+    }
+
+    /** Runs [task] on each item as a task forked from the calling [pool] thread, returning the results in order. */
+    private fun <T, R> List<T>.mapInParallel(task: (T) -> R): List<R> {
+        return ForkJoinTask.invokeAll(map { ForkJoinTask.adapt(Callable { task(it) }) }).map { it.join() }
+    }
+
+    fun value(portfolio: Portfolio, asOf: LocalDate, valuer: Party): PortfolioValuation {
+        val calibration = calibration(asOf)
+        val trades = portfolio.swaps.map { it.toFixedLeg().resolve(referenceData) }
+        log.info("Valuing ${trades.size} trades as of $asOf")
+        val valuations = trades.mapInParallel { calibration.value(it) }
+
+        val total = valuations.fold(CurrencyAmount(CurrencyParameterSensitivities.empty(), MultiCurrencyAmount.empty())) { total, valuation -> total + valuation.sensitivities }
+        val normalizer = PortfolioNormalizer(Currency.EUR, calibration.combinedRatesProvider) // TODO.. Not just EUR
+        val calculatorTotal = RwamBimmNotProductClassesCalculator(calibration.fxRateProvider, Currency.EUR, IsdaConfiguration.INSTANCE)
+        val margin = BimmAnalysisUtils.computeMargin(calibration.combinedRatesProvider, normalizer, calculatorTotal,
+                total.currencyParameterSensitivities, total.multiCurrencyAmount)
+        val cordaMargin = InitialMarginTriple(margin.first, margin.second, margin.third).toCordaCompatible()
+
+        // Each trade's contribution to the initial margin is the portfolio's margin less that of the portfolio without it.
+        val excluding = analyticsEngine.sensitivitiesExcludingEach(trades.zip(valuations.map { it.sensitivities })).entries.toList()
+        val imContributions = excluding.chunked(maxOf(excluding.size / (pool.parallelism * 4), 1)).mapInParallel { chunk ->
+            analyticsEngine.calculateMarginBatch(chunk.associate { it.key to it.value }, calibration.combinedRatesProvider, calibration.fxRateProvider, cordaMargin)
+        }
+        val cordaIMMap = imContributions.flatMap { it.entries }.associate { it.key.info.id.get().value to it.value }
+
+        return PortfolioValuation(
+                portfolio.trades.size,
+                portfolio.getNotionalForParty(valuer),
+                calibration.fxRateProvider.marketData.toCordaCompatible(),
+                total.currencyParameterSensitivities.toCordaCompatible(),
+                total.multiCurrencyAmount.toCordaCompatible(),
+                cordaMargin,
+                cordaIMMap,
+                trades.indices.associate { trades[it].info.id.get().value to valuations[it].presentValue }
+        )
+    }
+}
@@ -1,13 +1,6 @@
 package net.corda.vega.flows
 
 import co.paralleluniverse.fibers.Suspendable
-import com.opengamma.strata.basics.ReferenceData
-import com.opengamma.strata.basics.currency.Currency
-import com.opengamma.strata.data.MarketDataFxRateProvider
-import com.opengamma.strata.pricer.curve.CalibrationMeasures
-import com.opengamma.strata.pricer.curve.CurveCalibrator
-import com.opengamma.strata.pricer.rate.ImmutableRatesProvider
-import com.opengamma.strata.pricer.swap.DiscountingSwapProductPricer
 import net.corda.core.contracts.StateAndRef
 import net.corda.core.contracts.StateRef
 import net.corda.core.flows.AbstractStateReplacementFlow.Proposal
@@ -19,6 +12,7 @@ import net.corda.core.flows.StartableByRPC
 import net.corda.core.flows.StateReplacementException
 import net.corda.core.identity.AbstractParty
 import net.corda.core.identity.Party
+import net.corda.core.internal.executeAsync
 import net.corda.core.node.services.queryBy
 import net.corda.core.node.services.vault.QueryCriteria.LinearStateQueryCriteria
 import net.corda.core.node.services.vault.QueryCriteria.VaultQueryCriteria
@@ -26,12 +20,7 @@ import net.corda.core.serialization.CordaSerializable
 import net.corda.core.transactions.SignedTransaction
 import net.corda.core.utilities.unwrap
 import net.corda.finance.flows.TwoPartyDealFlow
-import net.corda.vega.analytics.BimmAnalysisUtils
 import net.corda.vega.analytics.InitialMarginTriple
-import net.corda.vega.analytics.IsdaConfiguration
-import net.corda.vega.analytics.OGSIMMAnalyticsEngine
-import net.corda.vega.analytics.PortfolioNormalizer
-import net.corda.vega.analytics.RwamBimmNotProductClassesCalculator
 import net.corda.vega.analytics.compareIMTriples
 import net.corda.vega.contracts.IRSState
 import net.corda.vega.contracts.PortfolioState
@@ -41,8 +30,6 @@ import net.corda.vega.portfolio.Portfolio
 import net.corda.vega.portfolio.toPortfolio
 import java.time.LocalDate
 
-private val calibrator = CurveCalibrator.of(1e-9, 1e-9, 100, CalibrationMeasures.PAR_SPREAD)
-
 /**
  * The Simm Flow is between two parties that both agree on a portfolio of trades to run valuations on. Both sides
  * will independently value the portfolio using a SIMM implementation and then come to consensus over those valuations.
@@ -140,47 +127,14 @@ object SimmFlow {
         private fun agreeValuation(portfolio: Portfolio, asOf: LocalDate, valuer: Party): PortfolioValuation {
             // TODO: The attachments need to be added somewhere
             // TODO: handle failures
-            val analyticsEngine = OGSIMMAnalyticsEngine()
-
-            val referenceData = ReferenceData.standard()
-            val curveGroup = analyticsEngine.curveGroup()
-            val marketData = analyticsEngine.marketData(asOf)
-
-            val pricer = DiscountingSwapProductPricer.DEFAULT
-            val OGTrades = portfolio.swaps.map { it -> it.toFixedLeg().resolve(referenceData) }
-
-            val ratesProvider = calibrator.calibrate(curveGroup, marketData, ReferenceData.standard())
-            val fxRateProvider = MarketDataFxRateProvider.of(marketData)
-            val combinedRatesProvider = ImmutableRatesProvider.combined(fxRateProvider, ratesProvider)
-
-            val PVs = OGTrades.map { it.info.id.get().value to pricer.presentValue(it.product, combinedRatesProvider).toCordaCompatible() }.toMap()
-
-            val sensitivities = analyticsEngine.sensitivities(OGTrades, pricer, ratesProvider)
-            val normalizer = PortfolioNormalizer(Currency.EUR, combinedRatesProvider) // TODO.. Not just EUR
-            val calculatorTotal = RwamBimmNotProductClassesCalculator(fxRateProvider, Currency.EUR, IsdaConfiguration.INSTANCE)
-            val margin = BimmAnalysisUtils.computeMargin(combinedRatesProvider, normalizer, calculatorTotal, sensitivities.first, sensitivities.second)
-            val sensBatch = analyticsEngine.calculateSensitivitiesBatch(OGTrades, pricer, ratesProvider)
-
-            val cordaMarketData = fxRateProvider.marketData.toCordaCompatible()
-            val cordaMargin = InitialMarginTriple(margin.first, margin.second, margin.third).toCordaCompatible()
-            val imBatch = analyticsEngine.calculateMarginBatch(sensBatch, combinedRatesProvider, fxRateProvider, cordaMargin)
-            val cordaIMMap = imBatch.map { it.key.info.id.get().value to it.value.toCordaCompatible() }.toMap()
+            val valuation = executeAsync(PortfolioValuationOperation(portfolio, asOf, valuer))
 
-            require(agree(cordaMarketData))
-            require(agree(sensitivities.first.toCordaCompatible()))
-            require(agree(sensitivities.second.toCordaCompatible()))
-            require(agree(cordaMargin))
+            require(agree(valuation.marketData))
+            require(agree(valuation.totalSensivities))
+            require(agree(valuation.currencySensitivies))
+            require(agree(valuation.margin))
 
-            return PortfolioValuation(
-                    portfolio.trades.size,
-                    portfolio.getNotionalForParty(valuer),
-                    cordaMarketData,
-                    sensitivities.first.toCordaCompatible(),
-                    sensitivities.second.toCordaCompatible(),
-                    cordaMargin,
-                    cordaIMMap,
-                    PVs
-            )
+            return valuation
         }
 
 
@@ -257,49 +211,16 @@ object SimmFlow {
         private fun agreeValuation(portfolio: Portfolio, asOf: LocalDate, valuer: Party): PortfolioValuation {
             // TODO: The attachments need to be added somewhere
             // TODO: handle failures
-            val analyticsEngine = OGSIMMAnalyticsEngine()
-
-            val referenceData = ReferenceData.standard()
-            val curveGroup = analyticsEngine.curveGroup()
-            val marketData = analyticsEngine.marketData(asOf)
-
-            val pricer = DiscountingSwapProductPricer.DEFAULT
-            val OGTrades = portfolio.swaps.map { it -> it.toFixedLeg().resolve(referenceData) }
-
-            val ratesProvider = calibrator.calibrate(curveGroup, marketData, ReferenceData.standard())
-            val fxRateProvider = MarketDataFxRateProvider.of(marketData)
-            val combinedRatesProvider = ImmutableRatesProvider.combined(fxRateProvider, ratesProvider)
-
-            val PVs = OGTrades.map { it.info.id.get().value to pricer.presentValue(it.product, combinedRatesProvider).toCordaCompatible() }.toMap()
-
-            val sensitivities = analyticsEngine.sensitivities(OGTrades, pricer, ratesProvider)
-            val normalizer = PortfolioNormalizer(Currency.EUR, combinedRatesProvider) // TODO.. Not just EUR
-            val calculatorTotal = RwamBimmNotProductClassesCalculator(fxRateProvider, Currency.EUR, IsdaConfiguration.INSTANCE)
-            val margin = BimmAnalysisUtils.computeMargin(combinedRatesProvider, normalizer, calculatorTotal, sensitivities.first, sensitivities.second)
-            val sensBatch = analyticsEngine.calculateSensitivitiesBatch(OGTrades, pricer, ratesProvider)
-
-            val cordaMargin = InitialMarginTriple(margin.first, margin.second, margin.third).toCordaCompatible()
-            val imBatch = analyticsEngine.calculateMarginBatch(sensBatch, combinedRatesProvider, fxRateProvider, cordaMargin)
-            val cordaMarketData = fxRateProvider.marketData.toCordaCompatible()
-            val cordaIMMap = imBatch.map { it.key.info.id.get().value to it.value.toCordaCompatible() }.toMap()
+            // Steps 2 to 8 are carried out off the flow's fiber by the valuation operation, which suspends the flow.
+            val valuation = executeAsync(PortfolioValuationOperation(portfolio, asOf, valuer))
 
             // Slightly out of order but for readabilities sake, agrees at the bottom
-            require(agree(cordaMarketData))
-            require(agree(sensitivities.first.toCordaCompatible()))
-            require(agree(sensitivities.second.toCordaCompatible()))
-            require(agree(cordaMargin))
-
-            return PortfolioValuation(
-                    portfolio.trades.size,
-                    portfolio.getNotionalForParty(valuer),
-                    cordaMarketData,
-                    sensitivities.first.toCordaCompatible(),
-                    sensitivities.second.toCordaCompatible(),
-                    cordaMargin,
-                    cordaIMMap,
-                    PVs
-            )
+            require(agree(valuation.marketData))
+            require(agree(valuation.totalSensivities))
+            require(agree(valuation.currencySensitivies))
+            require(agree(valuation.margin))
 
+            return valuation
         }
 
         @Suspendable
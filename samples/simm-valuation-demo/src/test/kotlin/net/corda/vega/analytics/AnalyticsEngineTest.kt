@@ -0,0 +1,88 @@
+package net.corda.vega.analytics
+
+import com.opengamma.strata.basics.ReferenceData
+import com.opengamma.strata.basics.currency.Currency
+import com.opengamma.strata.basics.currency.CurrencyAmount
+import com.opengamma.strata.basics.currency.MultiCurrencyAmount
+import com.opengamma.strata.basics.date.Tenor
+import com.opengamma.strata.collect.array.DoubleArray
+import com.opengamma.strata.market.curve.CurveName
+import com.opengamma.strata.market.param.CurrencyParameterSensitivities
+import com.opengamma.strata.market.param.CurrencyParameterSensitivity
+import com.opengamma.strata.product.common.BuySell
+import com.opengamma.strata.product.swap.ResolvedSwapTrade
+import com.opengamma.strata.product.swap.type.FixedIborSwapConventions
+import org.junit.Test
+import java.time.LocalDate
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class AnalyticsEngineTest {
+    private val engine = OGSIMMAnalyticsEngine()
+    private val discountCurve = CurveName.of("EUR-DSCON-OIS")
+    private val forwardCurve = CurveName.of("EUR-EURIBOR3M-IRS")
+
+    private fun trade(notional: Double): ResolvedSwapTrade {
+        return FixedIborSwapConventions.EUR_FIXED_1Y_EURIBOR_3M.createTrade(
+                LocalDate.of(2016, 6, 6),
+                Tenor.TENOR_4Y,
+                BuySell.BUY,
+                notional,
+                0.015,
+                ReferenceData.standard()).resolve(ReferenceData.standard())
+    }
+
+    /** Whole-number values keep the sums exact whichever order the trades are added in. */
+    private fun sensitivities(seed: Int, includeForward: Boolean): AnalyticsEngine.CurrencyAmount {
+        val discount = CurrencyParameterSensitivity.of(discountCurve, Currency.EUR, DoubleArray.of(seed.toDouble(), 2.0 * seed, 3.0 * seed))
+        val curves = if (includeForward) {
+            listOf(discount, CurrencyParameterSensitivity.of(forwardCurve, Currency.EUR, DoubleArray.of(-seed.toDouble(), 10.0)))
+        } else {
+            listOf(discount)
+        }
+        val exposure = MultiCurrencyAmount.of(CurrencyAmount.of(Currency.EUR, 1000.0 * seed), CurrencyAmount.of(Currency.USD, -seed.toDouble()))
+        return AnalyticsEngine.CurrencyAmount(CurrencyParameterSensitivities.of(curves), exposure)
+    }
+
+    /** The per-trade computation this replaced: re-sum every other trade in the portfolio. */
+    private fun omitEach(tradeSensitivities: List<Pair<ResolvedSwapTrade, AnalyticsEngine.CurrencyAmount>>): Map<ResolvedSwapTrade, AnalyticsEngine.CurrencyAmount> {
+        val byTrade = tradeSensitivities.toMap()
+        val trades = tradeSensitivities.map { it.first }
+        return trades.associate { trade ->
+            trade to trades.omit(trade).fold(AnalyticsEngine.CurrencyAmount(CurrencyParameterSensitivities.empty(), MultiCurrencyAmount.empty())) { total, other ->
+                total + byTrade[other]!!
+            }
+        }
+    }
+
+    private fun assertSameSensitivities(expected: Map<ResolvedSwapTrade, AnalyticsEngine.CurrencyAmount>,
+                                        actual: Map<ResolvedSwapTrade, AnalyticsEngine.CurrencyAmount>) {
+        assertEquals(expected.keys, actual.keys)
+        expected.forEach { trade, amount ->
+            val actualAmount = actual[trade]!!
+            assertTrue(amount.currencyParameterSensitivities.equalWithTolerance(actualAmount.currencyParameterSensitivities, 0.0),
+                    "Sensitivities excluding $trade")
+            assertEquals(amount.multiCurrencyAmount, actualAmount.multiCurrencyAmount, "Exposure excluding $trade")
+        }
+    }
+
+    @Test
+    fun `sensitivities excluding each trade match re-summing the rest of the portfolio`() {
+        val portfolio = (1..4).map { trade(it * 1000000.0) to sensitivities(it, includeForward = it % 2 == 0) }
+        assertSameSensitivities(omitEach(portfolio), engine.sensitivitiesExcludingEach(portfolio))
+    }
+
+    @Test
+    fun `sensitivities excluding the only trade are empty`() {
+        val portfolio = listOf(trade(1000000.0) to sensitivities(1, includeForward = true))
+        val excluding = engine.sensitivitiesExcludingEach(portfolio).values.single()
+        assertTrue(excluding.currencyParameterSensitivities.sensitivities.isEmpty())
+        assertEquals(MultiCurrencyAmount.empty(), excluding.multiCurrencyAmount)
+        assertSameSensitivities(omitEach(portfolio), engine.sensitivitiesExcludingEach(portfolio))
+    }
+
+    @Test
+    fun `empty portfolio`() {
+        assertTrue(engine.sensitivitiesExcludingEach(emptyList()).isEmpty())
+    }
+}
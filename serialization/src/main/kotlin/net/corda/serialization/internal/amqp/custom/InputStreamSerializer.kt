@@ -34,9 +34,10 @@ object InputStreamSerializer : CustomSerializer.Implements<InputStream>(InputStr
             val numberOfBytesRead = obj.read(buffer, pos, buffer.size - pos)
             if (numberOfBytesRead != -1) {
                 pos += numberOfBytesRead
-                // If the buffer is now full, resize it.
+                // If the buffer is now full, resize it. Doubling keeps the number of copies logarithmic in the
+                // size of the stream, whereas growing by a fixed amount copies large streams many times over.
                 if (pos == buffer.size) {
-                    buffer = buffer.copyOf(buffer.size + maxOf(4096, obj.available() + 1))
+                    buffer = buffer.copyOf(maxOf(buffer.size * 2, buffer.size + obj.available() + 1))
                 }
             } else {
                 data.putBinary(Binary(buffer, 0, pos))
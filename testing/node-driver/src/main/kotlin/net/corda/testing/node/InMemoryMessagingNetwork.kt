@@ -38,9 +38,11 @@ import rx.subjects.PublishSubject
 import java.time.Duration
 import java.time.Instant
 import java.util.*
+import java.util.concurrent.DelayQueue
+import java.util.concurrent.Delayed
 import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
 import javax.annotation.concurrent.ThreadSafe
-import kotlin.concurrent.schedule
 import kotlin.concurrent.thread
 import kotlin.jvm.Volatile
 
@@ -53,12 +55,14 @@ import kotlin.jvm.Volatile
  *
  * @param servicePeerAllocationStrategy defines the strategy to be used when determining which peer to send to in case
  *     a service is addressed.
+ * @param latencyCalculator if set, injects artificial latency between sender/recipient pairs.
  */
 @ThreadSafe
 class InMemoryMessagingNetwork private constructor(
         private val sendManuallyPumped: Boolean,
         private val servicePeerAllocationStrategy: ServicePeerAllocationStrategy = InMemoryMessagingNetwork.ServicePeerAllocationStrategy.Random(),
-        private val messagesInFlight: ReusableLatch = ReusableLatch()
+        private val messagesInFlight: ReusableLatch = ReusableLatch(),
+        private val latencyCalculator: LatencyCalculator? = null
 ) : SingletonSerializeAsToken() {
     companion object {
         private const val MESSAGES_LOG_NAME = "messages"
@@ -67,8 +71,9 @@ class InMemoryMessagingNetwork private constructor(
         internal fun create(
                 sendManuallyPumped: Boolean,
                 servicePeerAllocationStrategy: ServicePeerAllocationStrategy = InMemoryMessagingNetwork.ServicePeerAllocationStrategy.Random(),
-                messagesInFlight: ReusableLatch = ReusableLatch()): InMemoryMessagingNetwork {
-            return InMemoryMessagingNetwork(sendManuallyPumped, servicePeerAllocationStrategy, messagesInFlight)
+                messagesInFlight: ReusableLatch = ReusableLatch(),
+                latencyCalculator: LatencyCalculator? = null): InMemoryMessagingNetwork {
+            return InMemoryMessagingNetwork(sendManuallyPumped, servicePeerAllocationStrategy, messagesInFlight, latencyCalculator)
         }
     }
 
@@ -158,10 +163,22 @@ class InMemoryMessagingNetwork private constructor(
         fun between(sender: SingleMessageRecipient, receiver: SingleMessageRecipient): Duration
     }
 
-    /** This can be set to an object which can inject artificial latency between sender/recipient pairs. */
-    @Volatile
-    private var latencyCalculator: LatencyCalculator? = null
-    private val timer = Timer()
+    /** A message held back by the [latencyCalculator] until [deliverAt], in [System.nanoTime] terms. */
+    private class DelayedTransfer(val transfer: MessageTransfer, val deliverAt: Long, val sequence: Long) : Delayed {
+        val sent = openFuture<Unit>()
+        override fun getDelay(unit: TimeUnit): Long = unit.convert(deliverAt - System.nanoTime(), TimeUnit.NANOSECONDS)
+        override fun compareTo(other: Delayed): Int {
+            other as DelayedTransfer
+            return compareValuesBy(this, other, { it.deliverAt }, { it.sequence })
+        }
+    }
+
+    // Messages delayed by the latencyCalculator. Delivery times never go backwards between a pair of peers, and ties
+    // are broken by the order of sending, so that the latency doesn't reorder messages, which Artemis wouldn't do.
+    private val delayedTransfers = DelayQueue<DelayedTransfer>()
+    private val lastDeliveries = HashMap<Pair<PeerHandle, MessageRecipients>, Long>()
+    private var delayedSequence = 0L
+    private var latencyThread: Thread? = null
 
     @Synchronized
     private fun msgSend(from: InMemoryMessaging, message: Message, recipients: MessageRecipients) {
@@ -169,6 +186,29 @@ class InMemoryMessagingNetwork private constructor(
         messageSendQueue += MessageTransfer.createMessageTransfer(from.myAddress, message, recipients)
     }
 
+    @Synchronized
+    private fun delay(transfer: MessageTransfer, latency: Duration): DelayedTransfer {
+        val key = Pair(transfer.sender, transfer.recipients)
+        val deliverAt = maxOf(System.nanoTime() + latency.toNanos(), lastDeliveries[key] ?: Long.MIN_VALUE)
+        lastDeliveries[key] = deliverAt
+        val delayed = DelayedTransfer(transfer, deliverAt, delayedSequence++)
+        delayedTransfers += delayed
+        if (latencyThread == null) {
+            latencyThread = thread(isDaemon = true, name = "In-memory network latency") {
+                while (!Thread.currentThread().isInterrupted) {
+                    val next = try {
+                        delayedTransfers.take()
+                    } catch (e: InterruptedException) {
+                        break
+                    }
+                    pumpSendInternal(next.transfer)
+                    next.sent.set(Unit)
+                }
+            }
+        }
+        return delayed
+    }
+
     @Synchronized
     private fun netNodeHasShutdown(peerHandle: PeerHandle) {
         val endpoint = handleEndpointMap[peerHandle]
@@ -191,17 +231,19 @@ class InMemoryMessagingNetwork private constructor(
      * Stop all nodes within the network and clear any buffered messages
      */
     fun stop() {
-        val nodes = synchronized(this) {
+        val (nodes, latency) = synchronized(this) {
             counter = -1
-            handleEndpointMap.values.toList()
+            Pair(handleEndpointMap.values.toList(), latencyThread)
         }
+        latency?.interrupt()
+        latency?.join()
 
         for (node in nodes)
             node.stop()
 
         handleEndpointMap.clear()
         messageReceiveQueues.clear()
-        timer.cancel()
+        delayedTransfers.clear()
     }
 
     /**
@@ -263,14 +305,10 @@ class InMemoryMessagingNetwork private constructor(
         log.trace { transfer.toString() }
         val calc = latencyCalculator
         if (calc != null && transfer.recipients is SingleMessageRecipient) {
-            val messageSent = openFuture<Unit>()
             // Inject some artificial latency.
-            timer.schedule(calc.between(transfer.sender, transfer.recipients).toMillis()) {
-                pumpSendInternal(transfer)
-                messageSent.set(Unit)
-            }
+            val delayed = delay(transfer, calc.between(transfer.sender, transfer.recipients))
             if (block) {
-                messageSent.getOrThrow()
+                delayed.sent.getOrThrow()
             }
         } else {
             pumpSendInternal(transfer)
@@ -331,10 +369,8 @@ class InMemoryMessagingNetwork private constructor(
                                                override val senderUUID: String? = null,
                                                override val senderSeqNo: Long? = null,
                                                /** Note this flag is never set in the in memory network. */
-                                               override val isSessionInit: Boolean = false) : ReceivedMessage {
-
-        override val additionalHeaders: Map<String, String> = emptyMap()
-    }
+                                               override val isSessionInit: Boolean = false,
+                                               override val additionalHeaders: Map<String, String> = emptyMap()) : ReceivedMessage
 
     /**
      * A class that provides an abstraction over the nodes' messaging service that also contains the ability to
@@ -422,9 +458,13 @@ class InMemoryMessagingNetwork private constructor(
 
         override fun send(message: Message, target: MessageRecipients, sequenceKey: Any) {
             check(running)
-            msgSend(this, message, target)
-            if (!sendManuallyPumped) {
-                pumpSend(false)
+            // When sends aren't pumped manually, queueing and sending together stops another node's send from
+            // overtaking this one, which would reorder messages between the same pair of peers.
+            synchronized(this@InMemoryMessagingNetwork) {
+                msgSend(this, message, target)
+                if (!sendManuallyPumped) {
+                    pumpSend(false)
+                }
             }
         }
 
@@ -445,7 +485,7 @@ class InMemoryMessagingNetwork private constructor(
 
         /** Returns the given (topic & session, data) pair as a newly created message object. */
         override fun createMessage(topic: String, data: ByteArray, deduplicationId: SenderDeduplicationId, additionalHeaders: Map<String, String>): Message {
-            return InMemoryMessage(topic, OpaqueBytes(data), deduplicationId.deduplicationId, senderUUID = deduplicationId.senderUUID)
+            return InMemoryMessage(topic, OpaqueBytes(data), deduplicationId.deduplicationId, senderUUID = deduplicationId.senderUUID, additionalHeaders = additionalHeaders)
         }
 
         /**
@@ -528,7 +568,8 @@ class InMemoryMessagingNetwork private constructor(
                 1,
                 message.uniqueMessageId,
                 message.debugTimestamp,
-                sender.name)
+                sender.name,
+                additionalHeaders = message.additionalHeaders)
 
         private inner class InMemoryDeduplicationHandler(override val receivedMessage: ReceivedMessage, val transfer: MessageTransfer) : DeduplicationHandler, ExternalEvent.ExternalMessageEvent {
             override val externalCause: ExternalEvent
@@ -12,9 +12,7 @@ data class InMemoryMessage(override val topic: String,
                            override val data: ByteSequence,
                            override val uniqueMessageId: DeduplicationId,
                            override val debugTimestamp: Instant = Instant.now(),
-                           override val senderUUID: String? = null) : Message {
-
-    override val additionalHeaders: Map<String, String> = emptyMap()
-
+                           override val senderUUID: String? = null,
+                           override val additionalHeaders: Map<String, String> = emptyMap()) : Message {
     override fun toString() = "$topic#${String(data.bytes)}"
 }
\ No newline at end of file
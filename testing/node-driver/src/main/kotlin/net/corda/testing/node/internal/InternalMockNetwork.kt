@@ -104,7 +104,8 @@ open class InternalMockNetwork(private val cordappPackages: List<String> = empty
                                servicePeerAllocationStrategy: InMemoryMessagingNetwork.ServicePeerAllocationStrategy = defaultParameters.servicePeerAllocationStrategy,
                                val notarySpecs: List<MockNetworkNotarySpec> = defaultParameters.notarySpecs,
                                networkParameters: NetworkParameters = testNetworkParameters(),
-                               val defaultFactory: (MockNodeArgs) -> MockNode = InternalMockNetwork::MockNode) {
+                               val defaultFactory: (MockNodeArgs) -> MockNode = InternalMockNetwork::MockNode,
+                               latencyCalculator: InMemoryMessagingNetwork.LatencyCalculator? = null) {
     init {
         // Apache SSHD for whatever reason registers a SFTP FileSystemProvider - which gets loaded by JimFS.
         // This SFTP support loads BouncyCastle, which we want to avoid.
@@ -117,7 +118,7 @@ open class InternalMockNetwork(private val cordappPackages: List<String> = empty
         private set
     private val filesystem = Jimfs.newFileSystem(unix())
     private val busyLatch = ReusableLatch()
-    val messagingNetwork = InMemoryMessagingNetwork.create(networkSendManuallyPumped, servicePeerAllocationStrategy, busyLatch)
+    val messagingNetwork = InMemoryMessagingNetwork.create(networkSendManuallyPumped, servicePeerAllocationStrategy, busyLatch, latencyCalculator)
     // A unique identifier for this network to segregate databases with the same nodeID but different networks.
     private val networkId = random63BitValue()
     private val networkParametersCopier: NetworkParametersCopier
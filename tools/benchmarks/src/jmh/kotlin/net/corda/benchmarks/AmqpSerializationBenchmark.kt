@@ -0,0 +1,60 @@
+package net.corda.benchmarks
+
+import net.corda.core.serialization.SerializedBytes
+import net.corda.core.transactions.SignedTransaction
+import net.corda.core.transactions.WireTransaction
+import net.corda.serialization.internal.AMQP_P2P_CONTEXT
+import net.corda.serialization.internal.AllWhitelist
+import net.corda.serialization.internal.amqp.DeserializationInput
+import net.corda.serialization.internal.amqp.SerializationOutput
+import net.corda.serialization.internal.amqp.SerializerFactory
+import net.corda.serialization.internal.amqp.custom.PublicKeySerializer
+import net.corda.testing.internal.GlobalSerializationEnvironment
+import net.corda.testing.internal.setGlobalSerialization
+import org.openjdk.jmh.annotations.*
+
+/**
+ * AMQP serialisation and deserialisation of transactions with [size] inputs, outputs and attachments. The
+ * [SerializerFactory] is shared between invocations, as it is in a node, so this measures steady state rather than the
+ * cost of building serialisers.
+ */
+@State(Scope.Benchmark)
+open class AmqpSerializationBenchmark {
+    @Param("1", "10", "100")
+    @JvmField
+    var size = 0
+
+    private lateinit var environment: GlobalSerializationEnvironment
+    private lateinit var factory: SerializerFactory
+    private lateinit var wtx: WireTransaction
+    private lateinit var stx: SignedTransaction
+    private lateinit var wtxBytes: SerializedBytes<WireTransaction>
+    private lateinit var stxBytes: SerializedBytes<SignedTransaction>
+
+    @Setup
+    fun setUp() {
+        environment = setGlobalSerialization(true)
+        factory = SerializerFactory(AllWhitelist, javaClass.classLoader).apply { register(PublicKeySerializer) }
+        stx = signedTransaction(size)
+        wtx = stx.tx
+        wtxBytes = SerializationOutput(factory).serialize(wtx, AMQP_P2P_CONTEXT)
+        stxBytes = SerializationOutput(factory).serialize(stx, AMQP_P2P_CONTEXT)
+    }
+
+    @TearDown
+    fun tearDown() {
+        environment.unset()
+    }
+
+    @Benchmark
+    fun serializeWireTransaction() = SerializationOutput(factory).serialize(wtx, AMQP_P2P_CONTEXT)
+
+    @Benchmark
+    fun deserializeWireTransaction() = DeserializationInput(factory).deserialize(wtxBytes, WireTransaction::class.java, AMQP_P2P_CONTEXT)
+
+    @Benchmark
+    fun serializeSignedTransaction() = SerializationOutput(factory).serialize(stx, AMQP_P2P_CONTEXT)
+
+    @Benchmark
+    fun deserializeSignedTransaction() = DeserializationInput(factory).deserialize(stxBytes, SignedTransaction::class.java, AMQP_P2P_CONTEXT)
+}
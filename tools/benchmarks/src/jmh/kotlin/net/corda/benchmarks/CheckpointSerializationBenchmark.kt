@@ -0,0 +1,58 @@
+package net.corda.benchmarks
+
+import net.corda.core.context.InvocationContext
+import net.corda.core.flows.FlowLogic
+import net.corda.core.serialization.SerializationDefaults.CHECKPOINT_CONTEXT
+import net.corda.core.serialization.SerializedBytes
+import net.corda.core.serialization.deserialize
+import net.corda.core.serialization.serialize
+import net.corda.core.transactions.SignedTransaction
+import net.corda.core.utilities.getOrThrow
+import net.corda.node.services.statemachine.Checkpoint
+import net.corda.node.services.statemachine.FlowStart
+import net.corda.node.services.statemachine.SubFlowVersion
+import net.corda.testing.core.ALICE_NAME
+import net.corda.testing.core.TestIdentity
+import net.corda.testing.internal.GlobalSerializationEnvironment
+import net.corda.testing.internal.setGlobalSerialization
+import org.openjdk.jmh.annotations.*
+
+/**
+ * Kryo round trips of a flow [Checkpoint], as written on every suspension, for a flow holding a transaction with
+ * [size] inputs, outputs and attachments.
+ */
+@State(Scope.Benchmark)
+open class CheckpointSerializationBenchmark {
+    @Param("1", "10", "100")
+    @JvmField
+    var size = 0
+
+    private lateinit var environment: GlobalSerializationEnvironment
+    private lateinit var checkpoint: Checkpoint
+    private lateinit var checkpointBytes: SerializedBytes<Checkpoint>
+
+    class TransactionHoldingFlow(val stx: SignedTransaction) : FlowLogic<Unit>() {
+        override fun call() = Unit
+    }
+
+    @Setup
+    fun setUp() {
+        environment = setGlobalSerialization(true)
+        val logic: FlowLogic<*> = TransactionHoldingFlow(signedTransaction(size))
+        val frozenLogic = logic.serialize(context = CHECKPOINT_CONTEXT)
+        val ourIdentity = TestIdentity(ALICE_NAME, 70).party
+        checkpoint = Checkpoint.create(InvocationContext.shell(), FlowStart.Explicit, logic.javaClass, frozenLogic, ourIdentity, SubFlowVersion.CoreFlow(4)).getOrThrow()
+        checkpointBytes = checkpoint.serialize(context = CHECKPOINT_CONTEXT)
+    }
+
+    @TearDown
+    fun tearDown() {
+        environment.unset()
+    }
+
+    @Benchmark
+    fun serializeCheckpoint() = checkpoint.serialize(context = CHECKPOINT_CONTEXT)
+
+    @Benchmark
+    fun deserializeCheckpoint() = checkpointBytes.deserialize(context = CHECKPOINT_CONTEXT)
+}
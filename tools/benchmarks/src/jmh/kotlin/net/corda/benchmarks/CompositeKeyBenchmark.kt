@@ -0,0 +1,39 @@
+package net.corda.benchmarks
+
+import net.corda.core.crypto.CompositeKey
+import net.corda.core.crypto.generateKeyPair
+import org.openjdk.jmh.annotations.*
+import java.security.PublicKey
+
+/**
+ * [CompositeKey.isFulfilledBy] for a key of [size] leaves with a majority threshold, and for a key of [size] 2 of 3
+ * groups with a majority threshold, checked against exactly a majority of the leaves.
+ */
+@State(Scope.Benchmark)
+open class CompositeKeyBenchmark {
+    @Param("3", "10", "100")
+    @JvmField
+    var size = 0
+
+    private lateinit var flatKey: CompositeKey
+    private lateinit var flatSigners: Set<PublicKey>
+    private lateinit var nestedKey: CompositeKey
+    private lateinit var nestedSigners: Set<PublicKey>
+
+    @Setup
+    fun setUp() {
+        val leaves = List(size) { generateKeyPair().public }
+        flatKey = CompositeKey.Builder().addKeys(leaves).build(size / 2 + 1) as CompositeKey
+        flatSigners = leaves.take(size / 2 + 1).toSet()
+
+        val groups = List(size) { List(3) { generateKeyPair().public } }
+        nestedKey = CompositeKey.Builder().addKeys(groups.map { CompositeKey.Builder().addKeys(it).build(2) }).build(size / 2 + 1) as CompositeKey
+        nestedSigners = groups.take(size / 2 + 1).flatMap { it.take(2) }.toSet()
+    }
+
+    @Benchmark
+    fun flatIsFulfilledBy() = flatKey.isFulfilledBy(flatSigners)
+
+    @Benchmark
+    fun nestedIsFulfilledBy() = nestedKey.isFulfilledBy(nestedSigners)
+}
@@ -0,0 +1,89 @@
+package net.corda.benchmarks
+
+import net.corda.core.schemas.MappedSchema
+import net.corda.node.internal.configureDatabase
+import net.corda.node.services.schema.NodeSchemaService
+import net.corda.node.utilities.AppendOnlyPersistentMap
+import net.corda.nodeapi.internal.persistence.CordaPersistence
+import net.corda.nodeapi.internal.persistence.DatabaseConfig
+import net.corda.nodeapi.internal.persistence.bufferUntilDatabaseCommit
+import net.corda.testing.node.MockServices.Companion.makeTestDataSourceProperties
+import org.openjdk.jmh.annotations.*
+import rx.subjects.PublishSubject
+import javax.persistence.Column
+import javax.persistence.Entity
+import javax.persistence.Id
+import javax.persistence.Table
+
+/**
+ * [CordaPersistence.transaction] and [AppendOnlyPersistentMap] on an in-memory H2 database. The map holds [entries]
+ * rows, more than its cache holds, so reads of random keys mostly go to the database while reads of a single key are
+ * served from the cache.
+ */
+@State(Scope.Benchmark)
+open class DatabaseBenchmark {
+    @Param("10000")
+    @JvmField
+    var entries = 0
+
+    @Entity
+    @Table(name = "benchmark_map")
+    class MapEntry(
+            @Id
+            @Column(name = "map_key")
+            var key: Long = -1,
+
+            @Column(name = "map_value", length = 64)
+            var value: String = ""
+    )
+
+    private object MapSchema : MappedSchema(DatabaseBenchmark::class.java, 1, listOf(MapEntry::class.java))
+
+    private lateinit var database: CordaPersistence
+    private lateinit var map: AppendOnlyPersistentMap<Long, String, MapEntry, Long>
+    private val updates = PublishSubject.create<Long>()
+    private var nextKey = 0L
+    private var nextRead = 0L
+
+    @Setup
+    fun setUp() {
+        database = configureDatabase(makeTestDataSourceProperties(), DatabaseConfig(), { null }, { null }, NodeSchemaService(setOf(MapSchema)))
+        map = AppendOnlyPersistentMap(
+                toPersistentEntityKey = { it },
+                fromPersistentEntity = { Pair(it.key, it.value) },
+                toPersistentEntity = { key: Long, value: String -> MapEntry(key, value) },
+                persistentEntityClass = MapEntry::class.java)
+        database.transaction {
+            for (key in 0 until entries.toLong()) {
+                map.set(key, "value $key")
+            }
+        }
+        nextKey = entries.toLong()
+    }
+
+    @TearDown
+    fun tearDown() {
+        database.close()
+    }
+
+    /** An outer transaction joined by nested ones, with commit callbacks and buffered observations, as when recording a transaction. */
+    @Benchmark
+    fun nestedTransaction() {
+        database.transaction {
+            database.transaction {
+                onCommit { }
+                updates.bufferUntilDatabaseCommit().onNext(nextKey)
+            }
+            database.transaction { onRollback { } }
+        }
+    }
+
+    @Benchmark
+    fun getCached() = database.transaction { map[0] }
+
+    @Benchmark
+    fun getFromDatabase() = database.transaction { map[nextRead++ % entries] }
+
+    @Benchmark
+    fun set() = database.transaction { map.set(nextKey++, "value") }
+}
@@ -0,0 +1,56 @@
+package net.corda.benchmarks
+
+import net.corda.core.contracts.StateRef
+import net.corda.core.contracts.TimeWindow
+import net.corda.core.crypto.MerkleTree
+import net.corda.core.crypto.SecureHash
+import net.corda.core.identity.Party
+import net.corda.core.transactions.FilteredTransaction
+import net.corda.core.transactions.WireTransaction
+import net.corda.testing.internal.GlobalSerializationEnvironment
+import net.corda.testing.internal.setGlobalSerialization
+import org.openjdk.jmh.annotations.*
+import java.util.function.Predicate
+
+/**
+ * Building Merkle trees: over [size] leaf hashes, for the id of a transaction with [size] inputs, outputs and
+ * attachments, and for the [FilteredTransaction] a notary is sent, which reveals only the inputs, time window and notary.
+ */
+@State(Scope.Benchmark)
+open class MerkleTreeBenchmark {
+    @Param("1", "10", "100")
+    @JvmField
+    var size = 0
+
+    private lateinit var environment: GlobalSerializationEnvironment
+    private lateinit var leaves: List<SecureHash>
+    private lateinit var wtx: WireTransaction
+    private lateinit var ftx: FilteredTransaction
+    private val notaryFilter = Predicate<Any> { it is StateRef || it is TimeWindow || it is Party }
+
+    @Setup
+    fun setUp() {
+        environment = setGlobalSerialization(true)
+        leaves = List(size) { SecureHash.randomSHA256() }
+        wtx = wireTransaction(size)
+        ftx = wtx.buildFilteredTransaction(notaryFilter)
+    }
+
+    @TearDown
+    fun tearDown() {
+        environment.unset()
+    }
+
+    @Benchmark
+    fun merkleTree() = MerkleTree.getMerkleTree(leaves)
+
+    /** The id is cached once computed, so it's computed on a fresh copy of the transaction. */
+    @Benchmark
+    fun transactionId() = WireTransaction(wtx.componentGroups, wtx.privacySalt).id
+
+    @Benchmark
+    fun buildFilteredTransaction() = wtx.buildFilteredTransaction(notaryFilter)
+
+    @Benchmark
+    fun verifyFilteredTransaction() = ftx.verify()
+}
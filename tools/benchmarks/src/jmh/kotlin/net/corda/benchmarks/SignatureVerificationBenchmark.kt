@@ -0,0 +1,28 @@
+package net.corda.benchmarks
+
+import net.corda.core.crypto.Crypto
+import net.corda.core.crypto.SecureHash
+import org.openjdk.jmh.annotations.*
+import java.security.KeyPair
+
+/** [Crypto.doVerify] of a signature over a transaction id, for each supported signature scheme. */
+@State(Scope.Benchmark)
+open class SignatureVerificationBenchmark {
+    @Param("RSA_SHA256", "ECDSA_SECP256K1_SHA256", "ECDSA_SECP256R1_SHA256", "EDDSA_ED25519_SHA512", "SPHINCS-256_SHA512")
+    @JvmField
+    var scheme = ""
+
+    private lateinit var keyPair: KeyPair
+    private lateinit var clearData: ByteArray
+    private lateinit var signature: ByteArray
+
+    @Setup
+    fun setUp() {
+        keyPair = Crypto.generateKeyPair(scheme)
+        clearData = SecureHash.randomSHA256().bytes
+        signature = Crypto.doSign(keyPair.private, clearData)
+    }
+
+    @Benchmark
+    fun doVerify() = Crypto.doVerify(scheme, keyPair.public, signature, clearData)
+}
@@ -0,0 +1,44 @@
+package net.corda.benchmarks
+
+import net.corda.core.contracts.Command
+import net.corda.core.contracts.StateRef
+import net.corda.core.contracts.TransactionState
+import net.corda.core.crypto.Crypto
+import net.corda.core.crypto.SecureHash
+import net.corda.core.crypto.SignableData
+import net.corda.core.crypto.SignatureMetadata
+import net.corda.core.transactions.SignedTransaction
+import net.corda.core.transactions.WireTransaction
+import net.corda.testing.contracts.DummyContract
+import net.corda.testing.contracts.DummyState
+import net.corda.testing.core.ALICE_NAME
+import net.corda.testing.core.DUMMY_NOTARY_NAME
+import net.corda.testing.core.TestIdentity
+import net.corda.testing.internal.createWireTransaction
+
+private val notary = TestIdentity(DUMMY_NOTARY_NAME, 20)
+private val alice = TestIdentity(ALICE_NAME, 70)
+
+/**
+ * A transaction with [size] inputs, outputs and attachments, and a command. Needs a serialization environment, as the
+ * components are serialised when the transaction is built.
+ */
+internal fun wireTransaction(size: Int): WireTransaction {
+    return createWireTransaction(
+            inputs = List(size) { StateRef(SecureHash.randomSHA256(), it) },
+            attachments = List(size) { SecureHash.randomSHA256() },
+            outputs = List(size) { TransactionState(DummyState(it), DummyContract.PROGRAM_ID, notary.party) },
+            commands = listOf(Command(DummyContract.Commands.Move(), alice.publicKey)),
+            notary = notary.party,
+            timeWindow = null)
+}
+
+/** [wireTransaction] signed by its signer and the notary. */
+internal fun signedTransaction(size: Int): SignedTransaction {
+    val wtx = wireTransaction(size)
+    val signatures = listOf(alice, notary).map {
+        val metadata = SignatureMetadata(4, Crypto.findSignatureScheme(it.publicKey).schemeNumberID)
+        Crypto.doSign(it.keyPair, SignableData(wtx.id, metadata))
+    }
+    return SignedTransaction(wtx, signatures)
+}
@@ -2,6 +2,7 @@ package net.corda.loadtest
 
 import net.corda.nodeapi.internal.config.User
 import java.nio.file.Path
+import java.time.Duration
 import java.util.concurrent.ForkJoinPool
 
 /**
@@ -22,6 +23,7 @@ import java.util.concurrent.ForkJoinPool
  *     exceed this, it is used just for cutoff.
  * @param parallelism Number of concurrent threads to use to run commands. Note that the actual parallelism may be
  *     further limited by the batches that [generate] returns.
+ * @param openLoop Configures [TestMode.OPEN_LOOP_TEST].
  */
 data class LoadTestConfiguration(
         val sshUser: String = System.getProperty("user.name"),
@@ -35,11 +37,37 @@ data class LoadTestConfiguration(
         val mode: TestMode = TestMode.LOAD_TEST,
         val executionFrequency: Int = 2,
         val generateCount: Int = 10000,
-        val parallelism: Int = ForkJoinPool.getCommonPoolParallelism())
+        val parallelism: Int = ForkJoinPool.getCommonPoolParallelism(),
+        val openLoop: OpenLoopConfiguration = OpenLoopConfiguration())
+
+// DOCS START 1
+/**
+ * @param targetRate Number of flows to start per second, regardless of how many are still running.
+ * @param duration How long to offer load for once [warmup] has passed.
+ * @param warmup How long to offer load for before latencies are recorded.
+ * @param dispatchThreads Number of threads making the RPC calls that start flows.
+ * @param maxInFlight Number of flows that may be running at once. Flow starts beyond this are dropped and counted as
+ *     such rather than delaying the schedule.
+ * @param drainTimeout How long to wait for running flows to finish once the load stops.
+ * @param resultsFile Where to write the results as JSON, if anywhere.
+ * @param inProcessNodes If positive, the test is run against a driver network of this many nodes and a notary in this
+ *     process rather than against [LoadTestConfiguration.nodeHosts].
+ */
+data class OpenLoopConfiguration(
+        val targetRate: Double = 10.0,
+        val duration: Duration = Duration.ofMinutes(1),
+        val warmup: Duration = Duration.ofSeconds(10),
+        val dispatchThreads: Int = 8,
+        val maxInFlight: Int = 10000,
+        val drainTimeout: Duration = Duration.ofMinutes(1),
+        val resultsFile: Path? = null,
+        val inProcessNodes: Int = 0)
+// DOCS END 1
 
 data class RemoteNode(val hostname: String, val systemdServiceName: String, val sshUserName: String, val rpcUser: User, val rpcPort: Int, val nodeDirectory: Path)
 
 enum class TestMode {
     LOAD_TEST,
-    STABILITY_TEST
+    STABILITY_TEST,
+    OPEN_LOOP_TEST
 }
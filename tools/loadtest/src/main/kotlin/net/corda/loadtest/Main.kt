@@ -2,11 +2,20 @@ package net.corda.loadtest
 
 import com.typesafe.config.ConfigFactory
 import com.typesafe.config.ConfigParseOptions
+import net.corda.client.rpc.CordaRPCClient
+import net.corda.core.identity.CordaX500Name
+import net.corda.core.utilities.getOrThrow
 import net.corda.loadtest.tests.StabilityTest
 import net.corda.loadtest.tests.crossCashTest
+import net.corda.loadtest.tests.openLoopCashTest
 import net.corda.loadtest.tests.selfIssueTest
+import net.corda.nodeapi.internal.config.User
 import net.corda.nodeapi.internal.config.parseAs
+import net.corda.testing.driver.DriverParameters
+import net.corda.testing.driver.PortAllocation
+import net.corda.testing.driver.driver
 import java.io.File
+import java.util.*
 
 /**
  * This is how load testing works:
@@ -60,13 +69,15 @@ fun main(args: Array<String>) {
     val resolvedConfig = customConfig.withFallback(defaultConfig).resolve()
     val loadTestConfiguration = resolvedConfig.parseAs<LoadTestConfiguration>()
 
-    if (loadTestConfiguration.nodeHosts.isEmpty()) {
+    val inProcess = loadTestConfiguration.mode == TestMode.OPEN_LOOP_TEST && loadTestConfiguration.openLoop.inProcessNodes > 0
+    if (loadTestConfiguration.nodeHosts.isEmpty() && !inProcess) {
         throw IllegalArgumentException("Please specify at least one node host")
     }
 
     when (loadTestConfiguration.mode) {
         TestMode.LOAD_TEST -> runLoadTest(loadTestConfiguration)
         TestMode.STABILITY_TEST -> runStabilityTest(loadTestConfiguration)
+        TestMode.OPEN_LOOP_TEST -> runOpenLoopTest(loadTestConfiguration)
     }
 }
 
@@ -153,3 +164,35 @@ private fun runStabilityTest(loadTestConfiguration: LoadTestConfiguration) {
             )
     ))
 }
+
+private fun runOpenLoopTest(loadTestConfiguration: LoadTestConfiguration) {
+    val openLoop = loadTestConfiguration.openLoop
+    val random = SplittableRandom(loadTestConfiguration.seed ?: Random().nextLong())
+    val result = if (openLoop.inProcessNodes > 0) {
+        runOpenLoopTestInProcess(openLoop, random)
+    } else {
+        val remoteNodes = loadTestConfiguration.nodeHosts.map { hostname ->
+            loadTestConfiguration.let {
+                RemoteNode(hostname, it.remoteSystemdServiceName, it.sshUser, it.rpcUser, it.rpcPort, it.remoteNodeDirectory)
+            }
+        }
+        connectToNodes(remoteNodes, PortAllocation.Incremental(loadTestConfiguration.localTunnelStartingPort)) { connections ->
+            val proxies = connections.map { it.proxy }
+            val notary = proxies.first().notaryIdentities().first()
+            val nodes = proxies.filter { notary !in it.nodeInfo().legalIdentities }
+            openLoopCashTest(nodes, notary).run(openLoop, random)
+        }
+    }
+    openLoop.resultsFile?.let { result.writeTo(it) }
+}
+
+private fun runOpenLoopTestInProcess(openLoop: OpenLoopConfiguration, random: SplittableRandom): OpenLoopResult {
+    val user = User("loadtest", "loadtest", setOf("ALL"))
+    return driver(DriverParameters(startNodesInProcess = true, extraCordappPackagesToScan = listOf("net.corda.finance"))) {
+        val nodes = (1..openLoop.inProcessNodes).map {
+            startNode(providedName = CordaX500Name("Bank $it", "London", "GB"), rpcUsers = listOf(user))
+        }.map { it.getOrThrow() }
+        val proxies = nodes.map { CordaRPCClient(it.rpcAddress).start(user.username, user.password).proxy }
+        openLoopCashTest(proxies, defaultNotaryHandle.identity).run(openLoop, random)
+    }
+}
@@ -0,0 +1,166 @@
+package net.corda.loadtest
+
+import net.corda.client.jackson.JacksonSupport
+import net.corda.core.concurrent.CordaFuture
+import net.corda.core.utilities.getOrThrow
+import net.corda.core.utilities.loggerFor
+import org.HdrHistogram.Histogram
+import org.HdrHistogram.Recorder
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Duration
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.LockSupport
+
+private val log = loggerFor<OpenLoopLoadTest>()
+
+/**
+ * A single flow start offered by an [OpenLoopLoadTest].
+ *
+ * @param flowType The name of the latency histogram the flow is recorded in.
+ * @param start Starts the flow, returning a future that completes with the flow.
+ */
+class FlowStart(val flowType: String, val start: () -> CordaFuture<*>)
+
+/**
+ * An open-loop load test offers flow starts at a fixed rate, whether or not earlier flows have finished, which a
+ * closed-loop [LoadTest] cannot do. The latency of each flow is measured from the time it was scheduled to start, so
+ * a node that falls behind the offered load shows up in the tail latencies rather than lowering the load.
+ *
+ * @param testName The name of the test, used in logs and results.
+ * @param next Returns the next flow to start. It is only called from the scheduling thread.
+ */
+class OpenLoopLoadTest(val testName: String, val next: (SplittableRandom) -> FlowStart) {
+    fun run(parameters: OpenLoopConfiguration, random: SplittableRandom): OpenLoopResult {
+        require(parameters.targetRate > 0.0) { "targetRate must be positive" }
+        log.info("Running open-loop '$testName' with parameters $parameters")
+        val recorders = ConcurrentHashMap<String, Recorder>()
+        val inFlight = Semaphore(parameters.maxInFlight)
+        val completed = AtomicLong()
+        val failed = AtomicLong()
+        var dropped = 0L
+        val dispatcher = Executors.newFixedThreadPool(parameters.dispatchThreads)
+
+        val intervalNanos = (TimeUnit.SECONDS.toNanos(1) / parameters.targetRate).toLong()
+        val startTime = System.nanoTime()
+        val recordFrom = startTime + parameters.warmup.toNanos()
+        val endTime = recordFrom + parameters.duration.toNanos()
+        var scheduledStart = startTime
+        while (scheduledStart < endTime) {
+            val now = System.nanoTime()
+            if (scheduledStart > now) {
+                LockSupport.parkNanos(scheduledStart - now)
+            }
+            val flow = next(random)
+            val flowScheduledStart = scheduledStart
+            val recorded = flowScheduledStart >= recordFrom
+            if (!inFlight.tryAcquire()) {
+                if (recorded) dropped++
+            } else {
+                dispatcher.execute {
+                    try {
+                        flow.start().then {
+                            inFlight.release()
+                            try {
+                                it.getOrThrow()
+                                if (recorded) {
+                                    recorders.getOrPut(flow.flowType) { Recorder(3) }.recordValue(System.nanoTime() - flowScheduledStart)
+                                    completed.incrementAndGet()
+                                }
+                            } catch (e: Exception) {
+                                log.warn("${flow.flowType} failed", e)
+                                if (recorded) failed.incrementAndGet()
+                            }
+                        }
+                    } catch (e: Exception) {
+                        inFlight.release()
+                        log.warn("Could not start ${flow.flowType}", e)
+                        if (recorded) failed.incrementAndGet()
+                    }
+                }
+            }
+            scheduledStart += intervalNanos
+        }
+
+        dispatcher.shutdown()
+        log.info("Waiting for running flows of '$testName' to finish...")
+        if (!inFlight.tryAcquire(parameters.maxInFlight, parameters.drainTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("${parameters.maxInFlight - inFlight.availablePermits()} flows of '$testName' did not finish within ${parameters.drainTimeout}")
+        }
+        val result = OpenLoopResult(
+                testName = testName,
+                targetRate = parameters.targetRate,
+                duration = parameters.duration,
+                completed = completed.get(),
+                failed = failed.get(),
+                dropped = dropped,
+                latencies = recorders.mapValues { it.value.intervalHistogram }.toSortedMap()
+        )
+        log.info("'$testName' done!\n${result.summary()}")
+        return result
+    }
+}
+
+/**
+ * The outcome of an [OpenLoopLoadTest] run, excluding warmup. Latencies are in nanoseconds, keyed by flow type.
+ */
+data class OpenLoopResult(
+        val testName: String,
+        val targetRate: Double,
+        val duration: Duration,
+        val completed: Long,
+        val failed: Long,
+        val dropped: Long,
+        val latencies: Map<String, Histogram>
+) {
+    companion object {
+        val PERCENTILES = listOf(50.0, 90.0, 99.0, 99.9, 99.99, 100.0)
+        private val NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1).toDouble()
+
+        private val jsonMapper = JacksonSupport.createNonRpcMapper()
+
+        private fun label(percentile: Double) = if (percentile % 1.0 == 0.0) "p${percentile.toInt()}" else "p$percentile"
+    }
+
+    val achievedRate: Double get() = completed / (duration.toNanos() / TimeUnit.SECONDS.toNanos(1).toDouble())
+
+    fun summary(): String {
+        val lines = latencies.map { (flowType, histogram) ->
+            val percentiles = PERCENTILES.joinToString(" ") { "${label(it)}=${"%.2f".format(histogram.getValueAtPercentile(it) / NANOS_PER_MILLI)}ms" }
+            "  $flowType (${histogram.totalCount}): $percentiles"
+        }
+        return "Offered ${"%.1f".format(targetRate)}/s, completed ${"%.1f".format(achievedRate)}/s, " +
+                "$completed completed, $failed failed, $dropped dropped\n" + lines.joinToString("\n")
+    }
+
+    /** Returns the result as JSON, with latencies in milliseconds, for tracking regressions across runs. */
+    fun toJson(): String {
+        val latencyMillis = latencies.mapValues { (_, histogram) ->
+            linkedMapOf<String, Any>("count" to histogram.totalCount, "mean" to histogram.mean / NANOS_PER_MILLI).apply {
+                PERCENTILES.forEach { put(label(it), histogram.getValueAtPercentile(it) / NANOS_PER_MILLI) }
+            }
+        }
+        val json = linkedMapOf(
+                "testName" to testName,
+                "targetRate" to targetRate,
+                "achievedRate" to achievedRate,
+                "durationSeconds" to duration.seconds,
+                "completed" to completed,
+                "failed" to failed,
+                "dropped" to dropped,
+                "latencyMillis" to latencyMillis
+        )
+        return jsonMapper.writerWithDefaultPrettyPrinter().writeValueAsString(json)
+    }
+
+    fun writeTo(path: Path) {
+        path.toAbsolutePath().parent?.let { Files.createDirectories(it) }
+        Files.write(path, toJson().toByteArray())
+        log.info("Wrote results of '$testName' to $path")
+    }
+}
@@ -0,0 +1,36 @@
+package net.corda.loadtest.tests
+
+import net.corda.core.contracts.Amount
+import net.corda.core.identity.Party
+import net.corda.core.messaging.CordaRPCOps
+import net.corda.core.messaging.startFlow
+import net.corda.core.utilities.OpaqueBytes
+import net.corda.finance.USD
+import net.corda.finance.flows.CashIssueAndPaymentFlow
+import net.corda.finance.flows.CashIssueFlow
+import net.corda.loadtest.FlowStart
+import net.corda.loadtest.OpenLoopLoadTest
+
+/**
+ * Offers an even mix of cash issuances and issue-and-pay flows to another node, starting each on a random node.
+ */
+fun openLoopCashTest(nodes: List<CordaRPCOps>, notary: Party): OpenLoopLoadTest {
+    require(nodes.isNotEmpty()) { "At least one node is needed" }
+    val identities = nodes.map { it.nodeInfo().legalIdentities.first() }
+    val issueRef = OpaqueBytes.of(0)
+    return OpenLoopLoadTest("Open-loop cash issuance and payment") { random ->
+        val index = random.nextInt(nodes.size)
+        val proxy = nodes[index]
+        val amount = Amount(random.nextLong(1, 1000), USD)
+        if (nodes.size == 1 || random.nextBoolean()) {
+            FlowStart(CashIssueFlow::class.java.simpleName) {
+                proxy.startFlow(::CashIssueFlow, amount, issueRef, notary).returnValue
+            }
+        } else {
+            val recipient = identities[(index + 1 + random.nextInt(nodes.size - 1)) % nodes.size]
+            FlowStart(CashIssueAndPaymentFlow::class.java.simpleName) {
+                proxy.startFlow(::CashIssueAndPaymentFlow, amount, issueRef, recipient, true, notary).returnValue
+            }
+        }
+    }
+}
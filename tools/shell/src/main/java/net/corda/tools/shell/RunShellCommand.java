@@ -7,6 +7,7 @@ import net.corda.core.messaging.CordaRPCOps;
 import org.crsh.cli.Argument;
 import org.crsh.cli.Command;
 import org.crsh.cli.Man;
+import org.crsh.cli.Option;
 import org.crsh.cli.Usage;
 import org.crsh.command.InvocationContext;
 import org.jetbrains.annotations.NotNull;
@@ -15,6 +16,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
@@ -36,7 +38,10 @@ public class RunShellCommand extends InteractiveShellCommand {
                     "consulting the developer guide at https://docs.corda.net/api/kotlin/corda/net.corda.core.messaging/-corda-r-p-c-ops/index.html"
     )
     @Usage("runs a method from the CordaRPCOps interface on the node.")
-    public Object main(InvocationContext<Map> context, @Usage("The command to run") @Argument(unquote = false) List<String> command) {
+    public Object main(InvocationContext<Map> context,
+                       @Usage("The output format, json (the default) or json-lines") @Option(names = {"f", "format"}) String format,
+                       @Usage("The maximum number of elements, or of observations, to print") @Option(names = {"l", "limit"}) Integer limit,
+                       @Usage("The command to run") @Argument(unquote = false) List<String> command) {
         logger.info("Executing command \"run {}\",", (command != null) ? command.stream().collect(joining(" ")) : "<no arguments>");
         StringToMethodCallParser<CordaRPCOps> parser = new StringToMethodCallParser<>(CordaRPCOps.class, objectMapper());
 
@@ -44,7 +49,18 @@ public class RunShellCommand extends InteractiveShellCommand {
             emitHelp(context, parser);
             return null;
         }
-        return InteractiveShell.runRPCFromString(command, out, context, ops(), objectMapper(), isSsh());
+        OutputFormat outputFormat;
+        try {
+            outputFormat = (format != null) ? OutputFormat.valueOf(format.toUpperCase(Locale.ROOT).replace('-', '_')) : OutputFormat.JSON;
+        } catch (IllegalArgumentException e) {
+            out.println("Unknown output format " + format + ", expected json or json-lines");
+            return null;
+        }
+        if (limit != null && limit < 0) {
+            out.println("The limit cannot be negative");
+            return null;
+        }
+        return InteractiveShell.runRPCFromString(command, out, context, ops(), objectMapper(), isSsh(), outputFormat, limit);
     }
 
     private void emitHelp(InvocationContext<Map> context, StringToMethodCallParser<CordaRPCOps> parser) {
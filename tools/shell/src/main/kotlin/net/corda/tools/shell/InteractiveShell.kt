@@ -382,8 +382,13 @@ object InteractiveShell {
         return result
     }
 
+    /**
+     * Runs the RPC described by [input] and prints its result to [out] in the given [format]. If [limit] is given then only
+     * that many elements of a collection or vault page, and that many observations of an observable, are printed.
+     */
     @JvmStatic
-    fun runRPCFromString(input: List<String>, out: RenderPrintWriter, context: InvocationContext<out Any>, cordaRPCOps: CordaRPCOps, om: ObjectMapper, isSsh: Boolean = false): Any? {
+    fun runRPCFromString(input: List<String>, out: RenderPrintWriter, context: InvocationContext<out Any>, cordaRPCOps: CordaRPCOps, om: ObjectMapper,
+                         isSsh: Boolean = false, format: OutputFormat = OutputFormat.JSON, limit: Int? = null): Any? {
         val cmd = input.joinToString(" ").trim { it <= ' ' }
         if (cmd.startsWith("startflow", ignoreCase = true)) {
             // The flow command provides better support and startFlow requires special handling anyway due to
@@ -402,7 +407,7 @@ object InteractiveShell {
             val call = parser.parse(cordaRPCOps, cmd)
             result = call.call()
             if (result != null && result !== kotlin.Unit && result !is Void) {
-                result = printAndFollowRPCResponse(result, out)
+                result = printAndFollowRPCResponse(result, out, ResponsePrinter(out, format, limit, outputMapper))
             }
             if (result is Future<*>) {
                 if (!result.isDone) {
@@ -493,22 +498,7 @@ object InteractiveShell {
         }
     }
 
-    private fun printAndFollowRPCResponse(response: Any?, out: PrintWriter): CordaFuture<Unit> {
-
-        val mapElement: (Any?) -> String = { element -> outputMapper.writerWithDefaultPrettyPrinter().writeValueAsString(element) }
-        val mappingFunction: (Any?) -> String = { value ->
-            if (value is Collection<*>) {
-                value.joinToString(",${System.lineSeparator()}  ", "[${System.lineSeparator()}  ", "${System.lineSeparator()}]") { element ->
-                    mapElement(element)
-                }
-            } else {
-                mapElement(value)
-            }
-        }
-        return maybeFollow(response, mappingFunction, out)
-    }
-
-    private class PrintingSubscriber(private val printerFun: (Any?) -> String, private val toStream: PrintWriter) : Subscriber<Any>() {
+    private class PrintingSubscriber(private val printer: ResponsePrinter, private val toStream: PrintWriter) : Subscriber<Any>() {
         private var count = 0
         val future = openFuture<Unit>()
 
@@ -518,28 +508,35 @@ object InteractiveShell {
             future.then { unsubscribe() }
         }
 
+        private val annotated = printer.format != OutputFormat.JSON_LINES
+
         @Synchronized
         override fun onCompleted() {
-            toStream.println("Observable has completed")
+            if (annotated) toStream.println("Observable has completed")
             future.set(Unit)
         }
 
         @Synchronized
         override fun onNext(t: Any?) {
+            if (future.isDone) return
             count++
-            toStream.println("Observation $count: " + printerFun(t))
-            toStream.flush()
+            if (annotated) toStream.print("Observation $count: ")
+            printer.print(t)
+            if (count == printer.limit) {
+                if (annotated) toStream.println("Limit of $count observations reached")
+                future.set(Unit)
+            }
         }
 
         @Synchronized
         override fun onError(e: Throwable) {
-            toStream.println("Observable completed with an error")
+            if (annotated) toStream.println("Observable completed with an error")
             e.printStackTrace(toStream)
             future.setException(e)
         }
     }
 
-    private fun maybeFollow(response: Any?, printerFun: (Any?) -> String, out: PrintWriter): CordaFuture<Unit> {
+    private fun printAndFollowRPCResponse(response: Any?, out: PrintWriter, printer: ResponsePrinter): CordaFuture<Unit> {
         // Match on a couple of common patterns for "important" observables. It's tough to do this in a generic
         // way because observables can be embedded anywhere in the object graph, and can emit other arbitrary
         // object graphs that contain yet more observables. So we just look for top level responses that follow
@@ -547,24 +544,24 @@ object InteractiveShell {
         if (response == null) return doneFuture(Unit)
 
         if (response is DataFeed<*, *>) {
-            out.println("Snapshot:")
-            out.println(printerFun(response.snapshot))
-            out.flush()
-            out.println("Updates:")
-            return printNextElements(response.updates, printerFun, out)
+            val annotated = printer.format != OutputFormat.JSON_LINES
+            if (annotated) out.println("Snapshot:")
+            printer.print(response.snapshot)
+            if (annotated) out.println("Updates:")
+            return printNextElements(response.updates, printer, out)
         }
         if (response is Observable<*>) {
 
-            return printNextElements(response, printerFun, out)
+            return printNextElements(response, printer, out)
         }
 
-        out.println(printerFun(response))
+        printer.print(response)
         return doneFuture(Unit)
     }
 
-    private fun printNextElements(elements: Observable<*>, printerFun: (Any?) -> String, out: PrintWriter): CordaFuture<Unit> {
-
-        val subscriber = PrintingSubscriber(printerFun, out)
+    private fun printNextElements(elements: Observable<*>, printer: ResponsePrinter, out: PrintWriter): CordaFuture<Unit> {
+        if (printer.limit == 0) return doneFuture(Unit)
+        val subscriber = PrintingSubscriber(printer, out)
         uncheckedCast(elements).subscribe(subscriber)
         return subscriber.future
     }
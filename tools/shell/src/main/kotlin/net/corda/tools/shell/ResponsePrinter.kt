@@ -0,0 +1,81 @@
+package net.corda.tools.shell
+
+import com.fasterxml.jackson.core.JsonGenerator
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.SerializationFeature
+import net.corda.core.contracts.ContractState
+import net.corda.core.node.services.Vault
+import java.io.PrintWriter
+
+/** The formats in which the shell can print the results of RPC commands. */
+enum class OutputFormat {
+    /** Indented JSON, with the elements of a collection in a JSON array. */
+    JSON,
+    /** A compact JSON document per line, and a line per element of a collection, for piping into other tools. */
+    JSON_LINES
+}
+
+/**
+ * Prints RPC results to [out] in the given [format]. Values are serialised straight into [out], and collections an
+ * element at a time with a flush after each, so that output appears as it is produced rather than once the whole
+ * result has been rendered. If [limit] is given then only that many elements of a collection or a vault page, or that
+ * many observations, are printed.
+ */
+internal class ResponsePrinter(private val out: PrintWriter, val format: OutputFormat, val limit: Int?, mapper: ObjectMapper) {
+    init {
+        require(limit == null || limit >= 0) { "limit cannot be negative" }
+    }
+
+    private val writer = when (format) {
+        OutputFormat.JSON -> mapper.writerWithDefaultPrettyPrinter()
+        OutputFormat.JSON_LINES -> mapper.writer().without(SerializationFeature.INDENT_OUTPUT)
+    }
+
+    /** Prints [value], followed by a new line. */
+    fun print(value: Any?) {
+        when (value) {
+            is Collection<*> -> printElements(value)
+            is Vault.Page<*> -> printValue(limited(value))
+            else -> printValue(value)
+        }
+        out.flush()
+    }
+
+    private fun printElements(elements: Collection<*>) {
+        val shown = if (limit != null) elements.take(limit) else elements
+        if (format == OutputFormat.JSON_LINES) {
+            shown.forEach { printValue(it) }
+        } else if (shown.isEmpty()) {
+            out.println("[]")
+        } else {
+            out.print("[${System.lineSeparator()}  ")
+            shown.forEachIndexed { index, element ->
+                if (index > 0) out.print(",${System.lineSeparator()}  ")
+                writeValue(element)
+                out.flush()
+            }
+            out.println("${System.lineSeparator()}]")
+        }
+        if (format == OutputFormat.JSON && shown.size < elements.size) {
+            out.println("... ${elements.size - shown.size} more not shown")
+        }
+    }
+
+    private fun <T : ContractState> limited(page: Vault.Page<T>): Vault.Page<T> {
+        if (limit == null || page.states.size <= limit) return page
+        return page.copy(states = page.states.take(limit), statesMetadata = page.statesMetadata.take(limit))
+    }
+
+    private fun printValue(value: Any?) {
+        writeValue(value)
+        out.println()
+    }
+
+    private fun writeValue(value: Any?) {
+        val generator = writer.factory.createGenerator(out)
+        // The shell's writer outlives this value.
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+        writer.writeValue(generator, value)
+        generator.flush()
+    }
+}
@@ -0,0 +1,40 @@
+package net.corda.tools.shell
+
+import com.fasterxml.jackson.databind.SerializationFeature
+import net.corda.client.jackson.JacksonSupport
+import org.junit.Test
+import java.io.PrintWriter
+import java.io.StringWriter
+import kotlin.test.assertEquals
+
+class ResponsePrinterTest {
+    private val mapper = JacksonSupport.createNonRpcMapper().enable(SerializationFeature.INDENT_OUTPUT)
+
+    private fun print(value: Any?, format: OutputFormat, limit: Int? = null): List<String> {
+        val output = StringWriter()
+        ResponsePrinter(PrintWriter(output), format, limit, mapper).print(value)
+        return output.toString().lines().dropLastWhile { it.isEmpty() }
+    }
+
+    @Test
+    fun `json lines prints an element per line`() {
+        assertEquals(listOf("""{"a":1}""", """{"a":2}"""), print(listOf(mapOf("a" to 1), mapOf("a" to 2)), OutputFormat.JSON_LINES))
+    }
+
+    @Test
+    fun `json prints collections as an array`() {
+        assertEquals(listOf("[", "  1,", "  2", "]"), print(listOf(1, 2), OutputFormat.JSON))
+        assertEquals(listOf("[]"), print(emptyList<Int>(), OutputFormat.JSON))
+    }
+
+    @Test
+    fun `limit cuts collections short`() {
+        assertEquals(listOf("1", "2"), print(listOf(1, 2, 3, 4), OutputFormat.JSON_LINES, limit = 2))
+        assertEquals(listOf("[", "  1", "]", "... 3 more not shown"), print(listOf(1, 2, 3, 4), OutputFormat.JSON, limit = 1))
+    }
+
+    @Test
+    fun `single values are printed whole`() {
+        assertEquals(listOf("\"hello\""), print("hello", OutputFormat.JSON_LINES))
+    }
+}
@@ -27,6 +27,10 @@ class WebServerConfig(override val baseDirectory: Path, val config: Config) : No
         throw Exception("Missing rpc address property. Either 'rpcSettings' or 'rpcAddress' must be specified.")
     }
     val webAddress: NetworkHostAndPort by config
+    /** The number of threads making blocking RPC calls for the attachment upload and download endpoints. */
+    val rpcThreads: Int by config
+    /** The number of requests each endpoint may be handling at once before it responds with 503 Service Unavailable. */
+    val maxConcurrentRequestsPerEndpoint: Int by config
     val runAs: User
 
     init {
@@ -0,0 +1,22 @@
+package net.corda.webserver.api
+
+import net.corda.core.concurrent.CordaFuture
+import net.corda.core.utilities.getOrThrow
+import javax.ws.rs.container.AsyncResponse
+import javax.ws.rs.container.Suspended
+
+/**
+ * Resumes this response with the result of [future] once it completes, or with its error. An API method taking a
+ * [Suspended] [AsyncResponse] can then return as soon as it has started a flow, for example with
+ * `response.resumeWith(rpc.startFlow(::MyFlow, arg).returnValue)`, instead of holding a server thread until the flow
+ * finishes.
+ */
+fun <T> AsyncResponse.resumeWith(future: CordaFuture<T>) {
+    future.then {
+        try {
+            resume(it.getOrThrow())
+        } catch (e: Exception) {
+            resume(e)
+        }
+    }
+}
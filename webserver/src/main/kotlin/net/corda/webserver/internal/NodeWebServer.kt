@@ -1,6 +1,7 @@
 package net.corda.webserver.internal
 
 import com.google.common.html.HtmlEscapers.htmlEscaper
+import com.google.common.util.concurrent.ThreadFactoryBuilder
 import io.netty.channel.unix.Errors
 import net.corda.client.jackson.JacksonSupport
 import net.corda.client.rpc.CordaRPCClient
@@ -16,8 +17,11 @@ import org.eclipse.jetty.server.*
 import org.eclipse.jetty.server.handler.ErrorHandler
 import org.eclipse.jetty.server.handler.HandlerCollection
 import org.eclipse.jetty.servlet.DefaultServlet
+import org.eclipse.jetty.servlet.FilterHolder
 import org.eclipse.jetty.servlet.ServletContextHandler
 import org.eclipse.jetty.servlet.ServletHolder
+import org.eclipse.jetty.util.component.AbstractLifeCycle
+import org.eclipse.jetty.util.component.LifeCycle
 import org.eclipse.jetty.util.ssl.SslContextFactory
 import org.glassfish.jersey.server.ResourceConfig
 import org.glassfish.jersey.server.ServerProperties
@@ -29,6 +33,8 @@ import java.lang.reflect.InvocationTargetException
 import java.net.BindException
 import java.nio.file.NoSuchFileException
 import java.util.*
+import java.util.concurrent.Executors
+import javax.servlet.DispatcherType
 import javax.servlet.http.HttpServletRequest
 
 class NodeWebServer(val config: WebServerConfig) {
@@ -40,6 +46,9 @@ class NodeWebServer(val config: WebServerConfig) {
     val address = config.webAddress
     private var renderBasicInfoToConsole = true
     private lateinit var server: Server
+    // Blocking RPC calls made on behalf of asynchronous requests run here rather than on the server's threads. Shut down
+    // when the server stops.
+    private val rpcExecutor = Executors.newFixedThreadPool(config.rpcThreads, ThreadFactoryBuilder().setNameFormat("webserver-rpc-%d").setDaemon(true).build())
 
     fun start() {
         logAndMaybePrint("Starting as webserver: ${config.webAddress}")
@@ -88,6 +97,10 @@ class NodeWebServer(val config: WebServerConfig) {
         server.connectors = arrayOf<Connector>(connector)
 
         server.handler = handlerCollection
+        server.addLifeCycleListener(object : AbstractLifeCycle.AbstractLifeCycleListener() {
+            override fun lifeCycleStopped(event: LifeCycle) = rpcExecutor.shutdown()
+            override fun lifeCycleFailure(event: LifeCycle, cause: Throwable) = rpcExecutor.shutdown()
+        })
         try {
             server.start()
         } catch (e: IOException) {
@@ -119,8 +132,15 @@ class NodeWebServer(val config: WebServerConfig) {
                 }
             }
             setAttribute("rpc", localRpc)
-            addServlet(DataUploadServlet::class.java, "/upload/*")
-            addServlet(AttachmentDownloadServlet::class.java, "/attachments/*")
+            setAttribute("rpcExecutor", rpcExecutor)
+            addServlet(DataUploadServlet::class.java, "/upload/*").isAsyncSupported = true
+            addServlet(AttachmentDownloadServlet::class.java, "/attachments/*").isAsyncSupported = true
+            // Each endpoint gets its own limit, so that a backlog on one does not starve the others.
+            for (pathSpec in listOf("/upload/*", "/attachments/*", "/api/*")) {
+                val limit = FilterHolder(ConcurrencyLimitFilter(pathSpec, config.maxConcurrentRequestsPerEndpoint))
+                limit.isAsyncSupported = true
+                addFilter(limit, pathSpec, EnumSet.of(DispatcherType.REQUEST))
+            }
 
             val rpcObjectMapper = pluginRegistries.fold(JacksonSupport.createDefaultMapper(localRpc)) { om, plugin ->
                 plugin.customizeJSONSerialization(om)
@@ -170,6 +190,8 @@ class NodeWebServer(val config: WebServerConfig) {
 
             val container = ServletContainer(resourceConfig)
             val jerseyServlet = ServletHolder(container)
+            // Lets web APIs complete requests asynchronously through javax.ws.rs.container.AsyncResponse.
+            jerseyServlet.isAsyncSupported = true
             addServlet(jerseyServlet, "/api/*")
             jerseyServlet.initOrder = 0 // Initialise at server start
         }
@@ -1,11 +1,13 @@
 package net.corda.webserver.servlets
 
-import net.corda.core.internal.extractFile
 import net.corda.core.crypto.SecureHash
+import net.corda.core.internal.seekToFile
 import net.corda.core.messaging.CordaRPCOps
 import net.corda.core.utilities.contextLogger
 import java.io.FileNotFoundException
 import java.io.IOException
+import java.io.InputStream
+import java.util.concurrent.Executor
 import java.util.jar.JarInputStream
 import javax.servlet.http.HttpServlet
 import javax.servlet.http.HttpServletRequest
@@ -21,6 +23,9 @@ import javax.ws.rs.core.MediaType
  *
  * Files are always forced to be downloads, they may not be embedded into web pages for security reasons.
  *
+ * The request is handled asynchronously: the RPC is made on the webserver's RPC executor and the attachment is written
+ * out with non-blocking I/O, so no server thread is held while either is in progress.
+ *
  * TODO: See if there's a way to prevent access by JavaScript.
  * TODO: Provide an endpoint that exposes attachment file listings, to make attachments browsable.
  */
@@ -37,30 +42,44 @@ class AttachmentDownloadServlet : HttpServlet() {
             return
         }
 
-        try {
-            val hash = SecureHash.parse(reqPath.substringBefore('/'))
-            val rpc = servletContext.getAttribute("rpc") as CordaRPCOps
-            val attachment = rpc.openAttachment(hash)
-
-            // Don't allow case sensitive matches inside the jar, it'd just be confusing.
-            val subPath = reqPath.substringAfter('/', missingDelimiterValue = "").toLowerCase()
+        val hash = SecureHash.parse(reqPath.substringBefore('/'))
+        val rpc = servletContext.getAttribute("rpc") as CordaRPCOps
+        val rpcExecutor = servletContext.getAttribute("rpcExecutor") as Executor
+        // Don't allow case sensitive matches inside the jar, it'd just be confusing.
+        val subPath = reqPath.substringAfter('/', missingDelimiterValue = "").toLowerCase()
 
-            resp.contentType = MediaType.APPLICATION_OCTET_STREAM
-            if (subPath.isEmpty()) {
-                resp.addHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"$hash.zip\"")
-                attachment.use { it.copyTo(resp.outputStream) }
-            } else {
-                val filename = subPath.split('/').last()
+        val asyncContext = req.startAsync()
+        // Large attachments can take a while to send, which is bounded by the connection's idle timeout instead.
+        asyncContext.timeout = 0
+        rpcExecutor.execute {
+            try {
+                val source: InputStream = rpc.openAttachment(hash).let { attachment ->
+                    if (subPath.isEmpty()) {
+                        attachment
+                    } else {
+                        JarInputStream(attachment).apply {
+                            try {
+                                seekToFile(subPath)
+                            } catch (e: FileNotFoundException) {
+                                close()
+                                throw e
+                            }
+                        }
+                    }
+                }
+                val filename = if (subPath.isEmpty()) "$hash.zip" else subPath.split('/').last()
+                resp.contentType = MediaType.APPLICATION_OCTET_STREAM
                 resp.addHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"$filename\"")
-                JarInputStream(attachment).use { it.extractFile(subPath, resp.outputStream) }
+                resp.outputStream.setWriteListener(StreamingWriteListener(source, asyncContext))
+            } catch (e: FileNotFoundException) {
+                log.warn("404 Not Found whilst trying to handle attachment download request for ${servletContext.contextPath}/$reqPath")
+                resp.sendError(HttpServletResponse.SC_NOT_FOUND)
+                asyncContext.complete()
+            } catch (e: Exception) {
+                log.error("Could not download attachment $hash", e)
+                resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR)
+                asyncContext.complete()
             }
-
-            // Closing the output stream commits our response. We cannot change the status code after this.
-            resp.outputStream.close()
-        } catch (e: FileNotFoundException) {
-            log.warn("404 Not Found whilst trying to handle attachment download request for ${servletContext.contextPath}/$reqPath")
-            resp.sendError(HttpServletResponse.SC_NOT_FOUND)
-            return
         }
     }
 }
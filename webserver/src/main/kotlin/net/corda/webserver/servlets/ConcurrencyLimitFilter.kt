@@ -0,0 +1,54 @@
+package net.corda.webserver.servlets
+
+import net.corda.core.utilities.contextLogger
+import java.util.concurrent.Semaphore
+import java.util.concurrent.atomic.AtomicBoolean
+import javax.servlet.*
+import javax.servlet.http.HttpServletResponse
+import javax.ws.rs.core.HttpHeaders
+
+/**
+ * Limits the number of requests to an endpoint that may be in progress at once, including those completing
+ * asynchronously. Requests beyond [maxConcurrentRequests] are turned away with 503 Service Unavailable rather than
+ * queued, so that a slow endpoint cannot take every server thread with it.
+ */
+class ConcurrencyLimitFilter(private val name: String, private val maxConcurrentRequests: Int) : Filter {
+    companion object {
+        private val log = contextLogger()
+    }
+
+    init {
+        require(maxConcurrentRequests > 0) { "maxConcurrentRequests must be positive" }
+    }
+
+    private val permits = Semaphore(maxConcurrentRequests)
+
+    override fun init(filterConfig: FilterConfig) {}
+
+    override fun doFilter(request: ServletRequest, response: ServletResponse, chain: FilterChain) {
+        if (!permits.tryAcquire()) {
+            log.warn("Rejecting request to $name as $maxConcurrentRequests requests are already in progress")
+            (response as HttpServletResponse).setHeader(HttpHeaders.RETRY_AFTER, "1")
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE)
+            return
+        }
+        val released = AtomicBoolean(false)
+        val release = { if (released.compareAndSet(false, true)) permits.release() }
+        try {
+            chain.doFilter(request, response)
+        } finally {
+            if (request.isAsyncStarted) {
+                request.asyncContext.addListener(object : AsyncListener {
+                    override fun onComplete(event: AsyncEvent) = release()
+                    override fun onTimeout(event: AsyncEvent) = release()
+                    override fun onError(event: AsyncEvent) = release()
+                    override fun onStartAsync(event: AsyncEvent) {}
+                })
+            } else {
+                release()
+            }
+        }
+    }
+
+    override fun destroy() {}
+}
@@ -1,16 +1,27 @@
 package net.corda.webserver.servlets
 
+import net.corda.core.internal.deleteIfExists
+import net.corda.core.internal.inputStream
+import net.corda.core.internal.size
 import net.corda.core.messaging.CordaRPCOps
 import net.corda.core.utilities.contextLogger
+import org.apache.commons.fileupload.UploadContext
 import org.apache.commons.fileupload.servlet.ServletFileUpload
 import java.io.IOException
+import java.io.InputStream
+import java.nio.file.Files
+import java.nio.file.Path
 import java.util.*
+import java.util.concurrent.Executor
 import javax.servlet.http.HttpServlet
 import javax.servlet.http.HttpServletRequest
 import javax.servlet.http.HttpServletResponse
 
 /**
  * Uploads to the node via the [CordaRPCOps] uploadFile interface.
+ *
+ * The request body is received with non-blocking reads into a temporary file, and only once it is all there is the upload
+ * passed to the node on the webserver's RPC executor. Neither a server thread nor an RPC thread waits on a slow client.
  */
 class DataUploadServlet : HttpServlet() {
     companion object {
@@ -21,14 +32,35 @@ class DataUploadServlet : HttpServlet() {
     override fun doPost(req: HttpServletRequest, resp: HttpServletResponse) {
         val isMultipart = ServletFileUpload.isMultipartContent(req)
         val rpc = servletContext.getAttribute("rpc") as CordaRPCOps
+        val rpcExecutor = servletContext.getAttribute("rpcExecutor") as Executor
 
         if (!isMultipart) {
             resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "This end point is for data uploads only.")
             return
         }
 
+        val asyncContext = req.startAsync()
+        // Large uploads can take a while to receive, which is bounded by the connection's idle timeout instead.
+        asyncContext.timeout = 0
+        val body = Files.createTempFile("upload", ".multipart")
+        req.inputStream.setReadListener(SpoolingReadListener(asyncContext, body) {
+            rpcExecutor.execute {
+                try {
+                    body.inputStream().use { upload(req, resp, rpc, SpooledUploadContext(req, body, it)) }
+                } catch (e: Exception) {
+                    log.error("Upload failed", e)
+                    if (!resp.isCommitted) resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR)
+                } finally {
+                    body.deleteIfExists()
+                    asyncContext.complete()
+                }
+            }
+        })
+    }
+
+    private fun upload(req: HttpServletRequest, resp: HttpServletResponse, rpc: CordaRPCOps, context: UploadContext) {
         val upload = ServletFileUpload()
-        val iterator = upload.getItemIterator(req)
+        val iterator = upload.getItemIterator(context)
         val messages = ArrayList<String>()
 
         if (!iterator.hasNext()) {
@@ -61,3 +93,17 @@ class DataUploadServlet : HttpServlet() {
         messages.forEach { writer.println(it) }
     }
 }
+
+/** The multipart body of [req], as received into [body]. */
+private class SpooledUploadContext(
+        private val req: HttpServletRequest,
+        private val body: Path,
+        private val input: InputStream
+) : UploadContext {
+    override fun getCharacterEncoding(): String? = req.characterEncoding
+    override fun getContentType(): String? = req.contentType
+    override fun contentLength(): Long = body.size
+    @Suppress("OverridingDeprecatedMember")
+    override fun getContentLength(): Int = contentLength().toInt()
+    override fun getInputStream(): InputStream = input
+}
@@ -0,0 +1,50 @@
+package net.corda.webserver.servlets
+
+import net.corda.core.internal.deleteIfExists
+import net.corda.core.internal.outputStream
+import net.corda.core.utilities.contextLogger
+import java.nio.file.Path
+import javax.servlet.AsyncContext
+import javax.servlet.ReadListener
+
+/**
+ * Copies the body of the request of [asyncContext] to the file [spool] using non-blocking reads, a buffer at a time, and
+ * calls [onSpooled] once it has all been received. No thread waits on the client while the request is being received.
+ *
+ * [onSpooled] becomes responsible for the file and for completing the request. If the body can't be read the file is
+ * deleted and the request completed here instead.
+ */
+class SpoolingReadListener(
+        private val asyncContext: AsyncContext,
+        private val spool: Path,
+        private val onSpooled: () -> Unit
+) : ReadListener {
+    companion object {
+        private val log = contextLogger()
+        private const val BUFFER_SIZE = 32 * 1024
+    }
+
+    private val buffer = ByteArray(BUFFER_SIZE)
+    private val output = spool.outputStream()
+
+    override fun onDataAvailable() {
+        val input = asyncContext.request.inputStream
+        while (input.isReady) {
+            val read = input.read(buffer)
+            if (read == -1) return
+            output.write(buffer, 0, read)
+        }
+    }
+
+    override fun onAllDataRead() {
+        output.close()
+        onSpooled()
+    }
+
+    override fun onError(t: Throwable) {
+        log.warn("Error whilst receiving request", t)
+        output.close()
+        spool.deleteIfExists()
+        asyncContext.complete()
+    }
+}
@@ -0,0 +1,38 @@
+package net.corda.webserver.servlets
+
+import net.corda.core.utilities.contextLogger
+import java.io.InputStream
+import javax.servlet.AsyncContext
+import javax.servlet.WriteListener
+
+/**
+ * Copies [source] to the response of [asyncContext] using non-blocking writes, a buffer at a time, and completes the
+ * request once it has all been written. No thread waits on the client while the response is being sent.
+ */
+class StreamingWriteListener(private val source: InputStream, private val asyncContext: AsyncContext) : WriteListener {
+    companion object {
+        private val log = contextLogger()
+        private const val BUFFER_SIZE = 32 * 1024
+    }
+
+    private val buffer = ByteArray(BUFFER_SIZE)
+
+    override fun onWritePossible() {
+        val output = asyncContext.response.outputStream
+        while (output.isReady) {
+            val read = source.read(buffer)
+            if (read == -1) {
+                source.close()
+                asyncContext.complete()
+                return
+            }
+            output.write(buffer, 0, read)
+        }
+    }
+
+    override fun onError(t: Throwable) {
+        log.warn("Error whilst streaming response", t)
+        source.close()
+        asyncContext.complete()
+    }
+}
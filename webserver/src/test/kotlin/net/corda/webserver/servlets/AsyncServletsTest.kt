@@ -0,0 +1,139 @@
+package net.corda.webserver.servlets
+
+import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.doAnswer
+import com.nhaarman.mockito_kotlin.doReturn
+import com.nhaarman.mockito_kotlin.doThrow
+import com.nhaarman.mockito_kotlin.whenever
+import net.corda.core.crypto.SecureHash
+import net.corda.core.messaging.CordaRPCOps
+import net.corda.testing.internal.rigorousMock
+import org.assertj.core.api.Assertions.assertThat
+import org.eclipse.jetty.server.Server
+import org.eclipse.jetty.server.ServerConnector
+import org.eclipse.jetty.servlet.ServletContextHandler
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.InputStream
+import java.net.HttpURLConnection
+import java.net.URL
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+import javax.servlet.http.HttpServletResponse
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class AsyncServletsTest {
+    private val attachmentId = SecureHash.randomSHA256()
+    private val attachment = ByteArrayOutputStream().apply {
+        JarOutputStream(this).use {
+            it.putNextEntry(JarEntry("foo.txt"))
+            it.write("Some useful content".toByteArray())
+        }
+    }.toByteArray()
+    private val uploaded = ArrayList<ByteArray>()
+    private val rpc = rigorousMock<CordaRPCOps>().also {
+        doAnswer { attachment.inputStream() }.whenever(it).openAttachment(attachmentId)
+        doAnswer { uploaded += it.getArgument<InputStream>(0).readBytes(); attachmentId }.whenever(it).uploadAttachment(any())
+    }
+    private lateinit var rpcExecutor: ExecutorService
+    private lateinit var server: Server
+
+    @Before
+    fun setUp() {
+        rpcExecutor = Executors.newSingleThreadExecutor()
+        server = Server(0)
+        server.handler = ServletContextHandler().apply {
+            contextPath = "/"
+            setAttribute("rpc", rpc)
+            setAttribute("rpcExecutor", rpcExecutor)
+            addServlet(DataUploadServlet::class.java, "/upload/*").isAsyncSupported = true
+            addServlet(AttachmentDownloadServlet::class.java, "/attachments/*").isAsyncSupported = true
+        }
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.stop()
+        rpcExecutor.shutdown()
+    }
+
+    private fun url(path: String) = URL("http://localhost:${(server.connectors[0] as ServerConnector).localPort}$path")
+
+    @Test
+    fun `download attachment`() {
+        val connection = url("/attachments/$attachmentId").openConnection() as HttpURLConnection
+        assertEquals(HttpServletResponse.SC_OK, connection.responseCode)
+        assertThat(connection.getHeaderField("Content-Disposition")).isEqualTo("attachment; filename=\"$attachmentId.zip\"")
+        assertTrue(attachment.contentEquals(connection.inputStream.readBytes()))
+    }
+
+    @Test
+    fun `download file within attachment`() {
+        val connection = url("/attachments/$attachmentId/FOO.txt").openConnection() as HttpURLConnection
+        assertEquals(HttpServletResponse.SC_OK, connection.responseCode)
+        assertEquals("Some useful content", connection.inputStream.reader().readText())
+    }
+
+    @Test
+    fun `download missing file within attachment`() {
+        val connection = url("/attachments/$attachmentId/missing.txt").openConnection() as HttpURLConnection
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, connection.responseCode)
+    }
+
+    @Test
+    fun `download fails when the RPC fails`() {
+        val missingId = SecureHash.randomSHA256()
+        doThrow(IllegalStateException("Node unavailable")).whenever(rpc).openAttachment(missingId)
+        val connection = url("/attachments/$missingId").openConnection() as HttpURLConnection
+        assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, connection.responseCode)
+    }
+
+    private fun upload(dataType: String): HttpURLConnection {
+        val boundary = "corda-test-boundary"
+        val connection = url("/upload/$dataType").openConnection() as HttpURLConnection
+        connection.doOutput = true
+        connection.requestMethod = "POST"
+        connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=$boundary")
+        connection.outputStream.use {
+            it.write("--$boundary\r\nContent-Disposition: form-data; name=\"file\"; filename=\"test.jar\"\r\n\r\n".toByteArray())
+            it.write(attachment)
+            it.write("\r\n--$boundary--\r\n".toByteArray())
+        }
+        return connection
+    }
+
+    @Test
+    fun `upload attachment`() {
+        val connection = upload("attachment")
+        assertEquals(HttpServletResponse.SC_OK, connection.responseCode)
+        assertEquals(attachmentId.toString(), connection.inputStream.reader().readText().trim())
+        assertTrue(attachment.contentEquals(uploaded.single()))
+    }
+
+    @Test
+    fun `upload fails when the RPC fails`() {
+        doThrow(IllegalArgumentException("Not a JAR")).whenever(rpc).uploadAttachment(any())
+        assertEquals(HttpServletResponse.SC_BAD_REQUEST, upload("attachment").responseCode)
+    }
+
+    @Test
+    fun `upload of unknown data type is rejected`() {
+        assertEquals(HttpServletResponse.SC_BAD_REQUEST, upload("unknown").responseCode)
+        assertThat(uploaded).isEmpty()
+    }
+
+    @Test
+    fun `non-multipart upload is rejected`() {
+        val connection = url("/upload/attachment").openConnection() as HttpURLConnection
+        connection.doOutput = true
+        connection.requestMethod = "POST"
+        connection.outputStream.use { it.write(attachment) }
+        assertEquals(HttpServletResponse.SC_BAD_REQUEST, connection.responseCode)
+    }
+}
@@ -0,0 +1,83 @@
+package net.corda.webserver.servlets
+
+import com.nhaarman.mockito_kotlin.*
+import net.corda.testing.internal.rigorousMock
+import org.assertj.core.api.Assertions.assertThatIllegalArgumentException
+import org.junit.Test
+import javax.servlet.AsyncContext
+import javax.servlet.AsyncEvent
+import javax.servlet.AsyncListener
+import javax.servlet.FilterChain
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+import javax.ws.rs.core.HttpHeaders
+
+class ConcurrencyLimitFilterTest {
+    private val filter = ConcurrencyLimitFilter("/test/*", 1)
+    private val chain = mock<FilterChain>()
+
+    private fun syncRequest() = rigorousMock<HttpServletRequest>().also {
+        doReturn(false).whenever(it).isAsyncStarted
+    }
+
+    private fun response() = mock<HttpServletResponse>()
+
+    @Test
+    fun `requests within the limit are passed on`() {
+        val request = syncRequest()
+        val response = response()
+        filter.doFilter(request, response, chain)
+        filter.doFilter(request, response, chain)
+        verify(chain, times(2)).doFilter(request, response)
+        verify(response, never()).sendError(any())
+    }
+
+    @Test
+    fun `requests beyond the limit are rejected until an asynchronous request completes`() {
+        val listeners = ArrayList<AsyncListener>()
+        val asyncContext = rigorousMock<AsyncContext>().also {
+            doAnswer { listeners += it.getArgument<AsyncListener>(0) }.whenever(it).addListener(any())
+        }
+        fun asyncRequest() = rigorousMock<HttpServletRequest>().also {
+            doReturn(true).whenever(it).isAsyncStarted
+            doReturn(asyncContext).whenever(it).asyncContext
+        }
+        filter.doFilter(asyncRequest(), response(), chain)
+
+        val rejected = syncRequest()
+        val rejectedResponse = response()
+        filter.doFilter(rejected, rejectedResponse, chain)
+        verify(chain, never()).doFilter(eq(rejected), any())
+        verify(rejectedResponse).setHeader(HttpHeaders.RETRY_AFTER, "1")
+        verify(rejectedResponse).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE)
+
+        val event = AsyncEvent(asyncContext)
+        listeners.single().onComplete(event)
+        // An error reported after completion must not release the permit a second time.
+        listeners.single().onError(event)
+
+        filter.doFilter(asyncRequest(), response(), chain)
+        val rejectedAgainResponse = response()
+        filter.doFilter(syncRequest(), rejectedAgainResponse, chain)
+        verify(rejectedAgainResponse).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE)
+    }
+
+    @Test
+    fun `permit is released when the chain throws`() {
+        val failing = syncRequest()
+        doThrow(IllegalStateException()).whenever(chain).doFilter(eq(failing), any())
+        try {
+            filter.doFilter(failing, response(), chain)
+        } catch (e: IllegalStateException) {
+            // Expected
+        }
+        val request = syncRequest()
+        filter.doFilter(request, response(), chain)
+        verify(chain).doFilter(eq(request), any())
+    }
+
+    @Test
+    fun `limit must be positive`() {
+        assertThatIllegalArgumentException().isThrownBy { ConcurrencyLimitFilter("/test/*", 0) }
+    }
+}
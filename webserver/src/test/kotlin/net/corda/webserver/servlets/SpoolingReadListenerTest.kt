@@ -0,0 +1,79 @@
+package net.corda.webserver.servlets
+
+import com.nhaarman.mockito_kotlin.doReturn
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.never
+import com.nhaarman.mockito_kotlin.verify
+import com.nhaarman.mockito_kotlin.whenever
+import net.corda.core.internal.exists
+import net.corda.core.internal.readAll
+import net.corda.testing.internal.rigorousMock
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.ByteArrayInputStream
+import java.io.IOException
+import java.util.*
+import javax.servlet.AsyncContext
+import javax.servlet.ReadListener
+import javax.servlet.ServletInputStream
+import javax.servlet.http.HttpServletRequest
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class SpoolingReadListenerTest {
+    /** Allows [readsUntilBlocked] reads before reporting it is not ready, as a socket with an empty buffer would. */
+    private class ThrottledInputStream(bytes: ByteArray, var readsUntilBlocked: Int) : ServletInputStream() {
+        private val source = ByteArrayInputStream(bytes)
+        var read = 0
+
+        override fun isReady(): Boolean = readsUntilBlocked > 0
+        override fun isFinished(): Boolean = source.available() == 0
+        override fun setReadListener(readListener: ReadListener) = throw UnsupportedOperationException()
+        override fun read(): Int = throw UnsupportedOperationException()
+        override fun read(b: ByteArray, off: Int, len: Int): Int {
+            check(readsUntilBlocked > 0) { "Read from when not ready" }
+            readsUntilBlocked--
+            return source.read(b, off, len).also { if (it > 0) read += it }
+        }
+    }
+
+    @Rule
+    @JvmField
+    val tempFolder = TemporaryFolder()
+
+    private val data = ByteArray(100 * 1024).apply { Random(0).nextBytes(this) }
+    private val spool by lazy { tempFolder.newFile().toPath() }
+    private var spooled = false
+
+    private fun asyncContext(input: ServletInputStream): AsyncContext {
+        val request = rigorousMock<HttpServletRequest>().also { doReturn(input).whenever(it).inputStream }
+        return mock<AsyncContext>().also { doReturn(request).whenever(it).request }
+    }
+
+    @Test
+    fun `stops reading when the input is not ready and resumes when it is`() {
+        val input = ThrottledInputStream(data, 1)
+        val asyncContext = asyncContext(input)
+        val listener = SpoolingReadListener(asyncContext, spool) { spooled = true }
+        listener.onDataAvailable()
+        assertEquals(32 * 1024, input.read)
+
+        input.readsUntilBlocked = Int.MAX_VALUE
+        listener.onDataAvailable()
+        listener.onAllDataRead()
+        assertTrue(spooled)
+        assertTrue(data.contentEquals(spool.readAll()))
+        verify(asyncContext, never()).complete()
+    }
+
+    @Test
+    fun `deletes the spool and completes on error`() {
+        val asyncContext = asyncContext(ThrottledInputStream(data, 0))
+        SpoolingReadListener(asyncContext, spool) { spooled = true }.onError(IOException("Connection reset"))
+        assertFalse(spooled)
+        assertFalse(spool.exists())
+        verify(asyncContext).complete()
+    }
+}
@@ -0,0 +1,83 @@
+package net.corda.webserver.servlets
+
+import com.nhaarman.mockito_kotlin.doReturn
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.never
+import com.nhaarman.mockito_kotlin.verify
+import com.nhaarman.mockito_kotlin.whenever
+import net.corda.testing.internal.rigorousMock
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.util.*
+import javax.servlet.AsyncContext
+import javax.servlet.ServletOutputStream
+import javax.servlet.WriteListener
+import javax.servlet.http.HttpServletResponse
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class StreamingWriteListenerTest {
+    /** Accepts [writesUntilBlocked] writes before reporting it is not ready, as a socket with a full buffer would. */
+    private class ThrottledOutputStream(var writesUntilBlocked: Int) : ServletOutputStream() {
+        val written = ByteArrayOutputStream()
+
+        override fun isReady(): Boolean = writesUntilBlocked > 0
+        override fun setWriteListener(writeListener: WriteListener) = throw UnsupportedOperationException()
+        override fun write(b: Int) = write(byteArrayOf(b.toByte()), 0, 1)
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            check(writesUntilBlocked > 0) { "Written to when not ready" }
+            writesUntilBlocked--
+            written.write(b, off, len)
+        }
+    }
+
+    private class TrackingInputStream(bytes: ByteArray) : ByteArrayInputStream(bytes) {
+        var closed = false
+        override fun close() {
+            closed = true
+        }
+    }
+
+    private val data = ByteArray(100 * 1024).apply { Random(0).nextBytes(this) }
+    private val source = TrackingInputStream(data)
+
+    private fun asyncContext(output: ServletOutputStream): AsyncContext {
+        val response = rigorousMock<HttpServletResponse>().also { doReturn(output).whenever(it).outputStream }
+        return mock<AsyncContext>().also { doReturn(response).whenever(it).response }
+    }
+
+    @Test
+    fun `copies the source and completes`() {
+        val output = ThrottledOutputStream(Int.MAX_VALUE)
+        val asyncContext = asyncContext(output)
+        StreamingWriteListener(source, asyncContext).onWritePossible()
+        assertTrue(data.contentEquals(output.written.toByteArray()))
+        assertTrue(source.closed)
+        verify(asyncContext).complete()
+    }
+
+    @Test
+    fun `stops writing when the output is not ready and resumes when it is`() {
+        val output = ThrottledOutputStream(1)
+        val asyncContext = asyncContext(output)
+        val listener = StreamingWriteListener(source, asyncContext)
+        listener.onWritePossible()
+        assertEquals(32 * 1024, output.written.size())
+        verify(asyncContext, never()).complete()
+
+        output.writesUntilBlocked = Int.MAX_VALUE
+        listener.onWritePossible()
+        assertTrue(data.contentEquals(output.written.toByteArray()))
+        verify(asyncContext).complete()
+    }
+
+    @Test
+    fun `closes the source and completes on error`() {
+        val asyncContext = asyncContext(ThrottledOutputStream(0))
+        StreamingWriteListener(source, asyncContext).onError(IOException("Connection reset"))
+        assertTrue(source.closed)
+        verify(asyncContext).complete()
+    }
+}